@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares <code>GraphicsUtil.copyData</code> with
+ * <code>copyData_FALLBACK</code> on 1000x1000 pixel-interleaved rasters.
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec
+ * -Dbenchmark=CopyDataBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyDataBenchmark {
+
+    private static final int SIZE = 1000;
+
+    /** The source and destination layouts, as band offsets. */
+    @Param({ "BGR_TO_BGR", "BGR_TO_RGB", "ABGR_TO_RGBA", "USHORT_RGB_TO_BGR" })
+    private String layout;
+
+    private Raster src;
+
+    private WritableRaster dst;
+
+    private static WritableRaster createRaster(final int dataType,
+            final int[] bandOffsets) {
+        return Raster.createWritableRaster(new PixelInterleavedSampleModel(
+                dataType, SIZE, SIZE, bandOffsets.length, SIZE
+                        * bandOffsets.length, bandOffsets), new Point(0, 0));
+    }
+
+    @Setup
+    public void setUp() {
+        final int[] bgr = { 2, 1, 0 };
+        final int[] rgb = { 0, 1, 2 };
+        int dataType = DataBuffer.TYPE_BYTE;
+        int[] srcOffsets = bgr;
+        int[] dstOffsets = bgr;
+        if ("BGR_TO_RGB".equals(this.layout)) {
+            dstOffsets = rgb;
+        } else if ("ABGR_TO_RGBA".equals(this.layout)) {
+            srcOffsets = new int[] { 3, 2, 1, 0 };
+            dstOffsets = new int[] { 0, 1, 2, 3 };
+        } else if ("USHORT_RGB_TO_BGR".equals(this.layout)) {
+            dataType = DataBuffer.TYPE_USHORT;
+            srcOffsets = rgb;
+        }
+        final WritableRaster source = createRaster(dataType, srcOffsets);
+        final Random random = new Random(1234);
+        final int[] samples = new int[SIZE * srcOffsets.length];
+        for (int y = 0; y < SIZE; y++) {
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = random.nextInt(256);
+            }
+            source.setPixels(0, y, SIZE, 1, samples);
+        }
+        this.src = source;
+        this.dst = createRaster(dataType, dstOffsets);
+    }
+
+    @Benchmark
+    public WritableRaster copyData() {
+        GraphicsUtil.copyData(this.src, this.dst);
+        return this.dst;
+    }
+
+    @Benchmark
+    public WritableRaster copyDataFallback() {
+        GraphicsUtil.copyData_FALLBACK(this.src, this.dst);
+        return this.dst;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.png;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times <code>PNGImageEncoder</code> with the default settings and with each
+ * of the <code>PNGEncodeParam</code> presets, on a 1000x1000 RGB photo-like
+ * image and on a drawing. The size of the encoded image is printed once per
+ * trial, so that the time and size of the presets can be weighed together.
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec
+ * -Dbenchmark=PNGPresetBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PNGPresetBenchmark {
+
+    private static final int SIZE = 1000;
+
+    /** The preset, or DEFAULT for the settings without a preset. */
+    @Param({ "DEFAULT", "FASTEST", "BALANCED", "SMALLEST" })
+    private String preset;
+
+    /** The content of the image. */
+    @Param({ "PHOTO", "DRAWING" })
+    private String content;
+
+    private BufferedImage image;
+
+    private PNGEncodeParam param;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    /**
+     * Smooth gradients with some noise, which the filters predict only
+     * partly.
+     */
+    private static BufferedImage createPhoto() {
+        final BufferedImage image = new BufferedImage(SIZE, SIZE,
+                BufferedImage.TYPE_3BYTE_BGR);
+        final Random random = new Random(1234);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                final int r = (x * 255 / SIZE + random.nextInt(9)) & 0xff;
+                final int g = (y * 255 / SIZE + random.nextInt(9)) & 0xff;
+                final int b = ((x + y) * 127 / SIZE + random.nextInt(9)) & 0xff;
+                image.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+
+    /** Flat areas, lines and antialiased text. */
+    private static BufferedImage createDrawing() {
+        final BufferedImage image = new BufferedImage(SIZE, SIZE,
+                BufferedImage.TYPE_3BYTE_BGR);
+        final Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                    RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, SIZE, SIZE);
+            final Random random = new Random(1234);
+            for (int i = 0; i < 200; i++) {
+                g2d.setColor(new Color(random.nextInt(0x1000000)));
+                g2d.setStroke(new BasicStroke(1 + random.nextInt(5)));
+                if (i % 2 == 0) {
+                    g2d.fillRect(random.nextInt(SIZE), random.nextInt(SIZE),
+                            random.nextInt(200), random.nextInt(200));
+                } else {
+                    g2d.drawLine(random.nextInt(SIZE), random.nextInt(SIZE),
+                            random.nextInt(SIZE), random.nextInt(SIZE));
+                }
+            }
+            g2d.setColor(Color.BLACK);
+            for (int y = 20; y < SIZE; y += 20) {
+                g2d.drawString("The quick brown fox jumps over the lazy dog",
+                        10, y);
+            }
+        } finally {
+            g2d.dispose();
+        }
+        return image;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        this.image = "PHOTO".equals(this.content) ? createPhoto()
+                : createDrawing();
+        this.param = PNGEncodeParam.getDefaultEncodeParam(this.image);
+        if ("FASTEST".equals(this.preset)) {
+            this.param.setEncodingPreset(PNGEncodeParam.PRESET_FASTEST);
+        } else if ("BALANCED".equals(this.preset)) {
+            this.param.setEncodingPreset(PNGEncodeParam.PRESET_BALANCED);
+        } else if ("SMALLEST".equals(this.preset)) {
+            this.param.setEncodingPreset(PNGEncodeParam.PRESET_SMALLEST);
+        }
+        System.out.println(this.preset + " " + this.content + ": "
+                + encode().length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        this.out.reset();
+        new PNGImageEncoder(this.out, this.param).encode(this.image);
+        return this.out.toByteArray();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.png;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the rows <code>PNGImageEncoder</code> reads straight from
+ * <code>DataBufferByte</code> and <code>DataBufferInt</code> with the generic
+ * path through <code>Raster.getPixels</code>, on 1000x1000 images. The
+ * generic path is forced by handing the encoder the same samples behind a
+ * <code>DataBuffer</code> of another class. Rows are stored without
+ * compression or filtering, so that reading them dominates. Run with
+ * <code>mvn -Pbenchmark test-compile exec:exec
+ * -Dbenchmark=PNGRowExtractionBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PNGRowExtractionBenchmark {
+
+    private static final int SIZE = 1000;
+
+    /** The type of the <code>BufferedImage</code> holding the samples. */
+    @Param({ "TYPE_3BYTE_BGR", "TYPE_4BYTE_ABGR", "TYPE_BYTE_GRAY",
+            "TYPE_INT_RGB", "TYPE_INT_ARGB" })
+    private String type;
+
+    /** DIRECT for the data buffer of the image, GENERIC for a wrapper. */
+    @Param({ "DIRECT", "GENERIC" })
+    private String path;
+
+    private BufferedImage image;
+
+    private PNGEncodeParam param;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    /** A data buffer delegating to another, which the encoder cannot read. */
+    private static final class WrappedDataBuffer extends DataBuffer {
+
+        private final DataBuffer data;
+
+        WrappedDataBuffer(final DataBuffer data) {
+            super(data.getDataType(), data.getSize());
+            this.data = data;
+        }
+
+        @Override
+        public int getElem(final int bank, final int i) {
+            return this.data.getElem(bank, i);
+        }
+
+        @Override
+        public void setElem(final int bank, final int i, final int val) {
+            this.data.setElem(bank, i, val);
+        }
+    }
+
+    private static int getImageType(final String name) {
+        if ("TYPE_3BYTE_BGR".equals(name)) {
+            return BufferedImage.TYPE_3BYTE_BGR;
+        } else if ("TYPE_4BYTE_ABGR".equals(name)) {
+            return BufferedImage.TYPE_4BYTE_ABGR;
+        } else if ("TYPE_BYTE_GRAY".equals(name)) {
+            return BufferedImage.TYPE_BYTE_GRAY;
+        } else if ("TYPE_INT_RGB".equals(name)) {
+            return BufferedImage.TYPE_INT_RGB;
+        } else {
+            return BufferedImage.TYPE_INT_ARGB;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        final BufferedImage source = new BufferedImage(SIZE, SIZE,
+                getImageType(this.type));
+        final Random random = new Random(1234);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                source.setRGB(x, y, random.nextInt());
+            }
+        }
+        if ("GENERIC".equals(this.path)) {
+            final WritableRaster raster = Raster.createWritableRaster(source
+                    .getSampleModel(), new WrappedDataBuffer(source
+                    .getRaster().getDataBuffer()), new Point(0, 0));
+            this.image = new BufferedImage(source.getColorModel(), raster,
+                    source.isAlphaPremultiplied(), null);
+        } else {
+            this.image = source;
+        }
+        this.param = PNGEncodeParam.getDefaultEncodeParam(this.image);
+        this.param.setCompressionLevel(Deflater.NO_COMPRESSION);
+        this.param.setFilterPolicy(PNGEncodeParam.FILTER_POLICY_FIXED);
+        this.param.setFixedFilter(PNGEncodeParam.PNG_FILTER_NONE);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        this.out.reset();
+        new PNGImageEncoder(this.out, this.param).encode(this.image);
+        return this.out.toByteArray();
+    }
+}
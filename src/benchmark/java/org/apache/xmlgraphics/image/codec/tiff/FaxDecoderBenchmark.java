@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xmlgraphics.image.codec.util.MemoryCacheSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares <code>TIFFFaxDecoder</code> with the former decoder, which read
+ * codes bit by bit. Both decode all strips of a CCITT compressed TIFF of the
+ * test resources: the scanned page <code>tiff_group4.tif</code>, or a
+ * pattern compressed with T.4 1D, T.4 2D or T.6. Run with <code>mvn
+ * -Pbenchmark test-compile exec:exec -Dbenchmark=FaxDecoderBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FaxDecoderBenchmark {
+
+    /** The TIFF file, in the images directory of the test resources. */
+    @Param({ "tiff_group4.tif", "tiff_group3_1d.tif", "tiff_group3_2d.tif",
+            "tiff_group4_pattern.tif" })
+    private String file;
+
+    private int width;
+
+    private int fillOrder;
+
+    private int compression;
+
+    private long options;
+
+    private final List<byte[]> strips = new ArrayList<>();
+
+    private final List<byte[]> stripData = new ArrayList<>();
+
+    private final List<Integer> stripRows = new ArrayList<>();
+
+    private static long getField(final TIFFDirectory dir, final int tag,
+            final long defaultValue) {
+        final TIFFField field = dir.getField(tag);
+        return field != null ? field.getAsLong(0) : defaultValue;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        try (final InputStream in = getClass().getResourceAsStream(
+                "/images/" + this.file)) {
+            final SeekableStream stream = new MemoryCacheSeekableStream(in);
+            final TIFFDirectory dir = new TIFFDirectory(stream, 0);
+            this.width = (int) dir
+                    .getFieldAsLong(TIFFImageDecoder.TIFF_IMAGE_WIDTH);
+            final int height = (int) dir
+                    .getFieldAsLong(TIFFImageDecoder.TIFF_IMAGE_LENGTH);
+            final int rowsPerStrip = (int) getField(dir,
+                    TIFFImageDecoder.TIFF_ROWS_PER_STRIP, height);
+            this.fillOrder = (int) getField(dir,
+                    TIFFImageDecoder.TIFF_FILL_ORDER, 1);
+            this.compression = (int) dir
+                    .getFieldAsLong(TIFFImageDecoder.TIFF_COMPRESSION);
+            this.options = getField(dir,
+                    this.compression == 4 ? TIFFImageDecoder.TIFF_T6_OPTIONS
+                            : TIFFImageDecoder.TIFF_T4_OPTIONS, 0);
+
+            final TIFFField offsets = dir
+                    .getField(TIFFImageDecoder.TIFF_STRIP_OFFSETS);
+            final TIFFField byteCounts = dir
+                    .getField(TIFFImageDecoder.TIFF_STRIP_BYTE_COUNTS);
+            for (int i = 0; i < offsets.getCount(); i++) {
+                final byte[] strip = new byte[(int) byteCounts.getAsLong(i)];
+                stream.readFully(offsets.getAsLong(i), strip, 0, strip.length);
+                this.strips.add(strip);
+                final int rows = Math.min(rowsPerStrip, height - i
+                        * rowsPerStrip);
+                this.stripRows.add(rows);
+                this.stripData.add(new byte[(this.width + 7) / 8 * rows]);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<byte[]> decode() {
+        final TIFFFaxDecoder decoder = new TIFFFaxDecoder(this.fillOrder,
+                this.width, this.stripRows.get(0));
+        for (int i = 0; i < this.strips.size(); i++) {
+            // The decoders only set the black bits
+            final byte[] data = this.stripData.get(i);
+            Arrays.fill(data, (byte) 0);
+            final int rows = this.stripRows.get(i);
+            if (this.compression == 2) {
+                decoder.decode1D(data, this.strips.get(i), 0, rows);
+            } else if (this.compression == 3) {
+                decoder.decode2D(data, this.strips.get(i), 0, rows,
+                        this.options);
+            } else {
+                decoder.decodeT6(data, this.strips.get(i), 0, rows,
+                        this.options);
+            }
+        }
+        return this.stripData;
+    }
+
+    @Benchmark
+    public List<byte[]> decodeBaseline() {
+        final BaselineTIFFFaxDecoder decoder = new BaselineTIFFFaxDecoder(
+                this.fillOrder, this.width, this.stripRows.get(0));
+        for (int i = 0; i < this.strips.size(); i++) {
+            // The decoders only set the black bits
+            final byte[] data = this.stripData.get(i);
+            Arrays.fill(data, (byte) 0);
+            final int rows = this.stripRows.get(i);
+            if (this.compression == 2) {
+                decoder.decode1D(data, this.strips.get(i), 0, rows);
+            } else if (this.compression == 3) {
+                decoder.decode2D(data, this.strips.get(i), 0, rows,
+                        this.options);
+            } else {
+                decoder.decodeT6(data, this.strips.get(i), 0, rows,
+                        this.options);
+            }
+        }
+        return this.stripData;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.apache.xmlgraphics.image.codec.util.MemoryCacheSeekableStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares <code>TIFFLZWDecoder</code> with the former decoder, which
+ * allocated an array per string table entry. Both decode the 8 KB strips of
+ * an 8-bit gray image, with or without the horizontal predictor. The images
+ * come from the test resources: a page made of 18 copies of the scanned text
+ * of <code>tiff_group4.tif</code>, 1560x3402 pixels, and
+ * <code>big-image.png</code>, 1244x1758 pixels. Run with <code>mvn
+ * -Pbenchmark test-compile exec:exec -Dbenchmark=LZWDecoderBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LZWDecoderBenchmark {
+
+    private static final int STRIP_SIZE = 8192;
+
+    private static final int PAGE_COPIES = 18;
+
+    /** The image: the scanned page or the big image. */
+    @Param({ "PAGE", "BIG_IMAGE" })
+    private String image;
+
+    /** The TIFF predictor, 1 for none or 2 for horizontal differencing. */
+    @Param({ "1", "2" })
+    private int predictor;
+
+    private int width;
+
+    private final List<byte[]> strips = new ArrayList<>();
+
+    private final List<byte[]> stripData = new ArrayList<>();
+
+    /**
+     * Returns the samples of the page, white as 255 and black as 0. The
+     * scanned text is repeated down the page.
+     */
+    private static byte[] readPage(final int[] size) throws IOException {
+        final Raster raster;
+        try (final InputStream in = LZWDecoderBenchmark.class
+                .getResourceAsStream("/images/tiff_group4.tif")) {
+            raster = new TIFFImage(new MemoryCacheSeekableStream(in), null, 0)
+                    .getData();
+        }
+        size[0] = raster.getWidth();
+        size[1] = raster.getHeight() * PAGE_COPIES;
+        final int[] samples = raster.getSamples(raster.getMinX(), raster
+                .getMinY(), raster.getWidth(), raster.getHeight(), 0,
+                (int[]) null);
+        final byte[] gray = new byte[samples.length * PAGE_COPIES];
+        for (int i = 0; i < gray.length; i++) {
+            gray[i] = (byte) (samples[i % samples.length] == 0 ? 0 : 255);
+        }
+        return gray;
+    }
+
+    /** Returns the samples of the big image, converted to gray. */
+    private static byte[] readBigImage(final int[] size) throws IOException {
+        final BufferedImage source = ImageIO.read(LZWDecoderBenchmark.class
+                .getResource("/images/big-image.png"));
+        final BufferedImage gray = new BufferedImage(source.getWidth(), source
+                .getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        final Graphics2D g2d = gray.createGraphics();
+        try {
+            g2d.drawImage(source, 0, 0, null);
+        } finally {
+            g2d.dispose();
+        }
+        size[0] = gray.getWidth();
+        size[1] = gray.getHeight();
+        final byte[] samples = new byte[size[0] * size[1]];
+        gray.getRaster().getDataElements(0, 0, size[0], size[1], samples);
+        return samples;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        final int[] size = new int[2];
+        final byte[] samples = "PAGE".equals(this.image) ? readPage(size)
+                : readBigImage(size);
+        this.width = size[0];
+        final int rowsPerStrip = Math.max(1, STRIP_SIZE / this.width);
+
+        final TIFFLZWEncoder encoder = new TIFFLZWEncoder();
+        for (int y = 0; y < size[1]; y += rowsPerStrip) {
+            final int rows = Math.min(rowsPerStrip, size[1] - y);
+            final byte[] strip = Arrays.copyOfRange(samples, y * this.width,
+                    (y + rows) * this.width);
+            if (this.predictor == 2) {
+                for (int row = 0; row < rows; row++) {
+                    for (int x = this.width - 1; x > 0; x--) {
+                        strip[row * this.width + x] -= strip[row * this.width
+                                + x - 1];
+                    }
+                }
+            }
+            final byte[] compData = new byte[TIFFLZWEncoder
+                    .getMaxEncodedLength(strip.length)];
+            final int length = encoder.encode(strip, 0, strip.length, compData);
+            this.strips.add(Arrays.copyOf(compData, length));
+            this.stripData.add(new byte[strip.length]);
+        }
+    }
+
+    private int getRows(final byte[] data) {
+        return data.length / this.width;
+    }
+
+    @Benchmark
+    public List<byte[]> decode() {
+        final TIFFLZWDecoder decoder = new TIFFLZWDecoder(this.width,
+                this.predictor, 1);
+        for (int i = 0; i < this.strips.size(); i++) {
+            final byte[] data = this.stripData.get(i);
+            decoder.decode(this.strips.get(i), data, getRows(data));
+        }
+        return this.stripData;
+    }
+
+    @Benchmark
+    public List<byte[]> decodeBaseline() {
+        final BaselineTIFFLZWDecoder decoder = new BaselineTIFFLZWDecoder(
+                this.width, this.predictor, 1);
+        for (int i = 0; i < this.strips.size(); i++) {
+            final byte[] data = this.stripData.get(i);
+            decoder.decode(this.strips.get(i), data, getRows(data));
+        }
+        return this.stripData;
+    }
+}
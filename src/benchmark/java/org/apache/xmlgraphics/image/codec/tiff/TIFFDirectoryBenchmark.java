@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.apache.xmlgraphics.image.codec.util.BufferedSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.FileChannelSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.ImageInputStreamSeekableStreamAdapter;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times reading the directories of a TIFF file of 100 small pages, with and
+ * without a <code>BufferedSeekableStream</code> in front of the file. The
+ * file is read through an <code>ImageInputStream</code>, as the image loader
+ * did before, or through a <code>FileChannelSeekableStream</code>.
+ * <code>parseDirectories</code> constructs every <code>TIFFDirectory</code>
+ * and reads its fields; <code>readEntries</code> walks the same directories
+ * with one primitive read per entry field. Run with <code>mvn -Pbenchmark
+ * test-compile exec:exec -Dbenchmark=TIFFDirectoryBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TIFFDirectoryBenchmark {
+
+    private static final int PAGES = 100;
+
+    /** The stream reading the file. */
+    @Param({ "IMAGE_INPUT_STREAM", "FILE_CHANNEL" })
+    private String source;
+
+    /** Whether a <code>BufferedSeekableStream</code> wraps the source. */
+    @Param({ "false", "true" })
+    private boolean buffered;
+
+    private File file;
+
+    private SeekableStream stream;
+
+    @Setup
+    public void setUp() throws IOException {
+        final List<Object> pages = new ArrayList<>();
+        for (int i = 1; i < PAGES; i++) {
+            pages.add(new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_GRAY));
+        }
+        final TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setExtraImages(pages.iterator());
+        this.file = File.createTempFile("tiffdir", ".tif");
+        try (final OutputStream out = new FileOutputStream(this.file)) {
+            new TIFFImageEncoder(out, param).encode(new BufferedImage(16, 16,
+                    BufferedImage.TYPE_BYTE_GRAY));
+        }
+
+        final SeekableStream src;
+        if ("FILE_CHANNEL".equals(this.source)) {
+            src = new FileChannelSeekableStream(this.file);
+        } else {
+            src = new ImageInputStreamSeekableStreamAdapter(
+                    ImageIO.createImageInputStream(this.file));
+        }
+        this.stream = this.buffered ? new BufferedSeekableStream(src) : src;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.stream.close();
+        this.file.delete();
+    }
+
+    @Benchmark
+    public int parseDirectories() throws IOException {
+        int fields = 0;
+        TIFFDirectory dir = new TIFFDirectory(this.stream, 0);
+        while (true) {
+            fields += dir.getFields().length;
+            if (dir.getNextIFDOffset() == 0L) {
+                return fields;
+            }
+            dir = new TIFFDirectory(this.stream, dir.getNextIFDOffset(), 0);
+        }
+    }
+
+    @Benchmark
+    public long readEntries() throws IOException {
+        // The encoder writes big-endian classic TIFF
+        long sum = 0;
+        this.stream.seek(4);
+        long ifdOffset = this.stream.readUnsignedInt();
+        while (ifdOffset != 0L) {
+            this.stream.seek(ifdOffset);
+            final int numEntries = this.stream.readUnsignedShort();
+            for (int i = 0; i < numEntries; i++) {
+                sum += this.stream.readUnsignedShort();
+                sum += this.stream.readUnsignedShort();
+                sum += this.stream.readUnsignedInt();
+                sum += this.stream.readUnsignedInt();
+            }
+            ifdOffset = this.stream.readUnsignedInt();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xmlgraphics.image.GraphicsUtil;
+import org.apache.xmlgraphics.java2d.color.DeviceCMYKColorSpace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times <code>AbstractRed.copyToRaster</code> on an <code>Any2sRGBRed</code>
+ * converting a 2000x2000 image in 256x256 tiles to sRGB, sequentially and on
+ * fork/join pools of several sizes. Run with <code>mvn -Pbenchmark
+ * test-compile exec:exec -Dbenchmark=ParallelCopyBenchmark</code> on a
+ * machine with at least as many CPUs as the largest pool; results from fewer
+ * CPUs say nothing about the speedup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelCopyBenchmark {
+
+    private static final int SIZE = 2000;
+
+    private static final int TILE_SIZE = 256;
+
+    /** The color space of the source, without or with an ICC profile. */
+    @Param({ "CMYK", "PYCC" })
+    private String colorSpace;
+
+    /** The parallelism of the pool; 1 copies sequentially, without a pool. */
+    @Param({ "1", "2", "4", "8" })
+    private int threads;
+
+    private Any2sRGBRed chain;
+
+    private WritableRaster dst;
+
+    private ForkJoinPool pool;
+
+    /** An image serving tiles of a raster held in memory. */
+    private static final class TiledRed extends AbstractRed {
+
+        private final WritableRaster data;
+
+        TiledRed(final ColorModel cm, final WritableRaster data) {
+            super((CachableRed) null, data.getBounds(), cm, cm
+                    .createCompatibleSampleModel(TILE_SIZE, TILE_SIZE), 0, 0,
+                    null);
+            this.data = data;
+        }
+
+        @Override
+        public WritableRaster copyData(final WritableRaster wr) {
+            GraphicsUtil.copyData(this.data, wr);
+            return wr;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        final ColorSpace cs = "CMYK".equals(this.colorSpace)
+                ? new DeviceCMYKColorSpace()
+                : ColorSpace.getInstance(ColorSpace.CS_PYCC);
+        final ColorModel cm = new ComponentColorModel(cs, false, false,
+                Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        final WritableRaster data = cm.createCompatibleWritableRaster(SIZE,
+                SIZE);
+        final Random random = new Random(1234);
+        final int[] samples = new int[SIZE * data.getNumBands()];
+        for (int y = 0; y < SIZE; y++) {
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = random.nextInt(256);
+            }
+            data.setPixels(0, y, SIZE, 1, samples);
+        }
+        this.chain = new Any2sRGBRed(new TiledRed(cm, data));
+        this.dst = this.chain.getColorModel().createCompatibleWritableRaster(
+                SIZE, SIZE);
+        this.pool = this.threads > 1 ? new ForkJoinPool(this.threads) : null;
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.pool != null) {
+            this.pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public WritableRaster copyToRaster() {
+        this.chain.copyToRaster(this.dst, this.pool);
+        return this.dst;
+    }
+}
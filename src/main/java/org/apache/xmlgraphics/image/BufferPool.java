@@ -0,0 +1,583 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image;
+
+import java.awt.Point;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A memory-bounded pool of byte, short and int arrays, and of the data
+ * buffers and rasters made of them, for the tiles and rows which image
+ * operators and codecs allocate over and over. Arrays are pooled by type and
+ * size class: a request is rounded up to the next class, a quarter of a power
+ * of two apart, so requests of varying lengths share arrays. The arrays
+ * returned by <code>getByteArray</code>, <code>getShortArray</code> and
+ * <code>getIntArray</code> may thus be longer than requested, by at most a
+ * quarter, and callers must use the requested length rather than the length
+ * of the array. Data buffers are made of arrays of their exact size. Arrays
+ * are zeroed up to the requested length when handed out, like new arrays.
+ *
+ * <p>
+ * An array is recycled when it is released, and only if it was handed out by
+ * this pool and not yet released: releasing any other array or data buffer,
+ * or the same one twice, does nothing. Arrays which are never released are
+ * simply garbage collected. Once the arrays waiting for reuse exceed the
+ * memory capacity, those of the least recently used sizes are dropped.
+ *
+ * <p>
+ * The capacity of the shared instance returned by {@link #getDefault()} may be
+ * set in bytes with the system property
+ * <code>org.apache.xmlgraphics.image.BufferPool.capacity</code>; a capacity of
+ * 0 disables pooling. The shared instance may be replaced with
+ * {@link #setDefault(BufferPool)}.
+ */
+public class BufferPool {
+
+    /** The default memory capacity of the shared pool: 16 MB. */
+    public static final long DEFAULT_MEMORY_CAPACITY = 16L * 1024 * 1024;
+
+    private static volatile BufferPool defaultInstance = new BufferPool(
+            Long.getLong(BufferPool.class.getName() + ".capacity",
+                    DEFAULT_MEMORY_CAPACITY).longValue());
+
+    private static final int BYTE_ARRAY = 0;
+    private static final int SHORT_ARRAY = 1;
+    private static final int INT_ARRAY = 2;
+
+    /** The length of the smallest size class. */
+    private static final int MIN_CLASS_LENGTH = 16;
+
+    /**
+     * The free arrays per type and array length, least recently used first.
+     */
+    private final Map<Long, Deque<Object>> free = new LinkedHashMap<>(16,
+            0.75F, true);
+
+    /** The arrays handed out and not released, weakly referenced. */
+    private final Map<Object, Boolean> inUse = new WeakHashMap<>();
+
+    private long memoryCapacity;
+    private long memoryUsage;
+    private long hits;
+    private long misses;
+    private long bytesRecycled;
+
+    /**
+     * Creates a new buffer pool.
+     *
+     * @param memoryCapacity
+     *            the maximum number of bytes of free arrays to keep
+     */
+    public BufferPool(final long memoryCapacity) {
+        setMemoryCapacity(memoryCapacity);
+    }
+
+    /**
+     * Returns the buffer pool shared by default between all images and codecs.
+     *
+     * @return the shared buffer pool
+     */
+    public static BufferPool getDefault() {
+        return defaultInstance;
+    }
+
+    /**
+     * Replaces the shared buffer pool. Arrays handed out by the previous pool
+     * are not recycled by the new one.
+     *
+     * @param pool
+     *            the new shared buffer pool
+     */
+    public static void setDefault(final BufferPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Buffer pool must not be null");
+        }
+        defaultInstance = pool;
+    }
+
+    /**
+     * Returns a byte array, zeroed up to the requested length.
+     *
+     * @param length
+     *            the requested length
+     * @return the array, at least as long as requested
+     */
+    public byte[] getByteArray(final int length) {
+        return getByteArray(length, true);
+    }
+
+    /**
+     * Returns a byte array, which may be longer than requested. The contents
+     * of a recycled array are undefined unless <code>clear</code> is set, so
+     * callers which overwrite the requested length can skip zeroing it.
+     *
+     * @param length
+     *            the requested length
+     * @param clear
+     *            whether the array must be zeroed up to the requested length
+     * @return the array, at least as long as requested
+     */
+    public byte[] getByteArray(final int length, final boolean clear) {
+        byte[] array = (byte[]) take(BYTE_ARRAY, getSizeClass(length));
+        if (array == null) {
+            array = new byte[getAllocationLength(length)];
+            track(array);
+        } else if (clear) {
+            Arrays.fill(array, 0, length, (byte) 0);
+        }
+        return array;
+    }
+
+    /** Returns a zeroed byte array of the exact length, for data buffers. */
+    private byte[] getByteBank(final int length) {
+        byte[] array = (byte[]) take(BYTE_ARRAY, length);
+        if (array == null) {
+            array = new byte[length];
+            track(array);
+        } else {
+            Arrays.fill(array, (byte) 0);
+        }
+        return array;
+    }
+
+    /**
+     * Returns a short array, zeroed up to the requested length.
+     *
+     * @param length
+     *            the requested length
+     * @return the array, at least as long as requested
+     */
+    public short[] getShortArray(final int length) {
+        return getShortArray(length, true);
+    }
+
+    /**
+     * Returns a short array, which may be longer than requested. The contents
+     * of a recycled array are undefined unless <code>clear</code> is set, so
+     * callers which overwrite the requested length can skip zeroing it.
+     *
+     * @param length
+     *            the requested length
+     * @param clear
+     *            whether the array must be zeroed up to the requested length
+     * @return the array, at least as long as requested
+     */
+    public short[] getShortArray(final int length, final boolean clear) {
+        short[] array = (short[]) take(SHORT_ARRAY, getSizeClass(length));
+        if (array == null) {
+            array = new short[getAllocationLength(length)];
+            track(array);
+        } else if (clear) {
+            Arrays.fill(array, 0, length, (short) 0);
+        }
+        return array;
+    }
+
+    /** Returns a zeroed short array of the exact length, for data buffers. */
+    private short[] getShortBank(final int length) {
+        short[] array = (short[]) take(SHORT_ARRAY, length);
+        if (array == null) {
+            array = new short[length];
+            track(array);
+        } else {
+            Arrays.fill(array, (short) 0);
+        }
+        return array;
+    }
+
+    /**
+     * Returns an int array, zeroed up to the requested length.
+     *
+     * @param length
+     *            the requested length
+     * @return the array, at least as long as requested
+     */
+    public int[] getIntArray(final int length) {
+        return getIntArray(length, true);
+    }
+
+    /**
+     * Returns an int array, which may be longer than requested. The contents
+     * of a recycled array are undefined unless <code>clear</code> is set, so
+     * callers which overwrite the requested length can skip zeroing it.
+     *
+     * @param length
+     *            the requested length
+     * @param clear
+     *            whether the array must be zeroed up to the requested length
+     * @return the array, at least as long as requested
+     */
+    public int[] getIntArray(final int length, final boolean clear) {
+        int[] array = (int[]) take(INT_ARRAY, getSizeClass(length));
+        if (array == null) {
+            array = new int[getAllocationLength(length)];
+            track(array);
+        } else if (clear) {
+            Arrays.fill(array, 0, length, 0);
+        }
+        return array;
+    }
+
+    /** Returns a zeroed int array of the exact length, for data buffers. */
+    private int[] getIntBank(final int length) {
+        int[] array = (int[]) take(INT_ARRAY, length);
+        if (array == null) {
+            array = new int[length];
+            track(array);
+        } else {
+            Arrays.fill(array, 0);
+        }
+        return array;
+    }
+
+    /**
+     * Returns a zeroed data buffer made of pooled arrays. Float and double
+     * buffers are not pooled.
+     *
+     * @param dataType
+     *            the data type, as defined by <code>DataBuffer</code>
+     * @param size
+     *            the size of each bank
+     * @param numBanks
+     *            the number of banks
+     * @return the data buffer
+     */
+    public DataBuffer createDataBuffer(final int dataType, final int size,
+            final int numBanks) {
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE: {
+            final byte[][] banks = new byte[numBanks][];
+            for (int i = 0; i < numBanks; i++) {
+                banks[i] = getByteBank(size);
+            }
+            return new DataBufferByte(banks, size);
+        }
+        case DataBuffer.TYPE_USHORT: {
+            final short[][] banks = new short[numBanks][];
+            for (int i = 0; i < numBanks; i++) {
+                banks[i] = getShortBank(size);
+            }
+            return new DataBufferUShort(banks, size);
+        }
+        case DataBuffer.TYPE_SHORT: {
+            final short[][] banks = new short[numBanks][];
+            for (int i = 0; i < numBanks; i++) {
+                banks[i] = getShortBank(size);
+            }
+            return new DataBufferShort(banks, size);
+        }
+        case DataBuffer.TYPE_INT: {
+            final int[][] banks = new int[numBanks][];
+            for (int i = 0; i < numBanks; i++) {
+                banks[i] = getIntBank(size);
+            }
+            return new DataBufferInt(banks, size);
+        }
+        case DataBuffer.TYPE_FLOAT:
+            return new DataBufferFloat(size, numBanks);
+        case DataBuffer.TYPE_DOUBLE:
+            return new DataBufferDouble(size, numBanks);
+        default:
+            throw new IllegalArgumentException("Unknown data buffer type: "
+                    + dataType);
+        }
+    }
+
+    /**
+     * Creates a raster whose data buffer is made of pooled arrays, like
+     * <code>Raster.createWritableRaster(sm, location)</code>.
+     *
+     * @param sm
+     *            the sample model of the raster
+     * @param location
+     *            the upper left corner of the raster, or null for (0, 0)
+     * @return the raster
+     */
+    public WritableRaster createWritableRaster(final SampleModel sm,
+            final Point location) {
+        final int size = getBufferSize(sm);
+        final int dataType = sm.getDataType();
+        if (size < 0 || dataType != DataBuffer.TYPE_BYTE
+                && dataType != DataBuffer.TYPE_USHORT
+                && dataType != DataBuffer.TYPE_SHORT
+                && dataType != DataBuffer.TYPE_INT) {
+            return Raster.createWritableRaster(sm, location);
+        }
+        int numBanks = 1;
+        if (sm instanceof ComponentSampleModel) {
+            for (final int bank : ((ComponentSampleModel) sm).getBankIndices()) {
+                numBanks = Math.max(numBanks, bank + 1);
+            }
+        }
+        return Raster.createWritableRaster(sm,
+                createDataBuffer(dataType, size, numBanks), location);
+    }
+
+    /**
+     * Returns the size of the banks of the data buffer a sample model would
+     * create, or -1 for unknown sample models.
+     */
+    private static int getBufferSize(final SampleModel sm) {
+        final int w = sm.getWidth();
+        final int h = sm.getHeight();
+        if (sm instanceof ComponentSampleModel) {
+            final ComponentSampleModel csm = (ComponentSampleModel) sm;
+            int maxBandOffset = 0;
+            for (final int offset : csm.getBandOffsets()) {
+                maxBandOffset = Math.max(maxBandOffset, offset);
+            }
+            return maxBandOffset + 1 + csm.getPixelStride() * (w - 1)
+                    + csm.getScanlineStride() * (h - 1);
+        } else if (sm instanceof SinglePixelPackedSampleModel) {
+            return ((SinglePixelPackedSampleModel) sm).getScanlineStride()
+                    * (h - 1) + w;
+        } else if (sm instanceof MultiPixelPackedSampleModel) {
+            final MultiPixelPackedSampleModel mppsm = (MultiPixelPackedSampleModel) sm;
+            final int bits = DataBuffer.getDataTypeSize(sm.getDataType());
+            return mppsm.getScanlineStride() * h
+                    + (mppsm.getDataBitOffset() + bits - 1) / bits;
+        }
+        return -1;
+    }
+
+    /**
+     * Releases an array for reuse. Arrays which were not handed out by this
+     * pool, or were already released, are ignored.
+     *
+     * @param array
+     *            the byte, short or int array
+     */
+    public void release(final Object array) {
+        final int type;
+        final long size;
+        if (array instanceof byte[]) {
+            type = BYTE_ARRAY;
+            size = ((byte[]) array).length;
+        } else if (array instanceof short[]) {
+            type = SHORT_ARRAY;
+            size = ((short[]) array).length * 2L;
+        } else if (array instanceof int[]) {
+            type = INT_ARRAY;
+            size = ((int[]) array).length * 4L;
+        } else {
+            return;
+        }
+        final int length = (int) (size >> type);
+
+        synchronized (this) {
+            if (this.inUse.remove(array) == null
+                    || size > this.memoryCapacity) {
+                return;
+            }
+            final Long key = getKey(type, length);
+            Deque<Object> arrays = this.free.get(key);
+            if (arrays == null) {
+                arrays = new ArrayDeque<>();
+                this.free.put(key, arrays);
+            }
+            arrays.push(array);
+            this.memoryUsage += size;
+            evict(this.memoryCapacity);
+        }
+    }
+
+    /**
+     * Releases the banks of a data buffer for reuse. The data buffer must no
+     * longer be used. Banks which were not handed out by this pool are
+     * ignored.
+     *
+     * @param db
+     *            the data buffer
+     */
+    public void release(final DataBuffer db) {
+        if (db instanceof DataBufferByte) {
+            for (final byte[] bank : ((DataBufferByte) db).getBankData()) {
+                release(bank);
+            }
+        } else if (db instanceof DataBufferUShort) {
+            for (final short[] bank : ((DataBufferUShort) db).getBankData()) {
+                release(bank);
+            }
+        } else if (db instanceof DataBufferShort) {
+            for (final short[] bank : ((DataBufferShort) db).getBankData()) {
+                release(bank);
+            }
+        } else if (db instanceof DataBufferInt) {
+            for (final int[] bank : ((DataBufferInt) db).getBankData()) {
+                release(bank);
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the arrays of the size class of a requested
+     * length: the length rounded up to a multiple of a quarter of the power
+     * of two below it.
+     *
+     * @param length
+     *            the requested length
+     * @return the length of the arrays handed out for the request
+     */
+    public static int getSizeClass(final int length) {
+        if (length <= MIN_CLASS_LENGTH) {
+            // Negative lengths fail when allocating, as for new arrays
+            return length < 0 ? length : MIN_CLASS_LENGTH;
+        }
+        final int step = Integer.highestOneBit(length - 1) >> 2;
+        final int rounded = length + step - 1 & -step;
+        // Lengths close to the largest int keep their exact length
+        return rounded < 0 ? length : rounded;
+    }
+
+    /**
+     * Returns the length of a new array for a request: the size class, unless
+     * pooling is disabled.
+     */
+    private synchronized int getAllocationLength(final int length) {
+        return this.memoryCapacity > 0 ? getSizeClass(length) : length;
+    }
+
+    /**
+     * Takes a free array of the given length, counting the hit or miss.
+     * Returns null on a miss.
+     */
+    private synchronized Object take(final int type, final int length) {
+        final Deque<Object> arrays = this.free.get(getKey(type, length));
+        final Object array = arrays == null ? null : arrays.poll();
+        if (array == null) {
+            this.misses++;
+            return null;
+        }
+        final long size = (long) length << type;
+        this.hits++;
+        this.bytesRecycled += size;
+        this.memoryUsage -= size;
+        this.inUse.put(array, Boolean.TRUE);
+        return array;
+    }
+
+    private synchronized void track(final Object array) {
+        // A disabled pool does not pay for tracking
+        if (this.memoryCapacity > 0) {
+            this.inUse.put(array, Boolean.TRUE);
+        }
+    }
+
+    private static Long getKey(final int type, final int length) {
+        return Long.valueOf((long) type << 32 | length);
+    }
+
+    /** Removes all free arrays from the pool. */
+    public synchronized void flush() {
+        this.free.clear();
+        this.memoryUsage = 0;
+    }
+
+    /**
+     * Sets the maximum number of bytes of free arrays to keep, dropping
+     * arrays if the new capacity is already exceeded.
+     *
+     * @param memoryCapacity
+     *            the memory capacity in bytes
+     */
+    public synchronized void setMemoryCapacity(final long memoryCapacity) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException(
+                    "Memory capacity must not be negative: " + memoryCapacity);
+        }
+        this.memoryCapacity = memoryCapacity;
+        evict(memoryCapacity);
+    }
+
+    /** @return the maximum number of bytes of free arrays kept */
+    public synchronized long getMemoryCapacity() {
+        return this.memoryCapacity;
+    }
+
+    /** @return the number of bytes of free arrays currently kept */
+    public synchronized long getMemoryUsage() {
+        return this.memoryUsage;
+    }
+
+    /** @return the number of requests served with a recycled array */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /** @return the number of requests served with a new array */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /** @return the share of requests served with a recycled array, 0 to 1 */
+    public synchronized double getHitRate() {
+        final long requests = this.hits + this.misses;
+        return requests == 0 ? 0 : (double) this.hits / requests;
+    }
+
+    /** @return the number of bytes of recycled arrays handed out */
+    public synchronized long getBytesRecycled() {
+        return this.bytesRecycled;
+    }
+
+    /** Resets the hit, miss and recycled bytes counters. */
+    public synchronized void resetStatistics() {
+        this.hits = 0;
+        this.misses = 0;
+        this.bytesRecycled = 0;
+    }
+
+    private void evict(final long capacity) {
+        final Iterator<Map.Entry<Long, Deque<Object>>> iter = this.free
+                .entrySet().iterator();
+        while (this.memoryUsage > capacity && iter.hasNext()) {
+            final Map.Entry<Long, Deque<Object>> entry = iter.next();
+            final long key = entry.getKey().longValue();
+            final long size = (key & 0xFFFFFFFFL) << (int) (key >>> 32);
+            final Deque<Object> arrays = entry.getValue();
+            while (this.memoryUsage > capacity && !arrays.isEmpty()) {
+                arrays.pop();
+                this.memoryUsage -= size;
+            }
+            if (arrays.isEmpty()) {
+                iter.remove();
+            }
+        }
+    }
+}
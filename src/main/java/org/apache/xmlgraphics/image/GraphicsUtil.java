@@ -38,6 +38,11 @@ import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.apache.xmlgraphics.image.rendered.Any2LsRGBRed;
 import org.apache.xmlgraphics.image.rendered.Any2sRGBRed;
@@ -69,6 +74,23 @@ public final class GraphicsUtil {
     private GraphicsUtil() {
     }
 
+    /**
+     * Reciprocals of the alpha values in 16.16 fixed point, 0xFF0000 / a, so
+     * that unpremultiplying does not divide for every pixel. The entry for 0
+     * is 0 and the entry for 255 is 1.0, so transparent pixels become
+     * transparent black and opaque ones are unchanged without a branch.
+     */
+    private static final int[] ALPHA_RECIPROCALS = new int[256];
+
+    static {
+        for (int a = 1; a < 256; a++) {
+            ALPHA_RECIPROCALS[a] = 0x00FF0000 / a;
+        }
+    }
+
+    /** The smallest number of pixels worth a task of its own. */
+    private static final int MIN_PIXELS_PER_TASK = 64 * 1024;
+
     public static AffineTransform IDENTITY = new AffineTransform();
 
     /**
@@ -173,13 +195,30 @@ public final class GraphicsUtil {
      * @return An equivilant image to <tt>src</tt> who's data is in sRGB.
      */
     public static CachableRed convertTosRGB(final CachableRed src) {
+        return convertTosRGB(src, false);
+    }
+
+    /**
+     * This method will return a CacheableRed that has it's data in the sRGB
+     * colorspace, like {@link #convertTosRGB(CachableRed)}, optionally
+     * converting large areas through a lookup table.
+     *
+     * @param src
+     *            The image to convert to sRGB.
+     * @param useLookupTable
+     *            true to trade exact colors for speed, see
+     *            {@link Any2sRGBRed#Any2sRGBRed(CachableRed, boolean)}.
+     * @return An equivilant image to <tt>src</tt> who's data is in sRGB.
+     */
+    public static CachableRed convertTosRGB(final CachableRed src,
+            final boolean useLookupTable) {
         final ColorModel cm = src.getColorModel();
         final ColorSpace cs = cm.getColorSpace();
         if (cs == ColorSpace.getInstance(ColorSpace.CS_sRGB)) {
             return src;
         }
 
-        return new Any2sRGBRed(src);
+        return new Any2sRGBRed(src, useLookupTable);
     }
 
     /**
@@ -323,6 +362,168 @@ public final class GraphicsUtil {
         }
     }
 
+    /**
+     * An internal optimized version of copyData designed to work on byte or
+     * short pixel interleaved data. Rows are copied with
+     * <code>System.arraycopy</code> when src and dst store the bands in the
+     * same order, and with band reordering loops otherwise (RGB to BGR, ARGB to
+     * RGBA and so on). Only the region of overlap between src and dst is
+     * copied.
+     *
+     * Calls to this should be preflighted with is_INTERLEAVED_Data on both src
+     * and dest, which must have the same data type and number of bands.
+     *
+     * @param src
+     *            The source of the data
+     * @param dst
+     *            The destination for the data.
+     */
+    public static void copyData_INTERLEAVED(final Raster src,
+            final WritableRaster dst) {
+        final int x0 = Math.max(dst.getMinX(), src.getMinX());
+        final int y0 = Math.max(dst.getMinY(), src.getMinY());
+        final int x1 = Math.min(dst.getMinX() + dst.getWidth(), src.getMinX()
+                + src.getWidth());
+        final int y1 = Math.min(dst.getMinY() + dst.getHeight(),
+                src.getMinY() + src.getHeight());
+        final int width = x1 - x0;
+        final int height = y1 - y0;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        final ComponentSampleModel srcCSM = (ComponentSampleModel) src
+                .getSampleModel();
+        final ComponentSampleModel dstCSM = (ComponentSampleModel) dst
+                .getSampleModel();
+        final int bands = srcCSM.getNumBands();
+        final int srcScanStride = srcCSM.getScanlineStride();
+        final int dstScanStride = dstCSM.getScanlineStride();
+        final int[] srcBandOffsets = srcCSM.getBandOffsets();
+        final int[] dstBandOffsets = dstCSM.getBandOffsets();
+        // getOffset() includes the offset of the first band
+        final int srcBase = src.getDataBuffer().getOffset()
+                + srcCSM.getOffset(x0 - src.getSampleModelTranslateX(), y0
+                        - src.getSampleModelTranslateY()) - srcBandOffsets[0];
+        final int dstBase = dst.getDataBuffer().getOffset()
+                + dstCSM.getOffset(x0 - dst.getSampleModelTranslateX(), y0
+                        - dst.getSampleModelTranslateY()) - dstBandOffsets[0];
+
+        final Object srcData = getBankData(src.getDataBuffer());
+        final Object dstData = getBankData(dst.getDataBuffer());
+
+        if (Arrays.equals(srcBandOffsets, dstBandOffsets)) {
+            final int rowLength = width * bands;
+            if (srcScanStride == rowLength && dstScanStride == rowLength) {
+                System.arraycopy(srcData, srcBase, dstData, dstBase, rowLength
+                        * height);
+            } else {
+                for (int y = 0; y < height; y++) {
+                    System.arraycopy(srcData, srcBase + y * srcScanStride,
+                            dstData, dstBase + y * dstScanStride, rowLength);
+                }
+            }
+            return;
+        }
+
+        // The position of each destination band in the source pixel
+        final int[] srcOffsets = new int[bands];
+        for (int b = 0; b < bands; b++) {
+            srcOffsets[dstBandOffsets[b]] = srcBandOffsets[b];
+        }
+        if (srcData instanceof byte[]) {
+            reorderBands((byte[]) srcData, srcBase, srcScanStride,
+                    (byte[]) dstData, dstBase, dstScanStride, width, height,
+                    srcOffsets);
+        } else {
+            reorderBands((short[]) srcData, srcBase, srcScanStride,
+                    (short[]) dstData, dstBase, dstScanStride, width, height,
+                    srcOffsets);
+        }
+    }
+
+    private static Object getBankData(final DataBuffer db) {
+        if (db instanceof DataBufferByte) {
+            return ((DataBufferByte) db).getData();
+        } else if (db instanceof DataBufferUShort) {
+            return ((DataBufferUShort) db).getData();
+        } else {
+            return ((DataBufferShort) db).getData();
+        }
+    }
+
+    private static void reorderBands(final byte[] src, final int srcBase,
+            final int srcScanStride, final byte[] dst, final int dstBase,
+            final int dstScanStride, final int width, final int height,
+            final int[] srcOffsets) {
+        final int bands = srcOffsets.length;
+        final int s0 = srcOffsets[0];
+        final int s1 = srcOffsets[1 % bands];
+        final int s2 = srcOffsets[2 % bands];
+        for (int y = 0; y < height; y++) {
+            int sp = srcBase + y * srcScanStride;
+            int dp = dstBase + y * dstScanStride;
+            final int end = dp + width * bands;
+            if (bands == 3) {
+                for (; dp < end; dp += 3, sp += 3) {
+                    dst[dp] = src[sp + s0];
+                    dst[dp + 1] = src[sp + s1];
+                    dst[dp + 2] = src[sp + s2];
+                }
+            } else if (bands == 4) {
+                final int s3 = srcOffsets[3];
+                for (; dp < end; dp += 4, sp += 4) {
+                    dst[dp] = src[sp + s0];
+                    dst[dp + 1] = src[sp + s1];
+                    dst[dp + 2] = src[sp + s2];
+                    dst[dp + 3] = src[sp + s3];
+                }
+            } else {
+                for (; dp < end; dp += bands, sp += bands) {
+                    for (int b = 0; b < bands; b++) {
+                        dst[dp + b] = src[sp + srcOffsets[b]];
+                    }
+                }
+            }
+        }
+    }
+
+    private static void reorderBands(final short[] src, final int srcBase,
+            final int srcScanStride, final short[] dst, final int dstBase,
+            final int dstScanStride, final int width, final int height,
+            final int[] srcOffsets) {
+        final int bands = srcOffsets.length;
+        final int s0 = srcOffsets[0];
+        final int s1 = srcOffsets[1 % bands];
+        final int s2 = srcOffsets[2 % bands];
+        for (int y = 0; y < height; y++) {
+            int sp = srcBase + y * srcScanStride;
+            int dp = dstBase + y * dstScanStride;
+            final int end = dp + width * bands;
+            if (bands == 3) {
+                for (; dp < end; dp += 3, sp += 3) {
+                    dst[dp] = src[sp + s0];
+                    dst[dp + 1] = src[sp + s1];
+                    dst[dp + 2] = src[sp + s2];
+                }
+            } else if (bands == 4) {
+                final int s3 = srcOffsets[3];
+                for (; dp < end; dp += 4, sp += 4) {
+                    dst[dp] = src[sp + s0];
+                    dst[dp + 1] = src[sp + s1];
+                    dst[dp + 2] = src[sp + s2];
+                    dst[dp + 3] = src[sp + s3];
+                }
+            } else {
+                for (; dp < end; dp += bands, sp += bands) {
+                    for (int b = 0; b < bands; b++) {
+                        dst[dp + b] = src[sp + srcOffsets[b]];
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Copies data from one raster to another. Only the region of overlap
      * between src and dst is copied. <tt>Src</tt> and <tt>Dst</tt> must have
@@ -340,6 +541,15 @@ public final class GraphicsUtil {
             return;
         }
 
+        final SampleModel srcSM = src.getSampleModel();
+        final SampleModel dstSM = dst.getSampleModel();
+        if (is_INTERLEAVED_Data(srcSM) && is_INTERLEAVED_Data(dstSM)
+                && srcSM.getDataType() == dstSM.getDataType()
+                && srcSM.getNumBands() == dstSM.getNumBands()) {
+            copyData_INTERLEAVED(src, dst);
+            return;
+        }
+
         copyData_FALLBACK(src, dst);
     }
 
@@ -562,9 +772,10 @@ public final class GraphicsUtil {
     }
 
     public static void multiplyAlpha(final WritableRaster wr) {
-        if (is_BYTE_COMP_Data(wr.getSampleModel())) {
+        final SampleModel sm = wr.getSampleModel();
+        if (is_BYTE_COMP_Data(sm) && isSingleBank(sm)) {
             mult_BYTE_COMP_Data(wr);
-        } else if (is_INT_PACK_Data(wr.getSampleModel(), true)) {
+        } else if (is_INT_PACK_Data(sm, true)) {
             mult_INT_PACK_Data(wr);
         } else {
             int[] pixel = null;
@@ -592,10 +803,26 @@ public final class GraphicsUtil {
         }
     }
 
+    /**
+     * Multiplies the colors of a raster by its alpha, splitting large rasters
+     * into bands of rows processed in parallel on a fork/join pool.
+     *
+     * @param wr
+     *            The raster to premultiply, with alpha as its last band.
+     * @param pool
+     *            the pool running the tasks, or null to process all rows in
+     *            the calling thread.
+     */
+    public static void multiplyAlpha(final WritableRaster wr,
+            final ForkJoinPool pool) {
+        processRows(wr, pool, true);
+    }
+
     public static void divideAlpha(final WritableRaster wr) {
-        if (is_BYTE_COMP_Data(wr.getSampleModel())) {
+        final SampleModel sm = wr.getSampleModel();
+        if (is_BYTE_COMP_Data(sm) && isSingleBank(sm)) {
             divide_BYTE_COMP_Data(wr);
-        } else if (is_INT_PACK_Data(wr.getSampleModel(), true)) {
+        } else if (is_INT_PACK_Data(sm, true)) {
             divide_INT_PACK_Data(wr);
         } else {
             int x0, x1, y0, y1, a, b;
@@ -623,6 +850,88 @@ public final class GraphicsUtil {
         }
     }
 
+    /**
+     * Divides the colors of a raster by its alpha, splitting large rasters
+     * into bands of rows processed in parallel on a fork/join pool.
+     *
+     * @param wr
+     *            The raster to unpremultiply, with alpha as its last band.
+     * @param pool
+     *            the pool running the tasks, or null to process all rows in
+     *            the calling thread.
+     */
+    public static void divideAlpha(final WritableRaster wr,
+            final ForkJoinPool pool) {
+        processRows(wr, pool, false);
+    }
+
+    /**
+     * Premultiplies or unpremultiplies the rows of wr, in parallel if a pool
+     * is given and wr is large. Each task gets a child raster of whole rows,
+     * so tasks never write to the same data.
+     */
+    private static void processRows(final WritableRaster wr,
+            final ForkJoinPool pool, final boolean multiply) {
+        final int width = wr.getWidth();
+        final int height = wr.getHeight();
+        final int rowsPerTask = Math.max(1, MIN_PIXELS_PER_TASK
+                / Math.max(1, width));
+        if (pool == null || height <= rowsPerTask) {
+            if (multiply) {
+                multiplyAlpha(wr);
+            } else {
+                divideAlpha(wr);
+            }
+            return;
+        }
+
+        final List<Runnable> tasks = new ArrayList<>();
+        for (int y = 0; y < height; y += rowsPerTask) {
+            final WritableRaster rows = wr.createWritableChild(wr.getMinX(),
+                    wr.getMinY() + y, width, Math.min(rowsPerTask, height - y),
+                    wr.getMinX(), wr.getMinY() + y, null);
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    if (multiply) {
+                        multiplyAlpha(rows);
+                    } else {
+                        divideAlpha(rows);
+                    }
+                }
+            });
+        }
+        invokeAll(pool, tasks);
+    }
+
+    /**
+     * Runs tasks on a fork/join pool and waits until all of them are done.
+     * When called from a task of a fork/join pool, the tasks run in that pool
+     * instead. An exception thrown by a task is rethrown.
+     *
+     * @param pool
+     *            the pool running the tasks
+     * @param tasks
+     *            the tasks
+     */
+    public static void invokeAll(final ForkJoinPool pool,
+            final List<? extends Runnable> tasks) {
+        final List<ForkJoinTask<?>> actions = new ArrayList<>(tasks.size());
+        for (final Runnable task : tasks) {
+            actions.add(ForkJoinTask.adapt(task));
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(actions);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(new Runnable() {
+                @Override
+                public void run() {
+                    ForkJoinTask.invokeAll(actions);
+                }
+            }));
+        }
+    }
+
     /**
      * Copies data from one bufferedImage to another paying attention to the
      * state of AlphaPreMultiplied.
@@ -934,6 +1243,44 @@ public final class GraphicsUtil {
         return true;
     }
 
+    /**
+     * Returns whether a SampleModel stores byte or short samples pixel
+     * interleaved in a single bank, without padding between pixels, as the
+     * 3BYTE_BGR and 4BYTE_ABGR BufferedImage types do.
+     *
+     * @param sm
+     *            the SampleModel
+     * @return true if copyData_INTERLEAVED can handle the data
+     */
+    public static boolean is_INTERLEAVED_Data(final SampleModel sm) {
+        if (!(sm instanceof ComponentSampleModel)) {
+            return false;
+        }
+        final int dataType = sm.getDataType();
+        if (dataType != DataBuffer.TYPE_BYTE
+                && dataType != DataBuffer.TYPE_USHORT
+                && dataType != DataBuffer.TYPE_SHORT) {
+            return false;
+        }
+        final ComponentSampleModel csm = (ComponentSampleModel) sm;
+        final int bands = csm.getNumBands();
+        if (bands > 31 || csm.getPixelStride() != bands) {
+            return false;
+        }
+        // Every band in bank 0, at a different offset within the pixel
+        final int[] bankIndices = csm.getBankIndices();
+        final int[] bandOffsets = csm.getBandOffsets();
+        int offsets = 0;
+        for (int b = 0; b < bands; b++) {
+            if (bankIndices[b] != 0 || bandOffsets[b] < 0
+                    || bandOffsets[b] >= bands) {
+                return false;
+            }
+            offsets |= 1 << bandOffsets[b];
+        }
+        return offsets == (1 << bands) - 1;
+    }
+
     public static boolean is_BYTE_COMP_Data(final SampleModel sm) {
         // Check ColorModel is of type DirectColorModel
         if (!(sm instanceof ComponentSampleModel)) {
@@ -948,6 +1295,19 @@ public final class GraphicsUtil {
         return true;
     }
 
+    /**
+     * Returns whether all bands of a ComponentSampleModel are stored in the
+     * first bank, as the byte kernels assume.
+     */
+    private static boolean isSingleBank(final SampleModel sm) {
+        for (final int bank : ((ComponentSampleModel) sm).getBankIndices()) {
+            if (bank != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected static void divide_INT_PACK_Data(final WritableRaster wr) {
         // log.info("Divide Int");
 
@@ -955,6 +1315,7 @@ public final class GraphicsUtil {
         sppsm = (SinglePixelPackedSampleModel) wr.getSampleModel();
 
         final int width = wr.getWidth();
+        final int height = wr.getHeight();
 
         final int scanStride = sppsm.getScanlineStride();
         final DataBufferInt db = (DataBufferInt) wr.getDataBuffer();
@@ -964,22 +1325,17 @@ public final class GraphicsUtil {
 
         // Access the pixel data array
         final int[] pixels = db.getBankData()[0];
-        for (int y = 0; y < wr.getHeight(); y++) {
-            int sp = base + y * scanStride;
-            final int end = sp + width;
-            while (sp < end) {
+        final int[] recip = ALPHA_RECIPROCALS;
+        for (int y = 0; y < height; y++) {
+            final int start = base + y * scanStride;
+            final int end = start + width;
+            for (int sp = start; sp < end; sp++) {
                 final int pixel = pixels[sp];
                 final int a = pixel >>> 24;
-        if (a <= 0) {
-            pixels[sp] = 0x00FFFFFF;
-        } else if (a < 255) {
-            final int aFP = 0x00FF0000 / a;
-            pixels[sp] = a << 24 | ((pixel & 0xFF0000) >> 16) * aFP
-                    & 0xFF0000
-                    | (((pixel & 0x00FF00) >> 8) * aFP & 0xFF0000) >> 8
-                    | ((pixel & 0x0000FF) * aFP & 0xFF0000) >> 16;
-        }
-        sp++;
+                final int aFP = recip[a];
+                pixels[sp] = a << 24 | (pixel >> 16 & 0xFF) * aFP & 0xFF0000
+                        | ((pixel >> 8 & 0xFF) * aFP & 0xFF0000) >> 8
+                        | ((pixel & 0xFF) * aFP & 0xFF0000) >> 16;
             }
         }
     }
@@ -991,6 +1347,7 @@ public final class GraphicsUtil {
         sppsm = (SinglePixelPackedSampleModel) wr.getSampleModel();
 
         final int width = wr.getWidth();
+        final int height = wr.getHeight();
 
         final int scanStride = sppsm.getScanlineStride();
         final DataBufferInt db = (DataBufferInt) wr.getDataBuffer();
@@ -999,19 +1356,18 @@ public final class GraphicsUtil {
                         wr.getMinY() - wr.getSampleModelTranslateY());
         // Access the pixel data array
         final int[] pixels = db.getBankData()[0];
-        for (int y = 0; y < wr.getHeight(); y++) {
-            int sp = base + y * scanStride;
-            final int end = sp + width;
-            while (sp < end) {
+        for (int y = 0; y < height; y++) {
+            final int start = base + y * scanStride;
+            final int end = start + width;
+            for (int sp = start; sp < end; sp++) {
                 final int pixel = pixels[sp];
                 final int a = pixel >>> 24;
-        if (a >= 0 && a < 255) { // this does NOT include a == 255
-            // (0xff) !
-            pixels[sp] = a << 24 | (pixel & 0xFF0000) * a >> 8
-                    & 0xFF0000 | (pixel & 0x00FF00) * a >> 8 & 0x00FF00
-                    | (pixel & 0x0000FF) * a >> 8 & 0x0000FF;
-        }
-        sp++;
+                // Multiplying by 256 leaves opaque pixels unchanged
+                final int m = a + (a + 1 >> 8);
+                pixels[sp] = pixel & 0xFF000000
+                        | (pixel & 0xFF0000) * m >>> 8 & 0xFF0000
+                        | (pixel & 0x00FF00) * m >> 8 & 0x00FF00
+                        | (pixel & 0x0000FF) * m >> 8 & 0x0000FF;
             }
         }
     }
@@ -1023,38 +1379,54 @@ public final class GraphicsUtil {
         csm = (ComponentSampleModel) wr.getSampleModel();
 
         final int width = wr.getWidth();
+        final int height = wr.getHeight();
 
         final int scanStride = csm.getScanlineStride();
         final int pixStride = csm.getPixelStride();
         final int[] bandOff = csm.getBandOffsets();
 
+        // getOffset() includes the offset of the first band
         final DataBufferByte db = (DataBufferByte) wr.getDataBuffer();
         final int base = db.getOffset()
                 + csm.getOffset(wr.getMinX() - wr.getSampleModelTranslateX(),
-                        wr.getMinY() - wr.getSampleModelTranslateY());
+                        wr.getMinY() - wr.getSampleModelTranslateY())
+                - bandOff[0];
 
         final int aOff = bandOff[bandOff.length - 1];
         final int bands = bandOff.length - 1;
 
         // Access the pixel data array
         final byte[] pixels = db.getBankData()[0];
-        for (int y = 0; y < wr.getHeight(); y++) {
-            int sp = base + y * scanStride;
-            final int end = sp + width * pixStride;
-            while (sp < end) {
-                final int a = pixels[sp + aOff] & 0xFF;
-                if (a == 0) {
-                    for (int b = 0; b < bands; b++) {
-                        pixels[sp + bandOff[b]] = (byte) 0xFF;
-                    }
-                } else if (a < 255) { // this does NOT include a == 255 (0xff) !
-                    final int aFP = 0x00FF0000 / a;
-                    for (int b = 0; b < bands; b++) {
-                        final int i = sp + bandOff[b];
-                        pixels[i] = (byte) ((pixels[i] & 0xFF) * aFP >>> 16);
-                    }
+        final int[] recip = ALPHA_RECIPROCALS;
+        if (bands == 3) {
+            // RGBA, ABGR and the like
+            final int c0 = bandOff[0];
+            final int c1 = bandOff[1];
+            final int c2 = bandOff[2];
+            for (int y = 0; y < height; y++) {
+                final int start = base + y * scanStride;
+                final int end = start + width * pixStride;
+                for (int sp = start; sp < end; sp += pixStride) {
+                    final int aFP = recip[pixels[sp + aOff] & 0xFF];
+                    pixels[sp + c0] = (byte) ((pixels[sp + c0] & 0xFF)
+                            * aFP >>> 16);
+                    pixels[sp + c1] = (byte) ((pixels[sp + c1] & 0xFF)
+                            * aFP >>> 16);
+                    pixels[sp + c2] = (byte) ((pixels[sp + c2] & 0xFF)
+                            * aFP >>> 16);
+                }
+            }
+            return;
+        }
+        for (int y = 0; y < height; y++) {
+            final int start = base + y * scanStride;
+            final int end = start + width * pixStride;
+            for (int sp = start; sp < end; sp += pixStride) {
+                final int aFP = recip[pixels[sp + aOff] & 0xFF];
+                for (int b = 0; b < bands; b++) {
+                    final int i = sp + bandOff[b];
+                    pixels[i] = (byte) ((pixels[i] & 0xFF) * aFP >>> 16);
                 }
-                sp += pixStride;
             }
         }
     }
@@ -1066,33 +1438,53 @@ public final class GraphicsUtil {
         csm = (ComponentSampleModel) wr.getSampleModel();
 
         final int width = wr.getWidth();
+        final int height = wr.getHeight();
 
         final int scanStride = csm.getScanlineStride();
         final int pixStride = csm.getPixelStride();
         final int[] bandOff = csm.getBandOffsets();
 
+        // getOffset() includes the offset of the first band
         final DataBufferByte db = (DataBufferByte) wr.getDataBuffer();
         final int base = db.getOffset()
                 + csm.getOffset(wr.getMinX() - wr.getSampleModelTranslateX(),
-                        wr.getMinY() - wr.getSampleModelTranslateY());
+                        wr.getMinY() - wr.getSampleModelTranslateY())
+                - bandOff[0];
 
         final int aOff = bandOff[bandOff.length - 1];
         final int bands = bandOff.length - 1;
 
         // Access the pixel data array
         final byte[] pixels = db.getBankData()[0];
-        for (int y = 0; y < wr.getHeight(); y++) {
-            int sp = base + y * scanStride;
-            final int end = sp + width * pixStride;
-            while (sp < end) {
+        if (bands == 3) {
+            // RGBA, ABGR and the like
+            final int c0 = bandOff[0];
+            final int c1 = bandOff[1];
+            final int c2 = bandOff[2];
+            for (int y = 0; y < height; y++) {
+                final int start = base + y * scanStride;
+                final int end = start + width * pixStride;
+                for (int sp = start; sp < end; sp += pixStride) {
+                    final int a = pixels[sp + aOff] & 0xFF;
+                    // Multiplying by 256 leaves opaque pixels unchanged
+                    final int m = a + (a + 1 >> 8);
+                    pixels[sp + c0] = (byte) ((pixels[sp + c0] & 0xFF) * m >> 8);
+                    pixels[sp + c1] = (byte) ((pixels[sp + c1] & 0xFF) * m >> 8);
+                    pixels[sp + c2] = (byte) ((pixels[sp + c2] & 0xFF) * m >> 8);
+                }
+            }
+            return;
+        }
+        for (int y = 0; y < height; y++) {
+            final int start = base + y * scanStride;
+            final int end = start + width * pixStride;
+            for (int sp = start; sp < end; sp += pixStride) {
                 final int a = pixels[sp + aOff] & 0xFF;
-                if (a != 0xFF) {
-                    for (int b = 0; b < bands; b++) {
-                        final int i = sp + bandOff[b];
-                        pixels[i] = (byte) ((pixels[i] & 0xFF) * a >> 8);
-                    }
+                final int m = a + (a + 1 >> 8);
+                for (int b = 0; b < bands; b++) {
+                    final int i = sp + bandOff[b];
+                    pixels[i] = (byte) ((pixels[i] & 0xFF) * m >> 8);
                 }
-                sp += pixStride;
             }
         }
     }
@@ -54,7 +54,7 @@ import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
  * <code>DataBuffer</code> entries.
  *
  * <p>
- * Five aspects of this process may be altered by means of methods in this
+ * Eight aspects of this process may be altered by means of methods in this
  * class.
  *
  * <p>
@@ -80,6 +80,15 @@ import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
  * and display.
  *
  * <p>
+ * <code>setOutput8BitDepth()</code> and <code>setPreferIndexColorModel()</code>
+ * reduce the memory used by the decoded image by keeping 16-bit samples to 8
+ * bits and indexed images in indexed form.
+ *
+ * <p>
+ * <code>setLazyDecoding()</code> causes non-interlaced images to be decoded
+ * strip by strip as they are read, rather than all at once.
+ *
+ * <p>
  * <b> This class is not a committed part of the JAI API. It may be removed or
  * changed in future releases of JAI.</b>
  */
@@ -330,6 +339,152 @@ public class PNGDecodeParam implements ImageDecodeParam {
         this.expandGrayAlpha = expandGrayAlpha;
     }
 
+    private boolean output8BitDepth = false;
+
+    /**
+     * Returns <code>true</code> if 16-bit samples will be reduced to 8 bits.
+     */
+    public boolean getOutput8BitDepth() {
+        return this.output8BitDepth;
+    }
+
+    /**
+     * If set, images with 16 bits per sample are output with 8 bits per
+     * sample, using a <code>DataBufferByte</code> instead of a
+     * <code>DataBufferUShort</code>. Each sample keeps its most significant
+     * byte, which is dropped while the rows are unfiltered so no 16-bit copy of
+     * the image is ever held.
+     *
+     * <p>
+     * Grayscale and RGB images with a transparent color (a tRNS chunk) keep
+     * 16 bits, since the transparent color must be matched against the full
+     * samples.
+     *
+     * <p>
+     * By default, 16-bit samples are preserved.
+     */
+    public void setOutput8BitDepth(final boolean output8BitDepth) {
+        this.output8BitDepth = output8BitDepth;
+    }
+
+    private boolean preferIndexColorModel = false;
+
+    /**
+     * Returns <code>true</code> if images will be kept in indexed form whenever
+     * possible.
+     */
+    public boolean getPreferIndexColorModel() {
+        return this.preferIndexColorModel;
+    }
+
+    /**
+     * If set, images that can be described by an <code>IndexColorModel</code>
+     * are output in that form, with one sample of 8 bits or less per pixel.
+     * Palette images are never expanded, overriding
+     * <code>setExpandPalette()</code>. Grayscale images of 8 bits or less with
+     * a transparent gray value are output as indexed gray images whose
+     * transparent entry is that value, instead of being expanded to 8-bit
+     * gray/alpha; gamma correction, if any, is applied to the palette. This
+     * does not apply when 8-bit gray output or gray/alpha expansion is
+     * requested.
+     *
+     * <p>
+     * By default, the output follows the other settings of this class.
+     */
+    public void setPreferIndexColorModel(final boolean preferIndexColorModel) {
+        this.preferIndexColorModel = preferIndexColorModel;
+    }
+
+    private boolean lazyDecoding = false;
+
+    /**
+     * Returns <code>true</code> if non-interlaced images will be decoded one
+     * strip at a time as their tiles are requested.
+     */
+    public boolean getLazyDecoding() {
+        return this.lazyDecoding;
+    }
+
+    /**
+     * If set, non-interlaced images are not decoded when the file is read.
+     * Instead the image is exposed as a column of strips of
+     * <code>getStripHeight()</code> rows, each of which is inflated and
+     * unfiltered when it is first requested. Only the compressed data and the
+     * <code>getStripCacheSize()</code> most recently used strips are held in
+     * memory, so consumers that read a large image from top to bottom need
+     * only a fraction of the memory of a full decode.
+     *
+     * <p>
+     * The first request for a strip above the last one decoded inflates the
+     * image once more to record where each strip starts, after which any
+     * strip is decoded without inflating the rows above it.
+     *
+     * <p>
+     * Interlaced images are always decoded in full, since every Adam7 pass
+     * contributes rows to every strip.
+     *
+     * <p>
+     * By default, the whole image is decoded up front.
+     */
+    public void setLazyDecoding(final boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    private int stripHeight = 64;
+
+    /**
+     * Returns the number of rows in each strip produced by lazy decoding.
+     */
+    public int getStripHeight() {
+        return this.stripHeight;
+    }
+
+    /**
+     * Sets the number of rows in each strip produced by lazy decoding. This
+     * is also the tile height reported by the decoded image.
+     *
+     * <p>
+     * The default is 64 rows.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>stripHeight</code> is not positive.
+     */
+    public void setStripHeight(final int stripHeight) {
+        if (stripHeight <= 0) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGDecodeParam2"));
+        }
+        this.stripHeight = stripHeight;
+    }
+
+    private int stripCacheSize = 4;
+
+    /**
+     * Returns the number of decoded strips kept by lazy decoding.
+     */
+    public int getStripCacheSize() {
+        return this.stripCacheSize;
+    }
+
+    /**
+     * Sets the number of decoded strips lazy decoding keeps in memory. When
+     * the cache is full the least recently used strip is discarded and is
+     * decoded again if it is requested later.
+     *
+     * <p>
+     * The default is 4 strips.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>stripCacheSize</code> is not positive.
+     */
+    public void setStripCacheSize(final int stripCacheSize) {
+        if (stripCacheSize <= 0) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("PNGDecodeParam3"));
+        }
+        this.stripCacheSize = stripCacheSize;
+    }
+
     private boolean generateEncodeParam = false;
 
     private PNGEncodeParam encodeParam = null;
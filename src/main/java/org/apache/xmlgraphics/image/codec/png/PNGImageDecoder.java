@@ -141,6 +141,18 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
     // If true, output < 8 bit gray images in 8 bit components format
     private boolean output8BitGray = false;
 
+    // If true, reduce 16 bit samples to 8 bits where possible
+    private boolean output8BitDepth = false;
+
+    // If true, keep images that fit an IndexColorModel in indexed form
+    private boolean preferIndexColorModel = false;
+
+    // Set if 16 bit samples are being reduced to 8 bits while unfiltering
+    private boolean reduce16Bit = false;
+
+    // Set if a gray image with a transparent value is output as indexed
+    private boolean outputIndexedGray = false;
+
     // Create an alpha channel in the destination color model.
     private boolean outputHasAlphaPalette = false;
 
@@ -313,6 +325,11 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             this.expandPalette = decodeParam.getExpandPalette();
             this.output8BitGray = decodeParam.getOutput8BitGray();
             this.expandGrayAlpha = decodeParam.getExpandGrayAlpha();
+            this.output8BitDepth = decodeParam.getOutput8BitDepth();
+            this.preferIndexColorModel = decodeParam.getPreferIndexColorModel();
+            if (this.preferIndexColorModel) {
+                this.expandPalette = false;
+            }
             if (decodeParam.getPerformGammaCorrection()) {
                 this.userExponent = decodeParam.getUserExponent();
                 this.displayExponent = decodeParam.getDisplayExponent();
@@ -669,8 +686,14 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
                 new Inflater());
         this.dataStream = new DataInputStream(infStream);
 
+        // Transparent colors must be matched against the full 16 bit samples
+        final int transProcess = this.postProcess & ~POST_EXP_MASK;
+        this.reduce16Bit = this.output8BitDepth && this.bitDepth == 16
+                && transProcess != POST_ADD_GRAY_TRANS
+                && transProcess != POST_ADD_RGB_TRANS;
+
         // Create an empty WritableRaster
-        int depth = this.bitDepth;
+        int depth = this.reduce16Bit ? 8 : this.bitDepth;
         if (this.colorType == PNG_COLOR_GRAY && this.bitDepth < 8
                 && this.output8BitGray) {
             depth = 8;
@@ -684,8 +707,9 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
         this.theTile = createRaster(this.width, this.height, this.outputBands,
                 scanlineStride, depth);
 
-        if (this.performGammaCorrection && this.gammaLut == null) {
-            initGammaLut(this.bitDepth);
+        if (this.performGammaCorrection
+                && (this.gammaLut == null || this.reduce16Bit)) {
+            initGammaLut(this.reduce16Bit ? 8 : this.bitDepth);
         }
         if (this.postProcess == POST_GRAY_LUT
                 || this.postProcess == POST_GRAY_LUT_ADD_TRANS
@@ -696,7 +720,9 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
         decodeImage(this.interlaceMethod == 1);
         this.sampleModel = this.theTile.getSampleModel();
 
-        if (this.colorType == PNG_COLOR_PALETTE && !this.expandPalette) {
+        if (this.outputIndexedGray) {
+            this.colorModel = createIndexedGrayColorModel();
+        } else if (this.colorType == PNG_COLOR_PALETTE && !this.expandPalette) {
             if (this.outputHasAlphaPalette) {
                 this.colorModel = new IndexColorModel(this.bitDepth,
                         this.paletteEntries, this.redPalette,
@@ -716,6 +742,27 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
         }
     }
 
+    /**
+     * Creates the color model of a gray image of 8 bits or less whose
+     * transparent gray value is kept as the one transparent palette entry.
+     */
+    private IndexColorModel createIndexedGrayColorModel() {
+        final int size = 1 << this.bitDepth;
+        final byte[] gray = new byte[size];
+        final byte[] alpha = new byte[size];
+        for (int i = 0; i < size; i++) {
+            if (this.performGammaCorrection) {
+                gray[i] = (byte) this.gammaLut[i];
+            } else {
+                gray[i] = this.bitDepth < 8 ? this.expandBits[this.bitDepth][i]
+                        : (byte) i;
+            }
+            alpha[i] = i == this.grayTransparentAlpha ? 0 : (byte) 255;
+        }
+        return new IndexColorModel(this.bitDepth, size, gray, gray, gray,
+                alpha);
+    }
+
     private static final int[] GrayBits8 = { 8 };
     private static final ComponentColorModel colorModelGray8 = new ComponentColorModel(
             ColorSpace.getInstance(ColorSpace.CS_GRAY), GrayBits8, false,
@@ -1174,19 +1221,29 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             this.grayTransparentAlpha = chunk.getInt2(0);
 
             if (!this.suppressAlpha) {
-                if (this.bitDepth < 8) {
-                    this.output8BitGray = true;
-                    this.maxOpacity = 255;
-                    this.postProcess = POST_GRAY_LUT_ADD_TRANS;
+                if (this.preferIndexColorModel && this.bitDepth <= 8
+                        && !this.decodeParam.getOutput8BitGray()
+                        && !this.expandGrayAlpha) {
+                    // Samples stay as they are, the color model maps them
+                    // (with gamma) and marks the transparent value
+                    this.outputIndexedGray = true;
+                    this.output8BitGray = false;
+                    this.postProcess = POST_NONE;
                 } else {
-                    this.postProcess = POST_ADD_GRAY_TRANS;
-                }
+                    if (this.bitDepth < 8) {
+                        this.output8BitGray = true;
+                        this.maxOpacity = 255;
+                        this.postProcess = POST_GRAY_LUT_ADD_TRANS;
+                    } else {
+                        this.postProcess = POST_ADD_GRAY_TRANS;
+                    }
 
-                if (this.expandGrayAlpha) {
-                    this.outputBands = 4;
-                    this.postProcess |= POST_EXP_MASK;
-                } else {
-                    this.outputBands = 2;
+                    if (this.expandGrayAlpha) {
+                        this.outputBands = 4;
+                        this.postProcess |= POST_EXP_MASK;
+                    } else {
+                        this.outputBands = 2;
+                    }
                 }
 
                 if (this.encodeParam != null) {
@@ -1611,7 +1668,8 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
 
         // Create a 1-row tall Raster to hold the data
         final WritableRaster passRow = createRaster(passWidth, 1,
-                this.inputBands, eltsPerRow, this.bitDepth);
+                this.inputBands, eltsPerRow, this.reduce16Bit ? 8
+                        : this.bitDepth);
         final DataBuffer dataBuffer = passRow.getDataBuffer();
         final int type = dataBuffer.getDataType();
         byte[] byteData = null;
@@ -1659,6 +1717,11 @@ class PNGImage extends SimpleRenderedImage implements PNGConstants {
             // Copy data into passRow byte by byte
             if (this.bitDepth < 16) {
                 System.arraycopy(curr, 0, byteData, 0, bytesPerRow);
+            } else if (this.reduce16Bit) {
+                // Keep the most significant byte of each sample
+                for (int j = 0; j < eltsPerRow; j++) {
+                    byteData[j] = curr[2 * j];
+                }
             } else {
                 int idx = 0;
                 for (int j = 0; j < eltsPerRow; j++) {
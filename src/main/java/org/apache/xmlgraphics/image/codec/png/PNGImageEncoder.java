@@ -21,10 +21,14 @@ package org.apache.xmlgraphics.image.codec.png;
 
 import java.awt.Rectangle;
 import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
@@ -40,8 +44,11 @@ import java.util.zip.DeflaterOutputStream;
 
 import lombok.extern.slf4j.Slf4j;
 
+import org.apache.xmlgraphics.image.BufferPool;
 import org.apache.xmlgraphics.image.codec.util.ImageEncoderImpl;
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
+import org.apache.xmlgraphics.image.codec.util.SimpleRenderedImage;
+import org.apache.xmlgraphics.image.rendered.AbstractRed;
 
 // CSOFF: ConstantName
 // CSOFF: InnerAssignment
@@ -304,6 +311,9 @@ public class PNGImageEncoder extends ImageEncoderImpl {
     private static final byte[] magic = { (byte) 137, (byte) 80, (byte) 78,
         (byte) 71, (byte) 13, (byte) 10, (byte) 26, (byte) 10 };
 
+    /** The number of rows requested at a time from an untiled image. */
+    private static final int STRIP_HEIGHT = 64;
+
     private PNGEncodeParam param;
 
     private RenderedImage image;
@@ -360,25 +370,183 @@ public class PNGImageEncoder extends ImageEncoderImpl {
 
     private byte[][] filteredRows = null;
 
+    /** Gives back the row buffers of the previous pass, if any. */
+    private void releaseRows() {
+        if (this.currRow == null) {
+            return;
+        }
+        final BufferPool pool = BufferPool.getDefault();
+        pool.release(this.currRow);
+        pool.release(this.prevRow);
+        for (final byte[] row : this.filteredRows) {
+            pool.release(row);
+        }
+        this.currRow = null;
+        this.prevRow = null;
+        this.filteredRows = null;
+    }
+
     private static int clamp(final int val, final int maxValue) {
         return val > maxValue ? maxValue : val;
     }
 
+    /**
+     * Returns the backing array of a raster holding one byte per 8-bit sample
+     * in a single bank, or <code>null</code> if the samples cannot be copied
+     * straight from the <code>DataBuffer</code>.
+     */
+    private byte[] getInterleavedByteData(final Raster ras) {
+        if (this.bitDepth != 8 || this.bitShift != 0 || this.compressGray
+                || !(ras.getSampleModel() instanceof ComponentSampleModel)
+                || !(ras.getDataBuffer() instanceof DataBufferByte)) {
+            return null;
+        }
+        final ComponentSampleModel sm = (ComponentSampleModel) ras
+                .getSampleModel();
+        for (final int bank : sm.getBankIndices()) {
+            if (bank != 0) {
+                return null;
+            }
+        }
+        return ((DataBufferByte) ras.getDataBuffer()).getData(0);
+    }
+
+    /**
+     * Returns the backing array of a raster holding one pixel per
+     * <code>int</code> with 8-bit samples, or <code>null</code> if the samples
+     * cannot be unpacked straight from the <code>DataBuffer</code>.
+     */
+    private int[] getPackedIntData(final Raster ras) {
+        if (this.bitDepth != 8 || this.bitShift != 0 || this.compressGray
+                || !(ras.getSampleModel() instanceof SinglePixelPackedSampleModel)
+                || !(ras.getDataBuffer() instanceof DataBufferInt)) {
+            return null;
+        }
+        for (final int size : ras.getSampleModel().getSampleSize()) {
+            if (size != 8) {
+                return null;
+            }
+        }
+        return ((DataBufferInt) ras.getDataBuffer()).getData(0);
+    }
+
+    /**
+     * Copies the samples of one row of an interleaved byte raster into
+     * <code>currRow</code>.
+     */
+    private void copyRow(final byte[] data, final Raster ras, final int row,
+            final int pixelOffset, final int pixelSkip) {
+        final ComponentSampleModel sm = (ComponentSampleModel) ras
+                .getSampleModel();
+        final int pixelStride = sm.getPixelStride();
+        final int[] bandOffsets = sm.getBandOffsets();
+        final int width = ras.getWidth();
+        final int rowStart = ras.getDataBuffer().getOffset()
+                + (row - ras.getSampleModelTranslateY())
+                * sm.getScanlineStride()
+                + (ras.getMinX() - ras.getSampleModelTranslateX())
+                * pixelStride;
+
+        int count = this.bpp;
+        if (pixelSkip == 1 && pixelStride == this.numBands
+                && isIdentity(bandOffsets)) {
+            final int len = (width - pixelOffset) * pixelStride;
+            System.arraycopy(data, rowStart + pixelOffset * pixelStride,
+                    this.currRow, count, len);
+            return;
+        }
+        final int numBands = this.numBands;
+        for (int x = pixelOffset; x < width; x += pixelSkip) {
+            final int pos = rowStart + x * pixelStride;
+            for (int b = 0; b < numBands; b++) {
+                this.currRow[count++] = data[pos + bandOffsets[b]];
+            }
+        }
+    }
+
+    /**
+     * Unpacks the samples of one row of a packed <code>int</code> raster into
+     * <code>currRow</code>.
+     */
+    private void unpackRow(final int[] data, final Raster ras, final int row,
+            final int pixelOffset, final int pixelSkip) {
+        final SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) ras
+                .getSampleModel();
+        final int[] bitOffsets = sm.getBitOffsets();
+        final int width = ras.getWidth();
+        final int rowStart = ras.getDataBuffer().getOffset()
+                + (row - ras.getSampleModelTranslateY())
+                * sm.getScanlineStride()
+                + ras.getMinX() - ras.getSampleModelTranslateX();
+
+        int count = this.bpp;
+        if (this.numBands == 4) {
+            final int s0 = bitOffsets[0];
+            final int s1 = bitOffsets[1];
+            final int s2 = bitOffsets[2];
+            final int s3 = bitOffsets[3];
+            for (int x = pixelOffset; x < width; x += pixelSkip) {
+                final int pixel = data[rowStart + x];
+                this.currRow[count++] = (byte) (pixel >>> s0);
+                this.currRow[count++] = (byte) (pixel >>> s1);
+                this.currRow[count++] = (byte) (pixel >>> s2);
+                this.currRow[count++] = (byte) (pixel >>> s3);
+            }
+        } else if (this.numBands == 3) {
+            final int s0 = bitOffsets[0];
+            final int s1 = bitOffsets[1];
+            final int s2 = bitOffsets[2];
+            for (int x = pixelOffset; x < width; x += pixelSkip) {
+                final int pixel = data[rowStart + x];
+                this.currRow[count++] = (byte) (pixel >>> s0);
+                this.currRow[count++] = (byte) (pixel >>> s1);
+                this.currRow[count++] = (byte) (pixel >>> s2);
+            }
+        } else {
+            final int numBands = this.numBands;
+            for (int x = pixelOffset; x < width; x += pixelSkip) {
+                final int pixel = data[rowStart + x];
+                for (int b = 0; b < numBands; b++) {
+                    this.currRow[count++] = (byte) (pixel >>> bitOffsets[b]);
+                }
+            }
+        }
+    }
+
+    private static boolean isIdentity(final int[] bandOffsets) {
+        for (int i = 0; i < bandOffsets.length; i++) {
+            if (bandOffsets[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the rows of a raster that belong to an interlacing pass. If
+     * <code>newPass</code> is <code>false</code>, the raster continues the
+     * previous call's pass, so that an image can be encoded strip by strip.
+     */
     private void encodePass(final OutputStream os, final Raster ras,
-            int xOffset, final int yOffset, int xSkip, final int ySkip)
-                    throws IOException {
+            int xOffset, final int yOffset, int xSkip, final int ySkip,
+            final boolean newPass) throws IOException {
+        final byte[] byteData = getInterleavedByteData(ras);
+        final int[] intData = byteData == null ? getPackedIntData(ras) : null;
         final int minX = ras.getMinX();
         final int minY = ras.getMinY();
         final int width = ras.getWidth();
         final int height = ras.getHeight();
 
+        final int pixelOffset = xOffset;
+        final int pixelSkip = xSkip;
         xOffset *= this.numBands;
         xSkip *= this.numBands;
 
         final int samplesPerByte = 8 / this.bitDepth;
 
         final int numSamples = width * this.numBands;
-        final int[] samples = new int[numSamples];
+        final int[] samples = byteData == null && intData == null
+                ? new int[numSamples] : null;
 
         final int pixels = (numSamples - xOffset + xSkip - 1) / xSkip;
         int bytesPerRow = pixels * this.numBands;
@@ -392,71 +560,86 @@ public class PNGImageEncoder extends ImageEncoderImpl {
             return;
         }
 
-        this.currRow = new byte[bytesPerRow + this.bpp];
-        this.prevRow = new byte[bytesPerRow + this.bpp];
+        if (newPass || this.currRow == null) {
+            releaseRows();
+            final BufferPool pool = BufferPool.getDefault();
+            this.currRow = pool.getByteArray(bytesPerRow + this.bpp);
+            this.prevRow = pool.getByteArray(bytesPerRow + this.bpp);
 
-        this.filteredRows = new byte[5][bytesPerRow + this.bpp];
+            this.filteredRows = new byte[5][];
+            for (int i = 0; i < 5; i++) {
+                this.filteredRows[i] = pool.getByteArray(bytesPerRow
+                        + this.bpp, false);
+            }
+        }
 
         final int maxValue = (1 << this.bitDepth) - 1;
 
         for (int row = minY + yOffset; row < minY + height; row += ySkip) {
-            ras.getPixels(minX, row, width, 1, samples);
+            if (byteData != null) {
+                copyRow(byteData, ras, row, pixelOffset, pixelSkip);
+            } else if (intData != null) {
+                unpackRow(intData, ras, row, pixelOffset, pixelSkip);
+            } else {
+                ras.getPixels(minX, row, width, 1, samples);
 
-            if (this.compressGray) {
-                final int shift = 8 - this.bitDepth;
-                for (int i = 0; i < width; ++i) {
-                    samples[i] >>= shift;
+                if (this.compressGray) {
+                    final int shift = 8 - this.bitDepth;
+                    for (int i = 0; i < width; ++i) {
+                        samples[i] >>= shift;
+                    }
                 }
-            }
 
-            int count = this.bpp; // leave first 'bpp' bytes zero
-            int pos = 0;
-            int tmp = 0;
+                int count = this.bpp; // leave first 'bpp' bytes zero
+                int pos = 0;
+                int tmp = 0;
 
-            switch (this.bitDepth) {
-            case 1:
-            case 2:
-            case 4:
-                // Image can only have a single band
+                switch (this.bitDepth) {
+                case 1:
+                case 2:
+                case 4:
+                    // Image can only have a single band
 
-                final int mask = samplesPerByte - 1;
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    final int val = clamp(samples[s] >> this.bitShift, maxValue);
-                    tmp = tmp << this.bitDepth | val;
+                    final int mask = samplesPerByte - 1;
+                    for (int s = xOffset; s < numSamples; s += xSkip) {
+                        final int val = clamp(samples[s] >> this.bitShift,
+                                maxValue);
+                        tmp = tmp << this.bitDepth | val;
 
-                    if (pos++ == mask) {
-                        this.currRow[count++] = (byte) tmp;
-                        tmp = 0;
-                        pos = 0;
+                        if (pos++ == mask) {
+                            this.currRow[count++] = (byte) tmp;
+                            tmp = 0;
+                            pos = 0;
+                        }
                     }
-                }
 
-                // Left shift the last byte
-                if (pos != 0) {
-                    tmp <<= (samplesPerByte - pos) * this.bitDepth;
-                    this.currRow[count++] = (byte) tmp;
-                }
-                break;
+                    // Left shift the last byte
+                    if (pos != 0) {
+                        tmp <<= (samplesPerByte - pos) * this.bitDepth;
+                        this.currRow[count++] = (byte) tmp;
+                    }
+                    break;
 
-            case 8:
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    for (int b = 0; b < this.numBands; b++) {
-                        this.currRow[count++] = (byte) clamp(
-                                samples[s + b] >> this.bitShift, maxValue);
+                case 8:
+                    for (int s = xOffset; s < numSamples; s += xSkip) {
+                        for (int b = 0; b < this.numBands; b++) {
+                            this.currRow[count++] = (byte) clamp(
+                                    samples[s + b] >> this.bitShift, maxValue);
+                        }
                     }
-                }
-                break;
+                    break;
 
-            case 16:
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    for (int b = 0; b < this.numBands; b++) {
-                        final int val = clamp(samples[s + b] >> this.bitShift,
-                                maxValue);
-                        this.currRow[count++] = (byte) (val >> 8);
-                        this.currRow[count++] = (byte) (val & 0xff);
+                case 16:
+                    for (int s = xOffset; s < numSamples; s += xSkip) {
+                        for (int b = 0; b < this.numBands; b++) {
+                            final int val = clamp(
+                                    samples[s + b] >> this.bitShift, maxValue);
+                            this.currRow[count++] = (byte) (val >> 8);
+                            this.currRow[count++] = (byte) (val & 0xff);
+                        }
                     }
+                    break;
                 }
-                break;
             }
 
             // Perform filtering
@@ -473,63 +656,181 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         }
     }
 
-    private void writeIDAT() throws IOException {
-        final IDATOutputStream ios = new IDATOutputStream(this.dataOutput, 8192);
-        final DeflaterOutputStream dos = new DeflaterOutputStream(ios,
-                new Deflater(9));
-
-        // Future work - don't convert entire image to a Raster It
-        // might seem that you could just call image.getData() but
-        // 'BufferedImage.subImage' doesn't appear to set the Width
-        // and height properly of the Child Raster, so the Raster
-        // you get back here appears larger than it should.
-        // This solves that problem by bounding the raster to the
-        // image's bounds...
-        Raster ras = this.image.getData(new Rectangle(this.image.getMinX(),
-                this.image.getMinY(), this.image.getWidth(), this.image
-                .getHeight()));
-        // log.info("Image: [" +
-        // image.getMinY() + ", " +
-        // image.getMinX() + ", " +
-        // image.getWidth() + ", " +
-        // image.getHeight() + "]");
-        // log.info("Ras: [" +
-        // ras.getMinX() + ", " +
-        // ras.getMinY() + ", " +
-        // ras.getWidth() + ", " +
-        // ras.getHeight() + "]");
-
-        if (this.skipAlpha) {
-            final int numBands = ras.getNumBands() - 1;
-            final int[] bandList = new int[numBands];
-            for (int i = 0; i < numBands; ++i) {
-                bandList[i] = i;
+    /**
+     * Returns a raster covering the given region of the image. A region lying
+     * within a single tile is served by that tile, or a bounded child of it,
+     * rather than copied, so the encoder can read the tile's
+     * <code>DataBuffer</code> directly.
+     */
+    private Raster getRaster(final Rectangle bounds) {
+        // Clamped since 'BufferedImage.getSubimage' reports a tile grid
+        // offset that does not match its single tile
+        final int tileX = clamp(Math.max(this.image.getMinTileX(),
+                SimpleRenderedImage.convertXToTileX(bounds.x,
+                        this.image.getTileGridXOffset(),
+                        this.image.getTileWidth())), this.image.getMinTileX()
+                        + this.image.getNumXTiles() - 1);
+        final int tileY = clamp(Math.max(this.image.getMinTileY(),
+                SimpleRenderedImage.convertYToTileY(bounds.y,
+                        this.image.getTileGridYOffset(),
+                        this.image.getTileHeight())), this.image.getMinTileY()
+                        + this.image.getNumYTiles() - 1);
+        // Only compute or decode the tile if the tile grid says it holds the
+        // whole region. The only tile of an image holds any region of it.
+        final Rectangle tileBounds = new Rectangle(
+                this.image.getTileGridXOffset() + tileX
+                        * this.image.getTileWidth(),
+                this.image.getTileGridYOffset() + tileY
+                        * this.image.getTileHeight(),
+                this.image.getTileWidth(), this.image.getTileHeight());
+        if (!tileBounds.contains(bounds)
+                && (this.image.getNumXTiles() != 1 || this.image
+                        .getNumYTiles() != 1)) {
+            return this.image.getData(bounds);
+        }
+        final Raster tile = this.image.getTile(tileX, tileY);
+        if (tile != null && tile.getBounds().equals(bounds)) {
+            return tile;
+        } else if (tile != null && tile.getBounds().contains(bounds)) {
+            // 'BufferedImage.getSubimage' and similar may hand out tiles
+            // larger than the image, so bound them here
+            return tile.createChild(bounds.x, bounds.y, bounds.width,
+                    bounds.height, bounds.x, bounds.y, null);
+        }
+        // The tile does not lie where the tile grid says
+        if (tile != null && this.image instanceof AbstractRed) {
+            ((AbstractRed) this.image).releaseData(tile);
+        }
+        return this.image.getData(bounds);
+    }
+
+    /**
+     * Drops the alpha band of a raster if it is replaced by a 'tRNS' chunk.
+     */
+    private Raster selectBands(final Raster ras) {
+        if (!this.skipAlpha) {
+            return ras;
+        }
+        final int numBands = ras.getNumBands() - 1;
+        final int[] bandList = new int[numBands];
+        for (int i = 0; i < numBands; ++i) {
+            bandList[i] = i;
+        }
+        return ras.createChild(ras.getMinX(), ras.getMinY(), ras.getWidth(),
+                ras.getHeight(), ras.getMinX(), ras.getMinY(), bandList);
+    }
+
+    /**
+     * Encodes a non-interlaced image one row of tiles at a time, so only a
+     * strip of the image rather than the whole image is held in memory. An
+     * untiled <code>AbstractRed</code> computes the rows it is asked for, so
+     * it is read in strips of <code>STRIP_HEIGHT</code> rows. The only tile of
+     * any other untiled image is fetched once and encoded strip by strip.
+     */
+    private void encodeStrips(final OutputStream os) throws IOException {
+        final int minX = this.image.getMinX();
+        final int minY = this.image.getMinY();
+        final int maxY = minY + this.image.getHeight();
+        final int tileHeight = this.image.getTileHeight();
+        final int minTileY = this.image.getMinTileY();
+        final int maxTileY = minTileY + this.image.getNumYTiles();
+
+        if (this.image.getNumYTiles() == 1
+                && this.image instanceof AbstractRed) {
+            boolean newPass = true;
+            for (int top = minY; top < maxY; top += STRIP_HEIGHT) {
+                final Rectangle bounds = new Rectangle(minX, top,
+                        this.image.getWidth(), Math.min(STRIP_HEIGHT, maxY
+                                - top));
+                encodeStrip(os, this.image.getData(bounds), newPass);
+                newPass = false;
             }
-            ras = ras.createChild(0, 0, ras.getWidth(), ras.getHeight(), 0, 0,
-                    bandList);
+            return;
         }
 
-        if (this.interlace) {
-            // Interlacing pass 1
-            encodePass(dos, ras, 0, 0, 8, 8);
-            // Interlacing pass 2
-            encodePass(dos, ras, 4, 0, 8, 8);
-            // Interlacing pass 3
-            encodePass(dos, ras, 0, 4, 4, 8);
-            // Interlacing pass 4
-            encodePass(dos, ras, 2, 0, 4, 4);
-            // Interlacing pass 5
-            encodePass(dos, ras, 0, 2, 2, 4);
-            // Interlacing pass 6
-            encodePass(dos, ras, 1, 0, 2, 2);
-            // Interlacing pass 7
-            encodePass(dos, ras, 0, 1, 1, 2);
-        } else {
-            encodePass(dos, ras, 0, 0, 1, 1);
+        if (this.image.getNumXTiles() == 1 && this.image.getNumYTiles() == 1) {
+            // Decoding or computing the tile again for each strip would
+            // cost as many times the whole image as there are strips
+            final Raster tile = getRaster(new Rectangle(minX, minY,
+                    this.image.getWidth(), this.image.getHeight()));
+            boolean newPass = true;
+            for (int top = minY; top < maxY; top += STRIP_HEIGHT) {
+                final Raster strip = tile.createChild(minX, top,
+                        this.image.getWidth(), Math.min(STRIP_HEIGHT, maxY
+                                - top), minX, top, null);
+                encodePass(os, selectBands(strip), 0, 0, 1, 1, newPass);
+                newPass = false;
+            }
+            return;
         }
 
-        dos.finish();
-        dos.close();
+        boolean newPass = true;
+        for (int ty = minTileY; ty < maxTileY; ty++) {
+            final int tileTop = this.image.getTileGridYOffset() + ty
+                    * tileHeight;
+            // the first and last rows of tiles reach the image edges,
+            // whatever the tile grid offset claims
+            final int top = ty == minTileY ? minY : Math.max(minY, tileTop);
+            final int bottom = ty == maxTileY - 1 ? maxY : Math.min(maxY,
+                    tileTop + tileHeight);
+            if (bottom <= top) {
+                continue;
+            }
+            encodeStrip(os, getRaster(new Rectangle(minX, top,
+                    this.image.getWidth(), bottom - top)), newPass);
+            newPass = false;
+        }
+    }
+
+    private void encodeStrip(final OutputStream os, final Raster strip,
+            final boolean newPass) throws IOException {
+        encodePass(os, selectBands(strip), 0, 0, 1, 1, newPass);
+        if (this.image instanceof AbstractRed) {
+            ((AbstractRed) this.image).releaseData(strip);
+        }
+    }
+
+    private void writeIDAT() throws IOException {
+        final IDATOutputStream ios = new IDATOutputStream(this.dataOutput,
+                this.param.getIDATSegmentLength());
+        final Deflater deflater = new Deflater(this.param.getCompressionLevel());
+        deflater.setStrategy(this.param.getCompressionStrategy());
+        final DeflaterOutputStream dos = new DeflaterOutputStream(ios,
+                deflater);
+
+        try {
+            if (this.interlace) {
+                final Raster ras = selectBands(getRaster(new Rectangle(
+                        this.image.getMinX(), this.image.getMinY(),
+                        this.image.getWidth(), this.image.getHeight())));
+                // Interlacing pass 1
+                encodePass(dos, ras, 0, 0, 8, 8, true);
+                // Interlacing pass 2
+                encodePass(dos, ras, 4, 0, 8, 8, true);
+                // Interlacing pass 3
+                encodePass(dos, ras, 0, 4, 4, 8, true);
+                // Interlacing pass 4
+                encodePass(dos, ras, 2, 0, 4, 4, true);
+                // Interlacing pass 5
+                encodePass(dos, ras, 0, 2, 2, 4, true);
+                // Interlacing pass 6
+                encodePass(dos, ras, 1, 0, 2, 2, true);
+                // Interlacing pass 7
+                encodePass(dos, ras, 0, 1, 1, 2, true);
+                if (this.image instanceof AbstractRed) {
+                    ((AbstractRed) this.image).releaseData(ras);
+                }
+            } else {
+                encodeStrips(dos);
+            }
+
+            dos.finish();
+            dos.close();
+        } finally {
+            // Also on failure, as the Deflater holds native memory
+            releaseRows();
+            deflater.end();
+        }
         ios.flush();
         ios.close();
     }
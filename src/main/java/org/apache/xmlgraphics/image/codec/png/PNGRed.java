@@ -35,18 +35,23 @@ import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.SequenceInputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
@@ -204,6 +209,18 @@ public class PNGRed extends AbstractRed {
     // If true, output < 8 bit gray images in 8 bit components format
     private boolean output8BitGray = false;
 
+    // If true, reduce 16 bit samples to 8 bits where possible
+    private boolean output8BitDepth = false;
+
+    // If true, keep images that fit an IndexColorModel in indexed form
+    private boolean preferIndexColorModel = false;
+
+    // Set if 16 bit samples are being reduced to 8 bits while unfiltering
+    private boolean reduce16Bit = false;
+
+    // Set if a gray image with a transparent value is output as indexed
+    private boolean outputIndexedGray = false;
+
     // Create an alpha channel in the destination color model.
     private boolean outputHasAlphaPalette = false;
 
@@ -286,9 +303,28 @@ public class PNGRed extends AbstractRed {
     private static final int POST_ADD_GRAY_TRANS_EXP = POST_ADD_GRAY_TRANS
             | POST_EXP_MASK;
 
-    private List<InputStream> streamVec = new ArrayList<>();
+    // Payloads of the IDAT chunks, kept after parsing when decoding lazily
+    private List<byte[]> idatData = new ArrayList<>();
     private DataInputStream dataStream;
 
+    // If true, decode strips on demand rather than the whole image at once
+    private boolean lazyDecoding = false;
+
+    // Decoded strips, least recently used first
+    private Map<Integer, Raster> stripCache;
+
+    // Forward cursor into the compressed data used by lazy decoding
+    private RowReader stripReader;
+
+    // Restart points of lazy decoding, recorded once a strip above the
+    // cursor is requested: the filtered rows of each strip deflated on their
+    // own, and the unfiltered row preceding each strip
+    private byte[][] stripData;
+    private byte[][] stripPriorRows;
+
+    // Number of filtered bytes inflated so far
+    long inflatedBytes;
+
     private int bytesPerPixel; // number of bytes per input pixel
     private int inputBands;
     private int outputBands;
@@ -381,6 +417,11 @@ public class PNGRed extends AbstractRed {
             this.expandPalette = decodeParam.getExpandPalette();
             this.output8BitGray = decodeParam.getOutput8BitGray();
             this.expandGrayAlpha = decodeParam.getExpandGrayAlpha();
+            this.output8BitDepth = decodeParam.getOutput8BitDepth();
+            this.preferIndexColorModel = decodeParam.getPreferIndexColorModel();
+            if (this.preferIndexColorModel) {
+                this.expandPalette = false;
+            }
             if (decodeParam.getPerformGammaCorrection()) {
                 this.userExponent = decodeParam.getUserExponent();
                 this.displayExponent = decodeParam.getDisplayExponent();
@@ -419,8 +460,7 @@ public class PNGRed extends AbstractRed {
                         parse_PLTE_chunk(chunk);
                     } else if (chunkType.equals("IDAT")) {
                         chunk = readChunk(distream);
-                        this.streamVec.add(new ByteArrayInputStream(chunk
-                                .getData()));
+                        this.idatData.add(chunk.getData());
                     } else if (chunkType.equals("IEND")) {
                         chunk = readChunk(distream);
                         parse_IEND_chunk(chunk);
@@ -765,15 +805,14 @@ public class PNGRed extends AbstractRed {
             this.encodeParam.setCompressedText(ztextArray);
         }
 
-        // Parse prior IDAT chunks
-        final InputStream seqStream = new SequenceInputStream(
-                Collections.enumeration(this.streamVec));
-        final InputStream infStream = new InflaterInputStream(seqStream,
-                new Inflater());
-        this.dataStream = new DataInputStream(infStream);
+        // Transparent colors must be matched against the full 16 bit samples
+        final int transProcess = this.postProcess & ~POST_EXP_MASK;
+        this.reduce16Bit = this.output8BitDepth && this.bitDepth == 16
+                && transProcess != POST_ADD_GRAY_TRANS
+                && transProcess != POST_ADD_RGB_TRANS;
 
         // Create an empty WritableRaster
-        int depth = this.bitDepth;
+        int depth = this.reduce16Bit ? 8 : this.bitDepth;
         if (this.colorType == PNG_COLOR_GRAY && this.bitDepth < 8
                 && this.output8BitGray) {
             depth = 8;
@@ -787,11 +826,9 @@ public class PNGRed extends AbstractRed {
         final int bytesPerRow = (this.outputBands * width * depth + 7) / 8;
         final int scanlineStride = depth == 16 ? bytesPerRow / 2 : bytesPerRow;
 
-        this.theTile = createRaster(width, height, this.outputBands,
-                scanlineStride, depth);
-
-        if (this.performGammaCorrection && this.gammaLut == null) {
-            initGammaLut(this.bitDepth);
+        if (this.performGammaCorrection
+                && (this.gammaLut == null || this.reduce16Bit)) {
+            initGammaLut(this.reduce16Bit ? 8 : this.bitDepth);
         }
         if (this.postProcess == POST_GRAY_LUT
                 || this.postProcess == POST_GRAY_LUT_ADD_TRANS
@@ -799,18 +836,48 @@ public class PNGRed extends AbstractRed {
             initGrayLut(this.bitDepth);
         }
 
-        decodeImage(this.interlaceMethod == 1);
+        final SampleModel sm;
+        this.lazyDecoding = this.decodeParam.getLazyDecoding()
+                && this.interlaceMethod == 0;
+        if (this.lazyDecoding) {
+            // Strips are the tiles; keep the compressed data until then.
+            final int stripHeight = Math.min(
+                    this.decodeParam.getStripHeight(), height);
+            final int cacheSize = this.decodeParam.getStripCacheSize();
+            sm = createRaster(width, 1, this.outputBands, scanlineStride,
+                    depth).getSampleModel().createCompatibleSampleModel(
+                    width, stripHeight);
+            this.stripCache = new LinkedHashMap<Integer, Raster>(
+                    cacheSize + 1, 1.0F, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<Integer, Raster> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        } else {
+            this.theTile = createRaster(width, height, this.outputBands,
+                    scanlineStride, depth);
+
+            // Parse prior IDAT chunks
+            this.dataStream = openDataStream();
+            decodeImage(this.interlaceMethod == 1);
+
+            // Free resources associated with compressed data.
+            this.dataStream.close();
+            this.dataStream = null;
+            this.idatData = null;
 
-        // Free resources associated with compressed data.
-        this.dataStream.close();
-        infStream.close();
-        seqStream.close();
-        this.streamVec = null;
+            sm = this.theTile.getSampleModel();
+        }
 
-        final SampleModel sm = this.theTile.getSampleModel();
         ColorModel cm;
 
-        if (this.colorType == PNG_COLOR_PALETTE && !this.expandPalette) {
+        if (this.outputIndexedGray) {
+            cm = createIndexedGrayColorModel();
+        } else if (this.colorType == PNG_COLOR_PALETTE && !this.expandPalette) {
             if (this.outputHasAlphaPalette) {
                 cm = new IndexColorModel(this.bitDepth, this.paletteEntries,
                         this.redPalette, this.greenPalette, this.bluePalette,
@@ -831,6 +898,39 @@ public class PNGRed extends AbstractRed {
         init((CachableRed) null, this.bounds, cm, sm, 0, 0, this.properties);
     }
 
+    private DataInputStream openDataStream() {
+        final List<InputStream> streamVec = new ArrayList<>(
+                this.idatData.size());
+        for (final byte[] data : this.idatData) {
+            streamVec.add(new ByteArrayInputStream(data));
+        }
+        final InputStream seqStream = new SequenceInputStream(
+                Collections.enumeration(streamVec));
+        return new DataInputStream(new InflaterInputStream(seqStream,
+                new Inflater()));
+    }
+
+    /**
+     * Creates the color model of a gray image of 8 bits or less whose
+     * transparent gray value is kept as the one transparent palette entry.
+     */
+    private IndexColorModel createIndexedGrayColorModel() {
+        final int size = 1 << this.bitDepth;
+        final byte[] gray = new byte[size];
+        final byte[] alpha = new byte[size];
+        for (int i = 0; i < size; i++) {
+            if (this.performGammaCorrection) {
+                gray[i] = (byte) this.gammaLut[i];
+            } else {
+                gray[i] = this.bitDepth < 8 ? this.expandBits[this.bitDepth][i]
+                        : (byte) i;
+            }
+            alpha[i] = i == this.grayTransparentAlpha ? 0 : (byte) 255;
+        }
+        return new IndexColorModel(this.bitDepth, size, gray, gray, gray,
+                alpha);
+    }
+
     private static final int[] GrayBits8 = { 8 };
     private static final ComponentColorModel colorModelGray8 = new ComponentColorModel(
             ColorSpace.getInstance(ColorSpace.CS_GRAY), GrayBits8, false,
@@ -1289,19 +1389,29 @@ public class PNGRed extends AbstractRed {
             this.grayTransparentAlpha = chunk.getInt2(0);
 
             if (!this.suppressAlpha) {
-                if (this.bitDepth < 8) {
-                    this.output8BitGray = true;
-                    this.maxOpacity = 255;
-                    this.postProcess = POST_GRAY_LUT_ADD_TRANS;
+                if (this.preferIndexColorModel && this.bitDepth <= 8
+                        && !this.decodeParam.getOutput8BitGray()
+                        && !this.expandGrayAlpha) {
+                    // Samples stay as they are, the color model maps them
+                    // (with gamma) and marks the transparent value
+                    this.outputIndexedGray = true;
+                    this.output8BitGray = false;
+                    this.postProcess = POST_NONE;
                 } else {
-                    this.postProcess = POST_ADD_GRAY_TRANS;
-                }
+                    if (this.bitDepth < 8) {
+                        this.output8BitGray = true;
+                        this.maxOpacity = 255;
+                        this.postProcess = POST_GRAY_LUT_ADD_TRANS;
+                    } else {
+                        this.postProcess = POST_ADD_GRAY_TRANS;
+                    }
 
-                if (this.expandGrayAlpha) {
-                    this.outputBands = 4;
-                    this.postProcess |= POST_EXP_MASK;
-                } else {
-                    this.outputBands = 2;
+                    if (this.expandGrayAlpha) {
+                        this.outputBands = 4;
+                        this.postProcess |= POST_EXP_MASK;
+                    } else {
+                        this.outputBands = 2;
+                    }
                 }
 
                 if (this.encodeParam != null) {
@@ -1474,7 +1584,8 @@ public class PNGRed extends AbstractRed {
 
         // Create an array suitable for holding one pixel
         final int[] ps = src.getPixel(0, 0, (int[]) null);
-        final int[] pd = dst.getPixel(0, 0, (int[]) null);
+        final int[] pd = dst.getPixel(dst.getMinX(), dst.getMinY(),
+                (int[]) null);
 
         dstX = xOffset;
         switch (process) {
@@ -1726,42 +1837,80 @@ public class PNGRed extends AbstractRed {
     }
 
     /**
-     * Reads in an image of a given size and returns it as a WritableRaster.
+     * Reads the filtered rows of one pass (or of the whole image when not
+     * interlaced) from a stream of inflated image data, undoing the row
+     * filters as it goes.
      */
-    private void decodePass(final WritableRaster imRas, final int xOffset,
-            final int yOffset, final int xStep, final int yStep,
-            final int passWidth, final int passHeight) {
-        if (passWidth == 0 || passHeight == 0) {
-            return;
+    private final class RowReader {
+        private final DataInputStream stream;
+        private final int bytesPerRow;
+        private final int eltsPerRow;
+        private byte[] curr;
+        private byte[] prior;
+
+        // A 1-row tall Raster holding the last row read
+        private final WritableRaster passRow;
+        private final byte[] byteData;
+        private final short[] shortData;
+
+        // Index of the next row to be read
+        private int nextRow = 0;
+
+        // If not null, receives each filtered row as it is read
+        private OutputStream copy;
+
+        RowReader(final DataInputStream stream, final int passWidth) {
+            this.stream = stream;
+            this.bytesPerRow = (PNGRed.this.inputBands * passWidth
+                    * PNGRed.this.bitDepth + 7) / 8;
+            this.eltsPerRow = PNGRed.this.bitDepth == 16 ? this.bytesPerRow / 2
+                    : this.bytesPerRow;
+            this.curr = new byte[this.bytesPerRow];
+            this.prior = new byte[this.bytesPerRow];
+
+            this.passRow = createRaster(passWidth, 1, PNGRed.this.inputBands,
+                    this.eltsPerRow, PNGRed.this.reduce16Bit ? 8
+                            : PNGRed.this.bitDepth);
+            final DataBuffer dataBuffer = this.passRow.getDataBuffer();
+            if (dataBuffer.getDataType() == DataBuffer.TYPE_BYTE) {
+                this.byteData = ((DataBufferByte) dataBuffer).getData();
+                this.shortData = null;
+            } else {
+                this.byteData = null;
+                this.shortData = ((DataBufferUShort) dataBuffer).getData();
+            }
         }
 
-        final int bytesPerRow = (this.inputBands * passWidth * this.bitDepth + 7) / 8;
-        final int eltsPerRow = this.bitDepth == 16 ? bytesPerRow / 2
-                : bytesPerRow;
-        byte[] curr = new byte[bytesPerRow];
-        byte[] prior = new byte[bytesPerRow];
-
-        // Create a 1-row tall Raster to hold the data
-        final WritableRaster passRow = createRaster(passWidth, 1,
-                this.inputBands, eltsPerRow, this.bitDepth);
-        final DataBuffer dataBuffer = passRow.getDataBuffer();
-        final int type = dataBuffer.getDataType();
-        byte[] byteData = null;
-        short[] shortData = null;
-        if (type == DataBuffer.TYPE_BYTE) {
-            byteData = ((DataBufferByte) dataBuffer).getData();
-        } else {
-            shortData = ((DataBufferUShort) dataBuffer).getData();
+        /**
+         * Creates a reader whose stream starts at row <code>firstRow</code>,
+         * given the unfiltered row preceding it.
+         */
+        RowReader(final DataInputStream stream, final int passWidth,
+                final int firstRow, final byte[] priorRow) {
+            this(stream, passWidth);
+            System.arraycopy(priorRow, 0, this.curr, 0, this.bytesPerRow);
+            this.nextRow = firstRow;
         }
 
-        // Decode the (sub)image row-by-row
-        int srcY, dstY;
-        for (srcY = 0, dstY = yOffset; srcY < passHeight; srcY++, dstY += yStep) {
+        /**
+         * Reads and unfilters the next row without unpacking it, as needed to
+         * reach a later row.
+         */
+        void skipRow() {
+            // Swap curr and prior
+            final byte[] tmp = this.prior;
+            this.prior = this.curr;
+            this.curr = tmp;
+
             // Read the filter type byte and a row of data
             int filter = 0;
             try {
-                filter = this.dataStream.read();
-                this.dataStream.readFully(curr, 0, bytesPerRow);
+                filter = this.stream.read();
+                this.stream.readFully(this.curr, 0, this.bytesPerRow);
+                if (this.copy != null) {
+                    this.copy.write(filter);
+                    this.copy.write(this.curr, 0, this.bytesPerRow);
+                }
             } catch (final Exception e) {
                 log.error("Exception", e);
             }
@@ -1770,45 +1919,169 @@ public class PNGRed extends AbstractRed {
             case PNG_FILTER_NONE:
                 break;
             case PNG_FILTER_SUB:
-                decodeSubFilter(curr, bytesPerRow, this.bytesPerPixel);
+                decodeSubFilter(this.curr, this.bytesPerRow,
+                        PNGRed.this.bytesPerPixel);
                 break;
             case PNG_FILTER_UP:
-                decodeUpFilter(curr, prior, bytesPerRow);
+                decodeUpFilter(this.curr, this.prior, this.bytesPerRow);
                 break;
             case PNG_FILTER_AVERAGE:
-                decodeAverageFilter(curr, prior, bytesPerRow,
-                        this.bytesPerPixel);
+                decodeAverageFilter(this.curr, this.prior, this.bytesPerRow,
+                        PNGRed.this.bytesPerPixel);
                 break;
             case PNG_FILTER_PAETH:
-                decodePaethFilter(curr, prior, bytesPerRow, this.bytesPerPixel);
+                decodePaethFilter(this.curr, this.prior, this.bytesPerRow,
+                        PNGRed.this.bytesPerPixel);
                 break;
             default:
                 // Error -- unknown filter type
                 final String msg = PropertyUtil.getString("PNGImageDecoder16");
                 throw new RuntimeException(msg);
             }
+            PNGRed.this.inflatedBytes += this.bytesPerRow + 1;
+            this.nextRow++;
+        }
+
+        /**
+         * Reads and unfilters the next row and returns it as a 1-row tall
+         * Raster.
+         */
+        Raster readRow() {
+            skipRow();
 
             // Copy data into passRow byte by byte
-            if (this.bitDepth < 16) {
-                System.arraycopy(curr, 0, byteData, 0, bytesPerRow);
+            if (PNGRed.this.bitDepth < 16) {
+                System.arraycopy(this.curr, 0, this.byteData, 0,
+                        this.bytesPerRow);
+            } else if (PNGRed.this.reduce16Bit) {
+                // Keep the most significant byte of each sample
+                for (int j = 0; j < this.eltsPerRow; j++) {
+                    this.byteData[j] = this.curr[2 * j];
+                }
             } else {
                 int idx = 0;
-                for (int j = 0; j < eltsPerRow; j++) {
-                    shortData[j] = (short) (curr[idx] << 8 | curr[idx + 1] & 0xff);
+                for (int j = 0; j < this.eltsPerRow; j++) {
+                    this.shortData[j] = (short) (this.curr[idx] << 8 | this.curr[idx + 1] & 0xff);
                     idx += 2;
                 }
             }
+            return this.passRow;
+        }
 
-            processPixels(this.postProcess, passRow, imRas, xOffset, xStep,
-                    dstY, passWidth);
+        void close() {
+            IOUtils.closeQuietly(this.stream);
+        }
+    }
 
-            // Swap curr and prior
-            final byte[] tmp = prior;
-            prior = curr;
-            curr = tmp;
+    /**
+     * Reads in an image of a given size and returns it as a WritableRaster.
+     */
+    private void decodePass(final WritableRaster imRas, final int xOffset,
+            final int yOffset, final int xStep, final int yStep,
+            final int passWidth, final int passHeight) {
+        if (passWidth == 0 || passHeight == 0) {
+            return;
+        }
+
+        final RowReader reader = new RowReader(this.dataStream, passWidth);
+
+        // Decode the (sub)image row-by-row
+        int srcY, dstY;
+        for (srcY = 0, dstY = yOffset; srcY < passHeight; srcY++, dstY += yStep) {
+            processPixels(this.postProcess, reader.readRow(), imRas, xOffset,
+                    xStep, dstY, passWidth);
         }
     }
 
+    /**
+     * Decodes one strip of a lazily decoded image. The rows are read from a
+     * single forward cursor into the compressed data: strips below the cursor
+     * are reached by unfiltering the rows in between. Since the state of an
+     * <code>Inflater</code> cannot be saved and restored, the first request
+     * for a strip above the cursor records restart points for every strip
+     * instead, after which each strip is inflated on its own.
+     */
+    private Raster decodeStrip(final int tileY) {
+        final WritableRaster strip = makeTile(0, tileY);
+        final int firstRow = strip.getMinY() - this.bounds.y;
+        final int width = this.bounds.width;
+
+        if (this.stripData == null && this.stripReader != null
+                && this.stripReader.nextRow > firstRow) {
+            this.stripReader.close();
+            this.stripReader = null;
+            recordRestartPoints();
+        }
+
+        final RowReader reader;
+        if (this.stripData != null) {
+            reader = new RowReader(new DataInputStream(new InflaterInputStream(
+                    new ByteArrayInputStream(this.stripData[tileY]))), width,
+                    firstRow, this.stripPriorRows[tileY]);
+        } else {
+            if (this.stripReader == null) {
+                this.stripReader = new RowReader(openDataStream(), width);
+            }
+            reader = this.stripReader;
+            while (reader.nextRow < firstRow) {
+                reader.skipRow();
+            }
+        }
+
+        final int minY = strip.getMinY();
+        final int maxY = minY + strip.getHeight();
+        for (int y = minY; y < maxY; y++) {
+            processPixels(this.postProcess, reader.readRow(), strip,
+                    strip.getMinX(), 1, y, width);
+        }
+
+        if (reader != this.stripReader
+                || reader.nextRow >= this.bounds.height) {
+            // Keep a finished cursor, so that it still marks the rows read
+            reader.close();
+        }
+        return strip;
+    }
+
+    /**
+     * Inflates the whole image once, deflating the filtered rows of each
+     * strip into a separate stream together with the unfiltered row that
+     * precedes the strip. Those replace the IDAT data.
+     */
+    private void recordRestartPoints() {
+        final int height = this.bounds.height;
+        final RowReader reader = new RowReader(openDataStream(),
+                this.bounds.width);
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        this.stripData = new byte[this.numYTiles][];
+        this.stripPriorRows = new byte[this.numYTiles][];
+        try {
+            for (int ty = 0; ty < this.numYTiles; ty++) {
+                this.stripPriorRows[ty] = reader.curr.clone();
+
+                final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                final DeflaterOutputStream dos = new DeflaterOutputStream(bos,
+                        deflater);
+                reader.copy = dos;
+                final int maxRow = Math.min((ty + 1) * this.tileHeight,
+                        height);
+                while (reader.nextRow < maxRow) {
+                    reader.skipRow();
+                }
+                dos.finish();
+                deflater.reset();
+                this.stripData[ty] = bos.toByteArray();
+            }
+        } catch (final IOException e) {
+            // Cannot happen when writing to memory
+            throw new RuntimeException(e);
+        } finally {
+            deflater.end();
+            reader.close();
+        }
+        this.idatData = null;
+    }
+
     private void decodeImage(final boolean useInterlacing) {
         final int width = this.bounds.width;
         final int height = this.bounds.height;
@@ -1833,13 +2106,32 @@ public class PNGRed extends AbstractRed {
 
     @Override
     public WritableRaster copyData(final WritableRaster wr) {
-        GraphicsUtil.copyData(this.theTile, wr);
+        if (this.lazyDecoding) {
+            copyToRaster(wr);
+        } else {
+            GraphicsUtil.copyData(this.theTile, wr);
+        }
         return wr;
     }
 
     // RenderedImage stuff
     @Override
     public Raster getTile(final int tileX, final int tileY) {
+        if (this.lazyDecoding) {
+            if (tileX != 0 || tileY < 0 || tileY >= this.numYTiles) {
+                // Error -- bad tile requested
+                final String msg = PropertyUtil.getString("PNGImageDecoder17");
+                throw new IllegalArgumentException(msg);
+            }
+            synchronized (this.stripCache) {
+                Raster strip = this.stripCache.get(tileY);
+                if (strip == null) {
+                    strip = decodeStrip(tileY);
+                    this.stripCache.put(tileY, strip);
+                }
+                return strip;
+            }
+        }
         if (tileX != 0 || tileY != 0) {
             // Error -- bad tile requested
             final String msg = PropertyUtil.getString("PNGImageDecoder17");
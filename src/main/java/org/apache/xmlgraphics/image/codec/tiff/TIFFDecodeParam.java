@@ -20,6 +20,7 @@
 package org.apache.xmlgraphics.image.codec.tiff;
 
 import org.apache.xmlgraphics.image.codec.util.ImageDecodeParam;
+import org.apache.xmlgraphics.image.rendered.TileCache;
 
 /**
  * An instance of <code>ImageDecodeParam</code> for decoding images in the TIFF
@@ -78,6 +79,8 @@ public class TIFFDecodeParam implements ImageDecodeParam {
     private boolean decodePaletteAsShorts = false;
     private Long ifdOffset = null;
     private boolean convertJPEGYCbCrToRGB = true;
+    private boolean useTileCache = false;
+    private transient TileCache tileCache = null;
 
     /** Constructs a default instance of <code>TIFFDecodeParam</code>. */
     public TIFFDecodeParam() {
@@ -158,4 +161,44 @@ public class TIFFDecodeParam implements ImageDecodeParam {
     public boolean getJPEGDecompressYCbCrToRGB() {
         return this.convertJPEGYCbCrToRGB;
     }
+
+    /**
+     * Sets whether decoded tiles (or strips) are kept in a tile cache so that
+     * requesting them again does not read and decompress them again. The
+     * default value is <code>false</code>.
+     *
+     * <p>
+     * With the cache on, <code>getTile()</code> returns the cached raster
+     * itself, which is shared by every caller and must not be modified. With
+     * the cache off, every call returns a newly decoded raster, which the
+     * caller is free to modify.
+     */
+    public void setUseTileCache(final boolean useTileCache) {
+        this.useTileCache = useTileCache;
+    }
+
+    /**
+     * Whether decoded tiles will be kept in a tile cache.
+     */
+    public boolean getUseTileCache() {
+        return this.useTileCache;
+    }
+
+    /**
+     * Sets the tile cache to keep decoded tiles in when caching is on. If it
+     * is never set, or set to <code>null</code>, the shared cache returned by
+     * <code>TileCache.getDefault()</code> is used. It has no effect unless
+     * <code>setUseTileCache(true)</code> is called.
+     */
+    public void setTileCache(final TileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    /**
+     * Returns the tile cache decoded tiles will be kept in, or
+     * <code>null</code> if none has been set.
+     */
+    public TileCache getTileCache() {
+        return this.tileCache;
+    }
 }
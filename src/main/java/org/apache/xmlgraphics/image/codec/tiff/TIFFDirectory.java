@@ -20,11 +20,16 @@
 package org.apache.xmlgraphics.image.codec.tiff;
 
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -76,10 +81,16 @@ public class TIFFDirectory implements Serializable {
     /** A boolean storing the endianness of the stream. */
     private final boolean isBigEndian;
 
+    /** Whether the stream is a BigTIFF file with 64-bit offsets. */
+    private final boolean isBigTIFF;
+
     /** The number of entries in the IFD. */
     private int numEntries;
 
-    /** An array of TIFFFields. */
+    /**
+     * An array of TIFFFields, decoded from the raw entries when first
+     * accessed.
+     */
     private TIFFField[] fields;
 
     /** A Hashtable indexing the fields by tag number. */
@@ -91,6 +102,31 @@ public class TIFFDirectory implements Serializable {
     /** The offset of the next IFD. */
     private long nextIFDOffset = 0;
 
+    /**
+     * The raw 12 byte (20 byte in BigTIFF) entries of the IFD, holding the
+     * type, count and value or value offset of each field, kept until all
+     * fields are decoded.
+     */
+    private transient byte[] entries;
+
+    /**
+     * The stream from which values that do not fit into their entry are read,
+     * kept until all fields are decoded.
+     */
+    private transient SeekableStream stream;
+
+    /** The number of indexed fields not decoded yet. */
+    private transient int undecoded;
+
+    /** The IFD offsets found so far, by stream. */
+    private static final Map<SeekableStream, DirectoryOffsets> DIRECTORY_OFFSETS = new WeakHashMap<>();
+
+    /** Header flag set for big-endian streams. */
+    private static final int HEADER_BIG_ENDIAN = 1;
+
+    /** Header flag set for BigTIFF streams. */
+    private static final int HEADER_BIG_TIFF = 2;
+
     private static boolean isValidEndianTag(final int endian) {
         return endian == 0x4949 || endian == 0x4d4d;
     }
@@ -101,6 +137,18 @@ public class TIFFDirectory implements Serializable {
      * stream; directory 0 is normally read but it is possible to store multiple
      * images in a single TIFF file by maintaing multiple directories.
      *
+     * <p>
+     * The offsets of the directories are remembered for each stream, so
+     * opening any directory of a stream that has been seen before does not
+     * walk the list of directories again.
+     *
+     * <p>
+     * Only the entries of the directory are read here. The value of a field
+     * that does not fit into its entry, such as the StripOffsets array, is
+     * read from the stream with a positional read when the field is first
+     * accessed, so the stream must not be closed before then. Call
+     * {@link #getFields()} to read all values up front.
+     *
      * @param stream
      *            a SeekableStream to read from.
      * @param directory
@@ -109,47 +157,19 @@ public class TIFFDirectory implements Serializable {
     public TIFFDirectory(final SeekableStream stream, final int directory)
             throws IOException {
 
-        final long global_save_offset = stream.getFilePointer();
-        long ifd_offset;
-
         // Read the TIFF header
-        stream.seek(0L);
-        final int endian = stream.readUnsignedShort();
-        if (!isValidEndianTag(endian)) {
-            throw new IllegalArgumentException(
-                    PropertyUtil.getString("TIFFDirectory1"));
-        }
-        this.isBigEndian = endian == 0x4d4d;
-
-        final int magic = readUnsignedShort(stream);
-        if (magic != 42) {
-            throw new IllegalArgumentException(
-                    PropertyUtil.getString("TIFFDirectory2"));
-        }
-
-        // Get the initial ifd offset as an unsigned int (using a long)
-        ifd_offset = readUnsignedInt(stream);
+        final int header = readHeader(stream);
+        this.isBigEndian = (header & HEADER_BIG_ENDIAN) != 0;
+        this.isBigTIFF = (header & HEADER_BIG_TIFF) != 0;
 
-        for (int i = 0; i < directory; ++i) {
-            if (ifd_offset == 0L) {
-                throw new IllegalArgumentException(
-                        PropertyUtil.getString("TIFFDirectory3"));
-            }
-
-            stream.seek(ifd_offset);
-            final long entries = readUnsignedShort(stream);
-            stream.skip(12 * entries);
-
-            ifd_offset = readUnsignedInt(stream);
-        }
+        final long ifd_offset = getDirectoryOffset(stream, this.isBigEndian,
+                this.isBigTIFF, directory);
         if (ifd_offset == 0L) {
             throw new IllegalArgumentException(
                     PropertyUtil.getString("TIFFDirectory3"));
         }
 
-        stream.seek(ifd_offset);
-        initialize(stream);
-        stream.seek(global_save_offset);
+        initialize(stream, ifd_offset);
     }
 
     /**
@@ -170,39 +190,17 @@ public class TIFFDirectory implements Serializable {
     public TIFFDirectory(final SeekableStream stream, long ifd_offset,
             final int directory) throws IOException {
 
-        final long global_save_offset = stream.getFilePointer();
-        stream.seek(0L);
-        final int endian = stream.readUnsignedShort();
-        if (!isValidEndianTag(endian)) {
-            throw new IllegalArgumentException(
-                    PropertyUtil.getString("TIFFDirectory1"));
-        }
-        this.isBigEndian = endian == 0x4d4d;
-
-        // Seek to the first IFD.
-        stream.seek(ifd_offset);
+        final int header = readHeader(stream);
+        this.isBigEndian = (header & HEADER_BIG_ENDIAN) != 0;
+        this.isBigTIFF = (header & HEADER_BIG_TIFF) != 0;
 
         // Seek to desired IFD if necessary.
-        int dirNum = 0;
-        while (dirNum < directory) {
-            // Get the number of fields in the current IFD.
-            final long numEntries = readUnsignedShort(stream);
-
-            // Skip to the next IFD offset value field.
-            stream.seek(ifd_offset + 12 * numEntries);
-
-            // Read the offset to the next IFD beyond this one.
-            ifd_offset = readUnsignedInt(stream);
-
-            // Seek to the next IFD.
-            stream.seek(ifd_offset);
-
-            // Increment the directory.
-            dirNum++;
+        for (int dirNum = 0; dirNum < directory; dirNum++) {
+            ifd_offset = readNextIFDOffset(stream, this.isBigEndian,
+                    this.isBigTIFF, ifd_offset);
         }
 
-        initialize(stream);
-        stream.seek(global_save_offset);
+        initialize(stream, ifd_offset);
     }
 
     private static final int[] sizeOfType = { 0, // 0 = n/a
@@ -217,159 +215,218 @@ public class TIFFDirectory implements Serializable {
         4, // 9 = slong
         8, // 10 = srational
         4, // 11 = float
-        8 // 12 = double
+        8, // 12 = double
+        0, // 13 = n/a
+        0, // 14 = n/a
+        0, // 15 = n/a
+        8, // 16 = long8 (BigTIFF)
+        8, // 17 = slong8 (BigTIFF)
+        8 // 18 = ifd8 (BigTIFF)
     };
 
-    private void initialize(final SeekableStream stream) throws IOException {
-        long nextTagOffset;
-        int i, j;
+    /**
+     * Reads the entries of the IFD and indexes them by tag. The values of the
+     * fields are decoded when they are first accessed, from the entry itself
+     * or, if they do not fit into it, from the stream.
+     */
+    private void initialize(final SeekableStream stream, final long ifdOffset)
+            throws IOException {
+        this.IFDOffset = ifdOffset;
 
-        this.IFDOffset = stream.getFilePointer();
+        final int entrySize = getEntrySize(this.isBigTIFF);
+        final int countSize = this.isBigTIFF ? 8 : 2;
+        final int offsetSize = this.isBigTIFF ? 8 : 4;
 
-        this.numEntries = readUnsignedShort(stream);
+        final byte[] b = new byte[8];
+        stream.readFully(ifdOffset, b, 0, countSize);
+        this.numEntries = (int) getOffset(b, 0, this.isBigEndian,
+                this.isBigTIFF ? 8 : 2);
         this.fields = new TIFFField[this.numEntries];
 
-        for (i = 0; i < this.numEntries; ++i) {
-            final int tag = readUnsignedShort(stream);
-            final int type = readUnsignedShort(stream);
-            int count = (int) readUnsignedInt(stream);
-            int value = 0;
-
-            // The place to return to to read the next tag
-            nextTagOffset = stream.getFilePointer() + 4;
-
-            try {
-                // If the tag data can't fit in 4 bytes, the next 4 bytes
-                // contain the starting offset of the data
-                if (count * sizeOfType[type] > 4) {
-                    value = (int) readUnsignedInt(stream);
-                    stream.seek(value);
-                }
-            } catch (final ArrayIndexOutOfBoundsException ae) {
-                log.error("ArrayIndexOutOfBoundsException", ae);
-                // log.error(tag + " " + "TIFFDirectory4"); TODO - log
-                // this message
+        // All entries plus the offset of the next IFD in a single read
+        this.entries = new byte[entrySize * this.numEntries + offsetSize];
+        stream.readFully(ifdOffset + countSize, this.entries, 0,
+                this.entries.length);
+
+        for (int i = 0; i < this.numEntries; ++i) {
+            final int tag = getUnsignedShort(this.entries, entrySize * i,
+                    this.isBigEndian);
+            final int type = getUnsignedShort(this.entries, entrySize * i + 2,
+                    this.isBigEndian);
+            if (type < TIFFField.TIFF_BYTE || type >= sizeOfType.length
+                    || sizeOfType[type] == 0) {
                 // if the data type is unknown we should skip this TIFF Field
-                stream.seek(nextTagOffset);
+                log.error(PropertyUtil.getString("TIFFDirectory4") + ": " + tag
+                        + ", " + type);
                 continue;
             }
-
             this.fieldIndex.put(tag, i);
-            Object obj = null;
-
-            switch (type) {
-            case TIFFField.TIFF_BYTE:
-            case TIFFField.TIFF_SBYTE:
-            case TIFFField.TIFF_UNDEFINED:
-            case TIFFField.TIFF_ASCII:
-                final byte[] bvalues = new byte[count];
-                stream.readFully(bvalues, 0, count);
-
-                if (type == TIFFField.TIFF_ASCII) {
+        }
+        this.undecoded = this.fieldIndex.size();
 
-                    // Can be multiple strings
-                    int index = 0, prevIndex = 0;
-                    final List<String> v = new ArrayList<>();
+        // Read the offset of the next IFD.
+        this.nextIFDOffset = getOffset(this.entries, entrySize
+                * this.numEntries, this.isBigEndian, offsetSize);
+        if (this.undecoded == 0) {
+            this.entries = null;
+        } else {
+            this.stream = stream;
+        }
+    }
 
-                    while (index < count) {
+    /**
+     * Returns the field of entry i, decoding its value on first access. The
+     * raw entries and the stream are dropped once every field is decoded.
+     *
+     * @throws RuntimeException
+     *             if the value cannot be read from the stream
+     */
+    private synchronized TIFFField getEntry(final int i) {
+        if (this.fields[i] != null) {
+            return this.fields[i];
+        }
+        final int offsetSize = this.isBigTIFF ? 8 : 4;
+        final int entry = getEntrySize(this.isBigTIFF) * i;
+        final int tag = getUnsignedShort(this.entries, entry, this.isBigEndian);
+        final int type = getUnsignedShort(this.entries, entry + 2,
+                this.isBigEndian);
+        int count = (int) getOffset(this.entries, entry + 4, this.isBigEndian,
+                offsetSize);
+        final int valueOffset = entry + 4 + offsetSize;
+        int j;
+
+        final int size = count * sizeOfType[type];
+        final byte[] data;
+        if (size > offsetSize) {
+            // The entry holds the offset of the value
+            data = new byte[size];
+            try {
+                this.stream.readFully(getOffset(this.entries, valueOffset,
+                        this.isBigEndian, offsetSize), data, 0, size);
+            } catch (final IOException e) {
+                throw new RuntimeException(
+                        PropertyUtil.getString("TIFFDirectory5"), e);
+            }
+        } else {
+            data = Arrays.copyOfRange(this.entries, valueOffset, valueOffset
+                    + size);
+        }
+        final ByteBuffer buf = ByteBuffer.wrap(data).order(
+                this.isBigEndian ? ByteOrder.BIG_ENDIAN
+                        : ByteOrder.LITTLE_ENDIAN);
 
-                        while (index < count && bvalues[index++] != 0) {
-                            ;
-                        }
+        Object obj = null;
 
-                        // When we encountered zero, means one string has
-                        // ended
-                        v.add(new String(bvalues, prevIndex, index - prevIndex));
-                        prevIndex = index;
-                    }
+        switch (type) {
+        case TIFFField.TIFF_BYTE:
+        case TIFFField.TIFF_SBYTE:
+        case TIFFField.TIFF_UNDEFINED:
+        case TIFFField.TIFF_ASCII:
+            final byte[] bvalues = data;
 
-                    count = v.size();
-                    final String[] strings = new String[count];
-                    v.toArray(strings);
-                    obj = strings;
-                } else {
-                    obj = bvalues;
-                }
+            if (type == TIFFField.TIFF_ASCII) {
 
-                break;
+                // Can be multiple strings
+                int index = 0, prevIndex = 0;
+                final List<String> v = new ArrayList<>();
 
-            case TIFFField.TIFF_SHORT:
-                final char[] cvalues = new char[count];
-                for (j = 0; j < count; j++) {
-                    cvalues[j] = (char) readUnsignedShort(stream);
-                }
-                obj = cvalues;
-                break;
+                while (index < count) {
 
-            case TIFFField.TIFF_LONG:
-                final long[] lvalues = new long[count];
-                for (j = 0; j < count; j++) {
-                    lvalues[j] = readUnsignedInt(stream);
-                }
-                obj = lvalues;
-                break;
-
-            case TIFFField.TIFF_RATIONAL:
-                final long[][] llvalues = new long[count][2];
-                for (j = 0; j < count; j++) {
-                    llvalues[j][0] = readUnsignedInt(stream);
-                    llvalues[j][1] = readUnsignedInt(stream);
-                }
-                obj = llvalues;
-                break;
+                    while (index < count && bvalues[index++] != 0) {
+                        ;
+                    }
 
-            case TIFFField.TIFF_SSHORT:
-                final short[] svalues = new short[count];
-                for (j = 0; j < count; j++) {
-                    svalues[j] = readShort(stream);
+                    // When we encountered zero, means one string has
+                    // ended
+                    v.add(new String(bvalues, prevIndex, index - prevIndex));
+                    prevIndex = index;
                 }
-                obj = svalues;
-                break;
 
-            case TIFFField.TIFF_SLONG:
-                final int[] ivalues = new int[count];
-                for (j = 0; j < count; j++) {
-                    ivalues[j] = readInt(stream);
-                }
-                obj = ivalues;
-                break;
-
-            case TIFFField.TIFF_SRATIONAL:
-                final int[][] iivalues = new int[count][2];
-                for (j = 0; j < count; j++) {
-                    iivalues[j][0] = readInt(stream);
-                    iivalues[j][1] = readInt(stream);
-                }
-                obj = iivalues;
-                break;
+                count = v.size();
+                final String[] strings = new String[count];
+                v.toArray(strings);
+                obj = strings;
+            } else {
+                obj = bvalues;
+            }
 
-            case TIFFField.TIFF_FLOAT:
-                final float[] fvalues = new float[count];
-                for (j = 0; j < count; j++) {
-                    fvalues[j] = readFloat(stream);
-                }
-                obj = fvalues;
-                break;
+            break;
 
-            case TIFFField.TIFF_DOUBLE:
-                final double[] dvalues = new double[count];
-                for (j = 0; j < count; j++) {
-                    dvalues[j] = readDouble(stream);
-                }
-                obj = dvalues;
-                break;
+        case TIFFField.TIFF_SHORT:
+            final char[] cvalues = new char[count];
+            buf.asCharBuffer().get(cvalues);
+            obj = cvalues;
+            break;
 
-            default:
-                throw new RuntimeException(
-                        PropertyUtil.getString("TIFFDirectory0"));
+        case TIFFField.TIFF_LONG:
+            final long[] lvalues = new long[count];
+            for (j = 0; j < count; j++) {
+                lvalues[j] = buf.getInt() & 0xffffffffL;
             }
-
-            this.fields[i] = new TIFFField(tag, type, count, obj);
-            stream.seek(nextTagOffset);
+            obj = lvalues;
+            break;
+
+        case TIFFField.TIFF_RATIONAL:
+            final long[][] llvalues = new long[count][2];
+            for (j = 0; j < count; j++) {
+                llvalues[j][0] = buf.getInt() & 0xffffffffL;
+                llvalues[j][1] = buf.getInt() & 0xffffffffL;
+            }
+            obj = llvalues;
+            break;
+
+        case TIFFField.TIFF_SSHORT:
+            final short[] svalues = new short[count];
+            buf.asShortBuffer().get(svalues);
+            obj = svalues;
+            break;
+
+        case TIFFField.TIFF_SLONG:
+            final int[] ivalues = new int[count];
+            buf.asIntBuffer().get(ivalues);
+            obj = ivalues;
+            break;
+
+        case TIFFField.TIFF_SRATIONAL:
+            final int[][] iivalues = new int[count][2];
+            for (j = 0; j < count; j++) {
+                iivalues[j][0] = buf.getInt();
+                iivalues[j][1] = buf.getInt();
+            }
+            obj = iivalues;
+            break;
+
+        case TIFFField.TIFF_FLOAT:
+            final float[] fvalues = new float[count];
+            buf.asFloatBuffer().get(fvalues);
+            obj = fvalues;
+            break;
+
+        case TIFFField.TIFF_DOUBLE:
+            final double[] dvalues = new double[count];
+            buf.asDoubleBuffer().get(dvalues);
+            obj = dvalues;
+            break;
+
+        case TIFFField.TIFF_LONG8:
+        case TIFFField.TIFF_SLONG8:
+        case TIFFField.TIFF_IFD8:
+            final long[] l8values = new long[count];
+            buf.asLongBuffer().get(l8values);
+            obj = l8values;
+            break;
+
+        default:
+            throw new RuntimeException(
+                    PropertyUtil.getString("TIFFDirectory0"));
         }
 
-        // Read the offset of the next IFD.
-        this.nextIFDOffset = readUnsignedInt(stream);
+        this.fields[i] = new TIFFField(tag, type, count, obj);
+        if (--this.undecoded == 0) {
+            this.entries = null;
+            this.stream = null;
+        }
+        return this.fields[i];
     }
 
     /** Returns the number of directory entries. */
@@ -386,7 +443,7 @@ public class TIFFDirectory implements Serializable {
         if (i == null) {
             return null;
         } else {
-            return this.fields[i.intValue()];
+            return getEntry(i.intValue());
         }
     }
 
@@ -412,12 +469,22 @@ public class TIFFDirectory implements Serializable {
 
     /**
      * Returns an array of TIFFFields containing all the fields in this
-     * directory.
+     * directory. This reads and decodes the values of all fields, after which
+     * the stream is no longer used.
      */
-    public TIFFField[] getFields() {
+    public synchronized TIFFField[] getFields() {
+        for (final int i : this.fieldIndex.values()) {
+            getEntry(i);
+        }
         return this.fields;
     }
 
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        // The stream does not go along, so all values must be decoded
+        getFields();
+        out.defaultWriteObject();
+    }
+
     /**
      * Returns the value of a particular index of a given tag as a byte. The
      * caller is responsible for ensuring that the tag is present and has type
@@ -425,7 +492,7 @@ public class TIFFDirectory implements Serializable {
      */
     public byte getFieldAsByte(final int tag, final int index) {
         final Integer i = this.fieldIndex.get(tag);
-        final byte[] b = this.fields[i.intValue()].getAsBytes();
+        final byte[] b = getEntry(i.intValue()).getAsBytes();
         return b[index];
     }
 
@@ -442,18 +509,18 @@ public class TIFFDirectory implements Serializable {
      * Returns the value of a particular index of a given tag as a long. The
      * caller is responsible for ensuring that the tag is present and has type
      * TIFF_BYTE, TIFF_SBYTE, TIFF_UNDEFINED, TIFF_SHORT, TIFF_SSHORT,
-     * TIFF_SLONG or TIFF_LONG.
+     * TIFF_SLONG, TIFF_LONG, TIFF_LONG8, TIFF_SLONG8 or TIFF_IFD8.
      */
     public long getFieldAsLong(final int tag, final int index) {
         final Integer i = this.fieldIndex.get(tag);
-        return this.fields[i.intValue()].getAsLong(index);
+        return getEntry(i.intValue()).getAsLong(index);
     }
 
     /**
      * Returns the value of index 0 of a given tag as a long. The caller is
      * responsible for ensuring that the tag is present and has type TIFF_BYTE,
-     * TIFF_SBYTE, TIFF_UNDEFINED, TIFF_SHORT, TIFF_SSHORT, TIFF_SLONG or
-     * TIFF_LONG.
+     * TIFF_SBYTE, TIFF_UNDEFINED, TIFF_SHORT, TIFF_SSHORT, TIFF_SLONG,
+     * TIFF_LONG, TIFF_LONG8, TIFF_SLONG8 or TIFF_IFD8.
      */
     public long getFieldAsLong(final int tag) {
         return getFieldAsLong(tag, 0);
@@ -466,7 +533,7 @@ public class TIFFDirectory implements Serializable {
      */
     public float getFieldAsFloat(final int tag, final int index) {
         final Integer i = this.fieldIndex.get(tag);
-        return this.fields[i.intValue()].getAsFloat(index);
+        return getEntry(i.intValue()).getAsFloat(index);
     }
 
     /**
@@ -485,7 +552,7 @@ public class TIFFDirectory implements Serializable {
      */
     public double getFieldAsDouble(final int tag, final int index) {
         final Integer i = this.fieldIndex.get(tag);
-        return this.fields[i.intValue()].getAsDouble(index);
+        return getEntry(i.intValue()).getAsDouble(index);
     }
 
     /**
@@ -497,113 +564,153 @@ public class TIFFDirectory implements Serializable {
         return getFieldAsDouble(tag, 0);
     }
 
-    // Methods to read primitive data types from the stream
+    // Methods to decode primitive data types
 
-    private short readShort(final SeekableStream stream) throws IOException {
-        if (this.isBigEndian) {
-            return stream.readShort();
+    private static int getUnsignedShort(final byte[] b, final int off,
+            final boolean isBigEndian) {
+        if (isBigEndian) {
+            return (b[off] & 0xff) << 8 | b[off + 1] & 0xff;
         } else {
-            return stream.readShortLE();
+            return (b[off + 1] & 0xff) << 8 | b[off] & 0xff;
         }
     }
 
-    private int readUnsignedShort(final SeekableStream stream)
-            throws IOException {
-        if (this.isBigEndian) {
-            return stream.readUnsignedShort();
+    private static long getUnsignedInt(final byte[] b, final int off,
+            final boolean isBigEndian) {
+        if (isBigEndian) {
+            return ((long) (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16
+                    | (b[off + 2] & 0xff) << 8 | b[off + 3] & 0xff) & 0xffffffffL;
         } else {
-            return stream.readUnsignedShortLE();
+            return ((long) (b[off + 3] & 0xff) << 24
+                    | (b[off + 2] & 0xff) << 16 | (b[off + 1] & 0xff) << 8 | b[off] & 0xff) & 0xffffffffL;
         }
     }
 
-    private int readInt(final SeekableStream stream) throws IOException {
-        if (this.isBigEndian) {
-            return stream.readInt();
-        } else {
-            return stream.readIntLE();
+    /**
+     * Reads an unsigned value of 2, 4 or 8 bytes, such as an entry count or an
+     * offset, which are wider in BigTIFF files.
+     */
+    private static long getOffset(final byte[] b, final int off,
+            final boolean isBigEndian, final int size) {
+        switch (size) {
+        case 2:
+            return getUnsignedShort(b, off, isBigEndian);
+        case 4:
+            return getUnsignedInt(b, off, isBigEndian);
+        default:
+            final long high = getUnsignedInt(b, isBigEndian ? off : off + 4,
+                    isBigEndian);
+            final long low = getUnsignedInt(b, isBigEndian ? off + 4 : off,
+                    isBigEndian);
+            return high << 32 | low;
         }
     }
 
-    private long readUnsignedInt(final SeekableStream stream)
-            throws IOException {
-        if (this.isBigEndian) {
-            return stream.readUnsignedInt();
-        } else {
-            return stream.readUnsignedIntLE();
-        }
-    }
+    // Utilities
 
-    private float readFloat(final SeekableStream stream) throws IOException {
-        if (this.isBigEndian) {
-            return stream.readFloat();
-        } else {
-            return stream.readFloatLE();
-        }
+    private static int getEntrySize(final boolean isBigTIFF) {
+        return isBigTIFF ? 20 : 12;
     }
 
-    private double readDouble(final SeekableStream stream) throws IOException {
-        if (this.isBigEndian) {
-            return stream.readDouble();
-        } else {
-            return stream.readDoubleLE();
+    /**
+     * Reads the TIFF header and returns a combination of the
+     * <code>HEADER_BIG_ENDIAN</code> and <code>HEADER_BIG_TIFF</code> flags.
+     */
+    private static int readHeader(final SeekableStream stream)
+            throws IOException {
+        final byte[] b = new byte[8];
+        stream.readFully(0L, b, 0, 4);
+        final int endian = getUnsignedShort(b, 0, true);
+        if (!isValidEndianTag(endian)) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("TIFFDirectory1"));
         }
+        final boolean isBigEndian = endian == 0x4d4d;
+        final int magic = getUnsignedShort(b, 2, isBigEndian);
+        if (magic == 42) {
+            return isBigEndian ? HEADER_BIG_ENDIAN : 0;
+        }
+        if (magic == 43) {
+            // BigTIFF: the size of offsets, always 8, and a reserved zero
+            stream.readFully(4L, b, 4, 4);
+            if (getUnsignedShort(b, 4, isBigEndian) == 8
+                    && getUnsignedShort(b, 6, isBigEndian) == 0) {
+                return (isBigEndian ? HEADER_BIG_ENDIAN : 0) | HEADER_BIG_TIFF;
+            }
+        }
+        throw new IllegalArgumentException(
+                PropertyUtil.getString("TIFFDirectory2"));
     }
 
-    private static int readUnsignedShort(final SeekableStream stream,
-            final boolean isBigEndian) throws IOException {
-        if (isBigEndian) {
-            return stream.readUnsignedShort();
-        } else {
-            return stream.readUnsignedShortLE();
-        }
+    /**
+     * Returns the offset of the IFD following the one at a given offset.
+     */
+    private static long readNextIFDOffset(final SeekableStream stream,
+            final boolean isBigEndian, final boolean isBigTIFF,
+            final long ifdOffset) throws IOException {
+        final int countSize = isBigTIFF ? 8 : 2;
+        final int offsetSize = isBigTIFF ? 8 : 4;
+        final byte[] b = new byte[8];
+        stream.readFully(ifdOffset, b, 0, countSize);
+        final long entries = getOffset(b, 0, isBigEndian, countSize);
+        stream.readFully(ifdOffset + countSize + getEntrySize(isBigTIFF)
+                * entries, b, 0, offsetSize);
+        return getOffset(b, 0, isBigEndian, offsetSize);
     }
 
-    private static long readUnsignedInt(final SeekableStream stream,
-            final boolean isBigEndian) throws IOException {
-        if (isBigEndian) {
-            return stream.readUnsignedInt();
-        } else {
-            return stream.readUnsignedIntLE();
+    /**
+     * Returns the offset of a public IFD, or 0 if the stream has fewer IFDs.
+     * Only the part of the list of IFDs that has not been walked for this
+     * stream before is read.
+     */
+    private static long getDirectoryOffset(final SeekableStream stream,
+            final boolean isBigEndian, final boolean isBigTIFF,
+            final int directory) throws IOException {
+        DirectoryOffsets offsets;
+        synchronized (DIRECTORY_OFFSETS) {
+            offsets = DIRECTORY_OFFSETS.get(stream);
+            if (offsets == null) {
+                offsets = new DirectoryOffsets();
+                DIRECTORY_OFFSETS.put(stream, offsets);
+            }
+        }
+        synchronized (offsets) {
+            while (offsets.count <= directory && !offsets.complete) {
+                final long next;
+                if (offsets.count == 0) {
+                    // The first offset follows the header, at byte 4 (8)
+                    final int offsetSize = isBigTIFF ? 8 : 4;
+                    final byte[] b = new byte[8];
+                    stream.readFully(offsetSize, b, 0, offsetSize);
+                    next = getOffset(b, 0, isBigEndian, offsetSize);
+                } else {
+                    next = readNextIFDOffset(stream, isBigEndian, isBigTIFF,
+                            offsets.offsets[offsets.count - 1]);
+                }
+                if (next == 0L) {
+                    offsets.complete = true;
+                } else {
+                    offsets.add(next);
+                }
+            }
+            return directory < offsets.count ? offsets.offsets[directory] : 0L;
         }
     }
 
-    // Utilities
-
     /**
      * Returns the number of image directories (subimages) stored in a given
      * TIFF file, represented by a <code>SeekableStream</code>.
      */
     public static int getNumDirectories(final SeekableStream stream)
             throws IOException {
-        final long pointer = stream.getFilePointer(); // Save stream pointer
-
-        stream.seek(0L);
-        final int endian = stream.readUnsignedShort();
-        if (!isValidEndianTag(endian)) {
-            throw new IllegalArgumentException(
-                    PropertyUtil.getString("TIFFDirectory1"));
-        }
-        final boolean isBigEndian = endian == 0x4d4d;
-        final int magic = readUnsignedShort(stream, isBigEndian);
-        if (magic != 42) {
-            throw new IllegalArgumentException(
-                    PropertyUtil.getString("TIFFDirectory2"));
-        }
-
-        stream.seek(4L);
-        long offset = readUnsignedInt(stream, isBigEndian);
-
+        final int header = readHeader(stream);
+        final boolean isBigEndian = (header & HEADER_BIG_ENDIAN) != 0;
+        final boolean isBigTIFF = (header & HEADER_BIG_TIFF) != 0;
         int numDirectories = 0;
-        while (offset != 0L) {
+        while (getDirectoryOffset(stream, isBigEndian, isBigTIFF,
+                numDirectories) != 0L) {
             ++numDirectories;
-
-            stream.seek(offset);
-            final long entries = readUnsignedShort(stream, isBigEndian);
-            stream.skip(12 * entries);
-            offset = readUnsignedInt(stream, isBigEndian);
         }
-
-        stream.seek(pointer); // Reset stream pointer
         return numDirectories;
     }
 
@@ -616,6 +723,14 @@ public class TIFFDirectory implements Serializable {
         return this.isBigEndian;
     }
 
+    /**
+     * Returns a boolean indicating whether the TIFF file is a BigTIFF file,
+     * which uses 64-bit offsets.
+     */
+    public boolean isBigTIFF() {
+        return this.isBigTIFF;
+    }
+
     /**
      * Returns the offset of the IFD corresponding to this
      * <code>TIFFDirectory</code>.
@@ -631,4 +746,19 @@ public class TIFFDirectory implements Serializable {
     public long getNextIFDOffset() {
         return this.nextIFDOffset;
     }
+
+    /** The offsets of the public IFDs of a stream, as far as known. */
+    private static final class DirectoryOffsets {
+
+        private long[] offsets = new long[16];
+        private int count;
+        private boolean complete;
+
+        void add(final long offset) {
+            if (this.count == this.offsets.length) {
+                this.offsets = Arrays.copyOf(this.offsets, 2 * this.count);
+            }
+            this.offsets[this.count++] = offset;
+        }
+    }
 }
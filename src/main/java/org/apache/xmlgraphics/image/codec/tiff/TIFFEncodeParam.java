@@ -20,6 +20,7 @@
 package org.apache.xmlgraphics.image.codec.tiff;
 
 import java.util.Iterator;
+import java.util.concurrent.Executor;
 import java.util.zip.Deflater;
 
 import org.apache.xmlgraphics.image.codec.util.ImageEncodeParam;
@@ -75,11 +76,7 @@ public class TIFFEncodeParam implements ImageEncodeParam {
      */
     public static final int COMPRESSION_GROUP4 = 4;
 
-    /**
-     * LZW compression.
-     * <p>
-     * <b>Not supported.</b>
-     */
+    /** LZW compression. */
     public static final int COMPRESSION_LZW = 5;
 
     /**
@@ -106,6 +103,22 @@ public class TIFFEncodeParam implements ImageEncodeParam {
      */
     public static final int COMPRESSION_DEFLATE = 32946;
 
+    /** No prediction. */
+    public static final int PREDICTOR_NONE = 1;
+
+    /**
+     * Horizontal differencing of the samples of adjacent pixels, for 8- and
+     * 16-bit integer samples.
+     */
+    public static final int PREDICTOR_HORIZONTAL_DIFFERENCING = 2;
+
+    /**
+     * Horizontal differencing of the bytes of 32-bit floating point samples,
+     * after the bytes of each row have been grouped by significance (Adobe
+     * Photoshop TIFF Technical Note 3).
+     */
+    public static final int PREDICTOR_FLOATING_POINT = 3;
+
     private int compression = COMPRESSION_NONE;
 
     private boolean writeTiled = false;
@@ -120,6 +133,14 @@ public class TIFFEncodeParam implements ImageEncodeParam {
 
     private int deflateLevel = Deflater.DEFAULT_COMPRESSION;
 
+    private int predictor = PREDICTOR_NONE;
+
+    private boolean bigTIFF = false;
+
+    private transient Executor compressionExecutor;
+
+    private int compressionWindow;
+
     /**
      * Constructs a TIFFEncodeParam object with default values for all
      * parameters.
@@ -138,7 +159,7 @@ public class TIFFEncodeParam implements ImageEncodeParam {
     /**
      * Specifies the type of compression to be used. The compression type
      * specified will be honored only if it is compatible with the image being
-     * written out. Currently only PackBits, JPEG, and DEFLATE compression
+     * written out. Currently only PackBits, LZW, and DEFLATE compression
      * schemes are supported.
      *
      * <p>
@@ -158,6 +179,7 @@ public class TIFFEncodeParam implements ImageEncodeParam {
         switch (compression) {
         case COMPRESSION_NONE:
         case COMPRESSION_PACKBITS:
+        case COMPRESSION_LZW:
         case COMPRESSION_DEFLATE:
             // Do nothing.
             break;
@@ -196,7 +218,10 @@ public class TIFFEncodeParam implements ImageEncodeParam {
      * If the data are being written as tiles, i.e.,
      * <code>getWriteTiled()</code> returns <code>true</code>, then the default
      * tile dimensions used by the encoder are those of the tiles of the image
-     * being encoded.
+     * being encoded. Tiles of the same size whose grid is aligned with the
+     * bounds of the image are taken from the image with <code>getTile()</code>
+     * without being copied, so an image that computes its tiles on demand is
+     * encoded one tile at a time.
      *
      * <p>
      * If the data are being written as strips, i.e.,
@@ -283,6 +308,30 @@ public class TIFFEncodeParam implements ImageEncodeParam {
         return this.deflateLevel;
     }
 
+    /**
+     * Sets the predictor applied to the data before LZW or DEFLATE
+     * compression, which makes continuous-tone images compress considerably
+     * better. The default setting is <code>PREDICTOR_NONE</code>. This setting
+     * is ignored for other compression types.
+     */
+    public void setPredictor(final int predictor) {
+        if (predictor != PREDICTOR_NONE
+                && predictor != PREDICTOR_HORIZONTAL_DIFFERENCING
+                && predictor != PREDICTOR_FLOATING_POINT) {
+            throw new RuntimeException(
+                    PropertyUtil.getString("TIFFEncodeParam2"));
+        }
+
+        this.predictor = predictor;
+    }
+
+    /**
+     * Gets the predictor applied before LZW or DEFLATE compression.
+     */
+    public int getPredictor() {
+        return this.predictor;
+    }
+
     /**
      * Sets flag indicating whether to convert RGB data to YCbCr when the
      * compression type is JPEG. The default value is <code>true</code>. This
@@ -299,6 +348,74 @@ public class TIFFEncodeParam implements ImageEncodeParam {
         return this.convertJPEGRGBToYCbCr;
     }
 
+    /**
+     * If set, the file is written in the BigTIFF format, which uses 64-bit
+     * offsets and is not limited to 4 GB. The encoder also switches to BigTIFF
+     * on its own when the uncompressed data of the image and its extra images
+     * would not fit into a classic TIFF file. When pages are written one by
+     * one through <code>TIFFImageEncoder.encodeMultiple()</code>, only the
+     * first page is known when the header is written, so BigTIFF must be
+     * requested here for multi-page files that may exceed 4 GB. By default,
+     * classic TIFF is written.
+     *
+     * @param bigTIFF
+     *            Specifies whether the file should be written as BigTIFF.
+     */
+    public void setBigTIFF(final boolean bigTIFF) {
+        this.bigTIFF = bigTIFF;
+    }
+
+    /**
+     * Returns the value of the BigTIFF parameter.
+     */
+    public boolean getBigTIFF() {
+        return this.bigTIFF;
+    }
+
+    /**
+     * Sets the executor on which strips or tiles are compressed. If set, the
+     * strips or tiles of an image are compressed concurrently and written in
+     * order as they complete; otherwise they are compressed one after another
+     * on the calling thread. The executor is not used for uncompressed data.
+     * By default, no executor is set.
+     *
+     * @param compressionExecutor
+     *            the executor or <code>null</code> to compress on the calling
+     *            thread.
+     */
+    public void setCompressionExecutor(final Executor compressionExecutor) {
+        this.compressionExecutor = compressionExecutor;
+    }
+
+    /**
+     * Returns the executor set via <code>setCompressionExecutor()</code>.
+     */
+    public Executor getCompressionExecutor() {
+        return this.compressionExecutor;
+    }
+
+    /**
+     * Sets the maximum number of strips or tiles that are being compressed on
+     * the compression executor at the same time, which bounds the memory used
+     * for their data. If not positive, twice the number of available
+     * processors is used, which is the default.
+     *
+     * @param compressionWindow
+     *            the maximum number of strips or tiles in flight.
+     */
+    public void setCompressionWindow(final int compressionWindow) {
+        this.compressionWindow = compressionWindow;
+    }
+
+    /**
+     * Returns the maximum number of strips or tiles that are being compressed
+     * at the same time.
+     */
+    public int getCompressionWindow() {
+        return this.compressionWindow > 0 ? this.compressionWindow : 2 * Runtime
+                .getRuntime().availableProcessors();
+    }
+
     /**
      * Sets an array of extra fields to be written to the TIFF Image File
      * Directory (IFD). Fields with tags equal to the tag of any automatically
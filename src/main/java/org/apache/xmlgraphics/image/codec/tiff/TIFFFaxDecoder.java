@@ -19,6 +19,8 @@
 
 package org.apache.xmlgraphics.image.codec.tiff;
 
+import java.util.Arrays;
+
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 
 // CSOFF: InnerAssignment
@@ -28,8 +30,14 @@ import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 
 class TIFFFaxDecoder {
 
-    private int bitPointer, bytePointer;
     private byte[] data;
+    private int dataLength;
+
+    // Bit reservoir: 64 bits of data starting at the byte aligned bit
+    // position reservoirStart, and the position of the next bit to read.
+    private long reservoir;
+    private int reservoirStart;
+    private int bitPos;
     private final int w;
     private final int fillOrder;
 
@@ -49,29 +57,6 @@ class TIFFFaxDecoder {
     private int fillBits = 0;
     private int oneD;
 
-    static int[] table1 = { 0x00, // 0 bits are left in first byte - SHOULD NOT
-        // HAPPEN
-        0x01, // 1 bits are left in first byte
-        0x03, // 2 bits are left in first byte
-        0x07, // 3 bits are left in first byte
-        0x0f, // 4 bits are left in first byte
-        0x1f, // 5 bits are left in first byte
-        0x3f, // 6 bits are left in first byte
-        0x7f, // 7 bits are left in first byte
-        0xff // 8 bits are left in first byte
-    };
-
-    static int[] table2 = { 0x00, // 0
-        0x80, // 1
-        0xc0, // 2
-        0xe0, // 3
-        0xf0, // 4
-        0xf8, // 5
-        0xfc, // 6
-        0xfe, // 7
-        0xff // 8
-    };
-
     // Table to be used when fillOrder = 2, for flipping bytes.
     static byte[] flipTable = { 0, -128, 64, -64, 32, -96, 96, -32, 16, -112,
         80, -48, 48, -80, 112, -16, 8, -120, 72, -56, 40, -88, 104, -24,
@@ -544,8 +529,6 @@ class TIFFFaxDecoder {
     public TIFFFaxDecoder(final int fillOrder, final int w, final int h) {
         this.fillOrder = fillOrder;
         this.w = w;
-        this.bitPointer = 0;
-        this.bytePointer = 0;
         this.prevChangingElems = new int[w];
         this.currChangingElems = new int[w];
     }
@@ -554,14 +537,20 @@ class TIFFFaxDecoder {
 
     public void decode1D(final byte[] buffer, final byte[] compData,
             final int startX, final int height) {
-        this.data = compData;
+        decode1D(buffer, compData, compData.length, startX, height);
+    }
+
+    /**
+     * Decodes one-dimensional data held in the first
+     * <code>compDataLength</code> bytes of <code>compData</code>.
+     */
+    public void decode1D(final byte[] buffer, final byte[] compData,
+            final int compDataLength, final int startX, final int height) {
+        setData(compData, compDataLength);
 
         int lineOffset = 0;
         final int scanlineStride = (this.w + 7) / 8;
 
-        this.bitPointer = 0;
-        this.bytePointer = 0;
-
         for (int i = 0; i < height; ++i) {
             decodeNextScanline(buffer, lineOffset, startX);
             lineOffset += scanlineStride;
@@ -582,7 +571,7 @@ class TIFFFaxDecoder {
         while (bitOffset < this.w) {
             while (isWhite) {
                 // White run
-                current = nextNBits(10);
+                current = nextBits(10);
                 entry = white[current];
 
                 // Get the 3 fields from the entry
@@ -591,7 +580,7 @@ class TIFFFaxDecoder {
 
         if (bits == 12) { // Additional Make up code
             // Get the next 2 bits
-            twoBits = nextLesserThan8Bits(2);
+            twoBits = nextBits(2);
             // Consolidate the 2 new bits and last 2 bits into 4 bits
             current = current << 2 & 0x000c | twoBits;
             entry = additionalMakeup[current];
@@ -630,7 +619,7 @@ class TIFFFaxDecoder {
 
             while (!isWhite) {
                 // Black run
-                current = nextLesserThan8Bits(4);
+                current = nextBits(4);
                 entry = initBlack[current];
 
                 // Get the 3 fields from the entry
@@ -639,7 +628,7 @@ class TIFFFaxDecoder {
                 code = entry >>> 5 & 0x07ff;
 
                 if (code == 100) {
-                    current = nextNBits(9);
+                    current = nextBits(9);
                     entry = black[current];
 
                     // Get the 3 fields from the entry
@@ -650,7 +639,7 @@ class TIFFFaxDecoder {
                     if (bits == 12) {
                         // Additional makeup codes
                         updatePointer(5);
-                        current = nextLesserThan8Bits(4);
+                        current = nextBits(4);
                         entry = additionalMakeup[current];
                         bits = entry >>> 1 & 0x07; // 3 bits 0000 0111
                         code = entry >>> 4 & 0x0fff; // 12 bits
@@ -675,7 +664,7 @@ class TIFFFaxDecoder {
                     }
                 } else if (code == 200) {
                     // Is a Terminating code
-                    current = nextLesserThan8Bits(2);
+                    current = nextBits(2);
                     entry = twoBitBlack[current];
                     code = entry >>> 5 & 0x07ff;
                     bits = entry >>> 1 & 0x0f;
@@ -713,11 +702,19 @@ class TIFFFaxDecoder {
 
     public void decode2D(final byte[] buffer, final byte[] compData,
             final int startX, final int height, final long tiffT4Options) {
-        this.data = compData;
-        this.compression = 3;
+        decode2D(buffer, compData, compData.length, startX, height,
+                tiffT4Options);
+    }
 
-        this.bitPointer = 0;
-        this.bytePointer = 0;
+    /**
+     * Decodes two-dimensional data held in the first
+     * <code>compDataLength</code> bytes of <code>compData</code>.
+     */
+    public void decode2D(final byte[] buffer, final byte[] compData,
+            final int compDataLength, final int startX, final int height,
+            final long tiffT4Options) {
+        setData(compData, compDataLength);
+        this.compression = 3;
 
         final int scanlineStride = (this.w + 7) / 8;
 
@@ -780,7 +777,7 @@ class TIFFFaxDecoder {
                     b2 = b[1];
 
                     // Get the next seven bits
-                    entry = nextLesserThan8Bits(7);
+                    entry = nextBits(7);
 
                     // Run these through the 2DCodes table
                     entry = twoDCodes[entry] & 0xff;
@@ -860,14 +857,22 @@ class TIFFFaxDecoder {
         }
     }
 
-    public synchronized void decodeT6(final byte[] buffer,
+    public void decodeT6(final byte[] buffer,
             final byte[] compData, final int startX, final int height,
             final long tiffT6Options) {
-        this.data = compData;
-        this.compression = 4;
+        decodeT6(buffer, compData, compData.length, startX, height,
+                tiffT6Options);
+    }
 
-        this.bitPointer = 0;
-        this.bytePointer = 0;
+    /**
+     * Decodes T.6 data held in the first <code>compDataLength</code> bytes
+     * of <code>compData</code>.
+     */
+    public void decodeT6(final byte[] buffer, final byte[] compData,
+            final int compDataLength, final int startX, final int height,
+            final long tiffT6Options) {
+        setData(compData, compDataLength);
+        this.compression = 4;
 
         final int scanlineStride = (this.w + 7) / 8;
 
@@ -925,7 +930,7 @@ class TIFFFaxDecoder {
                 b2 = b[1];
 
                 // Get the next seven bits
-                entry = nextLesserThan8Bits(7);
+                entry = nextBits(7);
                 // Run these through the 2DCodes table
                 entry = twoDCodes[entry] & 0xff;
 
@@ -987,7 +992,7 @@ class TIFFFaxDecoder {
 
             updatePointer(7 - bits);
         } else if (code == 11) {
-            if (nextLesserThan8Bits(3) != 7) {
+            if (nextBits(3) != 7) {
                 throw new RuntimeException(
                         PropertyUtil.getString("TIFFFaxDecoder5"));
             }
@@ -996,7 +1001,7 @@ class TIFFFaxDecoder {
             boolean exit = false;
 
             while (!exit) {
-                while (nextLesserThan8Bits(1) != 1) {
+                while (nextBits(1) != 1) {
                     zeros++;
                 }
 
@@ -1019,7 +1024,7 @@ class TIFFFaxDecoder {
 
                     // Read in the bit which specifies the color of
                     // the following run
-                    if (nextLesserThan8Bits(1) == 0) {
+                    if (nextBits(1) == 0) {
                         if (!isWhite) {
                             cce[currIndex++] = bitOffset;
                         }
@@ -1073,36 +1078,24 @@ class TIFFFaxDecoder {
 
     private void setToBlack(final byte[] buffer, final int lineOffset,
             final int bitOffset, final int numBits) {
-        int bitNum = 8 * lineOffset + bitOffset;
-        final int lastBit = bitNum + numBits;
-
-        int byteNum = bitNum >> 3;
-
-        // Handle bits in first byte
-        final int shift = bitNum & 0x7;
-        if (shift > 0) {
-            int maskVal = 1 << 7 - shift;
-            byte val = buffer[byteNum];
-            while (maskVal > 0 && bitNum < lastBit) {
-                val |= maskVal;
-                maskVal >>= 1;
-            ++bitNum;
-            }
-            buffer[byteNum] = val;
+        if (numBits <= 0) {
+            return;
         }
+        final int bitNum = 8 * lineOffset + bitOffset;
+        final int lastBit = bitNum + numBits;
 
-        // Fill in 8 bits at a time
-        byteNum = bitNum >> 3;
-        while (bitNum < lastBit - 7) {
-            buffer[byteNum++] = (byte) 255;
-            bitNum += 8;
-        }
+        final int firstByte = bitNum >> 3;
+        final int lastByte = lastBit - 1 >> 3;
+        final int firstMask = 0xff >>> (bitNum & 0x7);
+        final int lastMask = 0xff << 7 - (lastBit - 1 & 0x7);
 
-        // Fill in remaining bits
-        while (bitNum < lastBit) {
-            byteNum = bitNum >> 3;
-        buffer[byteNum] |= 1 << 7 - (bitNum & 0x7);
-        ++bitNum;
+        if (firstByte == lastByte) {
+            buffer[firstByte] |= firstMask & lastMask;
+        } else {
+            // Partial bytes at both ends, whole bytes in between
+            buffer[firstByte] |= firstMask;
+            Arrays.fill(buffer, firstByte + 1, lastByte, (byte) 0xff);
+            buffer[lastByte] |= lastMask;
         }
     }
 
@@ -1113,7 +1106,7 @@ class TIFFFaxDecoder {
         boolean isWhite = true;
 
         while (isWhite) {
-            current = nextNBits(10);
+            current = nextBits(10);
             entry = white[current];
 
             // Get the 3 fields from the entry
@@ -1122,7 +1115,7 @@ class TIFFFaxDecoder {
 
         if (bits == 12) { // Additional Make up code
             // Get the next 2 bits
-            twoBits = nextLesserThan8Bits(2);
+            twoBits = nextBits(2);
             // Consolidate the 2 new bits and last 2 bits into 4 bits
             current = current << 2 & 0x000c | twoBits;
             entry = additionalMakeup[current];
@@ -1157,7 +1150,7 @@ class TIFFFaxDecoder {
         boolean isWhite = false;
 
         while (!isWhite) {
-            current = nextLesserThan8Bits(4);
+            current = nextBits(4);
             entry = initBlack[current];
 
             // Get the 3 fields from the entry
@@ -1166,7 +1159,7 @@ class TIFFFaxDecoder {
             code = entry >>> 5 & 0x07ff;
 
             if (code == 100) {
-                current = nextNBits(9);
+                current = nextBits(9);
                 entry = black[current];
 
                 // Get the 3 fields from the entry
@@ -1177,7 +1170,7 @@ class TIFFFaxDecoder {
                 if (bits == 12) {
                     // Additional makeup codes
                     updatePointer(5);
-                    current = nextLesserThan8Bits(4);
+                    current = nextBits(4);
                     entry = additionalMakeup[current];
                     bits = entry >>> 1 & 0x07; // 3 bits 0000 0111
                     code = entry >>> 4 & 0x0fff; // 12 bits
@@ -1197,7 +1190,7 @@ class TIFFFaxDecoder {
                 }
             } else if (code == 200) {
                 // Is a Terminating code
-                current = nextLesserThan8Bits(2);
+                current = nextBits(2);
                 entry = twoBitBlack[current];
                 code = entry >>> 5 & 0x07ff;
                 runLength += code;
@@ -1217,7 +1210,7 @@ class TIFFFaxDecoder {
 
     private int readEOL() {
         if (this.fillBits == 0) {
-            if (nextNBits(12) != 1) {
+            if (nextBits(12) != 1) {
                 throw new RuntimeException(
                         PropertyUtil.getString("TIFFFaxDecoder6"));
             }
@@ -1227,9 +1220,9 @@ class TIFFFaxDecoder {
             // As many fill bits will be present as required to make
             // the EOL code of 12 bits end on a byte boundary.
 
-            final int bitsLeft = 8 - this.bitPointer;
+            final int bitsLeft = 8 - (this.bitPos & 7);
 
-            if (nextNBits(bitsLeft) != 0) {
+            if (nextBits(bitsLeft) != 0) {
                 throw new RuntimeException(
                         PropertyUtil.getString("TIFFFaxDecoder8"));
             }
@@ -1239,7 +1232,7 @@ class TIFFFaxDecoder {
             // required. The first of them has to be all zeros, so ensure
             // that.
             if (bitsLeft < 4) {
-                if (nextNBits(8) != 0) {
+                if (nextBits(8) != 0) {
                     throw new RuntimeException(
                             PropertyUtil.getString("TIFFFaxDecoder8"));
                 }
@@ -1249,7 +1242,7 @@ class TIFFFaxDecoder {
             // loop till the EOL of 0000 0001 is found, as long as all
             // the bytes preceding it are 0's.
             int n;
-            while ((n = nextNBits(8)) != 1) {
+            while ((n = nextBits(8)) != 1) {
 
                 // If not all zeros
                 if (n != 0) {
@@ -1265,7 +1258,7 @@ class TIFFFaxDecoder {
         } else {
             // Otherwise for 2D encoding mode,
             // The next one bit signifies 1D/2D encoding of next line.
-            return nextLesserThan8Bits(1);
+            return nextBits(1);
         }
     }
 
@@ -1301,142 +1294,60 @@ class TIFFFaxDecoder {
         }
     }
 
-    private int nextNBits(final int bitsToGet) {
-        byte b, next, next2next;
-        final int l = this.data.length - 1;
-        final int bp = this.bytePointer;
-
-        if (this.fillOrder == 1) {
-            b = this.data[bp];
-
-            if (bp == l) {
-                next = 0x00;
-                next2next = 0x00;
-            } else if (bp + 1 == l) {
-                next = this.data[bp + 1];
-                next2next = 0x00;
-            } else {
-                next = this.data[bp + 1];
-                next2next = this.data[bp + 2];
-            }
-        } else if (this.fillOrder == 2) {
-            b = flipTable[this.data[bp] & 0xff];
-
-            if (bp == l) {
-                next = 0x00;
-                next2next = 0x00;
-            } else if (bp + 1 == l) {
-                next = flipTable[this.data[bp + 1] & 0xff];
-                next2next = 0x00;
-            } else {
-                next = flipTable[this.data[bp + 1] & 0xff];
-                next2next = flipTable[this.data[bp + 2] & 0xff];
-            }
-        } else {
+    private void setData(final byte[] compData, final int compDataLength) {
+        if (this.fillOrder != 1 && this.fillOrder != 2) {
             throw new RuntimeException(
                     PropertyUtil.getString("TIFFFaxDecoder7"));
         }
-
-        final int bitsLeft = 8 - this.bitPointer;
-        int bitsFromNextByte = bitsToGet - bitsLeft;
-        int bitsFromNext2NextByte = 0;
-        if (bitsFromNextByte > 8) {
-            bitsFromNext2NextByte = bitsFromNextByte - 8;
-            bitsFromNextByte = 8;
-        }
-
-        this.bytePointer++;
-
-        final int i1 = (b & table1[bitsLeft]) << bitsToGet - bitsLeft;
-        int i2 = (next & table2[bitsFromNextByte]) >>> 8 - bitsFromNextByte;
-
-        int i3 = 0;
-        if (bitsFromNext2NextByte != 0) {
-            i2 <<= bitsFromNext2NextByte;
-            i3 = (next2next & table2[bitsFromNext2NextByte]) >>> 8 - bitsFromNext2NextByte;
-            i2 |= i3;
-            this.bytePointer++;
-            this.bitPointer = bitsFromNext2NextByte;
-        } else {
-            if (bitsFromNextByte == 8) {
-                this.bitPointer = 0;
-                this.bytePointer++;
-            } else {
-                this.bitPointer = bitsFromNextByte;
-            }
-        }
-
-        final int i = i1 | i2;
-        return i;
+        this.data = compData;
+        this.dataLength = compDataLength;
+        this.bitPos = 0;
+        fillReservoir();
     }
 
-    private int nextLesserThan8Bits(final int bitsToGet) {
-        byte b, next;
-        final int l = this.data.length - 1;
-        final int bp = this.bytePointer;
-
+    // Loads the 8 bytes starting at the byte holding the next bit to read,
+    // reversing their bits if the fill order is 2. Bytes past the end of the
+    // data read as 0, but reading starting past the end is an error.
+    private void fillReservoir() {
+        final byte[] d = this.data;
+        final int start = this.bitPos >> 3;
+        if (start >= this.dataLength) {
+            throw new ArrayIndexOutOfBoundsException(start);
+        }
+        final int end = Math.min(start + 8, this.dataLength);
+        long r = 0;
         if (this.fillOrder == 1) {
-            b = this.data[bp];
-            if (bp == l) {
-                next = 0x00;
-            } else {
-                next = this.data[bp + 1];
-            }
-        } else if (this.fillOrder == 2) {
-            b = flipTable[this.data[bp] & 0xff];
-            if (bp == l) {
-                next = 0x00;
-            } else {
-                next = flipTable[this.data[bp + 1] & 0xff];
+            for (int i = start; i < end; i++) {
+                r = r << 8 | d[i] & 0xff;
             }
         } else {
-            throw new RuntimeException(
-                    PropertyUtil.getString("TIFFFaxDecoder7"));
-        }
-
-        final int bitsLeft = 8 - this.bitPointer;
-        final int bitsFromNextByte = bitsToGet - bitsLeft;
-
-        final int shift = bitsLeft - bitsToGet;
-        int i1, i2;
-        if (shift >= 0) {
-            i1 = (b & table1[bitsLeft]) >>> shift;
-            this.bitPointer += bitsToGet;
-            if (this.bitPointer == 8) {
-                this.bitPointer = 0;
-                this.bytePointer++;
+            for (int i = start; i < end; i++) {
+                r = r << 8 | flipTable[d[i] & 0xff] & 0xff;
             }
-        } else {
-            i1 = (b & table1[bitsLeft]) << -shift;
-            i2 = (next & table2[bitsFromNextByte]) >>> 8 - bitsFromNextByte;
-
-            i1 |= i2;
-            this.bytePointer++;
-            this.bitPointer = bitsFromNextByte;
         }
+        this.reservoir = r << (8 - (end - start) << 3);
+        this.reservoirStart = start << 3;
+    }
 
-        return i1;
+    // Returns the next bitsToGet (at most 32) bits and moves past them
+    private int nextBits(final int bitsToGet) {
+        int off = this.bitPos - this.reservoirStart;
+        if (off < 0 || off + bitsToGet > 64) {
+            fillReservoir();
+            off = this.bitPos - this.reservoirStart;
+        }
+        this.bitPos += bitsToGet;
+        return (int) (this.reservoir << off >>> 64 - bitsToGet);
     }
 
     // Move pointer backwards by given amount of bits
     private void updatePointer(final int bitsToMoveBack) {
-        final int i = this.bitPointer - bitsToMoveBack;
-
-        if (i < 0) {
-            this.bytePointer--;
-            this.bitPointer = 8 + i;
-        } else {
-            this.bitPointer = i;
-        }
+        this.bitPos -= bitsToMoveBack;
     }
 
     // Move to the next byte boundary
     private boolean advancePointer() {
-        if (this.bitPointer != 0) {
-            this.bytePointer++;
-            this.bitPointer = 0;
-        }
-
+        this.bitPos = this.bitPos + 7 & ~7;
         return true;
     }
 }
@@ -85,6 +85,15 @@ public class TIFFField implements Comparable<TIFFField>, Serializable {
     /** Flag for 64 bit IEEE doubles. */
     public static final int TIFF_DOUBLE = 12;
 
+    /** Flag for 64 bit unsigned integers (BigTIFF). */
+    public static final int TIFF_LONG8 = 16;
+
+    /** Flag for 64 bit signed integers (BigTIFF). */
+    public static final int TIFF_SLONG8 = 17;
+
+    /** Flag for 64 bit IFD offsets (BigTIFF). */
+    public static final int TIFF_IFD8 = 18;
+
     /** The tag number. */
     int tag;
 
@@ -147,6 +156,9 @@ public class TIFFField implements Comparable<TIFFField>, Serializable {
      * <tr>
      * <td><tt>TIFF_DOUBLE</tt></td>
      * <td><tt>double</tt></td>
+     * <tr>
+     * <td><tt>TIFF_LONG8</tt>, <tt>TIFF_SLONG8</tt>, <tt>TIFF_IFD8</tt></td>
+     * <td><tt>long</tt></td>
      * </table>
      */
     public TIFFField(final int tag, final int type, final int count,
@@ -231,7 +243,8 @@ public class TIFFField implements Comparable<TIFFField>, Serializable {
     }
 
     /**
-     * Returns TIFF_LONG data as an array of longs (signed 64-bit integers).
+     * Returns TIFF_LONG, TIFF_LONG8, TIFF_SLONG8 or TIFF_IFD8 data as an array
+     * of longs (signed 64-bit integers).
      *
      * <p>
      * A ClassCastException will be thrown if the field is not of type
@@ -331,7 +344,7 @@ public class TIFFField implements Comparable<TIFFField>, Serializable {
      * <p>
      * A ClassCastException will be thrown if the field is not of type
      * TIFF_BYTE, TIFF_SBYTE, TIFF_UNDEFINED, TIFF_SHORT, TIFF_SSHORT,
-     * TIFF_SLONG, or TIFF_LONG.
+     * TIFF_SLONG, TIFF_LONG, TIFF_LONG8, TIFF_SLONG8 or TIFF_IFD8.
      */
     public long getAsLong(final int index) {
         switch (this.type) {
@@ -347,6 +360,9 @@ public class TIFFField implements Comparable<TIFFField>, Serializable {
         case TIFF_SLONG:
             return ((int[]) this.data)[index];
         case TIFF_LONG:
+        case TIFF_LONG8:
+        case TIFF_SLONG8:
+        case TIFF_IFD8:
             return ((long[]) this.data)[index];
         default:
             throw new ClassCastException();
@@ -377,6 +393,9 @@ public class TIFFField implements Comparable<TIFFField>, Serializable {
         case TIFF_SLONG:
             return ((int[]) this.data)[index];
         case TIFF_LONG:
+        case TIFF_LONG8:
+        case TIFF_SLONG8:
+        case TIFF_IFD8:
             return ((long[]) this.data)[index];
         case TIFF_FLOAT:
             return ((float[]) this.data)[index];
@@ -415,6 +434,9 @@ public class TIFFField implements Comparable<TIFFField>, Serializable {
         case TIFF_SLONG:
             return ((int[]) this.data)[index];
         case TIFF_LONG:
+        case TIFF_LONG8:
+        case TIFF_SLONG8:
+        case TIFF_IFD8:
             return ((long[]) this.data)[index];
         case TIFF_FLOAT:
             return ((float[]) this.data)[index];
@@ -26,6 +26,7 @@ import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferFloat;
 import java.awt.image.DataBufferInt;
 import java.awt.image.DataBufferShort;
 import java.awt.image.DataBufferUShort;
@@ -36,17 +37,31 @@ import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 import lombok.extern.slf4j.Slf4j;
 
+import org.apache.xmlgraphics.image.BufferPool;
+import org.apache.xmlgraphics.image.GraphicsUtil;
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.rendered.AbstractRed;
 import org.apache.xmlgraphics.image.rendered.CachableRed;
+import org.apache.xmlgraphics.image.rendered.TileCache;
 
 // CSOFF: LocalVariableName
 // CSOFF: MissingSwitchDefault
@@ -99,11 +114,16 @@ public class TIFFImage extends AbstractRed {
     long tiffT6Options;
     int fillOrder;
 
-    // LZW compression related variable
-    int predictor;
+    // LZW and DEFLATE predictor related variables
+    int predictor = 1;
+    int samplesPerPixel;
 
-    // DEFLATE variables
-    Inflater inflater = null;
+    // DEFLATE variables: inflaters are borrowed for each tile, and at most
+    // MAX_IDLE_INFLATERS are kept between tiles
+    private static final int MAX_IDLE_INFLATERS = Runtime.getRuntime()
+            .availableProcessors();
+    private final Deque<Inflater> inflaters = new ArrayDeque<>();
+    private boolean disposed = false;
 
     // Endian-ness indicator
     boolean isBigEndian;
@@ -115,24 +135,168 @@ public class TIFFImage extends AbstractRed {
     boolean decodePaletteAsShorts;
     boolean tiled;
 
-    // Decoders
-    private TIFFFaxDecoder decoder = null;
-    private TIFFLZWDecoder lzwDecoder = null;
+    // Decoders, one instance per decoding thread as they are stateful
+    private ThreadLocal<TIFFFaxDecoder> decoder = null;
+    private ThreadLocal<TIFFLZWDecoder> lzwDecoder = null;
+
+    // Lookups of the tile cache in progress, by tile index, so that a tile
+    // missing from the cache is decoded by one thread while the others wait
+    private final ConcurrentMap<Integer, FutureTask<Raster>> cachingTiles = new ConcurrentHashMap<>();
 
     /**
-     * Inflates <code>deflated</code> into <code>inflated</code> using the
-     * <code>Inflater</code> constructed during class instantiation.
+     * Inflates the first <code>length</code> bytes of <code>deflated</code>
+     * into <code>inflated</code> using an <code>Inflater</code> borrowed for
+     * the call, and reverses the predictor if one was applied.
      */
-    private void inflate(final byte[] deflated, final byte[] inflated) {
-        this.inflater.setInput(deflated);
+    private void inflate(final byte[] deflated, final int length,
+            final byte[] inflated) {
+        Inflater inf;
+        synchronized (this.inflaters) {
+            inf = this.inflaters.pollFirst();
+        }
+        if (inf == null) {
+            inf = new Inflater();
+        }
+        inf.setInput(deflated, 0, length);
         try {
-            this.inflater.inflate(inflated);
+            inf.inflate(inflated);
         } catch (final DataFormatException dfe) {
             log.error("DataFormatException", dfe);
             throw new RuntimeException(PropertyUtil.getString("TIFFImage17")
                     + ": " + dfe.getMessage());
+        } finally {
+            inf.reset();
+            releaseInflater(inf);
+        }
+        undoPredictor(inflated);
+    }
+
+    /**
+     * Decodes the first <code>length</code> bytes of LZW compressed
+     * <code>data</code>, of <code>rows</code> rows, into
+     * <code>uncompData</code>, and reverses the predictor if one was applied.
+     */
+    private void decodeLZW(final byte[] data, final int length,
+            final byte[] uncompData, final int rows) {
+        getLZWDecoder().decode(data, length, uncompData, rows);
+        undoPredictor(uncompData);
+    }
+
+    /**
+     * Reverses the predictor applied to the rows of decompressed data. The
+     * horizontal differencing predictor is reversed on 8 or 16-bit samples
+     * in the byte order of the file. The floating point predictor is
+     * reversed on 32-bit samples, whose bytes are regrouped by significance
+     * in each row whatever the byte order of the file.
+     */
+    private void undoPredictor(final byte[] data) {
+        if (this.predictor == 1) {
+            return;
+        }
+        final int bytesPerSample = this.sampleSize / 8;
+        final int bytesPerRow = this.tileWidth * this.samplesPerPixel
+                * bytesPerSample;
+        final byte[] tmp = this.predictor == 3 ? new byte[bytesPerRow] : null;
+        for (int row = 0; row + bytesPerRow <= data.length; row += bytesPerRow) {
+            final int end = row + bytesPerRow;
+            if (this.predictor == 3) {
+                final int samplesPerRow = bytesPerRow / 4;
+                for (int i = this.samplesPerPixel; i < bytesPerRow; i++) {
+                    data[row + i] += data[row + i - this.samplesPerPixel];
+                }
+                System.arraycopy(data, row, tmp, 0, bytesPerRow);
+                for (int i = 0; i < samplesPerRow; i++) {
+                    for (int b = 0; b < 4; b++) {
+                        data[row + 4 * i + (this.isBigEndian ? b : 3 - b)] = tmp[b
+                                * samplesPerRow + i];
+                    }
+                }
+            } else if (bytesPerSample == 1) {
+                final int stride = this.samplesPerPixel;
+                for (int i = row + stride; i < end; i++) {
+                    data[i] += data[i - stride];
+                }
+            } else {
+                final int stride = 2 * this.samplesPerPixel;
+                final int hi = this.isBigEndian ? 0 : 1;
+                final int lo = 1 - hi;
+                for (int i = row + stride; i < end; i += 2) {
+                    final int sum = ((data[i + hi] & 0xff) << 8 | data[i + lo] & 0xff)
+                            + ((data[i - stride + hi] & 0xff) << 8 | data[i - stride + lo] & 0xff);
+                    data[i + hi] = (byte) (sum >> 8);
+                    data[i + lo] = (byte) sum;
+                }
+            }
         }
-        this.inflater.reset();
+    }
+
+    /**
+     * Keeps an inflater for later tiles, or ends it if enough are kept or the
+     * image has been disposed of.
+     */
+    private void releaseInflater(final Inflater inf) {
+        synchronized (this.inflaters) {
+            if (!this.disposed && this.inflaters.size() < MAX_IDLE_INFLATERS) {
+                this.inflaters.addFirst(inf);
+                return;
+            }
+        }
+        inf.end();
+    }
+
+    /**
+     * Releases the native memory held by the decompressors kept between
+     * tiles. The image may still be used afterwards, but decompressors will
+     * no longer be kept between tiles. Images that are never disposed of
+     * release it once they are garbage collected.
+     */
+    public void dispose() {
+        synchronized (this.inflaters) {
+            this.disposed = true;
+            for (final Inflater inf : this.inflaters) {
+                inf.end();
+            }
+            this.inflaters.clear();
+        }
+    }
+
+    /**
+     * Reads the predictor applied before LZW or DEFLATE compression.
+     */
+    private void readPredictor(final TIFFDirectory dir) {
+        final TIFFField predictorField = dir
+                .getField(TIFFImageDecoder.TIFF_PREDICTOR);
+
+        if (predictorField != null) {
+            this.predictor = predictorField.getAsInt(0);
+
+            if (this.predictor != 1 && this.predictor != 2
+                    && this.predictor != 3) {
+                throw new RuntimeException(
+                        PropertyUtil.getString("TIFFImage8"));
+            }
+
+            if (this.predictor == 2 && this.sampleSize != 8
+                    && this.sampleSize != 16) {
+                throw new RuntimeException(
+                        PropertyUtil.getString("TIFFImage9"));
+            }
+
+            if (this.predictor == 3 && this.dataType != DataBuffer.TYPE_FLOAT) {
+                throw new RuntimeException(
+                        PropertyUtil.getString("TIFFImage21"));
+            }
+        }
+    }
+
+    /** Returns the Fax decoder of the current thread. */
+    private TIFFFaxDecoder getFaxDecoder() {
+        return this.decoder.get();
+    }
+
+    /** Returns the LZW decoder of the current thread. */
+    private TIFFLZWDecoder getLZWDecoder() {
+        return this.lzwDecoder.get();
     }
 
     private static SampleModel createPixelInterleavedSampleModel(
@@ -147,7 +311,8 @@ public class TIFFImage extends AbstractRed {
     }
 
     /**
-     * Return as a long[] the value of a TIFF_LONG or TIFF_SHORT field.
+     * Return as a long[] the value of a TIFF_LONG8, TIFF_LONG or TIFF_SHORT
+     * field.
      */
     private long[] getFieldAsLongs(final TIFFField field) {
         long[] value = null;
@@ -158,7 +323,8 @@ public class TIFFImage extends AbstractRed {
             for (int i = 0; i < charValue.length; ++i) {
                 value[i] = charValue[i] & 0xffff;
             }
-        } else if (field.getType() == TIFFField.TIFF_LONG) {
+        } else if (field.getType() == TIFFField.TIFF_LONG
+                || field.getType() == TIFFField.TIFF_LONG8) {
             value = field.getAsLongs();
         } else {
             throw new RuntimeException(PropertyUtil.getString("TIFFImage18")
@@ -193,6 +359,10 @@ public class TIFFImage extends AbstractRed {
         }
 
         this.decodePaletteAsShorts = param.getDecodePaletteAsShorts();
+        if (param.getUseTileCache()) {
+            setTileCache(param.getTileCache() != null ? param.getTileCache()
+                    : TileCache.getDefault());
+        }
 
         // Read the specified directory.
         final TIFFDirectory dir = param.getIFDOffset() == null ? new TIFFDirectory(
@@ -204,6 +374,7 @@ public class TIFFImage extends AbstractRed {
                 .getField(TIFFImageDecoder.TIFF_SAMPLES_PER_PIXEL);
         final int samplesPerPixel = sfield == null ? 1 : (int) sfield
                 .getAsLong(0);
+        this.samplesPerPixel = samplesPerPixel;
 
         // Read the TIFF_PLANAR_CONFIGURATION field
         final TIFFField planarConfigurationField = dir
@@ -276,12 +447,9 @@ public class TIFFImage extends AbstractRed {
                     }
                     break;
                 case 32:
-                    if (sampleFormat[0] == 3) {
-                        isValidDataFormat = false;
-                    } else {
-                        this.dataType = DataBuffer.TYPE_INT;
-                        isValidDataFormat = true;
-                    }
+                    this.dataType = sampleFormat[0] == 3 ? DataBuffer.TYPE_FLOAT
+                            : DataBuffer.TYPE_INT;
+                    isValidDataFormat = true;
                     break;
         }
 
@@ -307,10 +475,9 @@ public class TIFFImage extends AbstractRed {
 
         // Determine which kind of image we are dealing with.
         this.imageType = TYPE_UNSUPPORTED;
+        this.isWhiteZero = photometricType == 0;
         switch (photometricType) {
-                case 0: // WhiteIsZero
-                    this.isWhiteZero = true;
-                    break;
+                case 0: // WhiteIsZero, same layouts as BlackIsZero
                 case 1: // BlackIsZero
                     if (this.sampleSize == 1 && samplesPerPixel == 1) {
                         this.imageType = TYPE_BILEVEL;
@@ -457,7 +624,7 @@ public class TIFFImage extends AbstractRed {
                     // Do nothing.
                     break;
                 case COMP_DEFLATE:
-                    this.inflater = new Inflater();
+                    readPredictor(dir);
                     break;
                 case COMP_FAX_G3_1D:
                 case COMP_FAX_G3_2D:
@@ -490,34 +657,31 @@ public class TIFFImage extends AbstractRed {
                         }
                     }
 
-                    // Fax encoding, need to create the Fax decoder.
-                    this.decoder = new TIFFFaxDecoder(this.fillOrder, tileWidth,
-                            tileHeight);
+                    // Fax encoding, need to create the Fax decoders.
+                    final int faxWidth = tileWidth;
+                    final int faxHeight = tileHeight;
+                    this.decoder = new ThreadLocal<TIFFFaxDecoder>() {
+                        @Override
+                        protected TIFFFaxDecoder initialValue() {
+                            return new TIFFFaxDecoder(TIFFImage.this.fillOrder,
+                                    faxWidth, faxHeight);
+                        }
+                    };
                     break;
 
                 case COMP_LZW:
                     // LZW compression used, need to create the LZW decoder.
-                    final TIFFField predictorField = dir
-                    .getField(TIFFImageDecoder.TIFF_PREDICTOR);
-
-                    if (predictorField == null) {
-                        this.predictor = 1;
-                    } else {
-                        this.predictor = predictorField.getAsInt(0);
-
-                        if (this.predictor != 1 && this.predictor != 2) {
-                            throw new RuntimeException(
-                                    PropertyUtil.getString("TIFFImage8"));
+                    readPredictor(dir);
+
+                    // The predictor is reversed by decodeLZW
+                    final int lzwWidth = tileWidth;
+                    this.lzwDecoder = new ThreadLocal<TIFFLZWDecoder>() {
+                        @Override
+                        protected TIFFLZWDecoder initialValue() {
+                            return new TIFFLZWDecoder(lzwWidth, 1,
+                                    samplesPerPixel);
                         }
-
-                        if (this.predictor == 2 && this.sampleSize != 8) {
-                            throw new RuntimeException(
-                                    PropertyUtil.getString("TIFFImage9"));
-                        }
-                    }
-
-                    this.lzwDecoder = new TIFFLZWDecoder(tileWidth, this.predictor,
-                            samplesPerPixel);
+                    };
                     break;
 
                 case COMP_JPEG_OLD:
@@ -747,15 +911,253 @@ public class TIFFImage extends AbstractRed {
     }
 
     /**
-     * Returns tile (tileX, tileY) as a Raster.
+     * Returns tile (tileX, tileY) as a Raster. If the tile cache was turned on
+     * through <code>TIFFDecodeParam.setUseTileCache</code>, decoded tiles are
+     * kept in it and shared, so they must not be modified; otherwise every
+     * call returns a newly decoded tile. This method may be called from
+     * several threads at once. With the tile cache, threads asking for the
+     * same tile at the same time share a single decoding of it.
      */
     @Override
-    public synchronized Raster getTile(final int tileX, final int tileY) {
+    public Raster getTile(final int tileX, final int tileY) {
         if (tileX < 0 || tileX >= this.tilesX || tileY < 0
                 || tileY >= this.tilesY) {
             throw new IllegalArgumentException(
                     PropertyUtil.getString("TIFFImage12"));
         }
+        final TileCache tileCache = getTileCache();
+        if (tileCache == null) {
+            return decodeTile(tileX, tileY);
+        }
+        final Integer key = tileY * this.tilesX + tileX;
+        final FutureTask<Raster> lookup = new FutureTask<>(
+                new Callable<Raster>() {
+                    @Override
+                    public Raster call() {
+                        Raster tile = tileCache.get(TIFFImage.this, tileX,
+                                tileY);
+                        if (tile == null) {
+                            tile = decodeTile(tileX, tileY);
+                            tileCache.put(TIFFImage.this, tileX, tileY, tile);
+                        }
+                        return tile;
+                    }
+                });
+        // The cache is looked up only under the claim, and a decoded tile is
+        // put into it before the claim is dropped, so no tile is decoded twice
+        // unless the cache evicted it in between
+        FutureTask<Raster> claim = this.cachingTiles.putIfAbsent(key, lookup);
+        if (claim == null) {
+            claim = lookup;
+            try {
+                lookup.run();
+            } finally {
+                this.cachingTiles.remove(key, lookup);
+            }
+        }
+        return getResult(claim);
+    }
+
+    /**
+     * Waits for a tile lookup, even if interrupted, and rethrows its failure.
+     */
+    private static Raster getResult(final FutureTask<Raster> lookup) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return lookup.get();
+                } catch (final InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        } catch (final ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Decodes all tiles overlapping a region in parallel and stores them in the
+     * tile cache, so that later calls to <code>getTile()</code> or
+     * <code>getData()</code> for the region find them there. Tiles are decoded
+     * by tasks handed to <code>executor</code> and this method returns once
+     * all of them are done.
+     *
+     * <p>
+     * This requires the tile cache, which is off by default: it must be
+     * turned on through <code>TIFFDecodeParam.setUseTileCache</code>,
+     * otherwise this method does nothing. Without the cache, use
+     * {@link #copyData(WritableRaster, Executor)} to decode a region in
+     * parallel into a raster of the caller's.
+     *
+     * @param region
+     *            the region whose tiles are to be decoded.
+     * @param executor
+     *            the executor running the decoding tasks.
+     */
+    public void prefetchTiles(final Rectangle region, final Executor executor) {
+        if (getTileCache() != null) {
+            decodeTiles(region, null, executor);
+        }
+    }
+
+    /**
+     * Decodes all tiles overlapping a raster in parallel and copies them into
+     * it. The raster may extend outside the bounds of this image, in which
+     * case the data outside the bounds is not touched. Tiles are decoded by
+     * tasks handed to <code>executor</code> and this method returns once all
+     * of them are done. Unlike <code>prefetchTiles</code>, this does not need
+     * the tile cache.
+     *
+     * @param wr
+     *            the raster to fill with image data.
+     * @param executor
+     *            the executor running the decoding tasks.
+     * @return <code>wr</code>
+     */
+    public WritableRaster copyData(final WritableRaster wr,
+            final Executor executor) {
+        decodeTiles(wr.getBounds(), wr, executor);
+        return wr;
+    }
+
+    /**
+     * Decodes the tiles overlapping a region on an executor, and copies them
+     * into <code>dest</code> unless it is null. Copying tasks take whole rows
+     * of tiles, which cover different scanlines of <code>dest</code>, so no
+     * two of them write to the same data element even if pixels are packed
+     * into bytes.
+     */
+    private void decodeTiles(final Rectangle region,
+            final WritableRaster dest, final Executor executor) {
+        final Rectangle r = region.intersection(getBounds());
+        if (r.isEmpty()) {
+            return;
+        }
+        final int minTileX = getXTile(r.x);
+        final int minTileY = getYTile(r.y);
+        final int maxTileX = getXTile(r.x + r.width - 1);
+        final int maxTileY = getYTile(r.y + r.height - 1);
+
+        final int rows = maxTileY - minTileY + 1;
+        final CountDownLatch done = new CountDownLatch(dest == null ? rows
+                * (maxTileX - minTileX + 1) : rows);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        for (int ty = minTileY; ty <= maxTileY; ty++) {
+            if (dest != null) {
+                executeTiles(executor, ty, minTileX, maxTileX, dest, done,
+                        failure);
+            } else {
+                for (int tx = minTileX; tx <= maxTileX; tx++) {
+                    executeTiles(executor, ty, tx, tx, null, done, failure);
+                }
+            }
+        }
+        // Tasks still running would go on writing to dest, so wait for them
+        // even if interrupted
+        boolean interrupted = false;
+        while (done.getCount() > 0) {
+            try {
+                done.await();
+            } catch (final InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Hands a task decoding a run of tiles of a row, and copying them into
+     * <code>dest</code> unless it is null, to an executor.
+     */
+    private void executeTiles(final Executor executor, final int tileY,
+            final int firstX, final int lastX, final WritableRaster dest,
+            final CountDownLatch done,
+            final AtomicReference<RuntimeException> failure) {
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int tileX = firstX; tileX <= lastX; tileX++) {
+                        final Raster tile = getTile(tileX, tileY);
+                        if (dest != null) {
+                            GraphicsUtil.copyData(tile, dest);
+                            releaseData(tile);
+                        }
+                    }
+                } catch (final RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (final RejectedExecutionException e) {
+            failure.compareAndSet(null, e);
+            done.countDown();
+        }
+    }
+
+    /**
+     * Reads and decompresses tile (tileX, tileY). Several tiles may be decoded
+     * concurrently: the data is fetched with positional reads and each thread
+     * uses its own decompressors. The pooled buffers are given back if
+     * decoding fails.
+     */
+    private Raster decodeTile(final int tileX, final int tileY) {
+        // Tiles which are not cached are transient and released by
+        // copyToRaster once copied
+        final BufferPool pool = BufferPool.getDefault();
+        final WritableRaster tile = makeTile(tileX, tileY,
+                getTileCache() == null ? pool : null);
+
+        // Allocate read buffer if needed.
+        final byte[] data = this.compression != COMP_NONE
+                || this.imageType == TYPE_PALETTE ? pool.getByteArray(
+                (int) this.tileByteCounts[tileY * this.tilesX + tileX], false)
+                : null;
+
+        boolean decoded = false;
+        try {
+            decodeTile(tileX, tileY, tile, data);
+            decoded = true;
+        } finally {
+            if (data != null) {
+                pool.release(data);
+            }
+            if (!decoded) {
+                releaseData(tile);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Decodes tile (tileX, tileY) into <code>tile</code>, using
+     * <code>readBuffer</code> for the compressed data if not null.
+     */
+    private void decodeTile(final int tileX, final int tileY,
+            final WritableRaster tile, final byte[] readBuffer) {
+
+        // Replaced by unpacked data for 4-bit palette images
+        byte[] data = readBuffer;
 
         // log.info("Called TIFF getTile:" + tileX + "," + tileY);
 
@@ -763,9 +1165,9 @@ public class TIFFImage extends AbstractRed {
         byte[] bdata = null;
         short[] sdata = null;
         int[] idata = null;
+        float[] fdata = null;
 
         final SampleModel sampleModel = getSampleModel();
-        final WritableRaster tile = makeTile(tileX, tileY);
 
         final DataBuffer buffer = tile.getDataBuffer();
 
@@ -778,23 +1180,19 @@ public class TIFFImage extends AbstractRed {
             sdata = ((DataBufferShort) buffer).getData();
         } else if (dataType == DataBuffer.TYPE_INT) {
             idata = ((DataBufferInt) buffer).getData();
+        } else if (dataType == DataBuffer.TYPE_FLOAT) {
+            fdata = ((DataBufferFloat) buffer).getData();
         }
 
         // Variables used for swapping when converting from RGB to BGR
         byte bswap;
         short sswap;
         int iswap;
+        float fswap;
 
-        // Save original file pointer position and seek to tile data location.
-        long save_offset = 0;
-        try {
-            save_offset = this.stream.getFilePointer();
-            this.stream.seek(this.tileOffsets[tileY * this.tilesX + tileX]);
-        } catch (final IOException ioe) {
-            log.error("IOException", ioe);
-            throw new RuntimeException(PropertyUtil.getString("TIFFImage13")
-                    + ": " + ioe.getMessage());
-        }
+        // Location of the tile data. It is read with positional reads so that
+        // several tiles may be decoded at the same time.
+        final long offset = this.tileOffsets[tileY * this.tilesX + tileX];
 
         // Number of bytes in this tile (strip) after compression.
         final int byteCount = (int) this.tileByteCounts[tileY * this.tilesX
@@ -812,16 +1210,12 @@ public class TIFFImage extends AbstractRed {
         final int unitsInThisTile = newRect.width * newRect.height
                 * this.numBands;
 
-        // Allocate read buffer if needed.
-        byte[] data = this.compression != COMP_NONE
-                || this.imageType == TYPE_PALETTE ? new byte[byteCount] : null;
-
         // Read the data, uncompressing as needed. There are four cases:
         // bilevel, palette-RGB, 4-bit grayscale, and everything else.
         if (this.imageType == TYPE_BILEVEL) { // bilevel
             try {
                 if (this.compression == COMP_PACKBITS) {
-                    this.stream.readFully(data, 0, byteCount);
+                    this.stream.readFully(offset, data, 0, byteCount);
 
                     // Since the decompressed data will still be packed
                     // 8 pixels into 1 byte, calculate bytesInThisTile
@@ -832,29 +1226,29 @@ public class TIFFImage extends AbstractRed {
                         bytesInThisTile = (newRect.width / 8 + 1)
                                 * newRect.height;
                     }
-                    decodePackbits(data, bytesInThisTile, bdata);
+                    decodePackbits(data, byteCount, bytesInThisTile, bdata);
                 } else if (this.compression == COMP_LZW) {
-                    this.stream.readFully(data, 0, byteCount);
-                    this.lzwDecoder.decode(data, bdata, newRect.height);
+                    this.stream.readFully(offset, data, 0, byteCount);
+                    decodeLZW(data, byteCount, bdata, newRect.height);
                 } else if (this.compression == COMP_FAX_G3_1D) {
-                    this.stream.readFully(data, 0, byteCount);
-                    this.decoder.decode1D(bdata, data, 0, newRect.height);
+                    this.stream.readFully(offset, data, 0, byteCount);
+                    getFaxDecoder().decode1D(bdata, data, byteCount, 0,
+                            newRect.height);
                 } else if (this.compression == COMP_FAX_G3_2D) {
-                    this.stream.readFully(data, 0, byteCount);
-                    this.decoder.decode2D(bdata, data, 0, newRect.height,
-                            this.tiffT4Options);
+                    this.stream.readFully(offset, data, 0, byteCount);
+                    getFaxDecoder().decode2D(bdata, data, byteCount, 0,
+                            newRect.height, this.tiffT4Options);
                 } else if (this.compression == COMP_FAX_G4_2D) {
-                    this.stream.readFully(data, 0, byteCount);
-                    this.decoder.decodeT6(bdata, data, 0, newRect.height,
-                            this.tiffT6Options);
+                    this.stream.readFully(offset, data, 0, byteCount);
+                    getFaxDecoder().decodeT6(bdata, data, byteCount, 0,
+                            newRect.height, this.tiffT6Options);
                 } else if (this.compression == COMP_DEFLATE) {
-                    this.stream.readFully(data, 0, byteCount);
-                    inflate(data, bdata);
+                    this.stream.readFully(offset, data, 0, byteCount);
+                    inflate(data, byteCount, bdata);
                 } else if (this.compression == COMP_NONE) {
-                    this.stream.readFully(bdata, 0, byteCount);
+                    this.stream.readFully(offset, bdata, 0, byteCount);
                 }
 
-                this.stream.seek(save_offset);
             } catch (final IOException ioe) {
                 log.error("IOException", ioe);
                 throw new RuntimeException(
@@ -886,10 +1280,10 @@ public class TIFFImage extends AbstractRed {
 
                         if (this.compression == COMP_PACKBITS) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            this.stream.readFully(offset, data, 0, byteCount);
 
                             final byte[] byteArray = new byte[entries];
-                            decodePackbits(data, entries, byteArray);
+                            decodePackbits(data, byteCount, entries, byteArray);
                             tempData = new short[unitsBeforeLookup];
                             interpretBytesAsShorts(byteArray, tempData,
                                     unitsBeforeLookup);
@@ -897,10 +1291,10 @@ public class TIFFImage extends AbstractRed {
                         } else if (this.compression == COMP_LZW) {
 
                             // Read in all the compressed data for this tile
-                            this.stream.readFully(data, 0, byteCount);
+                            this.stream.readFully(offset, data, 0, byteCount);
 
                             final byte[] byteArray = new byte[entries];
-                            this.lzwDecoder.decode(data, byteArray,
+                            decodeLZW(data, byteCount, byteArray,
                                     newRect.height);
                             tempData = new short[unitsBeforeLookup];
                             interpretBytesAsShorts(byteArray, tempData,
@@ -908,9 +1302,9 @@ public class TIFFImage extends AbstractRed {
 
                         } else if (this.compression == COMP_DEFLATE) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            this.stream.readFully(offset, data, 0, byteCount);
                             final byte[] byteArray = new byte[entries];
-                            inflate(data, byteArray);
+                            inflate(data, byteCount, byteArray);
                             tempData = new short[unitsBeforeLookup];
                             interpretBytesAsShorts(byteArray, tempData,
                                     unitsBeforeLookup);
@@ -922,10 +1316,9 @@ public class TIFFImage extends AbstractRed {
                             // which will take half the space, so while
                             // allocating we divide byteCount by 2.
                             tempData = new short[byteCount / 2];
-                            readShorts(byteCount / 2, tempData);
+                            readShorts(offset, byteCount / 2, tempData);
                         }
 
-                        this.stream.seek(save_offset);
 
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
@@ -989,7 +1382,7 @@ public class TIFFImage extends AbstractRed {
 
                         if (this.compression == COMP_PACKBITS) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            this.stream.readFully(offset, data, 0, byteCount);
 
                             // Since unitsInThisTile is the number of shorts,
                             // but we do our decompression in terms of bytes, we
@@ -999,13 +1392,13 @@ public class TIFFImage extends AbstractRed {
                             final int bytesInThisTile = unitsInThisTile * 2;
 
                             final byte[] byteArray = new byte[bytesInThisTile];
-                            decodePackbits(data, bytesInThisTile, byteArray);
+                            decodePackbits(data, byteCount, bytesInThisTile, byteArray);
                             interpretBytesAsShorts(byteArray, sdata,
                                     unitsInThisTile);
 
                         } else if (this.compression == COMP_LZW) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            this.stream.readFully(offset, data, 0, byteCount);
 
                             // Since unitsInThisTile is the number of shorts,
                             // but we do our decompression in terms of bytes, we
@@ -1013,25 +1406,24 @@ public class TIFFImage extends AbstractRed {
                             // figure out how many bytes we'll get after
                             // decompression.
                             final byte[] byteArray = new byte[unitsInThisTile * 2];
-                            this.lzwDecoder.decode(data, byteArray,
+                            decodeLZW(data, byteCount, byteArray,
                                     newRect.height);
                             interpretBytesAsShorts(byteArray, sdata,
                                     unitsInThisTile);
 
                         } else if (this.compression == COMP_DEFLATE) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            this.stream.readFully(offset, data, 0, byteCount);
                             final byte[] byteArray = new byte[unitsInThisTile * 2];
-                            inflate(data, byteArray);
+                            inflate(data, byteCount, byteArray);
                             interpretBytesAsShorts(byteArray, sdata,
                                     unitsInThisTile);
 
                         } else if (this.compression == COMP_NONE) {
 
-                            readShorts(byteCount / 2, sdata);
+                            readShorts(offset, byteCount / 2, sdata);
                         }
 
-                        this.stream.seek(save_offset);
 
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
@@ -1059,34 +1451,33 @@ public class TIFFImage extends AbstractRed {
 
                         if (this.compression == COMP_PACKBITS) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            this.stream.readFully(offset, data, 0, byteCount);
                             tempData = new byte[unitsBeforeLookup];
-                            decodePackbits(data, unitsBeforeLookup, tempData);
+                            decodePackbits(data, byteCount, unitsBeforeLookup, tempData);
 
                         } else if (this.compression == COMP_LZW) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            this.stream.readFully(offset, data, 0, byteCount);
                             tempData = new byte[unitsBeforeLookup];
-                            this.lzwDecoder.decode(data, tempData,
+                            decodeLZW(data, byteCount, tempData,
                                     newRect.height);
 
                         } else if (this.compression == COMP_DEFLATE) {
 
-                            this.stream.readFully(data, 0, byteCount);
+                            this.stream.readFully(offset, data, 0, byteCount);
                             tempData = new byte[unitsBeforeLookup];
-                            inflate(data, tempData);
+                            inflate(data, byteCount, tempData);
 
                         } else if (this.compression == COMP_NONE) {
 
                             tempData = new byte[byteCount];
-                            this.stream.readFully(tempData, 0, byteCount);
+                            this.stream.readFully(offset, tempData, 0, byteCount);
                         } else {
                             throw new RuntimeException(
                                     PropertyUtil.getString("IFFImage10") + ": "
                                             + this.compression);
                         }
 
-                        this.stream.seek(save_offset);
 
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
@@ -1123,22 +1514,22 @@ public class TIFFImage extends AbstractRed {
 
                         if (this.compression == COMP_PACKBITS) {
 
-                            this.stream.readFully(data, 0, byteCount);
-                            decodePackbits(data, unitsInThisTile, bdata);
+                            this.stream.readFully(offset, data, 0, byteCount);
+                            decodePackbits(data, byteCount, unitsInThisTile, bdata);
 
                         } else if (this.compression == COMP_LZW) {
 
-                            this.stream.readFully(data, 0, byteCount);
-                            this.lzwDecoder.decode(data, bdata, newRect.height);
+                            this.stream.readFully(offset, data, 0, byteCount);
+                            decodeLZW(data, byteCount, bdata, newRect.height);
 
                         } else if (this.compression == COMP_DEFLATE) {
 
-                            this.stream.readFully(data, 0, byteCount);
-                            inflate(data, bdata);
+                            this.stream.readFully(offset, data, 0, byteCount);
+                            inflate(data, byteCount, bdata);
 
                         } else if (this.compression == COMP_NONE) {
 
-                            this.stream.readFully(bdata, 0, byteCount);
+                            this.stream.readFully(offset, bdata, 0, byteCount);
 
                         } else {
                             throw new RuntimeException(
@@ -1146,7 +1537,6 @@ public class TIFFImage extends AbstractRed {
                                             + ": " + this.compression);
                         }
 
-                        this.stream.seek(save_offset);
 
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
@@ -1168,8 +1558,7 @@ public class TIFFImage extends AbstractRed {
                     byte[] tempData = null;
 
                     try {
-                        this.stream.readFully(data, 0, byteCount);
-                        this.stream.seek(save_offset);
+                        this.stream.readFully(offset, data, 0, byteCount);
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
                         throw new RuntimeException(
@@ -1181,17 +1570,17 @@ public class TIFFImage extends AbstractRed {
                     if (this.compression == COMP_PACKBITS) {
 
                         tempData = new byte[bytesPostDecoding];
-                        decodePackbits(data, bytesPostDecoding, tempData);
+                        decodePackbits(data, byteCount, bytesPostDecoding, tempData);
 
                     } else if (this.compression == COMP_LZW) {
 
                         tempData = new byte[bytesPostDecoding];
-                        this.lzwDecoder.decode(data, tempData, newRect.height);
+                        decodeLZW(data, byteCount, tempData, newRect.height);
 
                     } else if (this.compression == COMP_DEFLATE) {
 
                         tempData = new byte[bytesPostDecoding];
-                        inflate(data, tempData);
+                        inflate(data, byteCount, tempData);
 
                     } else if (this.compression == COMP_NONE) {
 
@@ -1236,25 +1625,24 @@ public class TIFFImage extends AbstractRed {
                         // If compressed, decode the data.
                         if (this.compression == COMP_PACKBITS) {
 
-                            this.stream.readFully(data, 0, byteCount);
-                            decodePackbits(data, bytesPostDecoding, bdata);
+                            this.stream.readFully(offset, data, 0, byteCount);
+                            decodePackbits(data, byteCount, bytesPostDecoding, bdata);
 
                         } else if (this.compression == COMP_LZW) {
 
-                            this.stream.readFully(data, 0, byteCount);
-                            this.lzwDecoder.decode(data, bdata, newRect.height);
+                            this.stream.readFully(offset, data, 0, byteCount);
+                            decodeLZW(data, byteCount, bdata, newRect.height);
 
                         } else if (this.compression == COMP_DEFLATE) {
 
-                            this.stream.readFully(data, 0, byteCount);
-                            inflate(data, bdata);
+                            this.stream.readFully(offset, data, 0, byteCount);
+                            inflate(data, byteCount, bdata);
 
                         } else if (this.compression == COMP_NONE) {
 
-                            this.stream.readFully(bdata, 0, byteCount);
+                            this.stream.readFully(offset, bdata, 0, byteCount);
                         }
 
-                        this.stream.seek(save_offset);
 
                     } catch (final IOException ioe) {
                         log.error("IOException", ioe);
@@ -1268,7 +1656,7 @@ public class TIFFImage extends AbstractRed {
             try {
                 if (this.compression == COMP_PACKBITS) {
 
-                    this.stream.readFully(data, 0, byteCount);
+                    this.stream.readFully(offset, data, 0, byteCount);
 
                     // Since the decompressed data will still be packed
                     // 2 pixels into 1 byte, calculate bytesInThisTile
@@ -1280,24 +1668,23 @@ public class TIFFImage extends AbstractRed {
                                 * newRect.height;
                     }
 
-                    decodePackbits(data, bytesInThisTile, bdata);
+                    decodePackbits(data, byteCount, bytesInThisTile, bdata);
 
                 } else if (this.compression == COMP_LZW) {
 
-                    this.stream.readFully(data, 0, byteCount);
-                    this.lzwDecoder.decode(data, bdata, newRect.height);
+                    this.stream.readFully(offset, data, 0, byteCount);
+                    decodeLZW(data, byteCount, bdata, newRect.height);
 
                 } else if (this.compression == COMP_DEFLATE) {
 
-                    this.stream.readFully(data, 0, byteCount);
-                    inflate(data, bdata);
+                    this.stream.readFully(offset, data, 0, byteCount);
+                    inflate(data, byteCount, bdata);
 
                 } else {
 
-                    this.stream.readFully(bdata, 0, byteCount);
+                    this.stream.readFully(offset, bdata, 0, byteCount);
                 }
 
-                this.stream.seek(save_offset);
             } catch (final IOException ioe) {
                 log.error("IOException", ioe);
                 throw new RuntimeException(
@@ -1310,22 +1697,22 @@ public class TIFFImage extends AbstractRed {
                 if (this.sampleSize == 8) {
 
                     if (this.compression == COMP_NONE) {
-                        this.stream.readFully(bdata, 0, byteCount);
+                        this.stream.readFully(offset, bdata, 0, byteCount);
 
                     } else if (this.compression == COMP_LZW) {
 
-                        this.stream.readFully(data, 0, byteCount);
-                        this.lzwDecoder.decode(data, bdata, newRect.height);
+                        this.stream.readFully(offset, data, 0, byteCount);
+                        decodeLZW(data, byteCount, bdata, newRect.height);
 
                     } else if (this.compression == COMP_PACKBITS) {
 
-                        this.stream.readFully(data, 0, byteCount);
-                        decodePackbits(data, unitsInThisTile, bdata);
+                        this.stream.readFully(offset, data, 0, byteCount);
+                        decodePackbits(data, byteCount, unitsInThisTile, bdata);
 
                     } else if (this.compression == COMP_DEFLATE) {
 
-                        this.stream.readFully(data, 0, byteCount);
-                        inflate(data, bdata);
+                        this.stream.readFully(offset, data, 0, byteCount);
+                        inflate(data, byteCount, bdata);
 
                     } else {
                         throw new RuntimeException(
@@ -1337,11 +1724,11 @@ public class TIFFImage extends AbstractRed {
 
                     if (this.compression == COMP_NONE) {
 
-                        readShorts(byteCount / 2, sdata);
+                        readShorts(offset, byteCount / 2, sdata);
 
                     } else if (this.compression == COMP_LZW) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        this.stream.readFully(offset, data, 0, byteCount);
 
                         // Since unitsInThisTile is the number of shorts,
                         // but we do our decompression in terms of bytes, we
@@ -1349,13 +1736,13 @@ public class TIFFImage extends AbstractRed {
                         // figure out how many bytes we'll get after
                         // decompression.
                         final byte[] byteArray = new byte[unitsInThisTile * 2];
-                        this.lzwDecoder.decode(data, byteArray, newRect.height);
+                        decodeLZW(data, byteCount, byteArray, newRect.height);
                         interpretBytesAsShorts(byteArray, sdata,
                                 unitsInThisTile);
 
                     } else if (this.compression == COMP_PACKBITS) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        this.stream.readFully(offset, data, 0, byteCount);
 
                         // Since unitsInThisTile is the number of shorts,
                         // but we do our decompression in terms of bytes, we
@@ -1365,27 +1752,29 @@ public class TIFFImage extends AbstractRed {
                         final int bytesInThisTile = unitsInThisTile * 2;
 
                         final byte[] byteArray = new byte[bytesInThisTile];
-                        decodePackbits(data, bytesInThisTile, byteArray);
+                        decodePackbits(data, byteCount, bytesInThisTile, byteArray);
                         interpretBytesAsShorts(byteArray, sdata,
                                 unitsInThisTile);
                     } else if (this.compression == COMP_DEFLATE) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        this.stream.readFully(offset, data, 0, byteCount);
                         final byte[] byteArray = new byte[unitsInThisTile * 2];
-                        inflate(data, byteArray);
+                        inflate(data, byteCount, byteArray);
                         interpretBytesAsShorts(byteArray, sdata,
                                 unitsInThisTile);
 
                     }
-                } else if (this.sampleSize == 32
-                        && dataType == DataBuffer.TYPE_INT) { // redundant
+                } else if (this.sampleSize == 32) {
+                    // Floating point samples are read as their bit patterns
+                    final int[] ints = dataType == DataBuffer.TYPE_FLOAT
+                            ? new int[unitsInThisTile] : idata;
                     if (this.compression == COMP_NONE) {
 
-                        readInts(byteCount / 4, idata);
+                        readInts(offset, byteCount / 4, ints);
 
                     } else if (this.compression == COMP_LZW) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        this.stream.readFully(offset, data, 0, byteCount);
 
                         // Since unitsInThisTile is the number of ints,
                         // but we do our decompression in terms of bytes, we
@@ -1393,12 +1782,12 @@ public class TIFFImage extends AbstractRed {
                         // figure out how many bytes we'll get after
                         // decompression.
                         final byte[] byteArray = new byte[unitsInThisTile * 4];
-                        this.lzwDecoder.decode(data, byteArray, newRect.height);
-                        interpretBytesAsInts(byteArray, idata, unitsInThisTile);
+                        decodeLZW(data, byteCount, byteArray, newRect.height);
+                        interpretBytesAsInts(byteArray, ints, unitsInThisTile);
 
                     } else if (this.compression == COMP_PACKBITS) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        this.stream.readFully(offset, data, 0, byteCount);
 
                         // Since unitsInThisTile is the number of ints,
                         // but we do our decompression in terms of bytes, we
@@ -1408,19 +1797,23 @@ public class TIFFImage extends AbstractRed {
                         final int bytesInThisTile = unitsInThisTile * 4;
 
                         final byte[] byteArray = new byte[bytesInThisTile];
-                        decodePackbits(data, bytesInThisTile, byteArray);
-                        interpretBytesAsInts(byteArray, idata, unitsInThisTile);
+                        decodePackbits(data, byteCount, bytesInThisTile, byteArray);
+                        interpretBytesAsInts(byteArray, ints, unitsInThisTile);
                     } else if (this.compression == COMP_DEFLATE) {
 
-                        this.stream.readFully(data, 0, byteCount);
+                        this.stream.readFully(offset, data, 0, byteCount);
                         final byte[] byteArray = new byte[unitsInThisTile * 4];
-                        inflate(data, byteArray);
-                        interpretBytesAsInts(byteArray, idata, unitsInThisTile);
+                        inflate(data, byteCount, byteArray);
+                        interpretBytesAsInts(byteArray, ints, unitsInThisTile);
 
                     }
+                    if (dataType == DataBuffer.TYPE_FLOAT) {
+                        for (int i = 0; i < unitsInThisTile; i++) {
+                            fdata[i] = Float.intBitsToFloat(ints[i]);
+                        }
+                    }
                 }
 
-                this.stream.seek(save_offset);
 
             } catch (final IOException ioe) {
                 log.error("IOException", ioe);
@@ -1487,6 +1880,12 @@ public class TIFFImage extends AbstractRed {
                                     idata[i] = idata[i + 2];
                                     idata[i + 2] = iswap;
                                 }
+                            } else if (dataType == DataBuffer.TYPE_FLOAT) {
+                                for (int i = 0; i < unitsInThisTile; i += 3) {
+                                    fswap = fdata[i];
+                                    fdata[i] = fdata[i + 2];
+                                    fdata[i + 2] = fswap;
+                                }
                             }
                         }
                         break;
@@ -1529,6 +1928,18 @@ public class TIFFImage extends AbstractRed {
                                     idata[i + 1] = idata[i + 2];
                                     idata[i + 2] = iswap;
                                 }
+                            } else if (dataType == DataBuffer.TYPE_FLOAT) {
+                                for (int i = 0; i < unitsInThisTile; i += 4) {
+                                    // Swap R and A
+                                    fswap = fdata[i];
+                                    fdata[i] = fdata[i + 3];
+                                    fdata[i + 3] = fswap;
+
+                                    // Swap G and B
+                                    fswap = fdata[i + 1];
+                                    fdata[i + 1] = fdata[i + 2];
+                                    fdata[i + 2] = fswap;
+                                }
                             }
                         }
                         break;
@@ -1574,11 +1985,10 @@ public class TIFFImage extends AbstractRed {
                         break;
             }
         }
-
-        return tile;
     }
 
-    private void readShorts(final int shortCount, final short[] shortArray) {
+    private void readShorts(final long offset, final int shortCount,
+            final short[] shortArray) {
 
         // Since each short consists of 2 bytes, we need a
         // byte array of double size
@@ -1586,7 +1996,7 @@ public class TIFFImage extends AbstractRed {
         final byte[] byteArray = new byte[byteCount];
 
         try {
-            this.stream.readFully(byteArray, 0, byteCount);
+            this.stream.readFully(offset, byteArray, 0, byteCount);
         } catch (final IOException ioe) {
             log.error("IOException", ioe);
             throw new RuntimeException(PropertyUtil.getString("TIFFImage13")
@@ -1596,7 +2006,8 @@ public class TIFFImage extends AbstractRed {
         interpretBytesAsShorts(byteArray, shortArray, shortCount);
     }
 
-    private void readInts(final int intCount, final int[] intArray) {
+    private void readInts(final long offset, final int intCount,
+            final int[] intArray) {
 
         // Since each int consists of 4 bytes, we need a
         // byte array of quadruple size
@@ -1604,7 +2015,7 @@ public class TIFFImage extends AbstractRed {
         final byte[] byteArray = new byte[byteCount];
 
         try {
-            this.stream.readFully(byteArray, 0, byteCount);
+            this.stream.readFully(offset, byteArray, 0, byteCount);
         } catch (final IOException ioe) {
             log.error("IOException", ioe);
             throw new RuntimeException(PropertyUtil.getString("TIFFImage13")
@@ -1666,9 +2077,9 @@ public class TIFFImage extends AbstractRed {
         }
     }
 
-    // Uncompress packbits compressed image data.
-    private byte[] decodePackbits(final byte[] data, final int arraySize,
-            byte[] dst) {
+    // Uncompress the first 'length' bytes of packbits compressed image data.
+    private byte[] decodePackbits(final byte[] data, final int length,
+            final int arraySize, byte[] dst) {
 
         if (dst == null) {
             dst = new byte[arraySize];
@@ -1681,11 +2092,18 @@ public class TIFFImage extends AbstractRed {
 
             while (dstCount < arraySize) {
 
+                // The array may hold more than the compressed data
+                if (srcCount >= length) {
+                    throw new ArrayIndexOutOfBoundsException(srcCount);
+                }
                 b = data[srcCount++];
 
                 if (b >= 0 && b <= 127) {
 
                     // literal run packet
+                    if (srcCount + b + 1 > length) {
+                        throw new ArrayIndexOutOfBoundsException(length);
+                    }
                     for (int i = 0; i < b + 1; ++i) {
                         dst[dstCount++] = data[srcCount++];
                     }
@@ -1693,6 +2111,9 @@ public class TIFFImage extends AbstractRed {
                 } else if (b <= -1 && b >= -127) {
 
                     // 2 byte encoded run packet
+                    if (srcCount >= length) {
+                        throw new ArrayIndexOutOfBoundsException(srcCount);
+                    }
                     repeat = data[srcCount++];
                     for (int i = 0; i < -b + 1; ++i) {
                         dst[dstCount++] = repeat;
@@ -1743,6 +2164,7 @@ public class TIFFImage extends AbstractRed {
             componentSize = 16;
             break;
         case DataBuffer.TYPE_INT:
+        case DataBuffer.TYPE_FLOAT:
             componentSize = 32;
             break;
         default:
@@ -34,13 +34,22 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.zip.Deflater;
 
 import lombok.extern.slf4j.Slf4j;
@@ -78,6 +87,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 
     // Compression types
     private static final int COMP_NONE = 1;
+    private static final int COMP_LZW = 5;
     private static final int COMP_JPEG_TTN2 = 7;
     private static final int COMP_PACKBITS = 32773;
     private static final int COMP_DEFLATE = 32946;
@@ -95,6 +105,13 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
     // Default values
     private static final int DEFAULT_ROWS_PER_STRIP = 8;
 
+    // Largest size of image data written as classic TIFF when BigTIFF is not
+    // requested, leaving room for the directories.
+    private static final long MAX_CLASSIC_DATA_SIZE = 0xffffffffL - (1L << 24);
+
+    // Whether the file being written is a BigTIFF file.
+    private boolean bigTIFF;
+
     public TIFFImageEncoder(final OutputStream output,
             final ImageEncodeParam param) {
         super(output, param);
@@ -109,36 +126,56 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
      */
     @Override
     public void encode(final RenderedImage im) throws IOException {
-        // Write the file header (8 bytes).
-        writeFileHeader();
-
         // Get the encoding parameters.
         final TIFFEncodeParam encodeParam = (TIFFEncodeParam) this.param;
 
+        // Collect the pages up front, so that BigTIFF is chosen if all of
+        // them together do not fit into a classic TIFF file.
+        final List<RenderedImage> images = new ArrayList<RenderedImage>();
+        final List<TIFFEncodeParam> params = new ArrayList<TIFFEncodeParam>();
+        images.add(im);
+        params.add(encodeParam);
         final Iterator<Object> iter = encodeParam.getExtraImages();
         if (iter != null) {
-            int ifdOffset = 8;
-            RenderedImage nextImage = im;
-            TIFFEncodeParam nextParam = encodeParam;
-            boolean hasNext;
-            do {
-                hasNext = iter.hasNext();
-                ifdOffset = encode(nextImage, nextParam, ifdOffset, !hasNext);
-                if (hasNext) {
-                    final Object obj = iter.next();
-                    if (obj instanceof RenderedImage) {
-                        nextImage = (RenderedImage) obj;
-                        nextParam = encodeParam;
-                    } else if (obj instanceof Object[]) {
-                        final Object[] o = (Object[]) obj;
-                        nextImage = (RenderedImage) o[0];
-                        nextParam = (TIFFEncodeParam) o[1];
-                    }
+            while (iter.hasNext()) {
+                final Object obj = iter.next();
+                if (obj instanceof RenderedImage) {
+                    images.add((RenderedImage) obj);
+                    params.add(encodeParam);
+                } else if (obj instanceof Object[]) {
+                    final Object[] o = (Object[]) obj;
+                    images.add((RenderedImage) o[0]);
+                    params.add((TIFFEncodeParam) o[1]);
                 }
-            } while (hasNext);
-        } else {
-            encode(im, encodeParam, 8, true);
+            }
+        }
+
+        // Write the file header (8 bytes, 16 bytes for BigTIFF).
+        this.bigTIFF = encodeParam.getBigTIFF()
+                || getDataSize(images) > MAX_CLASSIC_DATA_SIZE;
+        long ifdOffset = writeFileHeader();
+        final int numImages = images.size();
+        for (int i = 0; i < numImages; i++) {
+            ifdOffset = encode(images.get(i), params.get(i), ifdOffset,
+                    i == numImages - 1);
+        }
+    }
+
+    /**
+     * Returns the size of the uncompressed data of the given images, which is
+     * used as an estimate of the size of their data in the file.
+     */
+    private static long getDataSize(final List<RenderedImage> images) {
+        long dataSize = 0;
+        for (final RenderedImage im : images) {
+            long bitsPerPixel = 0;
+            for (final int sampleSize : im.getSampleModel().getSampleSize()) {
+                bitsPerPixel += sampleSize;
+            }
+            dataSize += (long) im.getWidth() * im.getHeight() * bitsPerPixel
+                    / 8;
         }
+        return dataSize;
     }
 
     /**
@@ -147,6 +184,13 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
      * <p>
      * When you sent all pages, make sure you call finishMultiple() in the end.
      * Otherwise, the generated file will be corrupted.
+     * <p>
+     * The file header is written with the first page, before the following
+     * pages are known. Unless <code>TIFFEncodeParam.setBigTIFF()</code> was
+     * called, BigTIFF is therefore only chosen if the uncompressed data of the
+     * first page do not fit into a classic TIFF file, and encoding fails once
+     * later pages make the file exceed 4 GB. Request BigTIFF explicitly when
+     * writing large multi-page files.
      * 
      * @param context
      *            the context object you receive as return value to a previous
@@ -170,8 +214,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         Context c = (Context) context;
         if (c == null) {
             c = new Context();
-            // Write the file header (8 bytes).
-            writeFileHeader();
+            // Write the file header (8 bytes, 16 bytes for BigTIFF).
+            this.bigTIFF = encodeParam.getBigTIFF()
+                    || getDataSize(Collections.singletonList(img))
+                        > MAX_CLASSIC_DATA_SIZE;
+            c.ifdOffset = writeFileHeader();
         } else {
             // write image
             c.ifdOffset = encode(c.nextImage, encodeParam, c.ifdOffset, false);
@@ -207,11 +254,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         // time.
         // The encoder has to be changed a little to avoid that.
         private RenderedImage nextImage;
-        private int ifdOffset = 8; // Initial offset
+        private long ifdOffset = 8; // Initial offset
     }
 
-    private int encode(final RenderedImage im,
-            final TIFFEncodeParam encodeParam, final int ifdOffset,
+    private long encode(final RenderedImage im,
+            final TIFFEncodeParam encodeParam, final long ifdOffset,
             final boolean isLast) throws IOException {
         // Currently all images are stored uncompressed.
         final int compression = encodeParam.getCompression();
@@ -282,6 +329,18 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         final boolean dataTypeIsShort = dataType == DataBuffer.TYPE_SHORT
                 || dataType == DataBuffer.TYPE_USHORT;
 
+        // Predictors only apply to LZW and DEFLATE compression.
+        final int predictor = compression == COMP_LZW
+                || compression == COMP_DEFLATE ? encodeParam.getPredictor()
+                : TIFFEncodeParam.PREDICTOR_NONE;
+        if (predictor == TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING
+                && sampleSize[0] != 8 && sampleSize[0] != 16
+                || predictor == TIFFEncodeParam.PREDICTOR_FLOATING_POINT
+                && dataType != DataBuffer.TYPE_FLOAT) {
+            throw new RuntimeException(
+                    PropertyUtil.getString("TIFFImageEncoder15"));
+        }
+
         final ColorModel colorModel = im.getColorModel();
         if (colorModel != null && colorModel instanceof IndexColorModel
                 && dataType != DataBuffer.TYPE_BYTE) {
@@ -547,9 +606,13 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                 TIFFField.TIFF_SHORT, 1,
                 new char[] { (char) photometricInterpretation }));
 
+        // Offsets and byte counts are 64-bit in BigTIFF
+        final int offsetType = this.bigTIFF ? TIFFField.TIFF_LONG8
+                : TIFFField.TIFF_LONG;
+
         if (!isTiled) {
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_STRIP_OFFSETS,
-                    TIFFField.TIFF_LONG, numTiles, tileOffsets));
+                    offsetType, numTiles, tileOffsets));
         }
 
         fields.add(new TIFFField(TIFFImageDecoder.TIFF_SAMPLES_PER_PIXEL,
@@ -560,7 +623,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                     TIFFField.TIFF_LONG, 1, new long[] { tileHeight }));
 
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_STRIP_BYTE_COUNTS,
-                    TIFFField.TIFF_LONG, numTiles, tileByteCounts));
+                    offsetType, numTiles, tileByteCounts));
         }
 
         if (colormap != null) {
@@ -576,10 +639,10 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                     TIFFField.TIFF_LONG, 1, new long[] { tileHeight }));
 
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_TILE_OFFSETS,
-                    TIFFField.TIFF_LONG, numTiles, tileOffsets));
+                    offsetType, numTiles, tileOffsets));
 
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_TILE_BYTE_COUNTS,
-                    TIFFField.TIFF_LONG, numTiles, tileByteCounts));
+                    offsetType, numTiles, tileByteCounts));
         }
 
         if (numExtraSamples > 0) {
@@ -615,6 +678,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             // use it if available.
         }
 
+        if (predictor != TIFFEncodeParam.PREDICTOR_NONE) {
+            fields.add(new TIFFField(TIFFImageDecoder.TIFF_PREDICTOR,
+                    TIFFField.TIFF_SHORT, 1, new char[] { (char) predictor }));
+        }
+
         if (imageType == TIFF_YCBCR) {
             // YCbCrSubSampling: 2 is the default so we must write 1 as
             // we do not (yet) do any subsampling.
@@ -683,14 +751,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         // is used (outCache non-null, tempFile null).
 
         OutputStream outCache = null;
-        byte[] compressBuf = null;
         File tempFile = null;
 
-        int nextIFDOffset = 0;
+        long nextIFDOffset = 0;
         boolean skipByte = false;
 
-        Deflater deflater = null;
-
         if (compression == COMP_NONE) {
             // Determine the number of bytes of padding necessary between
             // the end of the IFD and the first data segment such that the
@@ -710,9 +775,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                 tileOffsets[i] = tileOffsets[i - 1] + tileByteCounts[i - 1];
             }
 
+            checkOffset(tileOffsets[0] + totalBytesOfData);
+
             if (!isLast) {
                 // Determine the offset of the next IFD.
-                nextIFDOffset = (int) (tileOffsets[0] + totalBytesOfData);
+                nextIFDOffset = tileOffsets[0] + totalBytesOfData;
 
                 // IFD offsets must be on a word boundary.
                 if ((nextIFDOffset & 0x01) != 0) {
@@ -752,242 +819,148 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 
                     // this method is exited!
                 } catch (final Exception e) {
+                    // Data over 2 GB, which BigTIFF allows, does not fit in
+                    // an array
+                    if (totalBytesOfData > Integer.MAX_VALUE) {
+                        throw new IOException(
+                                PropertyUtil.getString("TIFFImageEncoder16"),
+                                e);
+                    }
                     log.error("Exception", e);
                     // Allocate memory for the entire image data (!).
                     this.output = new ByteArrayOutputStream(
                             (int) totalBytesOfData);
                 }
             }
-
-            int bufSize = 0;
-            switch (compression) {
-            case COMP_PACKBITS:
-                bufSize = (int) (bytesPerTile + (bytesPerRow + 127) / 128
-                        * tileHeight);
-                break;
-            case COMP_DEFLATE:
-                bufSize = (int) bytesPerTile;
-                deflater = new Deflater(encodeParam.getDeflateLevel());
-                break;
-            default:
-                bufSize = 0;
-            }
-            if (bufSize != 0) {
-                compressBuf = new byte[bufSize];
-            }
         }
 
-        // ---- Writing of actual image data ----
-
-        // Buffer for up to tileHeight rows of pixels
-        int[] pixels = null;
-        float[] fpixels = null;
-
-        // Whether to test for contiguous data.
-        final boolean checkContiguous = sampleSize[0] == 1
-                && sampleModel instanceof MultiPixelPackedSampleModel
-                && dataType == DataBuffer.TYPE_BYTE || sampleSize[0] == 8
-                && sampleModel instanceof ComponentSampleModel;
-
-        // Also create a buffer to hold tileHeight lines of the
-        // data to be written to the file, so we can use array writes.
-        byte[] bpixels = null;
-        if (compression != COMP_JPEG_TTN2) {
-            if (dataType == DataBuffer.TYPE_BYTE) {
-                bpixels = new byte[tileHeight * tileWidth * numBands];
-            } else if (dataTypeIsShort) {
-                bpixels = new byte[2 * tileHeight * tileWidth * numBands];
-            } else if (dataType == DataBuffer.TYPE_INT
-                    || dataType == DataBuffer.TYPE_FLOAT) {
-                bpixels = new byte[4 * tileHeight * tileWidth * numBands];
+        // Compresses and writes the strips or tiles.
+        final TileWriter tileWriter = new TileWriter(encodeParam,
+                tileByteCounts, (int) bytesPerRow, tileHeight, predictor,
+                numBands, sampleSize[0] / 8);
+
+        try {
+            // ---- Writing of actual image data ----
+
+            // Buffer for up to tileHeight rows of pixels
+            int[] pixels = null;
+            float[] fpixels = null;
+
+            // Whether to test for contiguous data.
+            final boolean checkContiguous = sampleSize[0] == 1
+                    && sampleModel instanceof MultiPixelPackedSampleModel
+                    && dataType == DataBuffer.TYPE_BYTE || sampleSize[0] == 8
+                    && sampleModel instanceof ComponentSampleModel;
+
+            // Also create a buffer to hold tileHeight lines of the
+            // data to be written to the file, so we can use array writes.
+            byte[] bpixels = null;
+            if (compression != COMP_JPEG_TTN2) {
+                if (dataType == DataBuffer.TYPE_BYTE) {
+                    bpixels = new byte[tileHeight * tileWidth * numBands];
+                } else if (dataTypeIsShort) {
+                    bpixels = new byte[2 * tileHeight * tileWidth * numBands];
+                } else if (dataType == DataBuffer.TYPE_INT
+                        || dataType == DataBuffer.TYPE_FLOAT) {
+                    bpixels = new byte[4 * tileHeight * tileWidth * numBands];
+                }
             }
-        }
 
-        // Process tileHeight rows at a time
-        final int lastRow = minY + height;
-        final int lastCol = minX + width;
-        int tileNum = 0;
-        for (int row = minY; row < lastRow; row += tileHeight) {
-            final int rows = isTiled ? tileHeight : Math.min(tileHeight,
-                    lastRow - row);
-            final int size = rows * tileWidth * numBands;
-
-            for (int col = minX; col < lastCol; col += tileWidth) {
-                // Grab the pixels
-                final Raster src = im.getData(new Rectangle(col, row,
-                        tileWidth, rows));
-
-                boolean useDataBuffer = false;
-                if (compression != COMP_JPEG_TTN2) { // JPEG access Raster
-                    if (checkContiguous) {
-                        if (sampleSize[0] == 8) { // 8-bit
-                            final ComponentSampleModel csm = (ComponentSampleModel) src
-                                    .getSampleModel();
-                            final int[] bankIndices = csm.getBankIndices();
-                            final int[] bandOffsets = csm.getBandOffsets();
-                            final int pixelStride = csm.getPixelStride();
-                            final int lineStride = csm.getScanlineStride();
-
-                            if (pixelStride != numBands
-                                    || lineStride != bytesPerRow) {
-                                useDataBuffer = false;
-                            } else {
-                                useDataBuffer = true;
-                                for (int i = 0; useDataBuffer && i < numBands; ++i) {
-                                    if (bankIndices[i] != 0
-                                            || bandOffsets[i] != i) {
-                                        useDataBuffer = false;
-                                    }
-                                }
-                            }
-                        } else { // 1-bit
-                            final MultiPixelPackedSampleModel mpp = (MultiPixelPackedSampleModel) src
-                                    .getSampleModel();
-                            if (mpp.getNumBands() == 1
-                                    && mpp.getDataBitOffset() == 0
-                                    && mpp.getPixelBitStride() == 1) {
-                                useDataBuffer = true;
-                            }
+            // Tiles aligned with the tile grid of the image are taken from the
+            // image as they are, without assembling them from its tiles.
+            final boolean useImageTiles = isTiled
+                    && tileWidth == im.getTileWidth()
+                    && tileHeight == im.getTileHeight()
+                    && (minX - im.getTileGridXOffset()) % tileWidth == 0
+                    && (minY - im.getTileGridYOffset()) % tileHeight == 0;
+
+            // Process tileHeight rows at a time
+            final int lastRow = minY + height;
+            final int lastCol = minX + width;
+            for (int row = minY; row < lastRow; row += tileHeight) {
+                final int rows = isTiled ? tileHeight : Math.min(tileHeight,
+                        lastRow - row);
+                final int size = rows * tileWidth * numBands;
+
+                for (int col = minX; col < lastCol; col += tileWidth) {
+                    // Grab the pixels
+                    final Rectangle rect = new Rectangle(col, row, tileWidth, rows);
+                    Raster src = null;
+                    if (useImageTiles) {
+                        src = im.getTile(im.getMinTileX() + (col - minX)
+                                / tileWidth, im.getMinTileY() + (row - minY)
+                                / tileHeight);
+                        if (!src.getBounds().contains(rect)) {
+                            // Edge tile clipped to the image bounds
+                            src = null;
                         }
                     }
-
-                    if (!useDataBuffer) {
-                        if (dataType == DataBuffer.TYPE_FLOAT) {
-                            fpixels = src.getPixels(col, row, tileWidth, rows,
-                                    fpixels);
-                        } else {
-                            pixels = src.getPixels(col, row, tileWidth, rows,
-                                    pixels);
-                        }
+                    if (src == null) {
+                        src = im.getData(rect);
                     }
-                }
 
-                int index;
-
-                int pixel = 0;
-                int k = 0;
-                switch (sampleSize[0]) {
-
-                case 1:
-
-                    if (useDataBuffer) {
-                        final byte[] btmp = ((DataBufferByte) src
-                                .getDataBuffer()).getData();
-                        final MultiPixelPackedSampleModel mpp = (MultiPixelPackedSampleModel) src
-                                .getSampleModel();
-                        final int lineStride = mpp.getScanlineStride();
-                        int inOffset = mpp.getOffset(
-                                col - src.getSampleModelTranslateX(),
-                                row - src.getSampleModelTranslateY());
-                        if (lineStride == (int) bytesPerRow) {
-                            System.arraycopy(btmp, inOffset, bpixels, 0,
-                                    (int) bytesPerRow * rows);
-                        } else {
-                            int outOffset = 0;
-                            for (int j = 0; j < rows; j++) {
-                                System.arraycopy(btmp, inOffset, bpixels,
-                                        outOffset, (int) bytesPerRow);
-                                inOffset += lineStride;
-                                outOffset += (int) bytesPerRow;
+                    boolean useDataBuffer = false;
+                    if (compression != COMP_JPEG_TTN2) { // JPEG access Raster
+                        if (checkContiguous) {
+                            if (sampleSize[0] == 8) { // 8-bit
+                                final ComponentSampleModel csm = (ComponentSampleModel) src
+                                        .getSampleModel();
+                                final int[] bankIndices = csm.getBankIndices();
+                                final int[] bandOffsets = csm.getBandOffsets();
+                                final int pixelStride = csm.getPixelStride();
+                                final int lineStride = csm.getScanlineStride();
+
+                                if (pixelStride != numBands
+                                        || lineStride != bytesPerRow) {
+                                    useDataBuffer = false;
+                                } else {
+                                    useDataBuffer = true;
+                                    for (int i = 0; useDataBuffer && i < numBands; ++i) {
+                                        if (bankIndices[i] != 0
+                                                || bandOffsets[i] != i) {
+                                            useDataBuffer = false;
+                                        }
+                                    }
+                                }
+                            } else { // 1-bit
+                                final MultiPixelPackedSampleModel mpp = (MultiPixelPackedSampleModel) src
+                                        .getSampleModel();
+                                if (mpp.getNumBands() == 1
+                                        && mpp.getDataBitOffset() == 0
+                                        && mpp.getPixelBitStride() == 1) {
+                                    useDataBuffer = true;
+                                }
                             }
                         }
-                    } else {
-                        index = 0;
 
-                        // For each of the rows in a strip
-                        for (int i = 0; i < rows; ++i) {
-
-                            // Write number of pixels exactly divisible by 8
-                            for (int j = 0; j < tileWidth / 8; j++) {
-
-                                pixel = pixels[index++] << 7
-                                        | pixels[index++] << 6
-                                        | pixels[index++] << 5
-                                        | pixels[index++] << 4
-                                        | pixels[index++] << 3
-                                        | pixels[index++] << 2
-                                        | pixels[index++] << 1
-                                        | pixels[index++];
-                                bpixels[k++] = (byte) pixel;
-                            }
-
-                            // Write the pixels remaining after division by 8
-                            if (tileWidth % 8 > 0) {
-                                pixel = 0;
-                                for (int j = 0; j < tileWidth % 8; j++) {
-                                    pixel |= pixels[index++] << 7 - j;
-                                }
-                                bpixels[k++] = (byte) pixel;
+                        if (!useDataBuffer) {
+                            if (dataType == DataBuffer.TYPE_FLOAT) {
+                                fpixels = src.getPixels(col, row, tileWidth, rows,
+                                        fpixels);
+                            } else {
+                                pixels = src.getPixels(col, row, tileWidth, rows,
+                                        pixels);
                             }
                         }
                     }
 
-                    if (compression == COMP_NONE) {
-                        this.output.write(bpixels, 0, rows
-                                * ((tileWidth + 7) / 8));
-                    } else if (compression == COMP_PACKBITS) {
-                        final int numCompressedBytes = compressPackBits(
-                                bpixels, rows, (int) bytesPerRow, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == COMP_DEFLATE) {
-                        final int numCompressedBytes = deflate(deflater,
-                                bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    }
-
-                    break;
+                    int index;
 
-                case 4:
+                    int pixel = 0;
+                    int k = 0;
+                    switch (sampleSize[0]) {
 
-                    index = 0;
-
-                    // For each of the rows in a strip
-                    for (int i = 0; i < rows; ++i) {
-
-                        // Write the number of pixels that will fit into an
-                        // even number of nibbles.
-                        for (int j = 0; j < tileWidth / 2; j++) {
-                            pixel = pixels[index++] << 4 | pixels[index++];
-                            bpixels[k++] = (byte) pixel;
-                        }
-
-                        // Last pixel for odd-length lines
-                        if ((tileWidth & 1) == 1) {
-                            pixel = pixels[index++] << 4;
-                            bpixels[k++] = (byte) pixel;
-                        }
-                    }
-
-                    if (compression == COMP_NONE) {
-                        this.output.write(bpixels, 0, rows
-                                * ((tileWidth + 1) / 2));
-                    } else if (compression == COMP_PACKBITS) {
-                        final int numCompressedBytes = compressPackBits(
-                                bpixels, rows, (int) bytesPerRow, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == COMP_DEFLATE) {
-                        final int numCompressedBytes = deflate(deflater,
-                                bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    }
-                    break;
+                    case 1:
 
-                case 8:
-
-                    if (compression != COMP_JPEG_TTN2) {
                         if (useDataBuffer) {
                             final byte[] btmp = ((DataBufferByte) src
                                     .getDataBuffer()).getData();
-                            final ComponentSampleModel csm = (ComponentSampleModel) src
+                            final MultiPixelPackedSampleModel mpp = (MultiPixelPackedSampleModel) src
                                     .getSampleModel();
-                            int inOffset = csm.getOffset(
-                                    col - src.getSampleModelTranslateX(), row
-                                            - src.getSampleModelTranslateY());
-                            final int lineStride = csm.getScanlineStride();
+                            final int lineStride = mpp.getScanlineStride();
+                            int inOffset = mpp.getOffset(
+                                    col - src.getSampleModelTranslateX(),
+                                    row - src.getSampleModelTranslateY());
                             if (lineStride == (int) bytesPerRow) {
                                 System.arraycopy(btmp, inOffset, bpixels, 0,
                                         (int) bytesPerRow * rows);
@@ -1001,88 +974,141 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                                 }
                             }
                         } else {
-                            for (int i = 0; i < size; ++i) {
-                                bpixels[i] = (byte) pixels[i];
+                            index = 0;
+
+                            // For each of the rows in a strip
+                            for (int i = 0; i < rows; ++i) {
+
+                                // Write number of pixels exactly divisible by 8
+                                for (int j = 0; j < tileWidth / 8; j++) {
+
+                                    pixel = pixels[index++] << 7
+                                            | pixels[index++] << 6
+                                            | pixels[index++] << 5
+                                            | pixels[index++] << 4
+                                            | pixels[index++] << 3
+                                            | pixels[index++] << 2
+                                            | pixels[index++] << 1
+                                            | pixels[index++];
+                                    bpixels[k++] = (byte) pixel;
+                                }
+
+                                // Write the pixels remaining after division by 8
+                                if (tileWidth % 8 > 0) {
+                                    pixel = 0;
+                                    for (int j = 0; j < tileWidth % 8; j++) {
+                                        pixel |= pixels[index++] << 7 - j;
+                                    }
+                                    bpixels[k++] = (byte) pixel;
+                                }
                             }
                         }
-                    }
 
-                    if (compression == COMP_NONE) {
-                        this.output.write(bpixels, 0, size);
-                    } else if (compression == COMP_PACKBITS) {
-                        final int numCompressedBytes = compressPackBits(
-                                bpixels, rows, (int) bytesPerRow, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == COMP_DEFLATE) {
-                        final int numCompressedBytes = deflate(deflater,
-                                bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    }
-                    break;
+                        tileWriter.write(bpixels, rows);
 
-                case 16:
+                        break;
 
-                    int ls = 0;
-                    for (int i = 0; i < size; ++i) {
-                        final int value = pixels[i];
-                        bpixels[ls++] = (byte) ((value & 0xff00) >> 8);
-                        bpixels[ls++] = (byte) (value & 0x00ff);
-                    }
+                    case 4:
 
-                    if (compression == COMP_NONE) {
-                        this.output.write(bpixels, 0, size * 2);
-                    } else if (compression == COMP_PACKBITS) {
-                        final int numCompressedBytes = compressPackBits(
-                                bpixels, rows, (int) bytesPerRow, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == COMP_DEFLATE) {
-                        final int numCompressedBytes = deflate(deflater,
-                                bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    }
-                    break;
+                        index = 0;
+
+                        // For each of the rows in a strip
+                        for (int i = 0; i < rows; ++i) {
+
+                            // Write the number of pixels that will fit into an
+                            // even number of nibbles.
+                            for (int j = 0; j < tileWidth / 2; j++) {
+                                pixel = pixels[index++] << 4 | pixels[index++];
+                                bpixels[k++] = (byte) pixel;
+                            }
+
+                            // Last pixel for odd-length lines
+                            if ((tileWidth & 1) == 1) {
+                                pixel = pixels[index++] << 4;
+                                bpixels[k++] = (byte) pixel;
+                            }
+                        }
+
+                        tileWriter.write(bpixels, rows);
+                        break;
+
+                    case 8:
+
+                        if (compression != COMP_JPEG_TTN2) {
+                            if (useDataBuffer) {
+                                final byte[] btmp = ((DataBufferByte) src
+                                        .getDataBuffer()).getData();
+                                final ComponentSampleModel csm = (ComponentSampleModel) src
+                                        .getSampleModel();
+                                int inOffset = csm.getOffset(
+                                        col - src.getSampleModelTranslateX(), row
+                                                - src.getSampleModelTranslateY());
+                                final int lineStride = csm.getScanlineStride();
+                                if (lineStride == (int) bytesPerRow) {
+                                    System.arraycopy(btmp, inOffset, bpixels, 0,
+                                            (int) bytesPerRow * rows);
+                                } else {
+                                    int outOffset = 0;
+                                    for (int j = 0; j < rows; j++) {
+                                        System.arraycopy(btmp, inOffset, bpixels,
+                                                outOffset, (int) bytesPerRow);
+                                        inOffset += lineStride;
+                                        outOffset += (int) bytesPerRow;
+                                    }
+                                }
+                            } else {
+                                for (int i = 0; i < size; ++i) {
+                                    bpixels[i] = (byte) pixels[i];
+                                }
+                            }
+                        }
+
+                        tileWriter.write(bpixels, rows);
+                        break;
+
+                    case 16:
 
-                case 32:
-                    if (dataType == DataBuffer.TYPE_INT) {
-                        int li = 0;
+                        int ls = 0;
                         for (int i = 0; i < size; ++i) {
                             final int value = pixels[i];
-                            bpixels[li++] = (byte) ((value & 0xff000000) >>> 24);
-                            bpixels[li++] = (byte) ((value & 0x00ff0000) >>> 16);
-                            bpixels[li++] = (byte) ((value & 0x0000ff00) >>> 8);
-                            bpixels[li++] = (byte) (value & 0x000000ff);
+                            bpixels[ls++] = (byte) ((value & 0xff00) >> 8);
+                            bpixels[ls++] = (byte) (value & 0x00ff);
                         }
-                    } else { // DataBuffer.TYPE_FLOAT
-                        int lf = 0;
-                        for (int i = 0; i < size; ++i) {
-                            final int value = Float.floatToIntBits(fpixels[i]);
-                            bpixels[lf++] = (byte) ((value & 0xff000000) >>> 24);
-                            bpixels[lf++] = (byte) ((value & 0x00ff0000) >>> 16);
-                            bpixels[lf++] = (byte) ((value & 0x0000ff00) >>> 8);
-                            bpixels[lf++] = (byte) (value & 0x000000ff);
+
+                        tileWriter.write(bpixels, rows);
+                        break;
+
+                    case 32:
+                        if (dataType == DataBuffer.TYPE_INT) {
+                            int li = 0;
+                            for (int i = 0; i < size; ++i) {
+                                final int value = pixels[i];
+                                bpixels[li++] = (byte) ((value & 0xff000000) >>> 24);
+                                bpixels[li++] = (byte) ((value & 0x00ff0000) >>> 16);
+                                bpixels[li++] = (byte) ((value & 0x0000ff00) >>> 8);
+                                bpixels[li++] = (byte) (value & 0x000000ff);
+                            }
+                        } else { // DataBuffer.TYPE_FLOAT
+                            int lf = 0;
+                            for (int i = 0; i < size; ++i) {
+                                final int value = Float.floatToIntBits(fpixels[i]);
+                                bpixels[lf++] = (byte) ((value & 0xff000000) >>> 24);
+                                bpixels[lf++] = (byte) ((value & 0x00ff0000) >>> 16);
+                                bpixels[lf++] = (byte) ((value & 0x0000ff00) >>> 8);
+                                bpixels[lf++] = (byte) (value & 0x000000ff);
+                            }
                         }
-                    }
-                    if (compression == COMP_NONE) {
-                        this.output.write(bpixels, 0, size * 4);
-                    } else if (compression == COMP_PACKBITS) {
-                        final int numCompressedBytes = compressPackBits(
-                                bpixels, rows, (int) bytesPerRow, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == COMP_DEFLATE) {
-                        final int numCompressedBytes = deflate(deflater,
-                                bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        this.output.write(compressBuf, 0, numCompressedBytes);
-                    }
-                    break;
+                        tileWriter.write(bpixels, rows);
+                        break;
 
+                    }
                 }
             }
+
+            tileWriter.finish();
+        } finally {
+            // Releases the compressors even if writing failed
+            tileWriter.close();
         }
 
         if (compression == COMP_NONE) {
@@ -1092,13 +1118,15 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             }
         } else {
             // Recompute the tile offsets the size of the compressed tiles.
-            int totalBytes = 0;
+            long totalBytes = 0;
             for (int i = 1; i < numTiles; ++i) {
-                final int numBytes = (int) tileByteCounts[i - 1];
+                final long numBytes = tileByteCounts[i - 1];
                 totalBytes += numBytes;
                 tileOffsets[i] = tileOffsets[i - 1] + numBytes;
             }
-            totalBytes += (int) tileByteCounts[numTiles - 1];
+            totalBytes += tileByteCounts[numTiles - 1];
+
+            checkOffset(ifdOffset + dirSize + totalBytes);
 
             nextIFDOffset = isLast ? 0 : ifdOffset + dirSize + totalBytes;
             if ((nextIFDOffset & 0x01) != 0) { // make it even
@@ -1143,7 +1171,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 
                 // Write the image data.
                 final byte[] copyBuffer = new byte[8192];
-                int bytesCopied = 0;
+                long bytesCopied = 0;
                 while (bytesCopied < totalBytes) {
                     final int bytesRead = fileStream.read(copyBuffer);
                     if (bytesRead == -1) {
@@ -1190,26 +1218,43 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         return nextIFDOffset;
     }
 
+    /**
+     * Fails if an offset does not fit into a classic TIFF file.
+     */
+    private void checkOffset(final long offset) {
+        if (!this.bigTIFF && offset > 0xffffffffL) {
+            throw new RuntimeException(
+                    PropertyUtil.getString("TIFFImageEncoder14"));
+        }
+    }
+
+    /**
+     * Returns the size of offsets and counts: 4 bytes, or 8 in BigTIFF.
+     */
+    private int getOffsetSize() {
+        return this.bigTIFF ? 8 : 4;
+    }
+
     /**
      * Calculates the size of the IFD.
      */
     private int getDirectorySize(final SortedSet<TIFFField> fields) {
         // Get the number of entries.
         final int numEntries = fields.size();
+        final int offsetSize = getOffsetSize();
 
-        // Initialize the size excluding that of any values > 4 bytes.
-        int dirSize = 2 + numEntries * 12 + 4;
+        // Initialize the size excluding that of any values that do not fit
+        // into an entry: 12 bytes per entry, 20 bytes in BigTIFF.
+        int dirSize = this.bigTIFF ? 8 + numEntries * 20 + 8
+                : 2 + numEntries * 12 + 4;
 
-        // Loop over fields adding the size of all values > 4 bytes.
+        // Loop over fields adding the size of all values > 4 (8) bytes.
         for (final TIFFField field : fields) {
-            // Get the field.
-
             // Determine the size of the field value.
-            final int valueSize = field.getCount()
-                    * sizeOfType[field.getType()];
+            final int valueSize = getValueSize(field);
 
             // Add any excess size.
-            if (valueSize > 4) {
+            if (valueSize > offsetSize) {
                 dirSize += valueSize;
             }
         }
@@ -1217,35 +1262,57 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         return dirSize;
     }
 
-    private void writeFileHeader() throws IOException {
-        // 8 byte image file header
+    /**
+     * Writes the file header and returns the offset of the first IFD.
+     */
+    private long writeFileHeader() throws IOException {
+        // 8 byte image file header, 16 bytes for BigTIFF
 
         // Byte order used within the file - Big Endian
         this.output.write('M');
         this.output.write('M');
 
+        if (this.bigTIFF) {
+            // Magic value, the size of offsets and a reserved zero
+            writeUnsignedShort(43);
+            writeUnsignedShort(8);
+            writeUnsignedShort(0);
+
+            // Offset in bytes of the first IFD.
+            writeLong8(16);
+            return 16;
+        }
+
         // Magic value
         this.output.write(0);
         this.output.write(42);
 
         // Offset in bytes of the first IFD.
         writeLong(8);
+        return 8;
     }
 
-    private void writeDirectory(final int thisIFDOffset,
-            final SortedSet<TIFFField> fields, final int nextIFDOffset)
+    private void writeDirectory(final long thisIFDOffset,
+            final SortedSet<TIFFField> fields, final long nextIFDOffset)
             throws IOException {
 
-        // 2 byte count of number of directory entries (fields)
+        // 2 byte (8 byte in BigTIFF) count of number of directory entries
         final int numEntries = fields.size();
+        final int offsetSize = getOffsetSize();
 
-        long offsetBeyondIFD = thisIFDOffset + 12 * numEntries + 4 + 2;
+        long offsetBeyondIFD = thisIFDOffset
+                + (this.bigTIFF ? 8 + 20 * numEntries + 8
+                        : 2 + 12 * numEntries + 4);
         final List<TIFFField> tooBig = new ArrayList<>();
 
         // Write number of fields in the IFD
-        writeUnsignedShort(numEntries);
+        if (this.bigTIFF) {
+            writeLong8(numEntries);
+        } else {
+            writeUnsignedShort(numEntries);
+        }
 
-        // 12 byte field entry TIFFField
+        // 12 byte (20 byte in BigTIFF) field entry TIFFField
         for (final TIFFField field : fields) {
             // byte 0-1 Tag that identifies a field
             final int tag = field.getTag();
@@ -1255,30 +1322,35 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             final int type = field.getType();
             writeUnsignedShort(type);
 
-            // bytes 4-7 the number of values of the indicated type except
-            // ASCII-valued fields which require the total number of bytes.
+            // bytes 4-7 (4-11) the number of values of the indicated type
+            // except ASCII-valued fields which require the total number of
+            // bytes.
             final int count = field.getCount();
             final int valueSize = getValueSize(field);
-            writeLong(type == TIFFField.TIFF_ASCII ? valueSize : count);
+            writeOffset(type == TIFFField.TIFF_ASCII ? valueSize : count);
 
-            // bytes 8 - 11 the value or value offset
-            if (valueSize > 4) {
+            // bytes 8 - 11 (12 - 19) the value or value offset
+            if (valueSize > offsetSize) {
 
-                // We need an offset as data won't fit into 4 bytes
-                writeLong(offsetBeyondIFD);
+                // We need an offset as data won't fit into the entry
+                writeOffset(offsetBeyondIFD);
                 offsetBeyondIFD += valueSize;
                 tooBig.add(field);
 
             } else {
-                writeValuesAsFourBytes(field);
+                // Values are left-justified and padded
+                writeValues(field);
+                for (int i = valueSize; i < offsetSize; ++i) {
+                    this.output.write(0);
+                }
             }
 
         }
 
         // Address of next IFD
-        writeLong(nextIFDOffset);
+        writeOffset(nextIFDOffset);
 
-        // Write the tag values that did not fit into 4 bytes
+        // Write the tag values that did not fit into the entries
         for (int i = 0; i < tooBig.size(); ++i) {
             writeValues(tooBig.get(i));
         }
@@ -1321,59 +1393,15 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             4, // 9 = slong
             8, // 10 = srational
             4, // 11 = float
-            8 // 12 = double
+            8, // 12 = double
+            0, // 13 = n/a
+            0, // 14 = n/a
+            0, // 15 = n/a
+            8, // 16 = long8 (BigTIFF)
+            8, // 17 = slong8 (BigTIFF)
+            8 // 18 = ifd8 (BigTIFF)
     };
 
-    private void writeValuesAsFourBytes(final TIFFField field)
-            throws IOException {
-
-        final int dataType = field.getType();
-        int count = field.getCount();
-
-        switch (dataType) {
-
-        // unsigned 8 bits
-        case TIFFField.TIFF_BYTE:
-            final byte[] bytes = field.getAsBytes();
-            if (count > 4) {
-                count = 4;
-            }
-            for (int i = 0; i < count; ++i) {
-                this.output.write(bytes[i]);
-            }
-
-            for (int i = 0; i < 4 - count; ++i) {
-                this.output.write(0);
-            }
-            break;
-
-        // unsigned 16 bits
-        case TIFFField.TIFF_SHORT:
-            final char[] chars = field.getAsChars();
-            if (count > 2) {
-                count = 2;
-            }
-            for (int i = 0; i < count; ++i) {
-                writeUnsignedShort(chars[i]);
-            }
-            for (int i = 0; i < 2 - count; ++i) {
-                writeUnsignedShort(0);
-            }
-
-            break;
-
-        // unsigned 32 bits
-        case TIFFField.TIFF_LONG:
-            final long[] longs = field.getAsLongs();
-
-            for (int i = 0; i < count; ++i) {
-                writeLong(longs[i]);
-            }
-            break;
-        }
-
-    }
-
     private void writeValues(final TIFFField field) throws IOException {
 
         final int dataType = field.getType();
@@ -1407,12 +1435,27 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 
         // unsigned 32 bits
         case TIFFField.TIFF_LONG:
-        case TIFFField.TIFF_SLONG:
             final long[] longs = field.getAsLongs();
             for (int i = 0; i < count; ++i) {
                 writeLong(longs[i]);
             }
             break;
+        case TIFFField.TIFF_SLONG:
+            final int[] ints = field.getAsInts();
+            for (int i = 0; i < count; ++i) {
+                writeLong(ints[i]);
+            }
+            break;
+
+        // 64 bits
+        case TIFFField.TIFF_LONG8:
+        case TIFFField.TIFF_SLONG8:
+        case TIFFField.TIFF_IFD8:
+            final long[] longs8 = field.getAsLongs();
+            for (int i = 0; i < count; ++i) {
+                writeLong8(longs8[i]);
+            }
+            break;
 
         case TIFFField.TIFF_FLOAT:
             final float[] floats = field.getAsFloats();
@@ -1479,6 +1522,25 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         this.output.write((int) (l & 0x000000ff));
     }
 
+    /**
+     * Writes all 64 bits of a long as 8 bytes.
+     */
+    private void writeLong8(final long l) throws IOException {
+        writeLong(l >>> 32);
+        writeLong(l & 0xffffffffL);
+    }
+
+    /**
+     * Writes an offset or count with the size used by the file format.
+     */
+    private void writeOffset(final long l) throws IOException {
+        if (this.bigTIFF) {
+            writeLong8(l);
+        } else {
+            writeLong(l);
+        }
+    }
+
     /**
      * Performs PackBits compression on a tile of data.
      */
@@ -1550,13 +1612,303 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         return outOffset;
     }
 
-    private static int deflate(final Deflater deflater, final byte[] inflated,
-            final byte[] deflated) {
-        deflater.setInput(inflated);
+    /**
+     * Replaces each sample but the first ones of each row by its difference
+     * to the same sample of the previous pixel. Samples are 8 or 16 bits wide
+     * and 16-bit samples are big-endian.
+     */
+    private static void horizontalDifferencing(final byte[] data,
+            final int rows, final int bytesPerRow, final int samplesPerPixel,
+            final int bytesPerSample) {
+        final int stride = samplesPerPixel * bytesPerSample;
+        for (int row = 0; row < rows; row++) {
+            final int start = row * bytesPerRow;
+            if (bytesPerSample == 1) {
+                for (int i = start + bytesPerRow - 1; i >= start + stride; i--) {
+                    data[i] -= data[i - stride];
+                }
+            } else {
+                for (int i = start + bytesPerRow - 2; i >= start + stride; i -= 2) {
+                    final int diff = ((data[i] & 0xff) << 8 | data[i + 1] & 0xff)
+                            - ((data[i - stride] & 0xff) << 8 | data[i - stride + 1] & 0xff);
+                    data[i] = (byte) (diff >> 8);
+                    data[i + 1] = (byte) diff;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the floating point predictor to rows of big-endian 32-bit
+     * samples: the bytes of each row are regrouped by significance, most
+     * significant first, and then differenced horizontally.
+     */
+    private static void floatingPointDifferencing(final byte[] data,
+            final int rows, final int bytesPerRow, final int samplesPerPixel) {
+        final int samplesPerRow = bytesPerRow / 4;
+        final byte[] tmp = new byte[bytesPerRow];
+        for (int row = 0; row < rows; row++) {
+            final int start = row * bytesPerRow;
+            for (int i = 0; i < samplesPerRow; i++) {
+                for (int b = 0; b < 4; b++) {
+                    tmp[b * samplesPerRow + i] = data[start + 4 * i + b];
+                }
+            }
+            for (int i = bytesPerRow - 1; i >= samplesPerPixel; i--) {
+                tmp[i] -= tmp[i - samplesPerPixel];
+            }
+            System.arraycopy(tmp, 0, data, start, bytesPerRow);
+        }
+    }
+
+    /**
+     * Deflates data into the given buffer, growing it if the compressed data
+     * do not fit.
+     */
+    private static void deflate(final Deflater deflater, final byte[] inflated,
+            final int length, final CompressedTile deflated) {
+        deflater.setInput(inflated, 0, length);
         deflater.finish();
-        final int numCompressedBytes = deflater.deflate(deflated);
+        deflated.length = 0;
+        while (!deflater.finished()) {
+            if (deflated.length == deflated.buf.length) {
+                deflated.buf = Arrays.copyOf(deflated.buf,
+                        2 * deflated.buf.length);
+            }
+            deflated.length += deflater.deflate(deflated.buf,
+                    deflated.length, deflated.buf.length - deflated.length);
+        }
         deflater.reset();
-        return numCompressedBytes;
+    }
+
+    /**
+     * The buffer receiving a compressed strip or tile.
+     */
+    private static final class CompressedTile {
+
+        private byte[] buf;
+        private int length;
+
+        CompressedTile(final int size) {
+            this.buf = new byte[size];
+        }
+    }
+
+    /**
+     * Compresses the strips or tiles of an image and writes them in order. If
+     * the encoding parameters specify a compression executor, up to a window
+     * of strips or tiles are compressed concurrently while the data of the
+     * following ones are being gathered.
+     */
+    private final class TileWriter {
+
+        private final int compression;
+        private final int deflateLevel;
+        private final long[] tileByteCounts;
+        private final int bytesPerRow;
+        private final int bufSize;
+        private final int predictor;
+        private final int samplesPerPixel;
+        private final int bytesPerSample;
+        private final Executor executor;
+        private final int window;
+
+        // Compressed strips or tiles not written yet, in order
+        private final Deque<FutureTask<byte[]>> pending = new ArrayDeque<>();
+
+        // Compressors not in use by a compression task
+        private final Deque<Deflater> deflaters = new ArrayDeque<>();
+        private final Deque<TIFFLZWEncoder> lzwEncoders = new ArrayDeque<>();
+
+        // Set once the compressors have been released
+        private boolean closed;
+
+        private CompressedTile compressed;
+        private int tileNum;
+
+        TileWriter(final TIFFEncodeParam encodeParam,
+                final long[] tileByteCounts, final int bytesPerRow,
+                final int tileHeight, final int predictor,
+                final int samplesPerPixel, final int bytesPerSample) {
+            this.compression = encodeParam.getCompression();
+            this.deflateLevel = encodeParam.getDeflateLevel();
+            this.tileByteCounts = tileByteCounts;
+            this.bytesPerRow = bytesPerRow;
+            this.predictor = predictor;
+            this.samplesPerPixel = samplesPerPixel;
+            this.bytesPerSample = bytesPerSample;
+            this.executor = encodeParam.getCompressionExecutor();
+            this.window = encodeParam.getCompressionWindow();
+
+            final int bytesPerTile = bytesPerRow * tileHeight;
+            switch (this.compression) {
+            case COMP_PACKBITS:
+                this.bufSize = bytesPerTile + (bytesPerRow + 127) / 128
+                        * tileHeight;
+                break;
+            case COMP_LZW:
+                this.bufSize = TIFFLZWEncoder.getMaxEncodedLength(bytesPerTile);
+                break;
+            case COMP_DEFLATE:
+                // Leave room for incompressible data
+                this.bufSize = bytesPerTile + (bytesPerTile >> 10) + 64;
+                break;
+            default:
+                this.bufSize = 0;
+            }
+        }
+
+        /**
+         * Writes a strip or tile given as rows of packed pixels.
+         */
+        void write(final byte[] data, final int rows) throws IOException {
+            final int length = rows * this.bytesPerRow;
+            if (this.compression == COMP_NONE) {
+                TIFFImageEncoder.this.output.write(data, 0, length);
+            } else if (this.bufSize == 0) {
+                // Unsupported compression: nothing is written
+                return;
+            } else if (this.executor == null) {
+                if (this.compressed == null) {
+                    this.compressed = new CompressedTile(this.bufSize);
+                }
+                compress(data, rows, this.compressed);
+                writeCompressed(this.compressed.buf, this.compressed.length);
+            } else {
+                // The data buffer is reused for the next strip or tile
+                final byte[] copy = Arrays.copyOf(data, length);
+                final FutureTask<byte[]> task = new FutureTask<>(
+                        new Callable<byte[]>() {
+                            @Override
+                            public byte[] call() {
+                                final CompressedTile out = new CompressedTile(
+                                        TileWriter.this.bufSize);
+                                compress(copy, rows, out);
+                                return Arrays.copyOf(out.buf, out.length);
+                            }
+                        });
+                this.pending.addLast(task);
+                this.executor.execute(task);
+                while (this.pending.size() >= this.window) {
+                    writePending();
+                }
+            }
+        }
+
+        /**
+         * Writes the strips or tiles still being compressed.
+         */
+        void finish() throws IOException {
+            while (!this.pending.isEmpty()) {
+                writePending();
+            }
+        }
+
+        /**
+         * Cancels the strips or tiles not written yet and releases the
+         * compressors. Compression tasks still running end their compressor
+         * themselves once they are done.
+         */
+        void close() {
+            cancelPending();
+            synchronized (this.deflaters) {
+                this.closed = true;
+                for (final Deflater deflater : this.deflaters) {
+                    deflater.end();
+                }
+                this.deflaters.clear();
+            }
+        }
+
+        /**
+         * Compresses a strip or tile, applying the predictor to the data in
+         * place first.
+         */
+        private void compress(final byte[] data, final int rows,
+                final CompressedTile out) {
+            final int length = rows * this.bytesPerRow;
+            if (this.compression == COMP_PACKBITS) {
+                out.length = compressPackBits(data, rows, this.bytesPerRow,
+                        out.buf);
+                return;
+            }
+
+            if (this.predictor == TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING) {
+                horizontalDifferencing(data, rows, this.bytesPerRow,
+                        this.samplesPerPixel, this.bytesPerSample);
+            } else if (this.predictor == TIFFEncodeParam.PREDICTOR_FLOATING_POINT) {
+                floatingPointDifferencing(data, rows, this.bytesPerRow,
+                        this.samplesPerPixel);
+            }
+
+            if (this.compression == COMP_LZW) {
+                TIFFLZWEncoder encoder;
+                synchronized (this.lzwEncoders) {
+                    encoder = this.lzwEncoders.pollFirst();
+                }
+                if (encoder == null) {
+                    encoder = new TIFFLZWEncoder();
+                }
+                try {
+                    out.length = encoder.encode(data, 0, length, out.buf);
+                } finally {
+                    synchronized (this.lzwEncoders) {
+                        this.lzwEncoders.addFirst(encoder);
+                    }
+                }
+                return;
+            }
+
+            Deflater deflater;
+            synchronized (this.deflaters) {
+                deflater = this.deflaters.pollFirst();
+            }
+            if (deflater == null) {
+                deflater = new Deflater(this.deflateLevel);
+            }
+            try {
+                deflate(deflater, data, length, out);
+            } finally {
+                synchronized (this.deflaters) {
+                    if (this.closed) {
+                        deflater.end();
+                    } else {
+                        this.deflaters.addFirst(deflater);
+                    }
+                }
+            }
+        }
+
+        private void writePending() throws IOException {
+            final byte[] compressed;
+            try {
+                compressed = this.pending.removeFirst().get();
+            } catch (final InterruptedException e) {
+                cancelPending();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (final ExecutionException e) {
+                cancelPending();
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            writeCompressed(compressed, compressed.length);
+        }
+
+        private void cancelPending() {
+            for (final FutureTask<byte[]> task : this.pending) {
+                task.cancel(false);
+            }
+            this.pending.clear();
+        }
+
+        private void writeCompressed(final byte[] buf, final int length)
+                throws IOException {
+            this.tileByteCounts[this.tileNum++] = length;
+            TIFFImageEncoder.this.output.write(buf, 0, length);
+        }
     }
 
 }
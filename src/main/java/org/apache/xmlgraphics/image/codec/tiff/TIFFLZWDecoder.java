@@ -31,12 +31,35 @@ import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 
 /**
  * A class for performing LZW decoding.
+ *
+ * <p>
+ * The string table is kept as arrays of prefix codes, suffix bytes and string
+ * lengths, so no memory is allocated while decoding. Strings are written
+ * straight into the destination buffer by following their chain of prefixes
+ * backwards from the last byte.
+ *
+ * <p>
+ * The decoder reverses the horizontal differencing predictor only on 8-bit
+ * samples, when it is constructed with a predictor of 2. <code>TIFFImage</code>
+ * constructs it with a predictor of 1 and reverses the predictor itself after
+ * decoding, since 16-bit samples must be summed in the byte order of the file
+ * and the floating point predictor needs the sample size, neither of which
+ * the decoder knows; the same code then also serves Deflate compressed data.
  */
 @Slf4j
 public class TIFFLZWDecoder {
 
-    byte[][] stringTable;
+    private static final int TABLE_SIZE = 4096;
+
+    // String table: the string of code i is the string of prefix[i] followed
+    // by suffix[i]; first[i] is its first byte and length[i] its length.
+    private final short[] prefix = new short[TABLE_SIZE];
+    private final byte[] suffix = new byte[TABLE_SIZE];
+    private final byte[] first = new byte[TABLE_SIZE];
+    private final short[] length = new short[TABLE_SIZE];
+
     byte[] data = null;
+    int dataLength;
     byte[] uncompData;
     int tableIndex, bitsToGet = 9;
     int bytePointer, bitPointer;
@@ -53,6 +76,13 @@ public class TIFFLZWDecoder {
         this.w = w;
         this.predictor = predictor;
         this.samplesPerPixel = samplesPerPixel;
+
+        for (int i = 0; i < 256; ++i) {
+            this.prefix[i] = -1;
+            this.suffix[i] = (byte) i;
+            this.first[i] = (byte) i;
+            this.length[i] = 1;
+        }
     }
 
     /**
@@ -66,6 +96,24 @@ public class TIFFLZWDecoder {
      *            The number of rows the compressed data contains.
      */
     public byte[] decode(final byte[] data, final byte[] uncompData, final int h) {
+        return decode(data, data.length, uncompData, h);
+    }
+
+    /**
+     * Method to decode LZW compressed data held at the start of a possibly
+     * longer array.
+     *
+     * @param data
+     *            The compressed data.
+     * @param dataLength
+     *            The number of bytes of compressed data in the array.
+     * @param uncompData
+     *            Array to return the uncompressed data in.
+     * @param h
+     *            The number of rows the compressed data contains.
+     */
+    public byte[] decode(final byte[] data, final int dataLength,
+            final byte[] uncompData, final int h) {
 
         if (data[0] == (byte) 0x00 && data[1] == (byte) 0x01) {
             throw new UnsupportedOperationException(
@@ -75,6 +123,7 @@ public class TIFFLZWDecoder {
         initializeStringTable();
 
         this.data = data;
+        this.dataLength = dataLength;
         this.h = h;
         this.uncompData = uncompData;
 
@@ -87,7 +136,6 @@ public class TIFFLZWDecoder {
         this.nextBits = 0;
 
         int code, oldCode = 0;
-        byte[] string;
 
         while ((code = getNextCode()) != 257
                 && this.dstIndex != uncompData.length) {
@@ -101,25 +149,27 @@ public class TIFFLZWDecoder {
                     break;
                 }
 
-                writeString(this.stringTable[code]);
+                writeString(code);
                 oldCode = code;
 
             } else {
 
                 if (code < this.tableIndex) {
 
-                    string = this.stringTable[code];
-
-                    writeString(string);
-                    addStringToTable(this.stringTable[oldCode], string[0]);
+                    writeString(code);
+                    addStringToTable(oldCode, this.first[code]);
                     oldCode = code;
 
                 } else {
 
-                    string = this.stringTable[oldCode];
-                    string = composeString(string, string[0]);
-                    writeString(string);
-                    addStringToTable(string);
+                    // The code is the one about to be added: the previous
+                    // string followed by its own first byte.
+                    final byte firstByte = this.first[oldCode];
+                    writeString(oldCode);
+                    if (this.dstIndex != uncompData.length) {
+                        uncompData[this.dstIndex++] = firstByte;
+                    }
+                    addStringToTable(oldCode, firstByte);
                     oldCode = code;
                 }
 
@@ -152,39 +202,42 @@ public class TIFFLZWDecoder {
      * Initialize the string table.
      */
     public void initializeStringTable() {
-
-        this.stringTable = new byte[4096][];
-
-        for (int i = 0; i < 256; ++i) {
-            this.stringTable[i] = new byte[1];
-            this.stringTable[i][0] = (byte) i;
-        }
-
         this.tableIndex = 258;
         this.bitsToGet = 9;
     }
 
     /**
-     * Write out the string just uncompressed.
+     * Write out the string of a code, truncating it at the end of the
+     * destination buffer.
      */
-    public void writeString(final byte[] string) {
-
-        for (final byte element : string) {
-            this.uncompData[this.dstIndex++] = element;
+    private void writeString(final int code) {
+        final int end = this.dstIndex + this.length[code];
+        int c = code;
+        int i = end - 1;
+        // Skip the bytes that do not fit into the destination buffer.
+        while (i >= this.uncompData.length) {
+            c = this.prefix[c];
+            i--;
+        }
+        while (i >= this.dstIndex) {
+            this.uncompData[i--] = this.suffix[c];
+            c = this.prefix[c];
         }
+        this.dstIndex = Math.min(end, this.uncompData.length);
     }
 
     /**
-     * Add a new string to the string table.
+     * Add a new string to the string table: the string of
+     * <code>prefixCode</code> followed by <code>newByte</code>.
      */
-    public void addStringToTable(final byte[] oldString, final byte newString) {
-        final int length = oldString.length;
-        final byte[] string = new byte[length + 1];
-        System.arraycopy(oldString, 0, string, 0, length);
-        string[length] = newString;
-
-        // Add this new String to the table
-        this.stringTable[this.tableIndex++] = string;
+    private void addStringToTable(final int prefixCode, final byte newByte) {
+        if (this.tableIndex < TABLE_SIZE) {
+            final int index = this.tableIndex++;
+            this.prefix[index] = (short) prefixCode;
+            this.suffix[index] = newByte;
+            this.first[index] = this.first[prefixCode];
+            this.length[index] = (short) (this.length[prefixCode] + 1);
+        }
 
         if (this.tableIndex == 511) {
             this.bitsToGet = 10;
@@ -196,25 +249,51 @@ public class TIFFLZWDecoder {
     }
 
     /**
-     * Add a new string to the string table.
+     * Write out the string just uncompressed.
+     *
+     * @deprecated the decoder no longer keeps strings as byte arrays; this
+     *             method is kept for compatibility only.
      */
-    public void addStringToTable(final byte[] string) {
-
-        // Add this new String to the table
-        this.stringTable[this.tableIndex++] = string;
+    @Deprecated
+    public void writeString(final byte[] string) {
 
-        if (this.tableIndex == 511) {
-            this.bitsToGet = 10;
-        } else if (this.tableIndex == 1023) {
-            this.bitsToGet = 11;
-        } else if (this.tableIndex == 2047) {
-            this.bitsToGet = 12;
+        for (final byte element : string) {
+            this.uncompData[this.dstIndex++] = element;
         }
     }
 
+    /**
+     * Add a new string to the string table. <code>oldString</code> must be
+     * the string of a code in the table.
+     *
+     * @deprecated the decoder no longer keeps strings as byte arrays; this
+     *             method is kept for compatibility only.
+     */
+    @Deprecated
+    public void addStringToTable(final byte[] oldString, final byte newString) {
+        addStringToTable(findCode(oldString, oldString.length), newString);
+    }
+
+    /**
+     * Add a new string to the string table. All but the last byte of
+     * <code>string</code> must be the string of a code in the table.
+     *
+     * @deprecated the decoder no longer keeps strings as byte arrays; this
+     *             method is kept for compatibility only.
+     */
+    @Deprecated
+    public void addStringToTable(final byte[] string) {
+        final int last = string.length - 1;
+        addStringToTable(findCode(string, last), string[last]);
+    }
+
     /**
      * Append <code>newString</code> to the end of <code>oldString</code>.
+     *
+     * @deprecated the decoder no longer keeps strings as byte arrays; this
+     *             method is kept for compatibility only.
      */
+    @Deprecated
     public byte[] composeString(final byte[] oldString, final byte newString) {
         final int length = oldString.length;
         final byte[] string = new byte[length + 1];
@@ -224,6 +303,37 @@ public class TIFFLZWDecoder {
         return string;
     }
 
+    /**
+     * Returns the most recent code whose string is the first
+     * <code>len</code> bytes of <code>string</code>.
+     */
+    private int findCode(final byte[] string, final int len) {
+        for (int code = this.tableIndex - 1; code >= 0 && len > 0; code--) {
+            if (this.length[code] != len) {
+                continue;
+            }
+            int c = code;
+            int i = len - 1;
+            while (i >= 0 && this.suffix[c] == string[i]) {
+                c = this.prefix[c];
+                i--;
+            }
+            if (i < 0) {
+                return code;
+            }
+        }
+        throw new IllegalArgumentException(
+                PropertyUtil.getString("TIFFLZWDecoder1"));
+    }
+
+    // Returns the next byte of the compressed data
+    private int nextByte() {
+        if (this.bytePointer >= this.dataLength) {
+            throw new ArrayIndexOutOfBoundsException(this.bytePointer);
+        }
+        return this.data[this.bytePointer++] & 0xff;
+    }
+
     // Returns the next 9, 10, 11 or 12 bits
     public int getNextCode() {
         // Attempt to get the next code. The exception is caught to make
@@ -231,13 +341,11 @@ public class TIFFLZWDecoder {
         // omitted from a strip. Examples of such cases have been observed
         // in practice.
         try {
-            this.nextData = this.nextData << 8 | this.data[this.bytePointer++]
-                    & 0xff;
+            this.nextData = this.nextData << 8 | nextByte();
             this.nextBits += 8;
 
             if (this.nextBits < this.bitsToGet) {
-                this.nextData = this.nextData << 8
-                        | this.data[this.bytePointer++] & 0xff;
+                this.nextData = this.nextData << 8 | nextByte();
                 this.nextBits += 8;
             }
 
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.util.Arrays;
+
+/**
+ * A class for performing TIFF LZW encoding, the counterpart of
+ * {@link TIFFLZWDecoder}.
+ *
+ * <p>
+ * Codes are written most significant bit first and their width grows one
+ * code early, as TIFF requires. The string table is a hash table from a prefix
+ * code and a byte to the code of their string, so no memory is allocated
+ * while encoding. A Clear code is written whenever the table is full.
+ */
+public class TIFFLZWEncoder {
+
+    private static final int CLEAR_CODE = 256;
+    private static final int EOI_CODE = 257;
+    private static final int FIRST_CODE = 258;
+
+    // The table is reset before the first 12-bit code would overflow
+    private static final int MAX_CODE = 4094;
+
+    private static final int HASH_BITS = 13;
+    private static final int HASH_SIZE = 1 << HASH_BITS;
+
+    // Hash table of strings: the key is the prefix code shifted left by 8 bits
+    // combined with the last byte, -1 marks a free slot.
+    private final int[] hashKeys = new int[HASH_SIZE];
+    private final short[] hashCodes = new short[HASH_SIZE];
+
+    private int nextCode;
+    private int codeLength;
+
+    private byte[] out;
+    private int outIndex;
+    private int bitBuffer;
+    private int bitCount;
+
+    /**
+     * Returns the maximum number of bytes that encoding a given number of
+     * bytes may produce.
+     *
+     * @param length
+     *            the number of bytes to encode
+     * @return the size of a buffer large enough for the encoded data
+     */
+    public static int getMaxEncodedLength(final int length) {
+        // At most one 12-bit code per byte, plus Clear and EOI codes
+        final long codes = length + length / (MAX_CODE - FIRST_CODE) + 3;
+        return (int) ((codes * 12 + 7) / 8);
+    }
+
+    /**
+     * Encodes a strip or tile.
+     *
+     * @param data
+     *            the data to encode
+     * @param off
+     *            the offset of the first byte to encode
+     * @param len
+     *            the number of bytes to encode
+     * @param compData
+     *            the buffer receiving the encoded data, which must hold at
+     *            least <code>getMaxEncodedLength(len)</code> bytes
+     * @return the number of encoded bytes
+     */
+    public int encode(final byte[] data, final int off, final int len,
+            final byte[] compData) {
+        this.out = compData;
+        this.outIndex = 0;
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+
+        resetTable();
+        writeCode(CLEAR_CODE);
+
+        if (len > 0) {
+            int prefix = data[off] & 0xff;
+            for (int i = off + 1; i < off + len; i++) {
+                final int b = data[i] & 0xff;
+                final int key = prefix << 8 | b;
+                int slot = hash(key);
+                while (this.hashKeys[slot] != -1 && this.hashKeys[slot] != key) {
+                    slot = slot + 1 & HASH_SIZE - 1;
+                }
+                if (this.hashKeys[slot] == key) {
+                    // The string continues
+                    prefix = this.hashCodes[slot];
+                    continue;
+                }
+
+                writeCode(prefix);
+                this.hashKeys[slot] = key;
+                this.hashCodes[slot] = (short) this.nextCode++;
+                if (this.nextCode == MAX_CODE) {
+                    writeCode(CLEAR_CODE);
+                    resetTable();
+                } else if (this.nextCode == 1 << this.codeLength) {
+                    this.codeLength++;
+                }
+                prefix = b;
+            }
+            writeCode(prefix);
+
+            // The decoder adds an entry for the last code as well
+            if (++this.nextCode == 1 << this.codeLength) {
+                this.codeLength++;
+            }
+        }
+
+        writeCode(EOI_CODE);
+        if (this.bitCount > 0) {
+            compData[this.outIndex++] = (byte) (this.bitBuffer << 8 - this.bitCount);
+        }
+        this.out = null;
+        return this.outIndex;
+    }
+
+    private void resetTable() {
+        Arrays.fill(this.hashKeys, -1);
+        this.nextCode = FIRST_CODE;
+        this.codeLength = 9;
+    }
+
+    private static int hash(final int key) {
+        return key * 0x9E3779B1 >>> 32 - HASH_BITS;
+    }
+
+    private void writeCode(final int code) {
+        // Bits that have been written are shifted out at the top
+        this.bitBuffer = this.bitBuffer << this.codeLength | code;
+        this.bitCount += this.codeLength;
+        while (this.bitCount >= 8) {
+            this.bitCount -= 8;
+            this.out[this.outIndex++] = (byte) (this.bitBuffer >>> this.bitCount);
+        }
+    }
+}
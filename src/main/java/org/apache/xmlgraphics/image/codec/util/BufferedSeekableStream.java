@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import java.io.IOException;
+
+/**
+ * A <code>SeekableStream</code> that buffers another one. Data is read from
+ * the underlying stream in windows of a fixed size, so that the many small
+ * reads of header and directory parsing do not each reach the underlying
+ * stream. Seeking within the current window keeps it, seeking outside of it
+ * discards it. Reads at least as large as the window bypass it.
+ *
+ * <p>
+ * The position of the underlying stream is undefined while it is buffered.
+ * Positional reads are forwarded to the underlying stream. Closing this
+ * stream closes the underlying stream.
+ */
+public final class BufferedSeekableStream extends SeekableStream {
+
+    /** The default size of the window. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** The underlying stream. */
+    private final SeekableStream src;
+
+    /** The window. */
+    private final byte[] buf;
+
+    /** The position of the window in the underlying stream. */
+    private long bufStart = 0;
+
+    /** The number of valid bytes in the window. */
+    private int bufLength = 0;
+
+    /** Position of first unread byte. */
+    private long pointer;
+
+    /**
+     * Constructs a <code>BufferedSeekableStream</code> with the default window
+     * size.
+     *
+     * @param src
+     *            the stream to buffer
+     * @throws IOException
+     *             if the position of the stream cannot be obtained
+     */
+    public BufferedSeekableStream(final SeekableStream src) throws IOException {
+        this(src, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a <code>BufferedSeekableStream</code>. Reading starts at the
+     * current position of the underlying stream.
+     *
+     * @param src
+     *            the stream to buffer
+     * @param bufferSize
+     *            the size of the window in bytes
+     * @throws IOException
+     *             if the position of the stream cannot be obtained
+     */
+    public BufferedSeekableStream(final SeekableStream src,
+            final int bufferSize) throws IOException {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                    PropertyUtil.getString("BufferedSeekableStream0"));
+        }
+        this.src = src;
+        this.buf = new byte[bufferSize];
+        this.pointer = src.getFilePointer();
+    }
+
+    /**
+     * Returns whether the underlying stream can seek backwards. Seeking
+     * backwards within the window is always possible.
+     */
+    @Override
+    public boolean canSeekBackwards() {
+        return this.src.canSeekBackwards();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFilePointer() {
+        return this.pointer;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void seek(final long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException(
+                    PropertyUtil.getString("BufferedSeekableStream1"));
+        }
+        this.pointer = pos;
+    }
+
+    /**
+     * Fills the window from the file pointer. Returns false at the end of the
+     * stream.
+     */
+    private boolean fill() throws IOException {
+        this.bufStart = this.pointer;
+        this.bufLength = 0;
+        int nbytes;
+        synchronized (this.src) {
+            this.src.seek(this.pointer);
+            do {
+                nbytes = this.src.read(this.buf, 0, this.buf.length);
+            } while (nbytes == 0);
+        }
+        if (nbytes < 0) {
+            return false;
+        }
+        this.bufLength = nbytes;
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() throws IOException {
+        long off = this.pointer - this.bufStart;
+        if (off < 0 || off >= this.bufLength) {
+            if (!fill()) {
+                return -1;
+            }
+            off = 0;
+        }
+        this.pointer++;
+        return this.buf[(int) off] & 0xff;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        long bufOff = this.pointer - this.bufStart;
+        if (bufOff < 0 || bufOff >= this.bufLength) {
+            if (len >= this.buf.length) {
+                // Large reads go straight to the underlying stream
+                final int nbytes;
+                synchronized (this.src) {
+                    this.src.seek(this.pointer);
+                    nbytes = this.src.read(b, off, len);
+                }
+                if (nbytes > 0) {
+                    this.pointer += nbytes;
+                }
+                return nbytes;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            bufOff = 0;
+        }
+        final int nbytes = Math.min(len, this.bufLength - (int) bufOff);
+        System.arraycopy(this.buf, (int) bufOff, b, off, nbytes);
+        this.pointer += nbytes;
+        return nbytes;
+    }
+
+    /**
+     * Reads exactly <code>len</code> bytes from a given position of the
+     * underlying stream, without using or changing the file pointer or the
+     * window. The read is forwarded to the underlying stream, so it is as safe
+     * to call from several threads as the <code>readFully(long, ...)</code>
+     * method of that stream; the other methods of this stream hold the lock of
+     * the underlying stream while moving its position.
+     */
+    @Override
+    public void readFully(final long pos, final byte[] b, final int off,
+            final int len) throws IOException {
+        this.src.readFully(pos, b, off, len);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        super.close();
+        this.src.close();
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A <code>SeekableStream</code> reading a file through a
+ * <code>FileChannel</code>. Besides the usual file pointer, it offers
+ * positional reads which neither use nor move the file pointer and may be
+ * called by several threads at once, as <code>FileChannel</code> allows.
+ *
+ * <p>
+ * Threads that need a file pointer of their own can obtain one with
+ * {@link #newCursor()}: cursors share the channel of the stream they were
+ * created from, which is closed when the stream and all its cursors are
+ * closed. A single cursor must not be used by several threads at once.
+ *
+ * <p>
+ * A <code>FileChannel</code> is closed when a thread blocked in a read on it
+ * is interrupted, which throws a <code>ClosedByInterruptException</code> in
+ * that thread. If the stream was created from a file, the file is then
+ * opened again, so that the stream, its cursors and the other threads
+ * reading through them remain usable. If it was created from a channel, the
+ * stream cannot read any more once a reading thread has been interrupted.
+ */
+public final class FileChannelSeekableStream extends SeekableStream {
+
+    /** The channel and the number of streams sharing it. */
+    private static final class SharedChannel {
+
+        /** The file to open again if the channel is closed, or null. */
+        private final File file;
+
+        /** The current channel of the file. */
+        private volatile FileChannel channel;
+
+        /** The number of streams sharing the channel that are not closed. */
+        private int openCount = 1;
+
+        SharedChannel(final File file, final FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        /**
+         * Replaces a channel closed by the interrupt of a reading thread with
+         * a new channel of the file, unless another thread already did.
+         *
+         * @return whether a channel other than <code>closed</code> may be
+         *         used
+         */
+        synchronized boolean reopen(final FileChannel closed)
+                throws IOException {
+            if (this.openCount == 0) {
+                return false;
+            }
+            if (this.channel == closed) {
+                if (this.file == null) {
+                    return false;
+                }
+                this.channel = FileChannel.open(this.file.toPath(),
+                        StandardOpenOption.READ);
+            }
+            return true;
+        }
+
+        synchronized void retain() {
+            this.openCount++;
+        }
+
+        synchronized void release() throws IOException {
+            if (--this.openCount == 0) {
+                this.channel.close();
+            }
+        }
+    }
+
+    /** The channel, shared with the cursors. */
+    private final SharedChannel shared;
+
+    /** Buffer for reading single bytes. */
+    private final byte[] singleByte = new byte[1];
+
+    /** Position of first unread byte. */
+    private long pointer = 0;
+
+    /** True once this stream or cursor is closed. */
+    private boolean closed = false;
+
+    /**
+     * Constructs a <code>FileChannelSeekableStream</code> reading a file.
+     *
+     * @param file
+     *            the file to read
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public FileChannelSeekableStream(final File file) throws IOException {
+        this(new SharedChannel(file, FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)));
+    }
+
+    /**
+     * Constructs a <code>FileChannelSeekableStream</code> reading a channel.
+     * The channel is closed when the stream and its cursors are closed. Since
+     * the channel cannot be opened again, the stream becomes unusable if a
+     * thread reading it is interrupted.
+     *
+     * @param channel
+     *            the channel to read
+     */
+    public FileChannelSeekableStream(final FileChannel channel) {
+        this(new SharedChannel(null, channel));
+    }
+
+    private FileChannelSeekableStream(final SharedChannel shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * Returns a new stream over the same channel with a file pointer of its
+     * own, initially 0.
+     *
+     * @return the cursor
+     * @throws IOException
+     *             if this stream is closed
+     */
+    public FileChannelSeekableStream newCursor() throws IOException {
+        checkClosed();
+        this.shared.retain();
+        return new FileChannelSeekableStream(this.shared);
+    }
+
+    /**
+     * Returns the length of the file.
+     *
+     * @return the length in bytes
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public long length() throws IOException {
+        return this.shared.channel.size();
+    }
+
+    private void checkClosed() throws IOException {
+        if (this.closed) {
+            throw new IOException(
+                    PropertyUtil.getString("FileChannelSeekableStream1"));
+        }
+    }
+
+    /**
+     * Returns <code>true</code> since all
+     * <code>FileChannelSeekableStream</code> instances support seeking
+     * backwards.
+     */
+    @Override
+    public boolean canSeekBackwards() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFilePointer() {
+        return this.pointer;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void seek(final long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException(
+                    PropertyUtil.getString("FileChannelSeekableStream0"));
+        }
+        this.pointer = pos;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() throws IOException {
+        return read(this.singleByte, 0, 1) == 1 ? this.singleByte[0] & 0xff
+                : -1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        final int nbytes = read(this.pointer, b, off, len);
+        if (nbytes > 0) {
+            this.pointer += nbytes;
+        }
+        return nbytes;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes from a given position of the file,
+     * without using or changing the file pointer. This method may be called by
+     * several threads at once. If the calling thread is interrupted, a
+     * <code>ClosedByInterruptException</code> is thrown.
+     *
+     * @param position
+     *            the position of the first byte to read
+     * @param b
+     *            the buffer into which the data is read
+     * @param off
+     *            the start offset in array <code>b</code> at which the data is
+     *            written
+     * @param len
+     *            the maximum number of bytes to read
+     * @return the number of bytes read, or <code>-1</code> if the position is
+     *         at or beyond the end of the file
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public int read(final long position, final byte[] b, final int off,
+            final int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        checkClosed();
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            final FileChannel channel = this.shared.channel;
+            try {
+                return channel.read(ByteBuffer.wrap(b, off, len), position);
+            } catch (final ClosedByInterruptException e) {
+                // Keeps the stream usable by the other threads
+                this.shared.reopen(channel);
+                throw e;
+            } catch (final ClosedChannelException e) {
+                // Closed by the interrupt of another reading thread
+                if (!this.shared.reopen(channel)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads exactly <code>len</code> bytes from a given position of the file,
+     * without using or changing the file pointer. Unlike the implementation of
+     * <code>SeekableStream</code>, this method does not lock the stream and
+     * may be called by several threads at once.
+     */
+    @Override
+    public void readFully(final long pos, final byte[] b, final int off,
+            final int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            final int count = read(pos + n, b, off + n, len - n);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            n += count;
+        }
+    }
+
+    /**
+     * Closes this stream, and the channel if the stream and all cursors
+     * sharing it are closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        super.close();
+        this.closed = true;
+        this.shared.release();
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A subclass of <code>SeekableStream</code> that may be used to wrap a regular
+ * <code>InputStream</code>. Seeking backwards is supported by means of a cache
+ * that is kept in memory until it reaches a threshold, and is then moved to a
+ * temporary file. Small streams thus never touch the disk while large ones do
+ * not use more than the threshold of memory.
+ *
+ * <p>
+ * Memory is cached in blocks of 64 KB which are pooled and reused by
+ * subsequent streams once a stream is closed. The default threshold of 1 MB
+ * may be changed in bytes with the system property
+ * <code>org.apache.xmlgraphics.image.codec.util.HybridCacheSeekableStream.threshold</code>.
+ * Thresholds below one block are raised to one block, so streams of up to
+ * 64 KB are always cached in memory.
+ * The temporary file is created in the given cache directory, or in the
+ * default temporary-file directory. If it cannot be created, the data stays
+ * in memory.
+ *
+ * <p>
+ * The <code>mark()</code> and <code>reset()</code> methods are supported.
+ */
+@Slf4j
+public final class HybridCacheSeekableStream extends SeekableStream {
+
+    /** The default number of bytes cached in memory: 1 MB. */
+    public static final long DEFAULT_MEMORY_THRESHOLD = 1L << 20;
+
+    private static final long DEFAULT_THRESHOLD = Long.getLong(
+            HybridCacheSeekableStream.class.getName() + ".threshold",
+            DEFAULT_MEMORY_THRESHOLD).longValue();
+
+    /** Log_2 of the block size. */
+    private static final int BLOCK_SHIFT = 16;
+
+    /** The block size. */
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    /** A mask to determine the offset within a block. */
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    /** The maximum number of free blocks kept for reuse. */
+    private static final int MAX_POOLED_BLOCKS = 64;
+
+    /** Blocks released by closed streams. */
+    private static final Deque<byte[]> BLOCK_POOL = new ArrayDeque<>();
+
+    /** The source input stream. */
+    private final InputStream src;
+
+    /** The number of bytes cached in memory before spilling to a file. */
+    private final long memoryThreshold;
+
+    /** The directory of the cache file, or null for the default one. */
+    private final File cacheDirectory;
+
+    /** The blocks holding the data while it is cached in memory. */
+    private final List<byte[]> blocks = new ArrayList<>();
+
+    /** The cache file once the data has been spilled. */
+    private File cacheFile;
+
+    /** The channel of the cache file. */
+    private FileChannel cache;
+
+    /** Buffer for transferring data from the source to the cache file. */
+    private byte[] buf;
+
+    /** Buffer for reading single bytes from the cache file. */
+    private final byte[] singleByte = new byte[1];
+
+    /** Position of first unread byte. */
+    private long pointer = 0;
+
+    /** Number of bytes read. */
+    private long length = 0;
+
+    /** True if we've previously reached the end of the source stream */
+    private boolean foundEOS = false;
+
+    /** True if the cache file could not be created. */
+    private boolean spillFailed = false;
+
+    /**
+     * Constructs a <code>HybridCacheSeekableStream</code> that takes its
+     * source data from a regular <code>InputStream</code>, caching up to the
+     * default threshold in memory.
+     *
+     * @param src
+     *            the source input stream
+     */
+    public HybridCacheSeekableStream(final InputStream src) {
+        this(src, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructs a <code>HybridCacheSeekableStream</code> that takes its
+     * source data from a regular <code>InputStream</code>.
+     *
+     * @param src
+     *            the source input stream
+     * @param memoryThreshold
+     *            the maximum number of bytes cached in memory, beyond which
+     *            the data is cached in a temporary file; at least one block
+     *            of 64 KB
+     */
+    public HybridCacheSeekableStream(final InputStream src,
+            final long memoryThreshold) {
+        this(src, memoryThreshold, null);
+    }
+
+    /**
+     * Constructs a <code>HybridCacheSeekableStream</code> that takes its
+     * source data from a regular <code>InputStream</code>, caching up to the
+     * default threshold in memory and the rest in a temporary file in
+     * <code>cacheDirectory</code>.
+     *
+     * @param src
+     *            the source input stream
+     * @param cacheDirectory
+     *            the directory of the cache file, or null for the default
+     *            temporary-file directory
+     */
+    public HybridCacheSeekableStream(final InputStream src,
+            final File cacheDirectory) {
+        this(src, DEFAULT_THRESHOLD, cacheDirectory);
+    }
+
+    /**
+     * Constructs a <code>HybridCacheSeekableStream</code> that takes its
+     * source data from a regular <code>InputStream</code>.
+     *
+     * @param src
+     *            the source input stream
+     * @param memoryThreshold
+     *            the maximum number of bytes cached in memory, beyond which
+     *            the data is cached in a temporary file; at least one block
+     *            of 64 KB
+     * @param cacheDirectory
+     *            the directory of the cache file, or null for the default
+     *            temporary-file directory
+     */
+    public HybridCacheSeekableStream(final InputStream src,
+            final long memoryThreshold, final File cacheDirectory) {
+        this.src = src;
+        this.memoryThreshold = Math.max(memoryThreshold, BLOCK_SIZE);
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Returns whether the data has been moved from memory to a temporary file.
+     *
+     * @return true if the data is cached in a file
+     */
+    public boolean isFileCached() {
+        return this.cache != null;
+    }
+
+    /**
+     * Ensures that at least <code>pos</code> bytes are cached, or the end of
+     * the source is reached. The return value is equal to the smaller of
+     * <code>pos</code> and the length of the source stream.
+     */
+    private long readUntil(final long pos) throws IOException {
+        while (this.length < pos && !this.foundEOS) {
+            final int off = (int) (this.length & BLOCK_MASK);
+            if (off == 0 && this.cache == null && !this.spillFailed
+                    && this.length + BLOCK_SIZE > this.memoryThreshold) {
+                spill();
+            }
+
+            if (this.cache == null) {
+                final int block = (int) (this.length >> BLOCK_SHIFT);
+                if (block == this.blocks.size()) {
+                    this.blocks.add(allocateBlock());
+                }
+                final int nbytes = this.src.read(this.blocks.get(block), off,
+                        BLOCK_SIZE - off);
+                if (nbytes == -1) {
+                    this.foundEOS = true;
+                } else {
+                    this.length += nbytes;
+                }
+            } else {
+                final int nbytes = this.src.read(this.buf, 0, BLOCK_SIZE);
+                if (nbytes == -1) {
+                    this.foundEOS = true;
+                } else {
+                    final ByteBuffer bb = ByteBuffer.wrap(this.buf, 0, nbytes);
+                    while (bb.hasRemaining()) {
+                        this.cache.write(bb, this.length + bb.position());
+                    }
+                    this.length += nbytes;
+                }
+            }
+        }
+        return Math.min(pos, this.length);
+    }
+
+    /**
+     * Moves the blocks cached in memory to a temporary file. Called only when
+     * all blocks are full.
+     */
+    private void spill() throws IOException {
+        final RandomAccessFile raf;
+        try {
+            this.cacheFile = File.createTempFile("xg-HCSS-", ".tmp",
+                    this.cacheDirectory);
+            this.cacheFile.deleteOnExit();
+            raf = new RandomAccessFile(this.cacheFile, "rw");
+        } catch (final IOException | SecurityException e) {
+            log.warn("Unable to create a cache file, caching in memory", e);
+            if (this.cacheFile != null) {
+                this.cacheFile.delete();
+                this.cacheFile = null;
+            }
+            this.spillFailed = true;
+            return;
+        }
+        this.cache = raf.getChannel();
+
+        long position = 0;
+        for (final byte[] block : this.blocks) {
+            final ByteBuffer bb = ByteBuffer.wrap(block);
+            while (bb.hasRemaining()) {
+                this.cache.write(bb, position + bb.position());
+            }
+            position += BLOCK_SIZE;
+        }
+        this.buf = this.blocks.isEmpty() ? allocateBlock() : this.blocks
+                .remove(0);
+        releaseBlocks();
+    }
+
+    /**
+     * Returns <code>true</code> since all
+     * <code>HybridCacheSeekableStream</code> instances support seeking
+     * backwards.
+     */
+    @Override
+    public boolean canSeekBackwards() {
+        return true;
+    }
+
+    /**
+     * Returns the current offset in this file.
+     *
+     * @return the offset from the beginning of the file, in bytes, at which the
+     *         next read occurs.
+     */
+    @Override
+    public long getFilePointer() {
+        return this.pointer;
+    }
+
+    /**
+     * Sets the file-pointer offset, measured from the beginning of this file,
+     * at which the next read occurs.
+     *
+     * @param pos
+     *            the offset position, measured in bytes from the beginning of
+     *            the file, at which to set the file pointer.
+     * @exception IOException
+     *                if <code>pos</code> is less than <code>0</code> or if an
+     *                I/O error occurs.
+     */
+    @Override
+    public void seek(final long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException(
+                    PropertyUtil.getString("HybridCacheSeekableStream0"));
+        }
+        this.pointer = pos;
+    }
+
+    /**
+     * Reads the next byte of data from the input stream. The value byte is
+     * returned as an <code>int</code> in the range <code>0</code> to
+     * <code>255</code>. If no byte is available because the end of the stream
+     * has been reached, the value <code>-1</code> is returned.
+     *
+     * @return the next byte of data, or <code>-1</code> if the end of the
+     *         stream is reached.
+     */
+    @Override
+    public int read() throws IOException {
+        final long next = this.pointer + 1;
+        if (readUntil(next) < next) {
+            return -1;
+        }
+        if (this.cache == null) {
+            final byte[] block = this.blocks
+                    .get((int) (this.pointer >> BLOCK_SHIFT));
+            return block[(int) (this.pointer++ & BLOCK_MASK)] & 0xff;
+        }
+        readCache(this.singleByte, 0, 1);
+        return this.singleByte[0] & 0xff;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes of data from the input stream into an
+     * array of bytes. Unlike <code>MemoryCacheSeekableStream</code>, this
+     * method reads across block boundaries, so the number of bytes read is
+     * only smaller than <code>len</code> at the end of the stream.
+     *
+     * @param b
+     *            the buffer into which the data is read.
+     * @param off
+     *            the start offset in array <code>b</code> at which the data is
+     *            written.
+     * @param len
+     *            the maximum number of bytes to read.
+     * @return the total number of bytes read into the buffer, or
+     *         <code>-1</code> if there is no more data because the end of the
+     *         stream has been reached.
+     */
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        final long pos = readUntil(this.pointer + len);
+        // End-of-stream
+        if (pos <= this.pointer) {
+            return -1;
+        }
+
+        final int nbytes = (int) (pos - this.pointer);
+        if (this.cache == null) {
+            int done = 0;
+            while (done < nbytes) {
+                final byte[] block = this.blocks
+                        .get((int) (this.pointer >> BLOCK_SHIFT));
+                final int blockOff = (int) (this.pointer & BLOCK_MASK);
+                final int n = Math.min(nbytes - done, BLOCK_SIZE - blockOff);
+                System.arraycopy(block, blockOff, b, off + done, n);
+                this.pointer += n;
+                done += n;
+            }
+        } else {
+            readCache(b, off, nbytes);
+        }
+        return nbytes;
+    }
+
+    /** Reads cached bytes from the file at the file pointer. */
+    private void readCache(final byte[] b, final int off, final int len)
+            throws IOException {
+        final ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+        while (bb.hasRemaining()) {
+            this.cache.read(bb, this.pointer + bb.position() - off);
+        }
+        this.pointer += len;
+    }
+
+    /**
+     * Closes this stream, releasing the memory blocks for reuse and deleting
+     * the cache file. The source stream is not closed.
+     *
+     * @exception IOException
+     *                if an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        super.close();
+        releaseBlocks();
+        if (this.buf != null) {
+            releaseBlock(this.buf);
+            this.buf = null;
+        }
+        if (this.cache != null) {
+            this.cache.close();
+            this.cacheFile.delete();
+            this.cache = null;
+            this.cacheFile = null;
+        }
+    }
+
+    private static byte[] allocateBlock() {
+        synchronized (BLOCK_POOL) {
+            final byte[] block = BLOCK_POOL.poll();
+            if (block != null) {
+                return block;
+            }
+        }
+        return new byte[BLOCK_SIZE];
+    }
+
+    private static void releaseBlock(final byte[] block) {
+        synchronized (BLOCK_POOL) {
+            if (BLOCK_POOL.size() < MAX_POOLED_BLOCKS) {
+                BLOCK_POOL.push(block);
+            }
+        }
+    }
+
+    private void releaseBlocks() {
+        for (final byte[] block : this.blocks) {
+            releaseBlock(block);
+        }
+        this.blocks.clear();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A <code>SeekableStream</code> reading a file that is mapped into memory.
+ * Reads are served from the mapping without system calls, which suits
+ * decoders making many small reads at scattered positions, such as
+ * <code>TIFFDirectory</code> reading the values of its fields on first
+ * access. Positional reads neither use nor move the file pointer and may be
+ * called by several threads at once.
+ *
+ * <p>
+ * The file is mapped in segments of at most 1 GB, so files of any size can
+ * be read. The mapping reflects the length of the file when the stream was
+ * created. It is released by the garbage collector some time after the
+ * stream is closed and no longer referenced, not by <code>close()</code>;
+ * on some platforms the file cannot be deleted until then.
+ */
+public final class MappedFileSeekableStream extends SeekableStream {
+
+    /** The size of the segments the file is mapped in. */
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    /** The mapped segments of the file. */
+    private volatile ByteBuffer[] segments;
+
+    /** The length of the file. */
+    private final long length;
+
+    /** Position of first unread byte. */
+    private long pointer = 0;
+
+    /**
+     * Constructs a <code>MappedFileSeekableStream</code> mapping a file.
+     *
+     * @param file
+     *            the file to read
+     * @throws IOException
+     *             if the file cannot be opened or mapped
+     */
+    public MappedFileSeekableStream(final File file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            this.length = channel.size();
+            final int count = (int) ((this.length + SEGMENT_SIZE - 1)
+                    / SEGMENT_SIZE);
+            this.segments = new ByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                final long start = (long) i * SEGMENT_SIZE;
+                final MappedByteBuffer segment = channel.map(
+                        FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(SEGMENT_SIZE, this.length - start));
+                this.segments[i] = segment;
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the file.
+     *
+     * @return the length in bytes
+     */
+    public long length() {
+        return this.length;
+    }
+
+    private ByteBuffer[] getSegments() throws IOException {
+        final ByteBuffer[] s = this.segments;
+        if (s == null) {
+            throw new IOException(
+                    PropertyUtil.getString("FileChannelSeekableStream1"));
+        }
+        return s;
+    }
+
+    /**
+     * Returns <code>true</code> since all
+     * <code>MappedFileSeekableStream</code> instances support seeking
+     * backwards.
+     */
+    @Override
+    public boolean canSeekBackwards() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFilePointer() {
+        return this.pointer;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void seek(final long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException(
+                    PropertyUtil.getString("FileChannelSeekableStream0"));
+        }
+        this.pointer = pos;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() throws IOException {
+        final ByteBuffer[] s = getSegments();
+        if (this.pointer >= this.length) {
+            return -1;
+        }
+        final int b = s[(int) (this.pointer / SEGMENT_SIZE)]
+                .get((int) (this.pointer % SEGMENT_SIZE)) & 0xff;
+        this.pointer++;
+        return b;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        final int nbytes = read(this.pointer, b, off, len);
+        if (nbytes > 0) {
+            this.pointer += nbytes;
+        }
+        return nbytes;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes from a given position of the file,
+     * without using or changing the file pointer. This method may be called by
+     * several threads at once.
+     *
+     * @param position
+     *            the position of the first byte to read
+     * @param b
+     *            the buffer into which the data is read
+     * @param off
+     *            the start offset in array <code>b</code> at which the data is
+     *            written
+     * @param len
+     *            the maximum number of bytes to read
+     * @return the number of bytes read, or <code>-1</code> if the position is
+     *         at or beyond the end of the file
+     * @throws IOException
+     *             if the stream is closed
+     */
+    public int read(final long position, final byte[] b, final int off,
+            final int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        final ByteBuffer[] s = getSegments();
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= this.length) {
+            return -1;
+        }
+        final int nbytes = (int) Math.min(len, this.length - position);
+        int n = 0;
+        while (n < nbytes) {
+            final long pos = position + n;
+            final int index = (int) (pos % SEGMENT_SIZE);
+            final int count = Math.min(nbytes - n, SEGMENT_SIZE - index);
+            // A duplicate keeps the shared segment's position untouched
+            final ByteBuffer segment = s[(int) (pos / SEGMENT_SIZE)]
+                    .duplicate();
+            segment.position(index);
+            segment.get(b, off + n, count);
+            n += count;
+        }
+        return nbytes;
+    }
+
+    /**
+     * Reads exactly <code>len</code> bytes from a given position of the file,
+     * without using or changing the file pointer. Unlike the implementation of
+     * <code>SeekableStream</code>, this method does not lock the stream and
+     * may be called by several threads at once.
+     */
+    @Override
+    public void readFully(final long pos, final byte[] b, final int off,
+            final int len) throws IOException {
+        if (read(pos, b, off, len) < len) {
+            throw new EOFException();
+        }
+    }
+
+    /**
+     * Closes this stream. The mapping itself is released when it is garbage
+     * collected.
+     */
+    @Override
+    public void close() throws IOException {
+        super.close();
+        this.segments = null;
+    }
+}
@@ -262,8 +262,8 @@ public final class MemoryCacheSeekableStream extends SeekableStream {
         }
 
         final byte[] buf = this.data.get((int) (this.pointer >> SECTOR_SHIFT));
-        final int nbytes = Math.min(len, SECTOR_SIZE
-                - (int) (this.pointer & SECTOR_MASK));
+        final int nbytes = (int) Math.min(Math.min(len, pos - this.pointer),
+                SECTOR_SIZE - (this.pointer & SECTOR_MASK));
         System.arraycopy(buf, (int) (this.pointer & SECTOR_MASK), b, off,
                 nbytes);
         this.pointer += nbytes;
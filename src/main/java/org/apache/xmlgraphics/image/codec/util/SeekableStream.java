@@ -24,6 +24,8 @@ import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -51,7 +53,7 @@ import lombok.extern.slf4j.Slf4j;
  * of <code>read</code> methods for various data types.
  *
  * <p>
- * Three classes are provided for the purpose of adapting a standard
+ * Four classes are provided for the purpose of adapting a standard
  * <code>InputStream</code> to the <code>SeekableStream</code> interface.
  * <code>ForwardSeekableStream</code> does not allows seeking backwards, but is
  * inexpensive to use. <code>FileCacheSeekableStream</code> maintains a copy of
@@ -64,6 +66,8 @@ import lombok.extern.slf4j.Slf4j;
  * <code>MemoryCacheSeekableStream</code> may be used.
  * <code>MemoryCacheSeekableStream</code> creates a potentially large in-memory
  * buffer to store the stream data and so should be avoided when possible.
+ * <code>HybridCacheSeekableStream</code> combines both: it caches the data in
+ * memory up to a threshold and in a temporary file beyond it.
  *
  * <p>
  * The <code>FileSeekableStream</code> class wraps a <code>File</code> or
@@ -72,6 +76,12 @@ import lombok.extern.slf4j.Slf4j;
  * costs.
  *
  * <p>
+ * The <code>FileChannelSeekableStream</code> class reads a file through a
+ * <code>FileChannel</code>. Its positional reads do not use the file pointer,
+ * so several threads may read the same file at once, each possibly with a
+ * cursor of its own.
+ *
+ * <p>
  * The <code>SegmentedSeekableStream</code> class performs a different sort of
  * function. It creates a <code>SeekableStream</code> from another
  * <code>SeekableStream</code> by selecting a series of portions or "segments".
@@ -110,12 +120,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
         SeekableStream stream = null;
 
         if (canSeekBackwards) {
-            try {
-                stream = new FileCacheSeekableStream(is);
-            } catch (final Exception e) {
-                log.error("Exception", e);
-                stream = new MemoryCacheSeekableStream(is);
-            }
+            stream = new HybridCacheSeekableStream(is);
         } else {
             stream = new ForwardSeekableStream(is);
         }
@@ -215,6 +220,28 @@ public abstract class SeekableStream extends InputStream implements DataInput {
     // public int available) throws IOException
     // public void close() throws IOException;
 
+    /** Holds the bytes of the primitive value being read. */
+    private final byte[] primitiveBuf = new byte[8];
+
+    /** Big-endian view of the primitive buffer. */
+    private final ByteBuffer bigEndianView = ByteBuffer.wrap(this.primitiveBuf)
+            .order(ByteOrder.BIG_ENDIAN);
+
+    /** Little-endian view of the primitive buffer. */
+    private final ByteBuffer littleEndianView = ByteBuffer.wrap(
+            this.primitiveBuf).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Reads the bytes of a primitive value with a single call to
+     * <code>read(byte[], int, int)</code> rather than one call to
+     * <code>read()</code> per byte, and returns a view of them.
+     */
+    private ByteBuffer readPrimitive(final int size, final ByteBuffer view)
+            throws IOException {
+        readFully(this.primitiveBuf, 0, size);
+        return view;
+    }
+
     /** Marked position, shared by {@link ForwardSeekableStream} */
     protected long markPos = -1L;
 
@@ -345,6 +372,46 @@ public abstract class SeekableStream extends InputStream implements DataInput {
         } while (n < len);
     }
 
+    /**
+     * Reads exactly <code>len</code> bytes starting at the given position of
+     * the stream into the byte array, leaving the stream pointer unchanged.
+     * Unlike a <code>seek()</code> followed by a <code>readFully()</code>,
+     * this method may be called concurrently by several threads.
+     *
+     * <p>
+     * The default implementation saves and restores the stream pointer while
+     * holding the lock of this stream, so it is only safe against other
+     * callers of this method. Subclasses that can read from an absolute
+     * position without moving a shared pointer should override it.
+     *
+     * @param pos
+     *            the position of the first byte to read, measured from the
+     *            beginning of the stream.
+     * @param b
+     *            the buffer into which the data is read.
+     * @param off
+     *            the start offset of the data.
+     * @param len
+     *            the number of bytes to read.
+     * @exception EOFException
+     *                if this stream reaches the end before reading all the
+     *                bytes.
+     * @exception IOException
+     *                if an I/O error occurs.
+     */
+    public void readFully(final long pos, final byte[] b, final int off,
+            final int len) throws IOException {
+        synchronized (this) {
+            final long savedPos = getFilePointer();
+            try {
+                seek(pos);
+                readFully(b, off, len);
+            } finally {
+                seek(savedPos);
+            }
+        }
+    }
+
     // Methods from DataInput, plus little-endian versions
 
     /**
@@ -476,12 +543,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      */
     @Override
     public final short readShort() throws IOException {
-        final int ch1 = this.read();
-        final int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (short) ((ch1 << 8) + (ch2 << 0));
+        return readPrimitive(2, this.bigEndianView).getShort(0);
     }
 
     /**
@@ -509,12 +571,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *                if an I/O error occurs.
      */
     public final short readShortLE() throws IOException {
-        final int ch1 = this.read();
-        final int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (short) ((ch2 << 8) + (ch1 << 0));
+        return readPrimitive(2, this.littleEndianView).getShort(0);
     }
 
     /**
@@ -542,12 +599,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      */
     @Override
     public final int readUnsignedShort() throws IOException {
-        final int ch1 = this.read();
-        final int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (ch1 << 8) + (ch2 << 0);
+        return readPrimitive(2, this.bigEndianView).getShort(0) & 0xffff;
     }
 
     /**
@@ -575,12 +627,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *                if an I/O error occurs.
      */
     public final int readUnsignedShortLE() throws IOException {
-        final int ch1 = this.read();
-        final int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (ch2 << 8) + (ch1 << 0);
+        return readPrimitive(2, this.littleEndianView).getShort(0) & 0xffff;
     }
 
     /**
@@ -607,12 +654,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      */
     @Override
     public final char readChar() throws IOException {
-        final int ch1 = this.read();
-        final int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (char) ((ch1 << 8) + (ch2 << 0));
+        return readPrimitive(2, this.bigEndianView).getChar(0);
     }
 
     /**
@@ -639,12 +681,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *                if an I/O error occurs.
      */
     public final char readCharLE() throws IOException {
-        final int ch1 = this.read();
-        final int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (char) ((ch2 << 8) + (ch1 << 0));
+        return readPrimitive(2, this.littleEndianView).getChar(0);
     }
 
     /**
@@ -673,14 +710,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      */
     @Override
     public final int readInt() throws IOException {
-        final int ch1 = this.read();
-        final int ch2 = this.read();
-        final int ch3 = this.read();
-        final int ch4 = this.read();
-        if ((ch1 | ch2 | ch3 | ch4) < 0) {
-            throw new EOFException();
-        }
-        return (ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0);
+        return readPrimitive(4, this.bigEndianView).getInt(0);
     }
 
     /**
@@ -708,14 +738,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *                if an I/O error occurs.
      */
     public final int readIntLE() throws IOException {
-        final int ch1 = this.read();
-        final int ch2 = this.read();
-        final int ch3 = this.read();
-        final int ch4 = this.read();
-        if ((ch1 | ch2 | ch3 | ch4) < 0) {
-            throw new EOFException();
-        }
-        return (ch4 << 24) + (ch3 << 16) + (ch2 << 8) + (ch1 << 0);
+        return readPrimitive(4, this.littleEndianView).getInt(0);
     }
 
     /**
@@ -743,18 +766,9 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *                if an I/O error occurs.
      */
     public final long readUnsignedInt() throws IOException {
-        final long ch1 = this.read();
-        final long ch2 = this.read();
-        final long ch3 = this.read();
-        final long ch4 = this.read();
-        if ((ch1 | ch2 | ch3 | ch4) < 0) {
-            throw new EOFException();
-        }
-        return (ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0);
+        return readPrimitive(4, this.bigEndianView).getInt(0) & 0xffffffffL;
     }
 
-    private final byte[] ruileBuf = new byte[4];
-
     /**
      * Reads an unsigned 32-bit integer from this stream in little-endian order.
      * This method reads 4 bytes from the stream, starting at the current stream
@@ -780,13 +794,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *                if an I/O error occurs.
      */
     public final long readUnsignedIntLE() throws IOException {
-        this.readFully(this.ruileBuf);
-        final long ch1 = this.ruileBuf[0] & 0xff;
-        final long ch2 = this.ruileBuf[1] & 0xff;
-        final long ch3 = this.ruileBuf[2] & 0xff;
-        final long ch4 = this.ruileBuf[3] & 0xff;
-
-        return (ch4 << 24) + (ch3 << 16) + (ch2 << 8) + (ch1 << 0);
+        return readPrimitive(4, this.littleEndianView).getInt(0) & 0xffffffffL;
     }
 
     /**
@@ -825,7 +833,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      */
     @Override
     public final long readLong() throws IOException {
-        return ((long) readInt() << 32) + (readInt() & 0xFFFFFFFFL);
+        return readPrimitive(8, this.bigEndianView).getLong(0);
     }
 
     /**
@@ -864,9 +872,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *                if an I/O error occurs.
      */
     public final long readLongLE() throws IOException {
-        final int i1 = readIntLE();
-        final int i2 = readIntLE();
-        return ((long) i2 << 32) + (i1 & 0xFFFFFFFFL);
+        return readPrimitive(8, this.littleEndianView).getLong(0);
     }
 
     /**
@@ -421,6 +421,53 @@ public abstract class SimpleRenderedImage implements RenderedImage {
         return getData(rect);
     }
 
+    /**
+     * Returns the indices of the tiles intersecting a region of the image.
+     * Operators reading the image should use it to request only the tiles
+     * covering the region they need.
+     *
+     * @param region
+     *            the region of interest, clipped against the image bounds.
+     * @return the tile indices, in row order; empty if the region lies
+     *         outside of the image.
+     */
+    public Point[] getTileIndices(final Rectangle region) {
+        final Rectangle r = region.intersection(getBounds());
+        if (r.isEmpty()) {
+            return new Point[0];
+        }
+        final int startX = convertXToTileX(r.x);
+        final int startY = convertYToTileY(r.y);
+        final int endX = convertXToTileX(r.x + r.width - 1);
+        final int endY = convertYToTileY(r.y + r.height - 1);
+
+        final Point[] indices = new Point[(endX - startX + 1)
+                * (endY - startY + 1)];
+        int n = 0;
+        for (int j = startY; j <= endY; j++) {
+            for (int i = startX; i <= endX; i++) {
+                indices[n++] = new Point(i, j);
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Returns the tiles with the given indices, as returned by
+     * <code>getTileIndices</code>.
+     *
+     * @param tileIndices
+     *            the indices of the tiles.
+     * @return the tiles, in the order of their indices.
+     */
+    public Raster[] getTiles(final Point[] tileIndices) {
+        final Raster[] tiles = new Raster[tileIndices.length];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = getTile(tileIndices[i].x, tileIndices[i].y);
+        }
+        return tiles;
+    }
+
     /**
      * Returns an arbitrary rectangular region of the RenderedImage in a Raster.
      * The rectangle of interest will be clipped against the image bounds.
@@ -435,44 +482,40 @@ public abstract class SimpleRenderedImage implements RenderedImage {
      * may result in undefined behavior. The copyData method should be used if
      * the returned Raster is to be modified.
      *
+     * <p>
+     * A region lying inside a single tile is returned as a child of that
+     * tile, without copying: it shares the data buffer of the tile. Callers
+     * that write to the returned Raster must copy it first. Only the tiles
+     * intersecting the region are requested. A region lying outside of the
+     * image is returned as a raster of the requested bounds whose samples are
+     * all zero.
+     *
      * @param bounds
      *            the region of the RenderedImage to be returned.
      */
     @Override
     public Raster getData(final Rectangle bounds) {
-        final int startX = convertXToTileX(bounds.x);
-        final int startY = convertYToTileY(bounds.y);
-        final int endX = convertXToTileX(bounds.x + bounds.width - 1);
-        final int endY = convertYToTileY(bounds.y + bounds.height - 1);
-        Raster tile;
-
-        if (startX == endX && startY == endY) {
-            tile = getTile(startX, startY);
-            return tile.createChild(bounds.x, bounds.y, bounds.width,
-                    bounds.height, bounds.x, bounds.y, null);
-        } else {
-            // Create a WritableRaster of the desired size
-            final SampleModel sm = this.sampleModel
-                    .createCompatibleSampleModel(bounds.width, bounds.height);
-
-            // Translate it
-            final WritableRaster dest = Raster.createWritableRaster(sm,
+        final Rectangle rect = bounds.intersection(getBounds());
+        if (rect.isEmpty()) {
+            return Raster.createWritableRaster(this.sampleModel
+                    .createCompatibleSampleModel(bounds.width, bounds.height),
                     bounds.getLocation());
-
-            for (int j = startY; j <= endY; j++) {
-                for (int i = startX; i <= endX; ++i) {
-                    tile = getTile(i, j);
-                    final Rectangle intersectRect = bounds.intersection(tile
-                            .getBounds());
-                    final Raster liveRaster = tile.createChild(intersectRect.x,
-                            intersectRect.y, intersectRect.width,
-                            intersectRect.height, intersectRect.x,
-                            intersectRect.y, null);
-                    dest.setDataElements(0, 0, liveRaster);
-                }
-            }
-            return dest;
         }
+        final Point[] tileIndices = getTileIndices(rect);
+        if (tileIndices.length == 1) {
+            return getTile(tileIndices[0].x, tileIndices[0].y).createChild(
+                    rect.x, rect.y, rect.width, rect.height, rect.x, rect.y,
+                    null);
+        }
+        // Create a WritableRaster of the desired size
+        final SampleModel sm = this.sampleModel.createCompatibleSampleModel(
+                rect.width, rect.height);
+
+        // Translate it
+        final WritableRaster dest = Raster.createWritableRaster(sm,
+                rect.getLocation());
+        copyTiles(rect, dest);
+        return dest;
     }
 
     /**
@@ -494,45 +537,41 @@ public abstract class SimpleRenderedImage implements RenderedImage {
      */
     @Override
     public WritableRaster copyData(WritableRaster dest) {
-        Rectangle bounds;
-        Raster tile;
-
         if (dest == null) {
-            bounds = getBounds();
             final Point p = new Point(this.minX, this.minY);
             /* A SampleModel to hold the entire image. */
             final SampleModel sm = this.sampleModel
                     .createCompatibleSampleModel(this.width, this.height);
             dest = Raster.createWritableRaster(sm, p);
-        } else {
-            bounds = dest.getBounds();
         }
 
-        final int startX = convertXToTileX(bounds.x);
-        final int startY = convertYToTileY(bounds.y);
-        final int endX = convertXToTileX(bounds.x + bounds.width - 1);
-        final int endY = convertYToTileY(bounds.y + bounds.height - 1);
-
-        for (int j = startY; j <= endY; j++) {
-            for (int i = startX; i <= endX; ++i) {
-                tile = getTile(i, j);
-                final Rectangle intersectRect = bounds.intersection(tile
-                        .getBounds());
-                final Raster liveRaster = tile.createChild(intersectRect.x,
-                        intersectRect.y, intersectRect.width,
-                        intersectRect.height, intersectRect.x, intersectRect.y,
-                        null);
-
-                /*
-                 * WritableRaster.setDataElements takes into account of
-                 * inRaster's minX and minY and add these to x and y. Since
-                 * liveRaster has the origin at the correct location, the
-                 * following call should not again give these coordinates in
-                 * places of x and y.
-                 */
-                dest.setDataElements(0, 0, liveRaster);
-            }
+        final Rectangle bounds = dest.getBounds().intersection(getBounds());
+        if (!bounds.isEmpty()) {
+            copyTiles(bounds, dest);
         }
         return dest;
     }
+
+    /**
+     * Copies the tiles intersecting a region, which lies inside the image, to
+     * a raster.
+     */
+    private void copyTiles(final Rectangle bounds, final WritableRaster dest) {
+        for (final Raster tile : getTiles(getTileIndices(bounds))) {
+            final Rectangle intersectRect = bounds
+                    .intersection(tile.getBounds());
+            final Raster liveRaster = tile.createChild(intersectRect.x,
+                    intersectRect.y, intersectRect.width,
+                    intersectRect.height, intersectRect.x, intersectRect.y,
+                    null);
+
+            /*
+             * WritableRaster.setDataElements takes into account of inRaster's
+             * minX and minY and add these to x and y. Since liveRaster has the
+             * origin at the correct location, the following call should not
+             * again give these coordinates in places of x and y.
+             */
+            dest.setDataElements(0, 0, liveRaster);
+        }
+    }
 }
@@ -61,6 +61,20 @@ public interface ImageProcessingHints {
     /** Used to tell the image loader to ignore any color profile in the image. */
     String IGNORE_COLOR_PROFILE = "IGNORE_COLOR_PROFILE"; // Value: Boolean
 
+    /**
+     * Used to tell an image loader that samples of more than 8 bits may be
+     * reduced to 8 bits, for example because the output format only carries 8
+     * bits per channel.
+     */
+    String REDUCE_TO_8_BIT = "REDUCE_TO_8_BIT"; // Value: Boolean
+
+    /**
+     * Used to tell an image loader to keep images that fit an
+     * IndexColorModel in indexed form instead of expanding them to RGB or
+     * gray/alpha.
+     */
+    String PRESERVE_INDEXED_COLOR = "PRESERVE_INDEXED_COLOR"; // Value: Boolean
+
     /** Used to tell a bitmap producer to generate a certain type of bitmap. */
     String BITMAP_TYPE_INTENT = "BITMAP_TYPE_INTENT";
 
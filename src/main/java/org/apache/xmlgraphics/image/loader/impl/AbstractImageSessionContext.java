@@ -39,9 +39,15 @@ import javax.xml.transform.stream.StreamSource;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.xmlgraphics.image.codec.util.BufferedSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.FileChannelSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.HybridCacheSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.MemoryCacheSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
 import org.apache.xmlgraphics.image.loader.ImageSource;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
+import org.apache.xmlgraphics.image.loader.util.SeekableStreamImageInputStream;
 import org.apache.xmlgraphics.image.loader.util.SoftMapCache;
 
 /**
@@ -141,19 +147,14 @@ public abstract class AbstractImageSessionContext implements
                 IOUtils.closeQuietly(in);
                 try {
                     // We let the OS' file system cache do the caching for us
-                    // --> lower Java memory consumption, probably no speed loss
-                    final ImageInputStream newInputStream = ImageIO
-                            .createImageInputStream(f);
-                    if (newInputStream == null) {
-                        log.error("Unable to create ImageInputStream for local file "
-                                + f
-                                + " from system identifier '"
-                                + source.getSystemId() + "'");
-                        return null;
-                    } else {
-                        imageSource = new ImageSource(newInputStream,
-                                resolvedURI, true);
-                    }
+                    // --> lower Java memory consumption, probably no speed loss.
+                    // The channel also serves the positional reads of
+                    // decoders without going through the file pointer.
+                    final ImageInputStream newInputStream = new SeekableStreamImageInputStream(
+                            new BufferedSeekableStream(
+                                    new FileChannelSeekableStream(f)));
+                    imageSource = new ImageSource(newInputStream, resolvedURI,
+                            true);
                 } catch (final IOException ioe) {
                     log.error(
                             "Unable to create ImageInputStream for local file"
@@ -191,8 +192,9 @@ public abstract class AbstractImageSessionContext implements
                 }
 
                 // Buffer and uncompress if necessary
-                try (final InputStream inStream = ImageUtil
-                        .autoDecorateInputStream(in)) {
+                try {
+                    final InputStream inStream = ImageUtil
+                            .autoDecorateInputStream(in);
                     imageSource = new ImageSource(
                             createImageInputStream(inStream),
                             source.getSystemId(), false);
@@ -204,21 +206,41 @@ public abstract class AbstractImageSessionContext implements
                                     + ioe.getMessage() + ")", ioe);
                 }
             } finally {
-                IOUtils.closeQuietly(in);
+                // Otherwise the stream is closed with the ImageInputStream
+                if (imageSource == null) {
+                    IOUtils.closeQuietly(in);
+                }
             }
 
         }
         return imageSource;
     }
 
+    /**
+     * Creates an ImageInputStream over a non-file InputStream. Like
+     * <code>ImageIO.createImageInputStream</code>, it follows the ImageIO cache
+     * settings: if <code>ImageIO.getUseCache()</code> is true, the data is
+     * cached in memory, or in a temporary file in
+     * <code>ImageIO.getCacheDirectory()</code> once it grows large (see
+     * {@link HybridCacheSeekableStream}); otherwise it is cached in memory
+     * only. Closing the ImageInputStream closes the InputStream.
+     *
+     * @param in
+     *            the InputStream
+     * @return the ImageInputStream
+     * @throws IOException
+     *             if an I/O error occurs
+     */
     protected ImageInputStream createImageInputStream(final InputStream in)
             throws IOException {
-        try (final ImageInputStream iin = ImageIO.createImageInputStream(in)) {
-            return (ImageInputStream) Proxy.newProxyInstance(
-                    ImageInputStream.class.getClassLoader(),
-                    new Class[] { ImageInputStream.class },
-                    new ObservingImageInputStreamInvocationHandler(iin, in));
-        }
+        final SeekableStream cache = ImageIO.getUseCache()
+                ? new HybridCacheSeekableStream(in, ImageIO.getCacheDirectory())
+                : new MemoryCacheSeekableStream(in);
+        final ImageInputStream iin = new SeekableStreamImageInputStream(cache);
+        return (ImageInputStream) Proxy.newProxyInstance(
+                ImageInputStream.class.getClassLoader(),
+                new Class[] { ImageInputStream.class },
+                new ObservingImageInputStreamInvocationHandler(iin, in));
     }
 
     private static class ObservingImageInputStreamInvocationHandler implements
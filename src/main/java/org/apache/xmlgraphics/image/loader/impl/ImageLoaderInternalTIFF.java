@@ -28,6 +28,7 @@ import javax.xml.transform.Source;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.xmlgraphics.image.codec.tiff.TIFFImage;
+import org.apache.xmlgraphics.image.codec.util.BufferedSeekableStream;
 import org.apache.xmlgraphics.image.codec.util.ImageInputStreamSeekableStreamAdapter;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.Image;
@@ -36,6 +37,7 @@ import org.apache.xmlgraphics.image.loader.ImageFlavor;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
+import org.apache.xmlgraphics.image.loader.util.SeekableStreamImageInputStream;
 
 /**
  * An ImageLoader implementation based on Commons' internal TIFF codec.
@@ -66,8 +68,7 @@ public class ImageLoaderInternalTIFF extends AbstractImageLoader {
         try (final ImageInputStream imgStream = ImageUtil
                 .needImageInputStream(src)) {
 
-            try (final SeekableStream seekStream = new ImageInputStreamSeekableStreamAdapter(
-                    imgStream)) {
+            try (final SeekableStream seekStream = getSeekableStream(imgStream)) {
                 try {
                     final TIFFImage img = new TIFFImage(seekStream, null, 0);
                     // TODO: This may ignore ICC Profiles stored in TIFF images.
@@ -82,6 +83,23 @@ public class ImageLoaderInternalTIFF extends AbstractImageLoader {
         }
     }
 
+    /**
+     * Returns a buffered SeekableStream reading an ImageInputStream. Local
+     * files are opened by the session context as a SeekableStream already,
+     * whose positional reads go to the file's channel: that one is used
+     * directly. Other streams are buffered, as the directories are parsed
+     * with many small reads.
+     */
+    private static SeekableStream getSeekableStream(
+            final ImageInputStream imgStream) throws IOException {
+        if (imgStream instanceof SeekableStreamImageInputStream) {
+            return ((SeekableStreamImageInputStream) imgStream)
+                    .getSeekableStream();
+        }
+        return new BufferedSeekableStream(
+                new ImageInputStreamSeekableStreamAdapter(imgStream));
+    }
+
     /** {@inheritDoc} */
     @Override
     public int getUsagePenalty() {
@@ -33,6 +33,7 @@ import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageProcessingHints;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
 
@@ -55,7 +56,7 @@ public class ImageLoaderPNG extends AbstractImageLoader {
                     imgStream)) {
 
                 final PNGImageDecoder decoder = new PNGImageDecoder(seekStream,
-                        new PNGDecodeParam());
+                        createDecodeParam(hints));
                 final RenderedImage image = decoder.decodeAsRenderedImage();
 
                 // need transparency here?
@@ -64,6 +65,25 @@ public class ImageLoaderPNG extends AbstractImageLoader {
         }
     }
 
+    /**
+     * Builds the decoding parameters for the given hints.
+     *
+     * @param hints
+     *            a Map of hints that can be used by implementations to
+     *            customize the loading process (may be null).
+     * @return the decoding parameters
+     */
+    protected PNGDecodeParam createDecodeParam(final Map<Object, Object> hints) {
+        final PNGDecodeParam param = new PNGDecodeParam();
+        if (hints != null) {
+            param.setOutput8BitDepth(Boolean.TRUE.equals(hints
+                    .get(ImageProcessingHints.REDUCE_TO_8_BIT)));
+            param.setPreferIndexColorModel(Boolean.TRUE.equals(hints
+                    .get(ImageProcessingHints.PRESERVE_INDEXED_COLOR)));
+        }
+        return param;
+    }
+
     /** {@inheritDoc} */
     @Override
     public ImageFlavor getTargetFlavor() {
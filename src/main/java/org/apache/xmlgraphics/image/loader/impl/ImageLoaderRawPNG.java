@@ -28,7 +28,6 @@ import javax.imageio.stream.ImageInputStream;
 import javax.xml.transform.Source;
 
 import org.apache.xmlgraphics.image.codec.util.ImageInputStreamSeekableStreamAdapter;
-import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
@@ -63,16 +62,17 @@ public class ImageLoaderRawPNG extends AbstractImageLoader {
         }
 
         final Source src = session.needSource(info.getOriginalURI());
-        try (final ImageInputStream in = ImageUtil.needImageInputStream(src)) {
-            // Remove streams as we do things with them at some later time.
-            ImageUtil.removeStreams(src);
-            try (final SeekableStream seekStream = new ImageInputStreamSeekableStreamAdapter(
-                    in)) {
-                final PNGFile im = new PNGFile(seekStream);
-                final ImageRawPNG irpng = im.getImageRawPNG(info);
-                return irpng;
-            }
-        }
+        final ImageInputStream in = ImageUtil.needImageInputStream(src);
+        // Remove streams as we do things with them at some later time.
+        ImageUtil.removeStreams(src);
+        // PNGFile copies the chunks it needs and closes the stream itself
+        final PNGFile im = new PNGFile(
+                new ImageInputStreamSeekableStreamAdapter(in));
+        final ImageRawPNG irpng = im.getImageRawPNG(info);
+        // Let pipelines prefer embedding the IDAT data unchanged
+        info.getCustomObjects().put(ImageRawPNG.FLATE_PASS_THROUGH,
+                Boolean.valueOf(irpng.isFlatePassThroughCapable()));
+        return irpng;
     }
 
     /** {@inheritDoc} */
@@ -25,6 +25,7 @@ import java.awt.Color;
 import java.awt.color.ColorSpace;
 import java.awt.color.ICC_Profile;
 import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
 import java.io.InputStream;
 
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
@@ -32,9 +33,24 @@ import org.apache.xmlgraphics.image.loader.ImageInfo;
 
 public class ImageRawPNG extends ImageRawStream {
 
+    /**
+     * The <code>/Predictor</code> value announcing PNG row filters that may
+     * vary from row to row, as used by the PDF and PostScript
+     * <code>FlateDecode</code> filter.
+     */
+    public static final int PNG_PREDICTOR = 15;
+
+    /**
+     * Key under which {@link ImageLoaderRawPNG} records in the image info's
+     * custom objects whether the loaded image supports
+     * {@link #isFlatePassThroughCapable() Flate pass-through}.
+     */
+    public static final String FLATE_PASS_THROUGH = "PNG_FLATE_PASS_THROUGH";
+
     private final ColorModel cm;
     private final ICC_Profile iccProfile;
     private final int bitDepth;
+    private final int columns;
     private boolean isTransparent;
     private int grayTransparentAlpha;
     private int redTransparentAlpha;
@@ -62,6 +78,36 @@ public class ImageRawPNG extends ImageRawStream {
         this.iccProfile = iccProfile;
         this.cm = colorModel;
         this.bitDepth = bitDepth;
+        this.columns = info.getSize() != null ? info.getSize().getWidthPx()
+                : 0;
+    }
+
+    /**
+     * Constructor for a stream factory delivering the concatenated payload of
+     * the IDAT chunks.
+     * 
+     * @param info
+     *            the image info object
+     * @param streamFactory
+     *            the InputStreamFactory for the zlib compressed image data
+     * @param colorModel
+     *            the color model
+     * @param bitDepth
+     *            the bit depth
+     * @param iccProfile
+     *            an ICC color profile or null if no profile is associated
+     * @param columns
+     *            the width of the image in pixels
+     */
+    public ImageRawPNG(final ImageInfo info,
+            final InputStreamFactory streamFactory,
+            final ColorModel colorModel, final int bitDepth,
+            final ICC_Profile iccProfile, final int columns) {
+        super(info, ImageFlavor.RAW_PNG, streamFactory);
+        this.iccProfile = iccProfile;
+        this.cm = colorModel;
+        this.bitDepth = bitDepth;
+        this.columns = columns;
     }
 
     /**
@@ -73,6 +119,54 @@ public class ImageRawPNG extends ImageRawStream {
         return this.bitDepth;
     }
 
+    /**
+     * The number of samples per pixel in the compressed data, i.e. the
+     * <code>/Colors</code> parameter of the predictor.
+     * 
+     * @return 1 for gray and palette images, 2 for gray with alpha, 3 for RGB
+     *         and 4 for RGB with alpha
+     */
+    public int getColors() {
+        if (this.cm instanceof IndexColorModel) {
+            return 1;
+        }
+        return this.cm.getNumComponents();
+    }
+
+    /**
+     * The width of the image in pixels, i.e. the <code>/Columns</code>
+     * parameter of the predictor.
+     * 
+     * @return the number of pixels per row, or 0 if unknown
+     */
+    public int getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * The <code>/Predictor</code> parameter to use when embedding the
+     * compressed data as is.
+     * 
+     * @return always {@link #PNG_PREDICTOR}
+     */
+    public int getPredictor() {
+        return PNG_PREDICTOR;
+    }
+
+    /**
+     * Indicates whether the stream returned by {@link #createInputStream()}
+     * can be written unchanged into a <code>FlateDecode</code> stream with the
+     * parameters {@link #getPredictor()}, {@link #getColors()},
+     * {@link #getColumns()} and {@link #getBitDepth()}. This is the case when
+     * the pixels carry no alpha, neither as a channel nor in the palette, since
+     * alpha has to be split off into a separate soft mask.
+     * 
+     * @return true if the compressed data can be copied without inflating it
+     */
+    public boolean isFlatePassThroughCapable() {
+        return !this.cm.hasAlpha() && this.columns > 0;
+    }
+
     /**
      * Returns the ICC color profile if one is associated with the PNG image.
      * 
@@ -27,13 +27,10 @@ import java.awt.image.ComponentColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import lombok.extern.slf4j.Slf4j;
@@ -61,7 +58,8 @@ class PNGFile implements PNGConstants {
     private int redTransparentAlpha;
     private int greenTransparentAlpha;
     private int blueTransparentAlpha;
-    private final List<InputStream> streamVec = new ArrayList<>();
+    private int width;
+    private final List<byte[]> idatChunks = new ArrayList<>();
     private int paletteEntries;
     private byte[] redPalette;
     private byte[] greenPalette;
@@ -95,8 +93,7 @@ class PNGFile implements PNGConstants {
                         parse_PLTE_chunk(chunk);
                     } else if (chunkType.equals(PNGChunk.ChunkType.IDAT.name())) {
                         chunk = PNGChunk.readChunk(distream);
-                        this.streamVec.add(new ByteArrayInputStream(chunk
-                                .getData()));
+                        this.idatChunks.add(chunk.getData());
                     } else if (chunkType.equals(PNGChunk.ChunkType.IEND.name())) {
                         // chunk = PNGChunk.readChunk(distream);
                         PNGChunk.skipChunk(distream);
@@ -122,81 +119,100 @@ class PNGFile implements PNGConstants {
 
     public ImageRawPNG getImageRawPNG(final ImageInfo info)
             throws ImageException, IOException {
-        try (final InputStream seqStream = new SequenceInputStream(
-                Collections.enumeration(this.streamVec))) {
-            switch (this.colorType) {
-            case PNG_COLOR_GRAY:
-                if (this.hasPalette) {
-                    throw new ImageException(
-                            "Corrupt PNG: color palette is not allowed!");
-                }
-                this.colorModel = new ComponentColorModel(
-                        ColorSpace.getInstance(ColorSpace.CS_GRAY), false,
-                        false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
-                break;
-            case PNG_COLOR_RGB:
-                // actually a check of the sRGB chunk would be necessary to
-                // confirm
-                // if it's really sRGB
-                this.colorModel = new ComponentColorModel(
-                        ColorSpace.getInstance(ColorSpace.CS_sRGB), false,
-                        false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
-                break;
-            case PNG_COLOR_PALETTE:
-                if (this.hasAlphaPalette) {
-                    this.colorModel = new IndexColorModel(this.bitDepth,
-                            this.paletteEntries, this.redPalette,
-                            this.greenPalette, this.bluePalette,
-                            this.alphaPalette);
-                } else {
-                    this.colorModel = new IndexColorModel(this.bitDepth,
-                            this.paletteEntries, this.redPalette,
-                            this.greenPalette, this.bluePalette);
-                }
-                break;
-            case PNG_COLOR_GRAY_ALPHA:
-                if (this.hasPalette) {
-                    throw new ImageException(
-                            "Corrupt PNG: color palette is not allowed!");
-                }
-                this.colorModel = new ComponentColorModel(
-                        ColorSpace.getInstance(ColorSpace.CS_GRAY), true,
-                        false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
-                break;
-            case PNG_COLOR_RGB_ALPHA:
-                // actually a check of the sRGB chunk would be necessary to
-                // confirm
-                // if it's really sRGB
-                this.colorModel = new ComponentColorModel(
-                        ColorSpace.getInstance(ColorSpace.CS_sRGB), true,
-                        false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
-                break;
-            default:
-                throw new ImageException("Unsupported color type: "
-                        + this.colorType);
+        switch (this.colorType) {
+        case PNG_COLOR_GRAY:
+            if (this.hasPalette) {
+                throw new ImageException(
+                        "Corrupt PNG: color palette is not allowed!");
             }
-            // the iccProfile is still null for now
-            final ImageRawPNG rawImage = new ImageRawPNG(info, seqStream,
-                    this.colorModel, this.bitDepth, this.iccProfile);
-            if (this.isTransparent) {
-                if (this.colorType == PNG_COLOR_GRAY) {
-                    rawImage.setGrayTransparentAlpha(this.grayTransparentAlpha);
-                } else if (this.colorType == PNG_COLOR_RGB) {
-                    rawImage.setRGBTransparentAlpha(this.redTransparentAlpha,
-                            this.greenTransparentAlpha,
-                            this.blueTransparentAlpha);
-                } else if (this.colorType == PNG_COLOR_PALETTE) {
-                    rawImage.setTransparent();
-                } else {
-                    //
-                }
+            this.colorModel = new ComponentColorModel(
+                    ColorSpace.getInstance(ColorSpace.CS_GRAY), false,
+                    false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            break;
+        case PNG_COLOR_RGB:
+            // actually a check of the sRGB chunk would be necessary to
+            // confirm
+            // if it's really sRGB
+            this.colorModel = new ComponentColorModel(
+                    ColorSpace.getInstance(ColorSpace.CS_sRGB), false,
+                    false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            break;
+        case PNG_COLOR_PALETTE:
+            if (this.hasAlphaPalette) {
+                this.colorModel = new IndexColorModel(this.bitDepth,
+                        this.paletteEntries, this.redPalette,
+                        this.greenPalette, this.bluePalette,
+                        this.alphaPalette);
+            } else {
+                this.colorModel = new IndexColorModel(this.bitDepth,
+                        this.paletteEntries, this.redPalette,
+                        this.greenPalette, this.bluePalette);
+            }
+            break;
+        case PNG_COLOR_GRAY_ALPHA:
+            if (this.hasPalette) {
+                throw new ImageException(
+                        "Corrupt PNG: color palette is not allowed!");
+            }
+            this.colorModel = new ComponentColorModel(
+                    ColorSpace.getInstance(ColorSpace.CS_GRAY), true,
+                    false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+            break;
+        case PNG_COLOR_RGB_ALPHA:
+            // actually a check of the sRGB chunk would be necessary to
+            // confirm
+            // if it's really sRGB
+            this.colorModel = new ComponentColorModel(
+                    ColorSpace.getInstance(ColorSpace.CS_sRGB), true,
+                    false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+            break;
+        default:
+            throw new ImageException("Unsupported color type: "
+                    + this.colorType);
+        }
+        // the iccProfile is still null for now
+        final ImageRawPNG rawImage = new ImageRawPNG(info,
+                new ImageRawStream.ByteArrayStreamFactory(getIDATData()),
+                this.colorModel, this.bitDepth, this.iccProfile, this.width);
+        if (this.isTransparent) {
+            if (this.colorType == PNG_COLOR_GRAY) {
+                rawImage.setGrayTransparentAlpha(this.grayTransparentAlpha);
+            } else if (this.colorType == PNG_COLOR_RGB) {
+                rawImage.setRGBTransparentAlpha(this.redTransparentAlpha,
+                        this.greenTransparentAlpha,
+                        this.blueTransparentAlpha);
+            } else if (this.colorType == PNG_COLOR_PALETTE) {
+                rawImage.setTransparent();
+            } else {
+                //
             }
-            return rawImage;
         }
+        return rawImage;
+    }
+
+    /**
+     * Returns the zlib stream split across the IDAT chunks as one contiguous
+     * array.
+     */
+    private byte[] getIDATData() {
+        if (this.idatChunks.size() == 1) {
+            return this.idatChunks.get(0);
+        }
+        int length = 0;
+        for (final byte[] chunk : this.idatChunks) {
+            length += chunk.length;
+        }
+        final byte[] data = new byte[length];
+        int offset = 0;
+        for (final byte[] chunk : this.idatChunks) {
+            System.arraycopy(chunk, 0, data, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return data;
     }
 
     private void parse_IHDR_chunk(final PNGChunk chunk) {
-        chunk.getInt4(0);
+        this.width = chunk.getInt4(0);
         chunk.getInt4(4);
         this.bitDepth = chunk.getInt1(8);
         if (this.bitDepth != 8) {
@@ -70,8 +70,9 @@ public class PreloaderTIFF extends AbstractImagePreloader {
             // first 2 bytes = II (little endian encoding)
             if (header[0] == (byte) 0x49 && header[1] == (byte) 0x49) {
 
-                // look for '42' in byte 3 and '0' in byte 4
-                if (header[2] == 42 && header[3] == 0) {
+                // look for '42' (or '43' for BigTIFF) in byte 3 and '0' in
+                // byte 4
+                if ((header[2] == 42 || header[2] == 43) && header[3] == 0) {
                     supported = true;
                 }
             }
@@ -79,8 +80,9 @@ public class PreloaderTIFF extends AbstractImagePreloader {
             // first 2 bytes == MM (big endian encoding)
             if (header[0] == (byte) 0x4D && header[1] == (byte) 0x4D) {
 
-                // look for '42' in byte 4 and '0' in byte 3
-                if (header[2] == 0 && header[3] == 42) {
+                // look for '42' (or '43' for BigTIFF) in byte 4 and '0' in
+                // byte 3
+                if (header[2] == 0 && (header[3] == 42 || header[3] == 43)) {
                     supported = true;
                 }
             }
@@ -185,13 +187,12 @@ public class PreloaderTIFF extends AbstractImagePreloader {
                 log.trace("TIFF has {} strips.", stripCount);
                 info.getCustomObjects().put("TIFF_STRIP_COUNT", stripCount);
 
-                try {
-                    // Check if there is a next page
-                    new TIFFDirectory(seekable, pageIndex + 1);
+                // Check if there is a next page
+                if (dir.getNextIFDOffset() != 0L) {
                     info.getCustomObjects().put(ImageInfo.HAS_MORE_IMAGES,
                             Boolean.TRUE);
                     log.trace("TIFF is multi-page.");
-                } catch (final IllegalArgumentException iae) {
+                } else {
                     info.getCustomObjects().put(ImageInfo.HAS_MORE_IMAGES,
                             Boolean.FALSE);
                 }
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.util;
+
+import java.io.IOException;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+
+/**
+ * Adapter which provides an ImageInputStream interface over a SeekableStream,
+ * the counterpart of {@link SeekableStreamAdapter}. Closing the adapter closes
+ * the SeekableStream.
+ */
+public class SeekableStreamImageInputStream extends ImageInputStreamImpl {
+
+    private final SeekableStream stream;
+
+    /**
+     * Main constructor
+     *
+     * @param stream
+     *            the SeekableStream to operate on, which must support seeking
+     *            backwards
+     */
+    public SeekableStreamImageInputStream(final SeekableStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * Returns the SeekableStream this adapter operates on. Each read of the
+     * adapter seeks the stream to the adapter's own position first, so
+     * reading the stream directly does not disturb the adapter.
+     *
+     * @return the SeekableStream
+     */
+    public SeekableStream getSeekableStream() {
+        return this.stream;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        this.bitOffset = 0;
+        this.stream.seek(this.streamPos);
+        final int b = this.stream.read();
+        if (b != -1) {
+            this.streamPos++;
+        }
+        return b;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        checkClosed();
+        this.bitOffset = 0;
+        this.stream.seek(this.streamPos);
+        final int nbytes = this.stream.read(b, off, len);
+        if (nbytes > 0) {
+            this.streamPos += nbytes;
+        }
+        return nbytes;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        super.close();
+        this.stream.close();
+    }
+
+}
@@ -31,13 +31,19 @@ import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
 
+import org.apache.xmlgraphics.image.BufferPool;
 import org.apache.xmlgraphics.image.GraphicsUtil;
 
 // CSOFF: LocalVariableName
@@ -67,6 +73,22 @@ public abstract class AbstractRed implements CachableRed {
     protected int minTileX, minTileY;
     protected int numXTiles, numYTiles;
 
+    private static final boolean PARALLEL = Boolean
+            .getBoolean(AbstractRed.class.getName() + ".parallel");
+
+    // Cache of computed tiles, null if disabled
+    private volatile TileCache tileCache;
+
+    // The tiles being computed by getTile(), which copyData must compute
+    // rather than read from the tile cache
+    private final Set<WritableRaster> computingTiles = Collections
+            .newSetFromMap(new IdentityHashMap<WritableRaster, Boolean>());
+
+    // The data buffers from a buffer pool handed out by getTile and getData,
+    // which releaseData returns to their pool
+    private final Map<DataBuffer, BufferPool> pooledBuffers = Collections
+            .synchronizedMap(new WeakHashMap<DataBuffer, BufferPool>());
+
     /**
      * void constructor. The subclass must call one of the flavors of init
      * before the object becomes usable. This is useful when the proper
@@ -588,10 +610,93 @@ public abstract class AbstractRed implements CachableRed {
     // return wr;
     // }
 
+    /**
+     * Returns tile (tileX, tileY). If a tile cache is set, the tile is looked
+     * up there first and computed tiles are added to it; such tiles are shared
+     * and must not be modified. Otherwise the tile is computed into buffers of
+     * the default <code>BufferPool</code>, which the caller may give back with
+     * {@link #releaseData(Raster)} once done with it.
+     */
     @Override
     public Raster getTile(final int tileX, final int tileY) {
-        final WritableRaster wr = makeTile(tileX, tileY);
-        return copyData(wr);
+        final TileCache cache = this.tileCache;
+        if (cache == null) {
+            final WritableRaster wr = makeTile(tileX, tileY,
+                    BufferPool.getDefault());
+            return copyData(wr);
+        }
+        Raster tile = cache.get(this, tileX, tileY);
+        if (tile == null) {
+            final WritableRaster wr = makeTile(tileX, tileY);
+            synchronized (this.computingTiles) {
+                this.computingTiles.add(wr);
+            }
+            try {
+                tile = copyData(wr);
+            } finally {
+                synchronized (this.computingTiles) {
+                    this.computingTiles.remove(wr);
+                }
+            }
+            cache.put(this, tileX, tileY, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Sets the cache keeping the tiles of this image once computed, so that
+     * they are computed only once however often they are requested. Tiles are
+     * not cached by default.
+     *
+     * @param tileCache
+     *            the tile cache, for example <code>TileCache.getDefault()</code>,
+     *            or null to disable caching
+     */
+    public void setTileCache(final TileCache tileCache) {
+        final TileCache old = this.tileCache;
+        this.tileCache = tileCache;
+        if (old != null && old != tileCache) {
+            old.remove(this);
+        }
+    }
+
+    /** @return the tile cache of this image, or null if tiles are not cached */
+    public TileCache getTileCache() {
+        return this.tileCache;
+    }
+
+    /**
+     * Removes the cached tiles of this image, for example because the data of
+     * a source has changed.
+     */
+    public void invalidateTileCache() {
+        final TileCache cache = this.tileCache;
+        if (cache != null) {
+            cache.remove(this);
+        }
+    }
+
+    /**
+     * Fills wr from the cached tiles of this image, computing the missing
+     * ones. Subclasses implementing <code>copyData</code> call this first and
+     * return if it returns true. It returns false if no tile cache is set, or
+     * if wr is a tile that <code>getTile</code> is computing.
+     *
+     * @param wr
+     *            Raster to fill with image data.
+     * @return true if wr has been filled
+     */
+    protected boolean copyFromTileCache(final WritableRaster wr) {
+        if (this.tileCache == null) {
+            return false;
+        }
+        synchronized (this.computingTiles) {
+            if (this.computingTiles.contains(wr)) {
+                return false;
+            }
+        }
+        copyToRaster(wr);
+        return true;
     }
 
     @Override
@@ -605,7 +710,9 @@ public abstract class AbstractRed implements CachableRed {
                 rect.width, rect.height);
 
         final Point pt = new Point(rect.x, rect.y);
-        final WritableRaster wr = Raster.createWritableRaster(smRet, pt);
+        final BufferPool pool = BufferPool.getDefault();
+        final WritableRaster wr = pool.createWritableRaster(smRet, pt);
+        this.pooledBuffers.put(wr.getDataBuffer(), pool);
 
         // log.info("GD DB: " + wr.getDataBuffer().getSize());
         return copyData(wr);
@@ -650,10 +757,34 @@ public abstract class AbstractRed implements CachableRed {
      * bounds of this image in which case the data in wr outside the bounds will
      * not be touched.
      *
+     * <p>
+     * Tiles are computed and copied in parallel on a shared fork/join pool if
+     * the system property
+     * <code>org.apache.xmlgraphics.image.rendered.AbstractRed.parallel</code>
+     * is <code>true</code>, and one after the other otherwise.
+     *
      * @param wr
      *            Raster to fill with image data.
      */
     public void copyToRaster(final WritableRaster wr) {
+        copyToRaster(wr, getDefaultPool());
+    }
+
+    /**
+     * Copies data from this images tile grid into wr, computing and copying
+     * the tiles in parallel on a fork/join pool. Each task handles a whole
+     * row of tiles: rows of tiles cover different scanlines of wr, so no two
+     * tasks write to the same data element even if pixels are packed into
+     * bytes. <code>getTile</code> is called from several threads at once.
+     *
+     * @param wr
+     *            Raster to fill with image data.
+     * @param pool
+     *            the pool running the tasks, or null to copy the tiles in the
+     *            calling thread. When called from a task of a fork/join pool,
+     *            the tasks run in that pool.
+     */
+    public void copyToRaster(final WritableRaster wr, final ForkJoinPool pool) {
         int tx0 = getXTile(wr.getMinX());
         int ty0 = getYTile(wr.getMinY());
         int tx1 = getXTile(wr.getMinX() + wr.getWidth() - 1);
@@ -676,18 +807,74 @@ public abstract class AbstractRed implements CachableRed {
         final boolean isIntPack = GraphicsUtil.is_INT_PACK_Data(
                 getSampleModel(), false);
 
+        if (pool == null || ty0 >= ty1) {
+            for (int y = ty0; y <= ty1; y++) {
+                copyTileRow(wr, y, tx0, tx1, isIntPack);
+            }
+            return;
+        }
+
+        final List<Runnable> rows = new ArrayList<>(ty1 - ty0 + 1);
         for (int y = ty0; y <= ty1; y++) {
-            for (int x = tx0; x <= tx1; x++) {
-                final Raster r = getTile(x, y);
-                if (isIntPack) {
-                    GraphicsUtil.copyData_INT_PACK(r, wr);
-                } else {
-                    GraphicsUtil.copyData_FALLBACK(r, wr);
+            final int tileY = y;
+            final int minX = tx0;
+            final int maxX = tx1;
+            rows.add(new Runnable() {
+                @Override
+                public void run() {
+                    copyTileRow(wr, tileY, minX, maxX, isIntPack);
                 }
+            });
+        }
+        GraphicsUtil.invokeAll(pool, rows);
+    }
+
+    private void copyTileRow(final WritableRaster wr, final int y,
+            final int tx0, final int tx1, final boolean isIntPack) {
+        for (int x = tx0; x <= tx1; x++) {
+            final Raster r = getTile(x, y);
+            if (isIntPack) {
+                GraphicsUtil.copyData_INT_PACK(r, wr);
+            } else {
+                GraphicsUtil.copyData(r, wr);
             }
+            releaseData(r);
         }
     }
 
+    private static final class DefaultPool {
+        private static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+
+    /**
+     * Gives back a raster returned by <code>getTile</code> or
+     * <code>getData</code> of this image, so that its data buffer may be
+     * reused. The raster, and any raster sharing its data, must no longer be
+     * used. Rasters whose data buffer this image did not take from a buffer
+     * pool, such as cached tiles, are ignored.
+     *
+     * @param raster
+     *            the raster no longer used
+     */
+    public void releaseData(final Raster raster) {
+        final DataBuffer db = raster.getDataBuffer();
+        final BufferPool pool = this.pooledBuffers.remove(db);
+        if (pool != null) {
+            pool.release(db);
+        }
+    }
+
+    /**
+     * Returns the pool used by {@link #copyToRaster(WritableRaster)}, so that
+     * subclasses may process their own data in parallel when tiles are.
+     *
+     * @return the shared pool, or null if images are computed in the calling
+     *         thread
+     */
+    protected static ForkJoinPool getDefaultPool() {
+        return PARALLEL ? DefaultPool.INSTANCE : null;
+    }
+
     // static DataBufferReclaimer reclaim = new DataBufferReclaimer();
 
     /**
@@ -705,6 +892,25 @@ public abstract class AbstractRed implements CachableRed {
      *                of the tile grid for the image.
      */
     public WritableRaster makeTile(final int tileX, final int tileY) {
+        return makeTile(tileX, tileY, null);
+    }
+
+    /**
+     * Creates the tile requested like {@link #makeTile(int, int)}, with data
+     * buffers taken from a buffer pool, which {@link #releaseData(Raster)}
+     * returns to the pool. Such tiles must not be kept by the image, since
+     * copyToRaster releases the tiles it gets once copied.
+     *
+     * @param tileX
+     *            The x index of the tile to be built
+     * @param tileY
+     *            The y index of the tile to be built
+     * @param pool
+     *            the pool providing the data buffer, or null to allocate it
+     * @return The tile requested
+     */
+    protected WritableRaster makeTile(final int tileX, final int tileY,
+            final BufferPool pool) {
         if (tileX < this.minTileX || tileX >= this.minTileX + this.numXTiles
                 || tileY < this.minTileY
                 || tileY >= this.minTileY + this.numYTiles) {
@@ -716,7 +922,12 @@ public abstract class AbstractRed implements CachableRed {
                 this.tileGridYOff + tileY * this.tileHeight);
 
         WritableRaster wr;
-        wr = Raster.createWritableRaster(this.sm, pt);
+        if (pool == null) {
+            wr = Raster.createWritableRaster(this.sm, pt);
+        } else {
+            wr = pool.createWritableRaster(this.sm, pt);
+            this.pooledBuffers.put(wr.getDataBuffer(), pool);
+        }
         // if (!(sm instanceof SinglePixelPackedSampleModel))
         // wr = Raster.createWritableRaster(sm, pt);
         // else {
@@ -105,6 +105,9 @@ public class Any2LsRGBRed extends AbstractRed {
 
     @Override
     public WritableRaster copyData(final WritableRaster wr) {
+        if (copyFromTileCache(wr)) {
+            return wr;
+        }
         // Get my source.
         final CachableRed src = (CachableRed) getSources().get(0);
         final ColorModel srcCM = src.getColorModel();
@@ -0,0 +1,516 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import java.awt.Transparency;
+import java.awt.color.CMMException;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.xmlgraphics.image.GraphicsUtil;
+
+/**
+ * Converts 8 bit samples of a three or four component color space to sRGB
+ * through a lookup table. The table holds the sRGB colors of a regular grid
+ * of source colors, computed once with a <code>ColorConvertOp</code>; colors
+ * between the grid points are interpolated over the simplex (a tetrahedron in
+ * three dimensions) of grid points enclosing them. Grid points are 5 sample
+ * values apart for three components and 15 for four; colors which the
+ * conversion clips to the sRGB gamut may be a few values off where the
+ * clipping starts between two grid points.
+ *
+ * <p>
+ * Converters of ICC color spaces are cached per profile data and rendering
+ * intent, so that the table is only computed for the first image with a
+ * given profile, whichever <code>ColorSpace</code> instance holds it.
+ * Converters of other color spaces are cached per instance. Converters may be
+ * used by several threads at once.
+ */
+final class Any2sRGBConverter {
+
+    /** The distance between grid points for three component spaces. */
+    private static final int STEP_3D = 5;
+
+    /**
+     * The distance between grid points for four component spaces, larger to
+     * keep the table small.
+     */
+    private static final int STEP_4D = 15;
+
+    /** The smallest number of pixels worth a task of its own. */
+    private static final int MIN_PIXELS_PER_TASK = 64 * 1024;
+
+    /** The maximum number of converters of ICC color spaces kept. */
+    private static final int MAX_CACHED_PROFILES = 16;
+
+    /**
+     * The converters of ICC color spaces per profile, least recently used
+     * first.
+     */
+    private static final Map<ProfileKey, Any2sRGBConverter> PROFILE_CACHE = new LinkedHashMap<ProfileKey, Any2sRGBConverter>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(
+                final Map.Entry<ProfileKey, Any2sRGBConverter> eldest) {
+            return size() > MAX_CACHED_PROFILES;
+        }
+    };
+
+    /** The converters of color spaces without an ICC profile. */
+    private static final Map<ColorSpace, Any2sRGBConverter> CACHE = new WeakHashMap<>();
+
+    /**
+     * The profile keys of the ICC color spaces met so far, so that the data of
+     * their profile is only read again if the header changes.
+     */
+    private static final Map<ICC_ColorSpace, ProfileKey> PROFILE_KEYS = new WeakHashMap<>();
+
+    /**
+     * The data of an ICC profile, header included, and the rendering intent
+     * its header holds, as changed by <code>ICCColorSpaceWithIntent</code>.
+     * The CMM may refuse to give out the data of a profile once it has been
+     * used for a conversion: only the header is kept then, and the key only
+     * matches the keys of the same color space.
+     */
+    private static final class ProfileKey {
+
+        private final byte[] header;
+        private final byte[] data;
+        private final Object owner;
+        private final int intent;
+        private final int hash;
+
+        ProfileKey(final ICC_Profile profile, final byte[] header) {
+            this.header = header;
+            byte[] profileData;
+            Object token = null;
+            try {
+                profileData = profile.getData();
+            } catch (final CMMException e) {
+                profileData = header;
+                token = new Object();
+            }
+            this.data = profileData;
+            this.owner = token;
+            final int i = ICC_Profile.icHdrRenderingIntent;
+            this.intent = (header[i] & 0xFF) << 24
+                    | (header[i + 1] & 0xFF) << 16
+                    | (header[i + 2] & 0xFF) << 8 | header[i + 3] & 0xFF;
+            this.hash = 31 * Arrays.hashCode(this.data) + this.intent;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof ProfileKey)) {
+                return false;
+            }
+            final ProfileKey other = (ProfileKey) obj;
+            return this.intent == other.intent && this.owner == other.owner
+                    && Arrays.equals(this.data, other.data);
+        }
+    }
+
+    /**
+     * Returns the key of the profile of an ICC color space, read again only
+     * if the header of the profile changed since the last call.
+     */
+    private static ProfileKey getProfileKey(final ICC_ColorSpace cs) {
+        final ICC_Profile profile = cs.getProfile();
+        final byte[] header = profile.getData(ICC_Profile.icSigHead);
+        synchronized (PROFILE_KEYS) {
+            final ProfileKey key = PROFILE_KEYS.get(cs);
+            if (key != null && Arrays.equals(key.header, header)) {
+                return key;
+            }
+        }
+        final ProfileKey key = new ProfileKey(profile, header);
+        synchronized (PROFILE_KEYS) {
+            PROFILE_KEYS.put(cs, key);
+        }
+        return key;
+    }
+
+    /** The number of color components. */
+    private final int numComponents;
+
+    /** The distance between grid points of each axis in the table. */
+    private final int[] strides;
+
+    /** The offset in the table of the grid point below a sample, per axis. */
+    private final int[][] offsets;
+
+    /** The weight of the grid point above a sample, out of 256. */
+    private final int[] weights;
+
+    /** The sRGB colors of the grid points, packed as 0xRRGGBB. */
+    private final int[] lut;
+
+    private Any2sRGBConverter(final ColorSpace cs) {
+        this.numComponents = cs.getNumComponents();
+        final int step = this.numComponents == 3 ? STEP_3D : STEP_4D;
+        final int size = 255 / step + 1;
+
+        this.strides = new int[this.numComponents];
+        int stride = 1;
+        for (int a = this.numComponents - 1; a >= 0; a--) {
+            this.strides[a] = stride;
+            stride *= size;
+        }
+
+        // The last grid point is reached from below with a weight of 256
+        this.offsets = new int[this.numComponents][256];
+        this.weights = new int[256];
+        for (int v = 0; v < 256; v++) {
+            final int index = Math.min(v / step, size - 2);
+            this.weights[v] = ((v - index * step) * 256 + step / 2) / step;
+            for (int a = 0; a < this.numComponents; a++) {
+                this.offsets[a][v] = index * this.strides[a];
+            }
+        }
+
+        this.lut = createTable(cs, step, size, stride);
+    }
+
+    /**
+     * Converts the colors of a grid of size<sup>n</sup> points: ICC spaces
+     * with the same operation as the generic path of <code>Any2sRGBRed</code>,
+     * other spaces with their <code>toRGB</code> method, which
+     * <code>ColorConvertOp</code> cannot use for all of them.
+     */
+    private static int[] createTable(final ColorSpace cs, final int step,
+            final int size, final int numPoints) {
+        final int n = cs.getNumComponents();
+        final int[] samples = new int[numPoints * n];
+        for (int i = 0; i < numPoints; i++) {
+            int point = i;
+            for (int a = n - 1; a >= 0; a--) {
+                samples[i * n + a] = point % size * step;
+                point /= size;
+            }
+        }
+
+        final int[] lut = new int[numPoints];
+        if (!(cs instanceof ICC_ColorSpace)) {
+            final float[] color = new float[n];
+            for (int i = 0; i < numPoints; i++) {
+                for (int a = 0; a < n; a++) {
+                    final float min = cs.getMinValue(a);
+                    color[a] = min + samples[i * n + a]
+                            * (cs.getMaxValue(a) - min) / 255f;
+                }
+                final float[] rgb = cs.toRGB(color);
+                lut[i] = toByte(rgb[0]) << 16 | toByte(rgb[1]) << 8
+                        | toByte(rgb[2]);
+            }
+            return lut;
+        }
+
+        final ColorModel cm = new ComponentColorModel(cs, false, false,
+                Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        final WritableRaster grid = cm.createCompatibleWritableRaster(size,
+                numPoints / size);
+        grid.setPixels(0, 0, grid.getWidth(), grid.getHeight(), samples);
+        final ColorConvertOp op = new ColorConvertOp(
+                ColorSpace.getInstance(ColorSpace.CS_sRGB), null);
+        final Raster rgb = op.filter(new BufferedImage(cm, grid, false, null),
+                null).getRaster();
+        final int[] pixel = new int[rgb.getNumBands()];
+        for (int i = 0; i < numPoints; i++) {
+            rgb.getPixel(i % size, i / size, pixel);
+            lut[i] = pixel[0] << 16 | pixel[1] << 8 | pixel[2];
+        }
+        return lut;
+    }
+
+    private static int toByte(final float value) {
+        return Math.max(0, Math.min(255, Math.round(value * 255)));
+    }
+
+    /**
+     * Returns whether a color model is supported: it must be an
+     * unpremultiplied <code>ComponentColorModel</code> of 8 bit samples in a
+     * three or four component color space other than sRGB and linear RGB.
+     *
+     * @param cm
+     *            the color model of the source data
+     * @return true if converters support the color model
+     */
+    static boolean isSupported(final ColorModel cm) {
+        if (!(cm instanceof ComponentColorModel)
+                || cm.getTransferType() != DataBuffer.TYPE_BYTE
+                || cm.isAlphaPremultiplied()) {
+            return false;
+        }
+        final ColorSpace cs = cm.getColorSpace();
+        if (cs.isCS_sRGB()
+                || cs.getNumComponents() != 3 && cs.getNumComponents() != 4) {
+            return false;
+        }
+        // The steep start of the sRGB curve falls between grid points of
+        // linear RGB, Any2sRGBRed has an exact table per channel for it
+        if (cs == ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB)) {
+            return false;
+        }
+        for (final int bits : cm.getComponentSize()) {
+            if (bits != 8) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the converter for a color model, or null if the color model is
+     * not supported (see {@link #isSupported(ColorModel)}).
+     *
+     * @param cm
+     *            the color model of the source data
+     * @return the converter, or null
+     */
+    static Any2sRGBConverter getInstance(final ColorModel cm) {
+        if (!isSupported(cm)) {
+            return null;
+        }
+        final ColorSpace cs = cm.getColorSpace();
+        if (cs instanceof ICC_ColorSpace) {
+            final ProfileKey key = getProfileKey((ICC_ColorSpace) cs);
+            synchronized (PROFILE_CACHE) {
+                final Any2sRGBConverter converter = PROFILE_CACHE.get(key);
+                if (converter != null) {
+                    return converter;
+                }
+            }
+            // Computed outside the lock, another thread may do the same
+            final Any2sRGBConverter converter = new Any2sRGBConverter(cs);
+            synchronized (PROFILE_CACHE) {
+                PROFILE_CACHE.put(key, converter);
+            }
+            return converter;
+        }
+
+        synchronized (CACHE) {
+            final Any2sRGBConverter converter = CACHE.get(cs);
+            if (converter != null) {
+                return converter;
+            }
+        }
+        final Any2sRGBConverter converter = new Any2sRGBConverter(cs);
+        synchronized (CACHE) {
+            CACHE.put(cs, converter);
+        }
+        return converter;
+    }
+
+    /**
+     * Converts the area of dst from src pixel by pixel, with the
+     * <code>toRGB</code> method of a color space without an ICC profile,
+     * which <code>ColorConvertOp</code> cannot convert. The bands of src and
+     * dst are those of {@link #convert(Raster, WritableRaster, ForkJoinPool)}.
+     *
+     * @param cs
+     *            the color space of src
+     * @param src
+     *            the source samples, covering the area of dst
+     * @param dst
+     *            the raster receiving sRGB samples
+     */
+    static void convertExactly(final ColorSpace cs, final Raster src,
+            final WritableRaster dst) {
+        final int n = cs.getNumComponents();
+        final int srcBands = src.getNumBands();
+        final int dstBands = dst.getNumBands();
+        final int x0 = dst.getMinX();
+        final int width = dst.getWidth();
+        final int[] srcRow = new int[width * srcBands];
+        final int[] dstRow = new int[width * dstBands];
+        final float[] color = new float[n];
+        for (int y = dst.getMinY(); y < dst.getMinY() + dst.getHeight(); y++) {
+            src.getPixels(x0, y, width, 1, srcRow);
+            for (int x = 0, sp = 0, dp = 0; x < width; x++, sp += srcBands, dp += dstBands) {
+                for (int a = 0; a < n; a++) {
+                    final float min = cs.getMinValue(a);
+                    color[a] = min + srcRow[sp + a]
+                            * (cs.getMaxValue(a) - min) / 255f;
+                }
+                final float[] rgb = cs.toRGB(color);
+                for (int b = 0; b < 3; b++) {
+                    dstRow[dp + b] = toByte(rgb[b]);
+                }
+                if (dstBands > 3) {
+                    dstRow[dp + 3] = srcBands > n ? srcRow[sp + n] : 0xFF;
+                }
+            }
+            dst.setPixels(x0, y, width, 1, dstRow);
+        }
+    }
+
+    /**
+     * Converts the area of dst from src, which must have the color components
+     * of this converter followed by an optional unpremultiplied alpha band.
+     * The first three bands of dst receive red, green and blue, the fourth if
+     * any receives the alpha of src, or 255. Large areas are split into bands
+     * of rows converted in parallel.
+     *
+     * @param src
+     *            the source samples, covering the area of dst
+     * @param dst
+     *            the raster receiving sRGB samples
+     * @param pool
+     *            the pool running the tasks, or null to convert all rows in
+     *            the calling thread. When called from a task of a fork/join
+     *            pool, the tasks run in that pool.
+     */
+    void convert(final Raster src, final WritableRaster dst,
+            final ForkJoinPool pool) {
+        final int width = dst.getWidth();
+        final int height = dst.getHeight();
+        final int rowsPerTask = Math.max(1,
+                MIN_PIXELS_PER_TASK / Math.max(1, width));
+        if (pool == null || height <= rowsPerTask) {
+            convertRows(src, dst, dst.getMinY(), height);
+            return;
+        }
+
+        final List<Runnable> tasks = new ArrayList<>();
+        for (int y = 0; y < height; y += rowsPerTask) {
+            final int y0 = dst.getMinY() + y;
+            final int h = Math.min(rowsPerTask, height - y);
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    convertRows(src, dst, y0, h);
+                }
+            });
+        }
+        GraphicsUtil.invokeAll(pool, tasks);
+    }
+
+    private void convertRows(final Raster src, final WritableRaster dst,
+            final int y0, final int height) {
+        final int n = this.numComponents;
+        final int srcBands = src.getNumBands();
+        final boolean srcAlpha = srcBands > n;
+        final int dstBands = dst.getNumBands();
+        final int x0 = dst.getMinX();
+        final int width = dst.getWidth();
+
+        int[] dstPixels = null;
+        int dstBase = 0;
+        int dstStride = 0;
+        int[] dstRow = null;
+        if (Any2sRGBRed.is_INT_PACK_COMP(dst.getSampleModel())) {
+            final SinglePixelPackedSampleModel sppsm = (SinglePixelPackedSampleModel) dst
+                    .getSampleModel();
+            final DataBufferInt db = (DataBufferInt) dst.getDataBuffer();
+            dstPixels = db.getBankData()[0];
+            dstStride = sppsm.getScanlineStride();
+            dstBase = db.getOffset()
+                    + sppsm.getOffset(x0 - dst.getSampleModelTranslateX(), y0
+                            - dst.getSampleModelTranslateY());
+        } else {
+            dstRow = new int[width * dstBands];
+        }
+
+        final int[] srcRow = new int[width * srcBands];
+        final int[] w = new int[n];
+        final int[] s = new int[n];
+        final int[] lut = this.lut;
+        for (int y = 0; y < height; y++) {
+            src.getPixels(x0, y0 + y, width, 1, srcRow);
+            for (int x = 0, sp = 0; x < width; x++, sp += srcBands) {
+                int p = 0;
+                for (int a = 0; a < n; a++) {
+                    final int v = srcRow[sp + a];
+                    p += this.offsets[a][v];
+                    // Insertion sort of the axes by decreasing weight
+                    final int weight = this.weights[v];
+                    int i = a;
+                    while (i > 0 && w[i - 1] < weight) {
+                        w[i] = w[i - 1];
+                        s[i] = s[i - 1];
+                        i--;
+                    }
+                    w[i] = weight;
+                    s[i] = this.strides[a];
+                }
+
+                // Walk from the grid point below to the one above along the
+                // axes of the simplex containing the sample
+                int r = 128;
+                int g = 128;
+                int b = 128;
+                int prev = 256;
+                for (int i = 0; i <= n; i++) {
+                    final int weight = i < n ? w[i] : 0;
+                    final int c = lut[p];
+                    final int f = prev - weight;
+                    r += (c >>> 16 & 0xFF) * f;
+                    g += (c >>> 8 & 0xFF) * f;
+                    b += (c & 0xFF) * f;
+                    if (i < n) {
+                        p += s[i];
+                    }
+                    prev = weight;
+                }
+                final int alpha = srcAlpha ? srcRow[sp + n] : 0xFF;
+
+                if (dstPixels != null) {
+                    dstPixels[dstBase + y * dstStride + x] = alpha << 24
+                            | (r >> 8) << 16 | (g >> 8) << 8 | b >> 8;
+                } else {
+                    final int dp = x * dstBands;
+                    dstRow[dp] = r >> 8;
+                    dstRow[dp + 1] = g >> 8;
+                    dstRow[dp + 2] = b >> 8;
+                    if (dstBands > 3) {
+                        dstRow[dp + 3] = alpha;
+                    }
+                }
+            }
+            if (dstRow != null) {
+                dst.setPixels(x0, y0 + y, width, 1, dstRow);
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package org.apache.xmlgraphics.image.rendered;
 
 import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
 import java.awt.image.BandCombineOp;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorConvertOp;
@@ -30,6 +31,8 @@ import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -54,17 +57,43 @@ import org.apache.xmlgraphics.image.GraphicsUtil;
 @Slf4j
 public class Any2sRGBRed extends AbstractRed {
 
+    /**
+     * The smallest number of pixels converted at once through a lookup table
+     * rather than exactly.
+     */
+    private static final long LOOKUP_TABLE_MIN_PIXELS = 64 * 1024;
+
     boolean srcIsLsRGB = false;
 
+    private final boolean useLookupTable;
+
     /**
-     * Construct a luminace image from src.
+     * Construct a luminace image from src. Colors are converted exactly.
      *
      * @param src
      *            The image to convert to a luminance image
      */
     public Any2sRGBRed(final CachableRed src) {
+        this(src, false);
+    }
+
+    /**
+     * Construct a luminace image from src, optionally converting colors
+     * through a cached lookup table. With the table, areas of at least 65536
+     * pixels of 8 bit data with three or four components are converted much
+     * faster, but colors may be a few values off where the conversion clips
+     * them to the sRGB gamut.
+     *
+     * @param src
+     *            The image to convert to a luminance image
+     * @param useLookupTable
+     *            true to convert large areas through a lookup table, false
+     *            to convert all colors exactly
+     */
+    public Any2sRGBRed(final CachableRed src, final boolean useLookupTable) {
         super(src, src.getBounds(), fixColorModel(src), fixSampleModel(src),
                 src.getTileGridXOffset(), src.getTileGridYOffset(), null);
+        this.useLookupTable = useLookupTable;
 
         final ColorModel srcCM = src.getColorModel();
         if (srcCM == null) {
@@ -76,6 +105,15 @@ public class Any2sRGBRed extends AbstractRed {
         }
     }
 
+    /**
+     * Returns whether large areas are converted through a lookup table.
+     *
+     * @return false if all colors are converted exactly
+     */
+    public boolean isUseLookupTable() {
+        return this.useLookupTable;
+    }
+
     public static boolean is_INT_PACK_COMP(final SampleModel sm) {
         if (!(sm instanceof SinglePixelPackedSampleModel)) {
             return false;
@@ -174,7 +212,9 @@ public class Any2sRGBRed extends AbstractRed {
 
     @Override
     public WritableRaster copyData(final WritableRaster wr) {
-
+        if (copyFromTileCache(wr)) {
+            return wr;
+        }
         // Get my source.
         final CachableRed src = (CachableRed) getSources().get(0);
         final ColorModel srcCM = src.getColorModel();
@@ -193,39 +233,8 @@ public class Any2sRGBRed extends AbstractRed {
         if (srcCM == null) {
             // We don't really know much about this source, let's
             // guess based on the number of bands...
-
-            float[][] matrix = null;
-            switch (srcSM.getNumBands()) {
-            case 1:
-                matrix = new float[3][1];
-                matrix[0][0] = 1; // Red
-                matrix[1][0] = 1; // Grn
-                matrix[2][0] = 1; // Blu
-                break;
-            case 2:
-                matrix = new float[4][2];
-                matrix[0][0] = 1; // Red
-                matrix[1][0] = 1; // Grn
-                matrix[3][0] = 1; // Blu
-                matrix[3][1] = 1; // Alpha
-                break;
-            case 3:
-                matrix = new float[3][3];
-                matrix[0][0] = 1; // Red
-                matrix[1][1] = 1; // Grn
-                matrix[2][2] = 1; // Blu
-                break;
-            default:
-                matrix = new float[4][srcSM.getNumBands()];
-                matrix[0][0] = 1; // Red
-                matrix[1][1] = 1; // Grn
-                matrix[2][2] = 1; // Blu
-                matrix[3][3] = 1; // Alpha
-                break;
-            }
             final Raster srcRas = src.getData(wr.getBounds());
-            final BandCombineOp op = new BandCombineOp(matrix, null);
-            op.filter(srcRas, wr);
+            getBandCombineOp(srcSM.getNumBands()).filter(srcRas, wr);
             return wr;
         }
 
@@ -236,26 +245,9 @@ public class Any2sRGBRed extends AbstractRed {
             // many things use this when the data _really_
             // has sRGB gamma applied.
             try {
-                float[][] matrix = null;
-                switch (srcSM.getNumBands()) {
-                case 1:
-                    matrix = new float[3][1];
-                    matrix[0][0] = 1; // Red
-                    matrix[1][0] = 1; // Grn
-                    matrix[2][0] = 1; // Blu
-                    break;
-                case 2:
-                default:
-                    matrix = new float[4][2];
-                    matrix[0][0] = 1; // Red
-                    matrix[1][0] = 1; // Grn
-                    matrix[3][0] = 1; // Blu
-                    matrix[4][1] = 1; // Alpha
-                    break;
-                }
                 final Raster srcRas = src.getData(wr.getBounds());
-                final BandCombineOp op = new BandCombineOp(matrix, null);
-                op.filter(srcRas, wr);
+                getBandCombineOp(srcSM.getNumBands() == 1 ? 1 : 2).filter(
+                        srcRas, wr);
             } catch (final Exception e) {
                 log.error("Exception", e);
             }
@@ -277,7 +269,16 @@ public class Any2sRGBRed extends AbstractRed {
         }
 
         final Raster srcRas = src.getData(wr.getBounds());
-        final WritableRaster srcWr = (WritableRaster) srcRas;
+        // Other sources may return read-only data, or a view of their own
+        // tiles which dividing out alpha must not alter
+        final WritableRaster srcWr;
+        if (srcRas instanceof WritableRaster
+                && (src instanceof AbstractRed || !srcCM.hasAlpha())) {
+            srcWr = (WritableRaster) srcRas;
+        } else {
+            srcWr = srcRas.createCompatibleWritableRaster(srcRas.getBounds());
+            srcWr.setDataElements(0, 0, srcRas);
+        }
 
         // Divide out alpha if we have it. We need to do this since
         // the color convert may not be a linear operation which may
@@ -287,6 +288,25 @@ public class Any2sRGBRed extends AbstractRed {
             srcBICM = GraphicsUtil.coerceData(srcWr, srcCM, false);
         }
 
+        // If asked for, large areas of 8 bit RGB-like and CMYK data go
+        // through a cached lookup table
+        if (Any2sRGBConverter.isSupported(srcBICM)) {
+            if (this.useLookupTable
+                    && (long) wr.getWidth() * wr.getHeight() >= LOOKUP_TABLE_MIN_PIXELS) {
+                Any2sRGBConverter.getInstance(srcBICM).convert(srcWr, wr,
+                        getDefaultPool());
+                releaseSourceData(src, srcRas);
+                return wr;
+            }
+            // ColorConvertOp cannot convert spaces without an ICC profile
+            if (!(srcBICM.getColorSpace() instanceof ICC_ColorSpace)) {
+                Any2sRGBConverter.convertExactly(srcBICM.getColorSpace(),
+                        srcWr, wr);
+                releaseSourceData(src, srcRas);
+                return wr;
+            }
+        }
+
         BufferedImage srcBI, dstBI;
         srcBI = new BufferedImage(srcBICM, srcWr.createWritableTranslatedChild(
                 0, 0), false, null);
@@ -309,9 +329,78 @@ public class Any2sRGBRed extends AbstractRed {
             copyBand(srcWr, srcSM.getNumBands() - 1, wr, getSampleModel()
                     .getNumBands() - 1);
         }
+        releaseSourceData(src, srcRas);
         return wr;
     }
 
+    /** Gives back data obtained from the source once converted. */
+    private static void releaseSourceData(final CachableRed src,
+            final Raster data) {
+        if (src instanceof AbstractRed) {
+            ((AbstractRed) src).releaseData(data);
+        }
+    }
+
+    /**
+     * The operations of {@link #getBandCombineOp(int)} by number of bands.
+     */
+    private static final ConcurrentMap<Integer, BandCombineOp> BAND_COMBINE_OPS = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the operation making sRGB from a source without color model,
+     * or from gray data, according to its number of bands: 1 band is
+     * replicated into RGB, 2 bands are gray and alpha, 3 bands are RGB and
+     * more bands are RGB and alpha followed by bands which are dropped. The
+     * operations are created once per number of bands.
+     */
+    private static BandCombineOp getBandCombineOp(final int numBands) {
+        final Integer key = Integer.valueOf(numBands);
+        final BandCombineOp op = BAND_COMBINE_OPS.get(key);
+        if (op != null) {
+            return op;
+        }
+        // BandCombineOp keeps no state between filter() calls, so it is
+        // shared between threads
+        final BandCombineOp newOp = new BandCombineOp(
+                createBandCombineMatrix(numBands), null);
+        final BandCombineOp previous = BAND_COMBINE_OPS.putIfAbsent(key,
+                newOp);
+        return previous != null ? previous : newOp;
+    }
+
+    private static float[][] createBandCombineMatrix(final int numBands) {
+        float[][] matrix = null;
+        switch (numBands) {
+        case 1:
+            matrix = new float[3][1];
+            matrix[0][0] = 1; // Red
+            matrix[1][0] = 1; // Grn
+            matrix[2][0] = 1; // Blu
+            break;
+        case 2:
+            matrix = new float[4][2];
+            matrix[0][0] = 1; // Red
+            matrix[1][0] = 1; // Grn
+            matrix[2][0] = 1; // Blu
+            matrix[3][1] = 1; // Alpha
+            break;
+        case 3:
+            matrix = new float[3][3];
+            matrix[0][0] = 1; // Red
+            matrix[1][1] = 1; // Grn
+            matrix[2][2] = 1; // Blu
+            break;
+        default:
+            matrix = new float[4][numBands];
+            matrix[0][0] = 1; // Red
+            matrix[1][1] = 1; // Grn
+            matrix[2][2] = 1; // Blu
+            matrix[3][3] = 1; // Alpha
+            break;
+        }
+        return matrix;
+    }
+
     /**
      * This function 'fixes' the source's color model. Right now it just selects
      * if it should have one or two bands based on if the source had an alpha
@@ -107,6 +107,9 @@ public class FormatRed extends AbstractRed {
 
     @Override
     public WritableRaster copyData(final WritableRaster wr) {
+        if (copyFromTileCache(wr)) {
+            return wr;
+        }
         final ColorModel cm = getColorModel();
         final CachableRed cr = getSource();
         final ColorModel srcCM = cr.getColorModel();
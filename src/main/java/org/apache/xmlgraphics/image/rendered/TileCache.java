@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A memory-bounded cache of computed tiles shared between images. Tiles are
+ * keyed by the identity of the image that owns them and by their tile indices,
+ * and the least recently used tiles are evicted once the total size of the
+ * cached data buffers exceeds the memory capacity.
+ *
+ * <p>
+ * Owners are only weakly referenced, so caching a tile does not keep its image
+ * alive. Tiles of images that have been collected stay in the cache until they
+ * are evicted. Cached tiles are shared by every caller and must not be
+ * modified.
+ *
+ * <p>
+ * The capacity of the shared instance returned by {@link #getDefault()} may be
+ * set in bytes with the system property
+ * <code>org.apache.xmlgraphics.image.rendered.TileCache.capacity</code>.
+ */
+public class TileCache {
+
+    /** The default memory capacity of the shared cache: 32 MB. */
+    public static final long DEFAULT_MEMORY_CAPACITY = 32L * 1024 * 1024;
+
+    private static final TileCache DEFAULT_INSTANCE = new TileCache(
+            Long.getLong(TileCache.class.getName() + ".capacity",
+                    DEFAULT_MEMORY_CAPACITY).longValue());
+
+    private final Map<TileKey, Raster> tiles = new LinkedHashMap<>(64, 0.75F,
+            true);
+
+    private long memoryCapacity;
+    private long memoryUsage;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a new tile cache.
+     *
+     * @param memoryCapacity
+     *            the maximum number of bytes of tile data to keep
+     */
+    public TileCache(final long memoryCapacity) {
+        setMemoryCapacity(memoryCapacity);
+    }
+
+    /**
+     * Returns the tile cache shared by default between all images.
+     *
+     * @return the shared tile cache
+     */
+    public static TileCache getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Returns a cached tile.
+     *
+     * @param owner
+     *            the image the tile belongs to
+     * @param tileX
+     *            the x index of the tile
+     * @param tileY
+     *            the y index of the tile
+     * @return the tile or null if it is not in the cache
+     */
+    public synchronized Raster get(final Object owner, final int tileX,
+            final int tileY) {
+        final Raster tile = this.tiles.get(new TileKey(owner, tileX, tileY));
+        if (tile == null) {
+            this.misses++;
+        } else {
+            this.hits++;
+        }
+        return tile;
+    }
+
+    /**
+     * Adds a tile to the cache, evicting the least recently used tiles if the
+     * memory capacity is exceeded. Tiles larger than the whole capacity are
+     * not cached.
+     *
+     * @param owner
+     *            the image the tile belongs to
+     * @param tileX
+     *            the x index of the tile
+     * @param tileY
+     *            the y index of the tile
+     * @param tile
+     *            the tile
+     */
+    public synchronized void put(final Object owner, final int tileX,
+            final int tileY, final Raster tile) {
+        final long size = getMemorySize(tile);
+        if (size > this.memoryCapacity) {
+            return;
+        }
+        final Raster old = this.tiles.put(new TileKey(owner, tileX, tileY),
+                tile);
+        if (old != null) {
+            this.memoryUsage -= getMemorySize(old);
+        }
+        this.memoryUsage += size;
+        evict(this.memoryCapacity);
+    }
+
+    /**
+     * Removes all tiles of an image from the cache, for example because its
+     * content has changed.
+     *
+     * @param owner
+     *            the image whose tiles are to be removed
+     */
+    public synchronized void remove(final Object owner) {
+        final Iterator<Map.Entry<TileKey, Raster>> iter = this.tiles
+                .entrySet().iterator();
+        while (iter.hasNext()) {
+            final Map.Entry<TileKey, Raster> entry = iter.next();
+            final Object o = entry.getKey().owner.get();
+            if (o == owner || o == null) {
+                this.memoryUsage -= getMemorySize(entry.getValue());
+                iter.remove();
+            }
+        }
+    }
+
+    /** Removes all tiles from the cache. */
+    public synchronized void flush() {
+        this.tiles.clear();
+        this.memoryUsage = 0;
+    }
+
+    /**
+     * Sets the maximum number of bytes of tile data to keep, evicting tiles if
+     * the new capacity is already exceeded.
+     *
+     * @param memoryCapacity
+     *            the memory capacity in bytes
+     */
+    public synchronized void setMemoryCapacity(final long memoryCapacity) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException(
+                    "Memory capacity must not be negative: " + memoryCapacity);
+        }
+        this.memoryCapacity = memoryCapacity;
+        evict(memoryCapacity);
+    }
+
+    /** @return the maximum number of bytes of tile data kept */
+    public synchronized long getMemoryCapacity() {
+        return this.memoryCapacity;
+    }
+
+    /** @return the number of bytes of tile data currently cached */
+    public synchronized long getMemoryUsage() {
+        return this.memoryUsage;
+    }
+
+    /** @return the number of tiles currently cached */
+    public synchronized int getTileCount() {
+        return this.tiles.size();
+    }
+
+    /** @return the number of lookups that found their tile */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /** @return the number of lookups that did not find their tile */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /** Resets the hit and miss counters. */
+    public synchronized void resetStatistics() {
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    private void evict(final long capacity) {
+        final Iterator<Raster> iter = this.tiles.values().iterator();
+        while (this.memoryUsage > capacity && iter.hasNext()) {
+            this.memoryUsage -= getMemorySize(iter.next());
+            iter.remove();
+        }
+    }
+
+    /**
+     * Returns the number of bytes held by the data buffer of a raster.
+     *
+     * @param raster
+     *            the raster
+     * @return the size of its data in bytes
+     */
+    public static long getMemorySize(final Raster raster) {
+        final DataBuffer db = raster.getDataBuffer();
+        return (long) db.getSize() * db.getNumBanks()
+                * DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+    }
+
+    private static final class TileKey {
+
+        private final WeakReference<Object> owner;
+        private final int hash;
+        private final int tileX;
+        private final int tileY;
+
+        TileKey(final Object owner, final int tileX, final int tileY) {
+            this.owner = new WeakReference<>(owner);
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.hash = System.identityHashCode(owner) * 31 * 31 + tileX * 31
+                    + tileY;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            final TileKey other = (TileKey) obj;
+            if (this.tileX != other.tileX || this.tileY != other.tileY) {
+                return false;
+            }
+            final Object o = this.owner.get();
+            return o != null && o == other.owner.get();
+        }
+    }
+}
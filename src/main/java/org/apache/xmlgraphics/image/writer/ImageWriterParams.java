@@ -19,6 +19,8 @@
 
 package org.apache.xmlgraphics.image.writer;
 
+import java.util.concurrent.Executor;
+
 /**
  * Parameters for the encoder which is accessed through the ImageWriter
  * interface.
@@ -31,6 +33,11 @@ public class ImageWriterParams {
     private Float jpegQuality;
     private Boolean jpegForceBaseline;
     private String compressionMethod;
+    private String encodingPreset;
+    private String predictor;
+    private Boolean bigTIFF;
+    private Executor compressionExecutor;
+    private int compressionWindow;
 
     /**
      * Default constructor.
@@ -67,6 +74,44 @@ public class ImageWriterParams {
         return this.compressionMethod;
     }
 
+    /**
+     * @return the speed/size trade-off preset for encoding the image, or null
+     *         if undefined
+     */
+    public String getEncodingPreset() {
+        return this.encodingPreset;
+    }
+
+    /**
+     * @return the predictor applied before compression, or null if undefined
+     */
+    public String getPredictor() {
+        return this.predictor;
+    }
+
+    /**
+     * @return true if a BigTIFF file is requested, or null if undefined
+     */
+    public Boolean getBigTIFF() {
+        return this.bigTIFF;
+    }
+
+    /**
+     * @return the executor on which parts of the image are compressed
+     *         concurrently, or null if undefined
+     */
+    public Executor getCompressionExecutor() {
+        return this.compressionExecutor;
+    }
+
+    /**
+     * @return the maximum number of parts of the image being compressed at the
+     *         same time, or 0 if undefined
+     */
+    public int getCompressionWindow() {
+        return this.compressionWindow;
+    }
+
     /**
      * Sets the target resolution of the bitmap image to be written.
      * 
@@ -99,4 +144,62 @@ public class ImageWriterParams {
     public void setCompressionMethod(final String method) {
         this.compressionMethod = method;
     }
+
+    /**
+     * Sets the speed/size trade-off the encoder shall aim for. Supported values
+     * depend on the image writer; the internal PNG writer understands
+     * "fastest", "balanced" and "smallest".
+     * 
+     * @param preset
+     *            the encoding preset
+     */
+    public void setEncodingPreset(final String preset) {
+        this.encodingPreset = preset;
+    }
+
+    /**
+     * Sets the predictor applied to the image data before compression.
+     * Supported values depend on the image writer; the internal TIFF writer
+     * understands "None", "Horizontal" (horizontal differencing) and
+     * "FloatingPoint" (floating point prediction) for LZW and Deflate
+     * compression.
+     * 
+     * @param predictor
+     *            the predictor
+     */
+    public void setPredictor(final String predictor) {
+        this.predictor = predictor;
+    }
+
+    /**
+     * Sets whether a TIFF file shall be written in the BigTIFF format, which
+     * is not limited to 4 GB. If undefined, the TIFF writer only chooses
+     * BigTIFF when the first image alone would exceed the limit of a classic
+     * TIFF file.
+     * 
+     * @param bigTIFF
+     *            true to write BigTIFF
+     */
+    public void setBigTIFF(final boolean bigTIFF) {
+        this.bigTIFF = bigTIFF ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /**
+     * Sets the executor on which parts of the image are compressed
+     * concurrently. The internal TIFF writer compresses its strips or tiles
+     * on it; other writers ignore it. If undefined, the image is compressed
+     * on the calling thread.
+     * 
+     * @param executor
+     *            the executor, or null to compress on the calling thread
+     * @param window
+     *            the maximum number of parts being compressed at the same
+     *            time, which bounds the memory used, or 0 for the writer's
+     *            default
+     */
+    public void setCompressionExecutor(final Executor executor,
+            final int window) {
+        this.compressionExecutor = executor;
+        this.compressionWindow = window;
+    }
 }
@@ -23,6 +23,7 @@ import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.apache.xmlgraphics.image.codec.png.PNGEncodeParam;
 import org.apache.xmlgraphics.image.codec.png.PNGImageEncoder;
 import org.apache.xmlgraphics.image.writer.AbstractImageWriter;
 import org.apache.xmlgraphics.image.writer.ImageWriterParams;
@@ -46,10 +47,33 @@ public class PNGImageWriter extends AbstractImageWriter {
     @Override
     public void writeImage(final RenderedImage image, final OutputStream out,
             final ImageWriterParams params) throws IOException {
-        final PNGImageEncoder encoder = new PNGImageEncoder(out, null);
+        final PNGImageEncoder encoder = new PNGImageEncoder(out,
+                createPNGEncodeParam(image, params));
         encoder.encode(image);
     }
 
+    private PNGEncodeParam createPNGEncodeParam(final RenderedImage image,
+            final ImageWriterParams params) {
+        if (params == null || params.getEncodingPreset() == null) {
+            // let the encoder pick the parameters
+            return null;
+        }
+        final PNGEncodeParam encodeParam = PNGEncodeParam
+                .getDefaultEncodeParam(image);
+        final String preset = params.getEncodingPreset();
+        if ("fastest".equalsIgnoreCase(preset)) {
+            encodeParam.setEncodingPreset(PNGEncodeParam.PRESET_FASTEST);
+        } else if ("balanced".equalsIgnoreCase(preset)) {
+            encodeParam.setEncodingPreset(PNGEncodeParam.PRESET_BALANCED);
+        } else if ("smallest".equalsIgnoreCase(preset)) {
+            encodeParam.setEncodingPreset(PNGEncodeParam.PRESET_SMALLEST);
+        } else {
+            throw new UnsupportedOperationException(
+                    "Encoding preset not supported: " + preset);
+        }
+        return encodeParam;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getMIMEType() {
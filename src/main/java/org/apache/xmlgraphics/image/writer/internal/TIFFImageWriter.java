@@ -75,12 +75,29 @@ public class TIFFImageWriter extends AbstractImageWriter {
                     .equalsIgnoreCase(params.getCompressionMethod())) {
                 encodeParams
                         .setCompression(TIFFEncodeParam.COMPRESSION_DEFLATE);
+            } else if ("LZW".equalsIgnoreCase(params.getCompressionMethod())) {
+                encodeParams.setCompression(TIFFEncodeParam.COMPRESSION_LZW);
             } else {
                 throw new UnsupportedOperationException(
                         "Compression method not supported: "
                                 + params.getCompressionMethod());
             }
 
+            if (params.getPredictor() == null
+                    || "None".equalsIgnoreCase(params.getPredictor())) {
+                encodeParams.setPredictor(TIFFEncodeParam.PREDICTOR_NONE);
+            } else if ("Horizontal".equalsIgnoreCase(params.getPredictor())) {
+                encodeParams
+                        .setPredictor(TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING);
+            } else if ("FloatingPoint".equalsIgnoreCase(params
+                    .getPredictor())) {
+                encodeParams
+                        .setPredictor(TIFFEncodeParam.PREDICTOR_FLOATING_POINT);
+            } else {
+                throw new UnsupportedOperationException(
+                        "Predictor not supported: " + params.getPredictor());
+            }
+
             if (params.getResolution() != null) {
                 // Set target resolution
                 final float pixSzMM = 25.4f / params.getResolution()
@@ -101,6 +118,14 @@ public class TIFFImageWriter extends AbstractImageWriter {
                                 new long[][] { rational }) };
                 encodeParams.setExtraFields(fields);
             }
+
+            if (params.getBigTIFF() != null) {
+                encodeParams.setBigTIFF(params.getBigTIFF().booleanValue());
+            }
+
+            encodeParams.setCompressionExecutor(params
+                    .getCompressionExecutor());
+            encodeParams.setCompressionWindow(params.getCompressionWindow());
         }
         return encodeParams;
     }
@@ -32,7 +32,9 @@ import java.awt.image.SampleModel;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.apache.xmlgraphics.image.BufferPool;
 import org.apache.xmlgraphics.image.GraphicsUtil;
+import org.apache.xmlgraphics.image.rendered.AbstractRed;
 
 /**
  * Helper class for encoding bitmap images.
@@ -139,44 +141,55 @@ public class ImageEncodingHelper {
     public static void encodeRenderedImageAsRGB(final RenderedImage image,
             final OutputStream out) throws IOException {
         final Raster raster = image.getData();
-        Object data;
-        final int nbands = raster.getNumBands();
-        final int dataType = raster.getDataBuffer().getDataType();
-        switch (dataType) {
-        case DataBuffer.TYPE_BYTE:
-            data = new byte[nbands];
-            break;
-        case DataBuffer.TYPE_USHORT:
-            data = new short[nbands];
-            break;
-        case DataBuffer.TYPE_INT:
-            data = new int[nbands];
-            break;
-        case DataBuffer.TYPE_FLOAT:
-            data = new float[nbands];
-            break;
-        case DataBuffer.TYPE_DOUBLE:
-            data = new double[nbands];
-            break;
-        default:
-            throw new IllegalArgumentException("Unknown data buffer type: "
-                    + dataType);
-        }
+        final BufferPool pool = BufferPool.getDefault();
+        try {
+            Object data;
+            final int nbands = raster.getNumBands();
+            final int dataType = raster.getDataBuffer().getDataType();
+            switch (dataType) {
+            case DataBuffer.TYPE_BYTE:
+                data = new byte[nbands];
+                break;
+            case DataBuffer.TYPE_USHORT:
+                data = new short[nbands];
+                break;
+            case DataBuffer.TYPE_INT:
+                data = new int[nbands];
+                break;
+            case DataBuffer.TYPE_FLOAT:
+                data = new float[nbands];
+                break;
+            case DataBuffer.TYPE_DOUBLE:
+                data = new double[nbands];
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown data buffer type: " + dataType);
+            }
 
-        final ColorModel colorModel = image.getColorModel();
-        final int w = image.getWidth();
-        final int h = image.getHeight();
-        final byte[] buf = new byte[w * 3];
-        for (int y = 0; y < h; y++) {
-            int idx = -1;
-            for (int x = 0; x < w; x++) {
-                final int rgb = colorModel.getRGB(raster.getDataElements(x, y,
-                        data));
-                buf[++idx] = (byte) (rgb >> 16);
-                buf[++idx] = (byte) (rgb >> 8);
-                buf[++idx] = (byte) rgb;
+            final ColorModel colorModel = image.getColorModel();
+            final int w = image.getWidth();
+            final int h = image.getHeight();
+            final byte[] buf = pool.getByteArray(w * 3, false);
+            try {
+                for (int y = 0; y < h; y++) {
+                    int idx = -1;
+                    for (int x = 0; x < w; x++) {
+                        final int rgb = colorModel.getRGB(raster
+                                .getDataElements(x, y, data));
+                        buf[++idx] = (byte) (rgb >> 16);
+                        buf[++idx] = (byte) (rgb >> 8);
+                        buf[++idx] = (byte) rgb;
+                    }
+                    out.write(buf, 0, w * 3);
+                }
+            } finally {
+                pool.release(buf);
+            }
+        } finally {
+            if (image instanceof AbstractRed) {
+                ((AbstractRed) image).releaseData(raster);
             }
-            out.write(buf);
         }
     }
 
@@ -210,40 +223,47 @@ public class ImageEncodingHelper {
         // TODO Rewrite to encode directly from a RenderedImage to avoid
         // buffering the whole RGB
         // image in memory
-        final byte[] linedata = new byte[bytewidth];
-        byte ib;
-        for (int y = 0; y < height; y++) {
-            ib = 0;
-            int i = 3 * y * width;
-            for (int x = 0; x < width; x++, i += 3) {
-
-                // see http://www.jguru.com/faq/view.jsp?EID=221919
-                double greyVal = 0.212671d * (raw[i] & 0xff) + 0.715160d
-                        * (raw[i + 1] & 0xff) + 0.072169d * (raw[i + 2] & 0xff);
-                switch (bitsPerPixel) {
-                case 1:
-                    if (greyVal < 128) {
-                        ib |= (byte) (1 << 7 - x % 8);
+        final BufferPool pool = BufferPool.getDefault();
+        final byte[] linedata = pool.getByteArray(bytewidth, false);
+        try {
+            byte ib;
+            for (int y = 0; y < height; y++) {
+                ib = 0;
+                int i = 3 * y * width;
+                for (int x = 0; x < width; x++, i += 3) {
+
+                    // see http://www.jguru.com/faq/view.jsp?EID=221919
+                    double greyVal = 0.212671d * (raw[i] & 0xff)
+                            + 0.715160d * (raw[i + 1] & 0xff) + 0.072169d
+                            * (raw[i + 2] & 0xff);
+                    switch (bitsPerPixel) {
+                    case 1:
+                        if (greyVal < 128) {
+                            ib |= (byte) (1 << 7 - x % 8);
+                        }
+                        break;
+                    case 4:
+                        greyVal /= 16;
+                        ib |= (byte) ((byte) greyVal << (1 - x % 2) * 4);
+                        break;
+                    case 8:
+                        ib = (byte) greyVal;
+                        break;
+                    default:
+                        throw new UnsupportedOperationException(
+                                "Unsupported bits per pixel: " + bitsPerPixel);
                     }
-                    break;
-                case 4:
-                    greyVal /= 16;
-                    ib |= (byte) ((byte) greyVal << (1 - x % 2) * 4);
-                    break;
-                case 8:
-                    ib = (byte) greyVal;
-                    break;
-                default:
-                    throw new UnsupportedOperationException(
-                            "Unsupported bits per pixel: " + bitsPerPixel);
-                }
 
-                if (x % pixelsPerByte == pixelsPerByte - 1 || x + 1 == width) {
-                    linedata[x / pixelsPerByte] = ib;
-                    ib = 0;
+                    if (x % pixelsPerByte == pixelsPerByte - 1
+                            || x + 1 == width) {
+                        linedata[x / pixelsPerByte] = ib;
+                        ib = 0;
+                    }
                 }
+                out.write(linedata, 0, bytewidth);
             }
-            out.write(linedata);
+        } finally {
+            pool.release(linedata);
         }
     }
 
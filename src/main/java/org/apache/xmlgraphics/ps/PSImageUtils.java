@@ -20,6 +20,7 @@
 package org.apache.xmlgraphics.ps;
 
 import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.color.ColorSpace;
 import java.awt.geom.Dimension2D;
 import java.awt.geom.Rectangle2D;
@@ -33,6 +34,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.xmlgraphics.image.rendered.AbstractRed;
 import org.apache.xmlgraphics.util.io.ASCII85OutputStream;
 import org.apache.xmlgraphics.util.io.Finalizable;
 import org.apache.xmlgraphics.util.io.FlateEncodeOutputStream;
@@ -470,7 +472,8 @@ public class PSImageUtils {
     public static int[] getRGB(final RenderedImage img, final int startX,
             final int startY, final int w, final int h, int[] rgbArray,
             final int offset, final int scansize) {
-        final Raster raster = img.getData();
+        // Only the cropped region is fetched from the image
+        final Raster raster = img.getData(new Rectangle(startX, startY, w, h));
         int yoff = offset;
         int off;
         Object data;
@@ -509,6 +512,9 @@ public class PSImageUtils {
                         y, data));
             }
         }
+        if (img instanceof AbstractRed) {
+            ((AbstractRed) img).releaseData(raster);
+        }
 
         return rgbArray;
     }
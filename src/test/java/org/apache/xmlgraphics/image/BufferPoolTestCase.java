@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Point;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+import org.junit.Test;
+
+public class BufferPoolTestCase {
+
+    @Test
+    public void testRecycle() {
+        final BufferPool pool = new BufferPool(1024);
+        final int[] array = pool.getIntArray(10);
+        assertEquals(16, array.length);
+        array[3] = 42;
+        pool.release(array);
+        assertEquals(64, pool.getMemoryUsage());
+
+        // Recycled arrays are zeroed, and only match their type and size
+        // class
+        assertNotSame(array, pool.getIntArray(17));
+        assertEquals(40, pool.getByteArray(40).length);
+        final int[] recycled = pool.getIntArray(12);
+        assertSame(array, recycled);
+        assertEquals(0, recycled[3]);
+        assertEquals(0, pool.getMemoryUsage());
+        assertEquals(1, pool.getHits());
+        assertEquals(3, pool.getMisses());
+        assertEquals(0.25, pool.getHitRate(), 0);
+        assertEquals(64, pool.getBytesRecycled());
+    }
+
+    @Test
+    public void testRecycleUncleared() {
+        final BufferPool pool = new BufferPool(1024);
+        final byte[] array = pool.getByteArray(10, false);
+        array[3] = 42;
+        pool.release(array);
+
+        // Only a recycled array keeps its contents when clearing is skipped
+        final byte[] recycled = pool.getByteArray(10, false);
+        assertSame(array, recycled);
+        assertEquals(42, recycled[3]);
+        pool.release(recycled);
+        assertEquals(0, pool.getByteArray(10, true)[3]);
+        assertEquals(0, pool.getShortArray(10, false)[3]);
+        assertEquals(2, pool.getHits());
+    }
+
+    @Test
+    public void testForeignAndDoubleRelease() {
+        final BufferPool pool = new BufferPool(1024);
+        pool.release(new byte[10]);
+        assertEquals(0, pool.getMemoryUsage());
+
+        final short[] array = pool.getShortArray(10);
+        pool.release(array);
+        pool.release(array);
+        assertEquals(32, pool.getMemoryUsage());
+        assertSame(array, pool.getShortArray(10));
+        assertNotSame(array, pool.getShortArray(10));
+    }
+
+    @Test
+    public void testCapacity() {
+        final BufferPool pool = new BufferPool(100);
+        final byte[] a = pool.getByteArray(60);
+        final byte[] b = pool.getByteArray(50);
+        final byte[] c = pool.getByteArray(200);
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        // The least recently used size was dropped, the oversized array
+        // never kept
+        assertEquals(56, pool.getMemoryUsage());
+        assertSame(b, pool.getByteArray(50));
+        assertNotSame(a, pool.getByteArray(60));
+
+        pool.release(pool.getByteArray(80));
+        pool.setMemoryCapacity(0);
+        assertEquals(0, pool.getMemoryUsage());
+    }
+
+    @Test
+    public void testSizeClasses() {
+        assertEquals(16, BufferPool.getSizeClass(0));
+        assertEquals(16, BufferPool.getSizeClass(16));
+        assertEquals(20, BufferPool.getSizeClass(17));
+        assertEquals(1024, BufferPool.getSizeClass(1024));
+        assertEquals(1280, BufferPool.getSizeClass(1025));
+        assertEquals(Integer.MAX_VALUE,
+                BufferPool.getSizeClass(Integer.MAX_VALUE));
+
+        // Requests of varying lengths share the arrays of their class
+        final BufferPool pool = new BufferPool(1024 * 1024);
+        final byte[] array = pool.getByteArray(1000, false);
+        assertEquals(1024, array.length);
+        pool.release(array);
+        assertSame(array, pool.getByteArray(900, false));
+        pool.release(array);
+        assertSame(array, pool.getByteArray(1024, false));
+        assertEquals(2, pool.getHits());
+
+        // Data buffers keep their exact size
+        final DataBuffer db = pool.createDataBuffer(DataBuffer.TYPE_BYTE,
+                1000, 1);
+        assertEquals(1000, ((DataBufferByte) db).getData().length);
+
+        // A disabled pool allocates exact lengths
+        assertEquals(1000, new BufferPool(0).getByteArray(1000).length);
+    }
+
+    private static void checkRaster(final SampleModel sm) {
+        final BufferPool pool = new BufferPool(1024 * 1024);
+        final WritableRaster wr = pool.createWritableRaster(sm, new Point(3,
+                4));
+        final DataBuffer expected = sm.createDataBuffer();
+        assertEquals(expected.getSize(), wr.getDataBuffer().getSize());
+        assertEquals(expected.getNumBanks(), wr.getDataBuffer().getNumBanks());
+        assertEquals(3, wr.getMinX());
+        assertEquals(4, wr.getMinY());
+
+        pool.release(wr.getDataBuffer());
+        assertEquals(0, pool.getHits());
+        pool.createWritableRaster(sm, null);
+        assertEquals(expected.getNumBanks(), pool.getHits());
+    }
+
+    @Test
+    public void testCreateWritableRaster() {
+        checkRaster(new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, 17,
+                9, 4, 70, new int[] { 3, 2, 1, 0 }));
+        checkRaster(new BandedSampleModel(DataBuffer.TYPE_USHORT, 17, 9, 3));
+        checkRaster(new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, 17,
+                9, new int[] { 0xFF0000, 0xFF00, 0xFF }));
+        checkRaster(new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, 17,
+                9, 1));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class GraphicsUtilTestCase {
+
+    private static WritableRaster createRaster(final int dataType,
+            final int[] bandOffsets, final int x, final int y) {
+        final SampleModel sm = new PixelInterleavedSampleModel(dataType, 37,
+                23, bandOffsets.length, 37 * bandOffsets.length, bandOffsets);
+        return Raster.createWritableRaster(sm, new Point(x, y));
+    }
+
+    private static int[] getPixels(final Raster r) {
+        return r.getPixels(r.getMinX(), r.getMinY(), r.getWidth(),
+                r.getHeight(), (int[]) null);
+    }
+
+    private static void checkCopy(final int dataType, final int[] srcOffsets,
+            final int[] dstOffsets) {
+        final Random random = new Random(1234);
+        final WritableRaster src = createRaster(dataType, srcOffsets, 5, 7);
+        final int[] samples = new int[37 * 23 * srcOffsets.length];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt(dataType == DataBuffer.TYPE_BYTE ? 256
+                    : 65536);
+        }
+        src.setPixels(5, 7, 37, 23, samples);
+
+        // The destination overlaps only part of the source, through a child
+        final WritableRaster dst = createRaster(dataType, dstOffsets, 11, 2)
+                .createWritableChild(12, 3, 30, 20, 12, 3, null);
+        final WritableRaster expected = createRaster(dataType, dstOffsets,
+                11, 2).createWritableChild(12, 3, 30, 20, 12, 3, null);
+        GraphicsUtil.copyData_FALLBACK(src, expected);
+        GraphicsUtil.copyData(src, dst);
+        assertArrayEquals(getPixels(expected), getPixels(dst));
+    }
+
+    @Test
+    public void testCopyInterleaved() {
+        // Identical layouts
+        checkCopy(DataBuffer.TYPE_BYTE, new int[] { 2, 1, 0 }, new int[] { 2,
+                1, 0 });
+        checkCopy(DataBuffer.TYPE_USHORT, new int[] { 0, 1 },
+                new int[] { 0, 1 });
+        // BGR to RGB, ABGR to RGBA
+        checkCopy(DataBuffer.TYPE_BYTE, new int[] { 2, 1, 0 }, new int[] { 0,
+                1, 2 });
+        checkCopy(DataBuffer.TYPE_BYTE, new int[] { 3, 2, 1, 0 }, new int[] {
+                0, 1, 2, 3 });
+        checkCopy(DataBuffer.TYPE_USHORT, new int[] { 2, 1, 0 }, new int[] {
+                0, 1, 2 });
+        checkCopy(DataBuffer.TYPE_BYTE, new int[] { 4, 0, 1, 2, 3 },
+                new int[] { 0, 1, 2, 3, 4 });
+    }
+
+    @Test
+    public void testIsInterleaved() {
+        assertTrue(GraphicsUtil.is_INTERLEAVED_Data(new PixelInterleavedSampleModel(
+                DataBuffer.TYPE_BYTE, 10, 10, 3, 30, new int[] { 2, 1, 0 })));
+        // Padding between pixels
+        assertFalse(GraphicsUtil.is_INTERLEAVED_Data(new PixelInterleavedSampleModel(
+                DataBuffer.TYPE_BYTE, 10, 10, 4, 40, new int[] { 2, 1, 0 })));
+        assertFalse(GraphicsUtil.is_INTERLEAVED_Data(new PixelInterleavedSampleModel(
+                DataBuffer.TYPE_INT, 10, 10, 3, 30, new int[] { 2, 1, 0 })));
+    }
+
+    private static int[] randomPixels(final int bands) {
+        final Random random = new Random(4321);
+        final int[] samples = new int[37 * 23 * bands];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt(256);
+        }
+        // Make sure fully transparent and opaque pixels are present
+        samples[bands - 1] = 0;
+        samples[2 * bands - 1] = 255;
+        return samples;
+    }
+
+    /**
+     * Premultiplies or unpremultiplies the same pixels stored in RGBA, ABGR,
+     * packed int and banded rasters, the last going through the generic path.
+     */
+    private static void checkAlpha(final boolean multiply) {
+        final int[] samples = randomPixels(4);
+        final WritableRaster rgba = createRaster(DataBuffer.TYPE_BYTE,
+                new int[] { 0, 1, 2, 3 }, 5, 7);
+        final WritableRaster abgr = createRaster(DataBuffer.TYPE_BYTE,
+                new int[] { 3, 2, 1, 0 }, 5, 7);
+        final WritableRaster packed = Raster.createWritableRaster(
+                new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, 37, 23,
+                        new int[] { 0xFF0000, 0xFF00, 0xFF, 0xFF000000 }),
+                new Point(5, 7));
+        final WritableRaster banded = Raster.createWritableRaster(
+                new BandedSampleModel(DataBuffer.TYPE_BYTE, 37, 23, 4),
+                new Point(5, 7));
+        final WritableRaster[] rasters = { rgba, abgr, packed, banded };
+        for (final WritableRaster wr : rasters) {
+            wr.setPixels(5, 7, 37, 23, samples);
+            if (multiply) {
+                GraphicsUtil.multiplyAlpha(wr);
+            } else {
+                GraphicsUtil.divideAlpha(wr);
+            }
+        }
+        assertArrayEquals(getPixels(rgba), getPixels(abgr));
+        assertArrayEquals(getPixels(rgba), getPixels(packed));
+
+        // The transparent pixel becomes transparent black and the opaque
+        // one is unchanged
+        final int[] pixels = getPixels(rgba);
+        assertArrayEquals(new int[] { 0, 0, 0, 0 },
+                Arrays.copyOfRange(pixels, 0, 4));
+        assertArrayEquals(Arrays.copyOfRange(samples, 4, 8),
+                Arrays.copyOfRange(pixels, 4, 8));
+
+        // The generic path rounds and divides by 255, where the specialized
+        // ones truncate and premultiply with a shift
+        final int tolerance = multiply ? 2 : 1;
+        final int[] expected = getPixels(banded);
+        final int[] actual = getPixels(rgba);
+        for (int i = 0; i < expected.length; i += 4) {
+            if (!multiply && actual[i + 3] == 0) {
+                continue;
+            }
+            for (int b = 0; b < 4; b++) {
+                assertEquals(expected[i + b], actual[i + b], tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void testMultiplyAlpha() {
+        checkAlpha(true);
+    }
+
+    @Test
+    public void testDivideAlpha() {
+        checkAlpha(false);
+    }
+
+    @Test
+    public void testParallelAlpha() {
+        final SampleModel sm = new SinglePixelPackedSampleModel(
+                DataBuffer.TYPE_INT, 1000, 300, new int[] { 0xFF0000, 0xFF00,
+                        0xFF, 0xFF000000 });
+        final WritableRaster sequential = Raster.createWritableRaster(sm,
+                new Point(3, 4));
+        final WritableRaster parallel = Raster.createWritableRaster(sm,
+                new Point(3, 4));
+        final Random random = new Random(42);
+        final int[] samples = new int[1000 * 300 * 4];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt(256);
+        }
+        sequential.setPixels(3, 4, 1000, 300, samples);
+        parallel.setPixels(3, 4, 1000, 300, samples);
+
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            GraphicsUtil.multiplyAlpha(sequential);
+            GraphicsUtil.multiplyAlpha(parallel, pool);
+            assertArrayEquals(getPixels(sequential), getPixels(parallel));
+            GraphicsUtil.divideAlpha(sequential);
+            GraphicsUtil.divideAlpha(parallel, pool);
+            assertArrayEquals(getPixels(sequential), getPixels(parallel));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.png;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+/**
+ * Tests the PNG decoders: strip by strip decoding in PNGRed, and the reduced
+ * outputs of PNGRed and PNGImageDecoder.
+ */
+public class PNGDecoderTest extends TestCase {
+
+    @Test
+    public void testLazyStripDecoding() throws IOException {
+        final int[] types = { BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_BINARY };
+        for (final int type : types) {
+            final BufferedImage image = new BufferedImage(45, 50, type);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.setRGB(x, y, x * y << 24 | x * 5 << 16 | y * 3 << 8
+                            | (x ^ y) * 9);
+                }
+            }
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            new PNGImageEncoder(bos, null).encode(image);
+
+            final PNGRed eager = new PNGRed(new ByteArrayInputStream(
+                    bos.toByteArray()));
+            final PNGDecodeParam decodeParam = new PNGDecodeParam();
+            decodeParam.setLazyDecoding(true);
+            decodeParam.setStripHeight(8);
+            decodeParam.setStripCacheSize(2);
+            final PNGRed lazy = new PNGRed(new ByteArrayInputStream(
+                    bos.toByteArray()), decodeParam);
+
+            assertEquals(8, lazy.getTileHeight());
+            assertEquals(7, lazy.getNumYTiles());
+            assertSameSamples(eager.getData(), lazy.getData());
+
+            // Out of order, forcing both skips and restarts of the inflater
+            final int[] order = { 4, 1, 6, 0, 3, 3, 5, 2 };
+            for (final int ty : order) {
+                final Raster strip = lazy.getTile(0, ty);
+                assertEquals(ty * 8, strip.getMinY());
+                assertSameSamples(eager.getData(strip.getBounds()), strip);
+            }
+            final Rectangle region = new Rectangle(7, 13, 20, 19);
+            assertSameSamples(eager.getData(region), lazy.getData(region));
+        }
+    }
+
+    @Test
+    public void testBackwardStripDecodingIsBounded() throws IOException {
+        final BufferedImage image = new BufferedImage(45, 400,
+                BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, x * 5 << 16 | y * 3 << 8 | (x ^ y) * 9);
+            }
+        }
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, null).encode(image);
+
+        final PNGRed eager = new PNGRed(new ByteArrayInputStream(
+                bos.toByteArray()));
+        final PNGDecodeParam decodeParam = new PNGDecodeParam();
+        decodeParam.setLazyDecoding(true);
+        decodeParam.setStripHeight(8);
+        decodeParam.setStripCacheSize(2);
+        final PNGRed lazy = new PNGRed(new ByteArrayInputStream(
+                bos.toByteArray()), decodeParam);
+
+        // Bottom-up: one pass to reach the last strip, one to record the
+        // restart points, then each strip on its own
+        for (int ty = lazy.getNumYTiles() - 1; ty >= 0; ty--) {
+            final Raster strip = lazy.getTile(0, ty);
+            assertSameSamples(eager.getData(strip.getBounds()), strip);
+        }
+        assertTrue(lazy.inflatedBytes <= 3 * eager.inflatedBytes);
+    }
+
+    @Test
+    public void testReducedDecodeOutput() throws IOException {
+        // 16-bit gray reduced to 8 bits while unfiltering
+        final BufferedImage deep = new BufferedImage(31, 17,
+                BufferedImage.TYPE_USHORT_GRAY);
+        for (int y = 0; y < deep.getHeight(); y++) {
+            for (int x = 0; x < deep.getWidth(); x++) {
+                deep.getRaster().setSample(x, y, 0, x * 2011 + y * 37);
+            }
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, null).encode(deep);
+
+        PNGDecodeParam decodeParam = new PNGDecodeParam();
+        decodeParam.setOutput8BitDepth(true);
+        final RenderedImage[] reduced = {
+                new PNGImageDecoder(new ByteArrayInputStream(bos.toByteArray()),
+                        decodeParam).decodeAsRenderedImage(0),
+                new PNGRed(new ByteArrayInputStream(bos.toByteArray()),
+                        decodeParam) };
+        for (final RenderedImage im : reduced) {
+            final Raster raster = im.getData();
+            assertEquals(DataBuffer.TYPE_BYTE, raster.getTransferType());
+            for (int y = 0; y < deep.getHeight(); y++) {
+                for (int x = 0; x < deep.getWidth(); x++) {
+                    assertEquals(deep.getRaster().getSample(x, y, 0) >> 8,
+                            raster.getSample(x, y, 0));
+                }
+            }
+        }
+
+        // 8-bit gray with a transparent value kept as indexed gray
+        final BufferedImage gray = new BufferedImage(20, 10,
+                BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < gray.getHeight(); y++) {
+            for (int x = 0; x < gray.getWidth(); x++) {
+                gray.getRaster().setSample(x, y, 0, x * 12 + y);
+            }
+        }
+        final PNGEncodeParam.Gray encodeParam = new PNGEncodeParam.Gray();
+        encodeParam.setTransparentGray(25);
+        bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, encodeParam).encode(gray);
+
+        decodeParam = new PNGDecodeParam();
+        decodeParam.setPreferIndexColorModel(true);
+        final RenderedImage[] indexed = {
+                new PNGImageDecoder(new ByteArrayInputStream(bos.toByteArray()),
+                        decodeParam).decodeAsRenderedImage(0),
+                new PNGRed(new ByteArrayInputStream(bos.toByteArray()),
+                        decodeParam) };
+        for (final RenderedImage im : indexed) {
+            assertTrue(im.getColorModel() instanceof IndexColorModel);
+            final IndexColorModel icm = (IndexColorModel) im.getColorModel();
+            assertEquals(0, icm.getAlpha(25));
+            assertEquals(255, icm.getAlpha(24));
+            final Raster raster = im.getData();
+            assertEquals(1, raster.getNumBands());
+            for (int y = 0; y < gray.getHeight(); y++) {
+                for (int x = 0; x < gray.getWidth(); x++) {
+                    assertEquals(gray.getRaster().getSample(x, y, 0),
+                            raster.getSample(x, y, 0));
+                }
+            }
+        }
+    }
+
+    private void assertSameSamples(final Raster expected, final Raster actual) {
+        assertEquals(expected.getBounds(), actual.getBounds());
+        for (int y = expected.getMinY(); y < expected.getMinY()
+                + expected.getHeight(); y++) {
+            for (int x = expected.getMinX(); x < expected.getMinX()
+                    + expected.getWidth(); x++) {
+                for (int b = 0; b < expected.getNumBands(); b++) {
+                    assertEquals(expected.getSample(x, y, b),
+                            actual.getSample(x, y, b));
+                }
+            }
+        }
+    }
+}
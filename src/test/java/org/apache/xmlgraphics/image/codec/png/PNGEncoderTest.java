@@ -21,10 +21,14 @@ package org.apache.xmlgraphics.image.codec.png;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -33,6 +37,9 @@ import java.io.OutputStream;
 
 import junit.framework.TestCase;
 
+import org.apache.xmlgraphics.image.codec.util.SimpleRenderedImage;
+import org.apache.xmlgraphics.image.rendered.AbstractRed;
+import org.apache.xmlgraphics.image.rendered.CachableRed;
 import org.junit.Test;
 
 /**
@@ -114,6 +121,298 @@ public class PNGEncoderTest extends TestCase {
         }
     }
 
+    @Test
+    public void testEncodingPresets() throws IOException {
+        final BufferedImage image = new BufferedImage(61, 47,
+                BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x * 4 << 24 | y * 5 << 16 | (x ^ y) << 8
+                        | x * y) | 0x10000000);
+            }
+        }
+
+        final int[] presets = { PNGEncodeParam.PRESET_FASTEST,
+                PNGEncodeParam.PRESET_BALANCED,
+                PNGEncodeParam.PRESET_SMALLEST };
+        for (final int preset : presets) {
+            final PNGEncodeParam params = PNGEncodeParam
+                    .getDefaultEncodeParam(image);
+            params.setEncodingPreset(preset);
+            assertRoundTrip(image, params);
+        }
+
+        for (int filter = PNGEncodeParam.PNG_FILTER_NONE; filter <= PNGEncodeParam.PNG_FILTER_PAETH; filter++) {
+            final PNGEncodeParam params = PNGEncodeParam
+                    .getDefaultEncodeParam(image);
+            params.setFilterPolicy(PNGEncodeParam.FILTER_POLICY_FIXED);
+            params.setFixedFilter(filter);
+            params.setCompressionStrategy(java.util.zip.Deflater.HUFFMAN_ONLY);
+            params.setIDATSegmentLength(100);
+            assertRoundTrip(image, params);
+        }
+    }
+
+    @Test
+    public void testPresetSizes() throws IOException {
+        final InputStream in = getClass().getResourceAsStream(
+                "/images/asf-logo.png");
+        final BufferedImage image;
+        try {
+            image = javax.imageio.ImageIO.read(in);
+        } finally {
+            in.close();
+        }
+
+        final int[] presets = { PNGEncodeParam.PRESET_FASTEST,
+                PNGEncodeParam.PRESET_BALANCED,
+                PNGEncodeParam.PRESET_SMALLEST };
+        int previous = Integer.MAX_VALUE;
+        for (final int preset : presets) {
+            final PNGEncodeParam params = PNGEncodeParam
+                    .getDefaultEncodeParam(image);
+            params.setEncodingPreset(preset);
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            new PNGImageEncoder(bos, params).encode(image);
+            assertTrue("Preset " + preset + " gives a larger file",
+                    bos.size() <= previous);
+            previous = bos.size();
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, PNGEncodeParam.getDefaultEncodeParam(image))
+                .encode(image);
+        assertTrue(previous <= bos.size());
+    }
+
+    @Test
+    public void testDirectDataBufferLayouts() throws IOException {
+        final int[] types = { BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY,
+                BufferedImage.TYPE_BYTE_INDEXED, BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_INT_ARGB };
+        for (final int type : types) {
+            final BufferedImage image = new BufferedImage(37, 29, type);
+            final Graphics2D g2d = image.createGraphics();
+            g2d.setPaint(new java.awt.GradientPaint(0, 0, new Color(255, 0,
+                    0, 40), 37, 29, new Color(0, 64, 255, 250)));
+            g2d.fillRect(0, 0, 37, 29);
+            g2d.setPaint(Color.green);
+            g2d.fillOval(5, 3, 20, 21);
+            g2d.dispose();
+
+            for (int interlaced = 0; interlaced < 2; interlaced++) {
+                final BufferedImage[] images = { image,
+                        image.getSubimage(3, 2, 30, 25) };
+                for (final BufferedImage im : images) {
+                    final PNGEncodeParam params = PNGEncodeParam
+                            .getDefaultEncodeParam(im);
+                    params.setInterlacing(interlaced == 1);
+                    assertSamplesRoundTrip(im, params,
+                            im.getSampleModel().getNumBands());
+                }
+            }
+        }
+
+        // Alpha channel dropped in favour of a transparent colour
+        final BufferedImage image = new BufferedImage(13, 7,
+                BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(4, 5, 0xff123456);
+        final PNGEncodeParam.RGB params = new PNGEncodeParam.RGB();
+        params.setTransparentRGB(new int[] { 0, 0, 0 });
+        assertSamplesRoundTrip(image, params, 3);
+    }
+
+    @Test
+    public void testTiledImageIsEncodedStripByStrip() throws IOException {
+        final BufferedImage source = createSource(50, 33);
+        final TiledImage tiled = new TiledImage(source, 16, 10);
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, null).encode(tiled);
+        assertTrue("At most one row of tiles should be requested at a time",
+                tiled.maxRequestedHeight <= 10);
+        assertEquals("Each tile should be computed once",
+                tiled.getNumXTiles() * tiled.getNumYTiles(),
+                tiled.tilesRequested);
+        assertDecodesTo(source, bos.toByteArray());
+    }
+
+    @Test
+    public void testUntiledImageTileIsRequestedOnce() throws IOException {
+        final BufferedImage source = createSource(50, 150);
+        final TiledImage untiled = new TiledImage(source, 50, 150);
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, null).encode(untiled);
+        assertEquals("The only tile should be requested once", 1,
+                untiled.tilesRequested);
+        assertDecodesTo(source, bos.toByteArray());
+    }
+
+    @Test
+    public void testUntiledRedIsEncodedStripByStrip() throws IOException {
+        final BufferedImage source = createSource(50, 150);
+        final StripRed red = new StripRed(source);
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, null).encode(red);
+        assertEquals(64, red.maxComputedHeight);
+        assertEquals(150, red.computedRows);
+        assertDecodesTo(source, bos.toByteArray());
+    }
+
+    private static BufferedImage createSource(final int width,
+            final int height) {
+        final BufferedImage source = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < source.getHeight(); y++) {
+            for (int x = 0; x < source.getWidth(); x++) {
+                source.setRGB(x, y, x * 5 << 16 | y * 7 << 8 | x ^ y);
+            }
+        }
+        return source;
+    }
+
+    private static void assertDecodesTo(final BufferedImage source,
+            final byte[] png) throws IOException {
+        final RenderedImage decoded = new PNGImageDecoder(
+                new ByteArrayInputStream(png), new PNGDecodeParam())
+                .decodeAsRenderedImage(0);
+        final Raster actual = decoded.getData();
+        for (int y = 0; y < source.getHeight(); y++) {
+            for (int x = 0; x < source.getWidth(); x++) {
+                for (int b = 0; b < 3; b++) {
+                    assertEquals(source.getRaster().getSample(x, y, b),
+                            actual.getSample(x, y, b));
+                }
+            }
+        }
+    }
+
+    /**
+     * A tiled view of a <code>BufferedImage</code> recording the largest region
+     * requested through <code>getData</code> and the number of tiles computed.
+     */
+    private static class TiledImage extends SimpleRenderedImage {
+
+        private final BufferedImage source;
+        private int maxRequestedHeight;
+        private int tilesRequested;
+
+        TiledImage(final BufferedImage source, final int tileWidth,
+                final int tileHeight) {
+            this.source = source;
+            this.width = source.getWidth();
+            this.height = source.getHeight();
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.sampleModel = source.getSampleModel()
+                    .createCompatibleSampleModel(tileWidth, tileHeight);
+            this.colorModel = source.getColorModel();
+        }
+
+        @Override
+        public Raster getTile(final int tileX, final int tileY) {
+            this.tilesRequested++;
+            final Rectangle tileBounds = new Rectangle(tileXToX(tileX),
+                    tileYToY(tileY), this.tileWidth, this.tileHeight);
+            final WritableRaster tile = Raster.createWritableRaster(
+                    this.sampleModel, tileBounds.getLocation());
+            final Rectangle r = tileBounds.intersection(getBounds());
+            tile.setRect(this.source.getRaster().createChild(r.x, r.y,
+                    r.width, r.height, r.x, r.y, null));
+            return tile;
+        }
+
+        @Override
+        public Raster getData(final Rectangle bounds) {
+            this.maxRequestedHeight = Math.max(this.maxRequestedHeight,
+                    bounds.height);
+            return super.getData(bounds);
+        }
+    }
+
+    /**
+     * An untiled <code>AbstractRed</code> computing the rows of a
+     * <code>BufferedImage</code> on request, recording the rows computed.
+     */
+    private static class StripRed extends AbstractRed {
+
+        private final BufferedImage source;
+        private int maxComputedHeight;
+        private int computedRows;
+
+        StripRed(final BufferedImage source) {
+            super((CachableRed) null, new Rectangle(source.getWidth(), source
+                    .getHeight()), source.getColorModel(), source
+                    .getSampleModel(), null);
+            this.source = source;
+        }
+
+        @Override
+        public WritableRaster copyData(final WritableRaster wr) {
+            this.maxComputedHeight = Math.max(this.maxComputedHeight,
+                    wr.getHeight());
+            this.computedRows += wr.getHeight();
+            wr.setRect(this.source.getRaster().createChild(wr.getMinX(),
+                    wr.getMinY(), wr.getWidth(), wr.getHeight(),
+                    wr.getMinX(), wr.getMinY(), null));
+            return wr;
+        }
+    }
+
+    private void assertSamplesRoundTrip(final BufferedImage image,
+            final PNGEncodeParam params, final int numBands)
+            throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, params).encode(image);
+
+        final PNGDecodeParam decodeParam = new PNGDecodeParam();
+        decodeParam.setExpandPalette(false);
+        final RenderedImage decoded = new PNGImageDecoder(
+                new ByteArrayInputStream(bos.toByteArray()), decodeParam)
+                .decodeAsRenderedImage(0);
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+
+        final Raster expected = image.getRaster();
+        final Raster actual = decoded.getData();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int b = 0; b < numBands; b++) {
+                    assertEquals(expected.getSample(x, y, b),
+                            actual.getSample(x, y, b));
+                }
+            }
+        }
+    }
+
+    private void assertRoundTrip(final BufferedImage image,
+            final PNGEncodeParam params) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, params).encode(image);
+
+        final PNGImageDecoder pngImageDecoder = new PNGImageDecoder(
+                new ByteArrayInputStream(bos.toByteArray()),
+                new PNGDecodeParam());
+        final RenderedImage decoded = pngImageDecoder.decodeAsRenderedImage(0);
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+
+        final Raster raster = decoded.getData();
+        final int[] pixel = new int[4];
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                raster.getPixel(x, y, pixel);
+                final int argb = pixel[3] << 24 | pixel[0] << 16
+                        | pixel[1] << 8 | pixel[2];
+                assertEquals("Decoded image does not match the original",
+                        image.getRGB(x, y), argb);
+            }
+        }
+    }
+
     /**
      * Template method for building the PNG output stream. This gives a chance
      * to sub-classes (e.g., Base64PNGEncoderTest) to add an additional
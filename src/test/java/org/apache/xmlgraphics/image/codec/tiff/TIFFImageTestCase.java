@@ -0,0 +1,623 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.xmlgraphics.image.BufferPool;
+import org.apache.xmlgraphics.image.codec.util.FileChannelSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.MappedFileSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.MemoryCacheSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+import org.apache.xmlgraphics.image.rendered.TileCache;
+import org.junit.Test;
+
+public class TIFFImageTestCase {
+
+    private static byte[] encode(final BufferedImage image,
+            final TIFFEncodeParam param) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TIFFImageEncoder(out, param).encode(image);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage createGradient(final int width,
+            final int height) {
+        final BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.getRaster().setSample(x, y, 0, (x * 7 + y * 3) & 0xff);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void testTileCache() throws IOException {
+        final BufferedImage image = createGradient(40, 30);
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setCompression(TIFFEncodeParam.COMPRESSION_DEFLATE);
+        final byte[] data = encode(image, encodeParam);
+
+        final TileCache cache = new TileCache(1024 * 1024);
+        final TIFFDecodeParam param = new TIFFDecodeParam();
+        param.setUseTileCache(true);
+        param.setTileCache(cache);
+        final TIFFImage tiff = new TIFFImage(new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(data)), param, 0);
+        final int tiles = tiff.getNumXTiles() * tiff.getNumYTiles();
+
+        final Raster first = tiff.getTile(0, 1);
+        assertSame(first, tiff.getTile(0, 1));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+
+        final Raster decoded = tiff.getData();
+        assertEquals(tiles, cache.getTileCount());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(image.getRaster().getSample(x, y, 0),
+                        decoded.getSample(x, y, 0));
+            }
+        }
+
+        cache.setMemoryCapacity(TileCache.getMemorySize(first));
+        assertEquals(1, cache.getTileCount());
+        cache.remove(tiff);
+        assertEquals(0, cache.getTileCount());
+        assertEquals(0, cache.getMemoryUsage());
+
+        // Caching is off by default, and tiles are not shared then
+        final TIFFImage plain = new TIFFImage(new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(data)), new TIFFDecodeParam(), 0);
+        assertNotSame(plain.getTile(0, 0), plain.getTile(0, 0));
+        assertNull(plain.getTileCache());
+        assertNull(TileCache.getDefault().get(plain, 0, 0));
+    }
+
+    @Test
+    public void testPrefetchTiles() throws Exception {
+        final BufferedImage image = createGradient(64, 200);
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setCompression(TIFFEncodeParam.COMPRESSION_DEFLATE);
+        final byte[] data = encode(image, encodeParam);
+
+        final TileCache cache = new TileCache(1024 * 1024);
+        final TIFFDecodeParam param = new TIFFDecodeParam();
+        param.setUseTileCache(true);
+        param.setTileCache(cache);
+        final TIFFImage tiff = new TIFFImage(new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(data)), param, 0);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            tiff.prefetchTiles(new Rectangle(0, 50, 64, 100), executor);
+        } finally {
+            executor.shutdown();
+        }
+        final int tileHeight = tiff.getTileHeight();
+        assertEquals(149 / tileHeight - 50 / tileHeight + 1,
+                cache.getTileCount());
+
+        final Raster decoded = tiff.getData();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(image.getRaster().getSample(x, y, 0),
+                        decoded.getSample(x, y, 0));
+            }
+        }
+
+        // Tiles still decode once the kept inflaters have been ended
+        tiff.dispose();
+        cache.remove(tiff);
+        final Raster again = tiff.getData();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(image.getRaster().getSample(x, y, 0),
+                        again.getSample(x, y, 0));
+            }
+        }
+    }
+
+    @Test
+    public void testCopyDataConcurrently() throws Exception {
+        final BufferedImage image = createGradient(64, 200);
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setCompression(TIFFEncodeParam.COMPRESSION_DEFLATE);
+        final TIFFImage tiff = new TIFFImage(new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(encode(image, encodeParam))),
+                new TIFFDecodeParam(), 0);
+        assertNull(tiff.getTileCache());
+
+        // One task per row of tiles, without any tile cache
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final AtomicInteger tasks = new AtomicInteger();
+        final WritableRaster wr = image.getRaster()
+                .createCompatibleWritableRaster(10, 40, 80, 120);
+        try {
+            assertSame(wr, tiff.copyData(wr, new Executor() {
+                @Override
+                public void execute(final Runnable command) {
+                    tasks.incrementAndGet();
+                    executor.execute(command);
+                }
+            }));
+        } finally {
+            executor.shutdown();
+        }
+        final int tileHeight = tiff.getTileHeight();
+        assertEquals(159 / tileHeight - 40 / tileHeight + 1, tasks.get());
+        for (int y = 40; y < 160; y++) {
+            for (int x = 10; x < 90; x++) {
+                assertEquals(x < 64 ? image.getRaster().getSample(x, y, 0) : 0,
+                        wr.getSample(x, y, 0));
+            }
+        }
+    }
+
+    @Test
+    public void testCachedTileDecodedOnce() throws Exception {
+        final BufferedImage image = createGradient(64, 64);
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setCompression(TIFFEncodeParam.COMPRESSION_DEFLATE);
+        final TileCache cache = new TileCache(1024 * 1024);
+        final TIFFDecodeParam param = new TIFFDecodeParam();
+        param.setUseTileCache(true);
+        param.setTileCache(cache);
+        final TIFFImage tiff = new TIFFImage(new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(encode(image, encodeParam))), param, 0);
+
+        final int threads = 8;
+        final CyclicBarrier start = new CyclicBarrier(threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Raster>> tiles = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                tiles.add(executor.submit(new Callable<Raster>() {
+                    @Override
+                    public Raster call() throws Exception {
+                        start.await();
+                        return tiff.getTile(0, 3);
+                    }
+                }));
+            }
+            final Raster first = tiles.get(0).get();
+            for (final Future<Raster> tile : tiles) {
+                assertSame(first, tile.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getTileCount());
+    }
+
+    @Test
+    public void testCorruptTileReleasesBuffers() throws IOException {
+        final BufferedImage image = createGradient(64, 64);
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setCompression(TIFFEncodeParam.COMPRESSION_DEFLATE);
+        final byte[] data = encode(image, encodeParam);
+        final TIFFDirectory dir = new TIFFDirectory(
+                new MemoryCacheSeekableStream(new ByteArrayInputStream(data)),
+                0);
+        final int offset = (int) dir.getFieldAsLong(
+                TIFFImageDecoder.TIFF_STRIP_OFFSETS, 0);
+        final int count = (int) dir.getFieldAsLong(
+                TIFFImageDecoder.TIFF_STRIP_BYTE_COUNTS, 0);
+        Arrays.fill(data, offset, offset + count, (byte) 0xff);
+
+        final BufferPool previous = BufferPool.getDefault();
+        final BufferPool pool = new BufferPool(1024 * 1024);
+        BufferPool.setDefault(pool);
+        try {
+            final TIFFImage tiff = new TIFFImage(new MemoryCacheSeekableStream(
+                    new ByteArrayInputStream(data)), null, 0);
+            try {
+                tiff.getTile(0, 0);
+                fail("RuntimeException expected");
+            } catch (final RuntimeException e) {
+                // expected
+            }
+            // The read buffer, rounded up to its size class, and the tile's
+            // buffer went back to the pool
+            final long tileSize = (long) tiff.getWidth()
+                    * tiff.getTileHeight();
+            assertEquals(BufferPool.getSizeClass(count) + tileSize,
+                    pool.getMemoryUsage());
+        } finally {
+            BufferPool.setDefault(previous);
+        }
+    }
+
+    private static boolean isBlack(final int x, final int y) {
+        return (x / 7 + y / 5) % 3 == 0 || x * y % 37 == 0;
+    }
+
+    private void assertFaxPattern(final String name) throws IOException {
+        final InputStream in = getClass().getResourceAsStream(
+                "/images/" + name);
+        try {
+            final TIFFImage tiff = new TIFFImage(
+                    new MemoryCacheSeekableStream(in), null, 0);
+            final Raster raster = tiff.getData();
+            for (int y = 0; y < tiff.getHeight(); y++) {
+                for (int x = 0; x < tiff.getWidth(); x++) {
+                    // WhiteIsZero images decode to 1 for black
+                    assertEquals(name + " at " + x + "," + y, isBlack(x, y),
+                            raster.getSample(x, y, 0) == 1);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testFaxDecoding() throws IOException {
+        assertFaxPattern("tiff_group3_1d.tif");
+        assertFaxPattern("tiff_group3_2d.tif");
+        assertFaxPattern("tiff_group4_pattern.tif");
+    }
+
+    @Test
+    public void testMultiPage() throws IOException {
+        final List<Object> extra = new ArrayList<>();
+        extra.add(createGradient(20, 10));
+        extra.add(createGradient(30, 40));
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setExtraImages(extra.iterator());
+        final byte[] data = encode(createGradient(10, 20), encodeParam);
+
+        final SeekableStream stream = new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(data));
+        assertEquals(3, TIFFDirectory.getNumDirectories(stream));
+
+        final TIFFDirectory dir = new TIFFDirectory(stream, 2);
+        assertEquals(0L, dir.getNextIFDOffset());
+        assertEquals(30, dir.getFieldAsLong(TIFFImageDecoder.TIFF_IMAGE_WIDTH));
+        final TIFFField offsets = dir
+                .getField(TIFFImageDecoder.TIFF_STRIP_OFFSETS);
+        assertEquals(5, offsets.getCount());
+        assertSame(offsets, dir.getField(TIFFImageDecoder.TIFF_STRIP_OFFSETS));
+
+        final TIFFImage page = new TIFFImage(stream, null, 1);
+        assertEquals(20, page.getWidth());
+        assertEquals(10, page.getHeight());
+        try {
+            new TIFFDirectory(stream, 3);
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLazyFieldValues() throws IOException {
+        final File file = File.createTempFile("dir", ".tif");
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(encode(createGradient(30, 40), new TIFFEncodeParam()));
+            } finally {
+                out.close();
+            }
+
+            // Values that do not fit into their entry are read on first access
+            SeekableStream stream = new MappedFileSeekableStream(file);
+            TIFFDirectory dir = new TIFFDirectory(stream, 0);
+            assertEquals(30, dir.getFieldAsLong(TIFFImageDecoder.TIFF_IMAGE_WIDTH));
+            stream.close();
+            assertEquals(40,
+                    dir.getFieldAsLong(TIFFImageDecoder.TIFF_IMAGE_LENGTH));
+            try {
+                dir.getField(TIFFImageDecoder.TIFF_STRIP_OFFSETS);
+                fail("RuntimeException expected");
+            } catch (final RuntimeException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+
+            // getFields() reads them all, after which the stream is not used
+            stream = new FileChannelSeekableStream(file);
+            dir = new TIFFDirectory(stream, 0);
+            assertEquals(dir.getTags().length, countFields(dir.getFields()));
+            stream.close();
+            final TIFFField offsets = dir
+                    .getField(TIFFImageDecoder.TIFF_STRIP_OFFSETS);
+            assertEquals(5, offsets.getCount());
+            assertTrue(offsets.getAsLong(1) > offsets.getAsLong(0));
+            assertSame(offsets,
+                    dir.getField(TIFFImageDecoder.TIFF_STRIP_OFFSETS));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static int countFields(final TIFFField[] fields) {
+        int count = 0;
+        for (final TIFFField field : fields) {
+            if (field != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testBigTIFF() throws IOException {
+        final BufferedImage image = createGradient(30, 40);
+        for (final int compression : new int[] {
+                TIFFEncodeParam.COMPRESSION_NONE,
+                TIFFEncodeParam.COMPRESSION_DEFLATE }) {
+            final List<Object> extra = new ArrayList<>();
+            extra.add(createGradient(20, 10));
+            final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+            encodeParam.setBigTIFF(true);
+            encodeParam.setCompression(compression);
+            encodeParam.setExtraImages(extra.iterator());
+            final byte[] data = encode(image, encodeParam);
+            assertEquals(43, data[3]);
+
+            final SeekableStream stream = new MemoryCacheSeekableStream(
+                    new ByteArrayInputStream(data));
+            assertEquals(2, TIFFDirectory.getNumDirectories(stream));
+            final TIFFDirectory dir = new TIFFDirectory(stream, 0);
+            assertTrue(dir.isBigTIFF());
+            assertEquals(TIFFField.TIFF_LONG8,
+                    dir.getField(TIFFImageDecoder.TIFF_STRIP_OFFSETS).getType());
+
+            final Raster raster = new TIFFImage(stream, null, 0).getData();
+            for (int y = 0; y < 40; y++) {
+                for (int x = 0; x < 30; x++) {
+                    assertEquals(image.getRaster().getSample(x, y, 0),
+                            raster.getSample(x, y, 0));
+                }
+            }
+            assertEquals(20, new TIFFImage(stream, null, 1).getWidth());
+        }
+    }
+
+    @Test
+    public void testParallelCompression() throws IOException {
+        final BufferedImage image = createGradient(100, 203);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (final int compression : new int[] {
+                    TIFFEncodeParam.COMPRESSION_PACKBITS,
+                    TIFFEncodeParam.COMPRESSION_DEFLATE }) {
+                final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+                encodeParam.setCompression(compression);
+                final byte[] expected = encode(image, encodeParam);
+
+                encodeParam.setCompressionExecutor(executor);
+                encodeParam.setCompressionWindow(3);
+                assertArrayEquals(expected, encode(image, encodeParam));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedParallelCompression() throws IOException {
+        final BufferedImage gradient = createGradient(100, 203);
+        final BufferedImage image = new BufferedImage(100, 203,
+                BufferedImage.TYPE_BYTE_GRAY) {
+            @Override
+            public Raster getData(final Rectangle rect) {
+                if (rect.y >= 100) {
+                    throw new IllegalStateException("test");
+                }
+                return gradient.getData(rect);
+            }
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+            encodeParam.setCompression(TIFFEncodeParam.COMPRESSION_DEFLATE);
+            encodeParam.setCompressionExecutor(executor);
+            encodeParam.setCompressionWindow(3);
+            try {
+                encode(image, encodeParam);
+                fail("IllegalStateException expected");
+            } catch (final IllegalStateException e) {
+                assertEquals("test", e.getMessage());
+            }
+
+            // The executor is left usable for the next image
+            final byte[] data = encode(gradient, encodeParam);
+            final Raster raster = new TIFFImage(new MemoryCacheSeekableStream(
+                    new ByteArrayInputStream(data)), null, 0).getData();
+            assertEquals(gradient.getRaster().getSample(99, 202, 0),
+                    raster.getSample(99, 202, 0));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeflateIncompressibleData() throws IOException {
+        final BufferedImage image = new BufferedImage(64, 64,
+                BufferedImage.TYPE_BYTE_GRAY);
+        final Random random = new Random(42);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+                image.getRaster().setSample(x, y, 0, random.nextInt(256));
+            }
+        }
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setCompression(TIFFEncodeParam.COMPRESSION_DEFLATE);
+        encodeParam.setDeflateLevel(9);
+        final byte[] data = encode(image, encodeParam);
+
+        final Raster raster = new TIFFImage(new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(data)), null, 0).getData();
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+                assertEquals(image.getRaster().getSample(x, y, 0),
+                        raster.getSample(x, y, 0));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteImageTiles() throws IOException {
+        final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+        encodeParam.setWriteTiled(true);
+        encodeParam.setTileSize(16, 16);
+        final byte[] data = encode(createGradient(48, 32), encodeParam);
+
+        // The tiles of the decoded image are written without assembling them
+        final TIFFImage tiff = new TIFFImage(new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(data)), null, 0) {
+            @Override
+            public Raster getData(final Rectangle rect) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setWriteTiled(true);
+        new TIFFImageEncoder(out, param).encode(tiff);
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void testPredictor() throws IOException {
+        final BufferedImage image = createGradient(61, 37);
+        for (final int compression : new int[] {
+                TIFFEncodeParam.COMPRESSION_LZW,
+                TIFFEncodeParam.COMPRESSION_DEFLATE }) {
+            final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+            encodeParam.setCompression(compression);
+            final int plainSize = encode(image, encodeParam).length;
+            encodeParam.setPredictor(TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING);
+            final byte[] data = encode(image, encodeParam);
+            assertTrue(data.length < plainSize);
+
+            final Raster raster = new TIFFImage(new MemoryCacheSeekableStream(
+                    new ByteArrayInputStream(data)), null, 0).getData();
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    assertEquals(image.getRaster().getSample(x, y, 0),
+                            raster.getSample(x, y, 0));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPredictor16Bit() throws IOException {
+        final BufferedImage image = new BufferedImage(29, 17,
+                BufferedImage.TYPE_USHORT_GRAY);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.getRaster().setSample(x, y, 0,
+                        (x * 2311 + y * 517) & 0xffff);
+            }
+        }
+        assertPredictorRoundTrip(image,
+                TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING);
+    }
+
+    @Test
+    public void testFloatingPointPredictor() throws IOException {
+        final ColorModel cm = new ComponentColorModel(
+                ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+                Transparency.OPAQUE, DataBuffer.TYPE_FLOAT);
+        final BufferedImage image = new BufferedImage(cm,
+                cm.createCompatibleWritableRaster(23, 13), false, null);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int b = 0; b < 3; b++) {
+                    image.getRaster().setSample(x, y, b,
+                            (x + 1) * 0.037f - y * 0.011f + b);
+                }
+            }
+        }
+        assertPredictorRoundTrip(image,
+                TIFFEncodeParam.PREDICTOR_FLOATING_POINT);
+    }
+
+    private static void assertPredictorRoundTrip(final BufferedImage image,
+            final int predictor) throws IOException {
+        for (final int compression : new int[] {
+                TIFFEncodeParam.COMPRESSION_LZW,
+                TIFFEncodeParam.COMPRESSION_DEFLATE }) {
+            final TIFFEncodeParam encodeParam = new TIFFEncodeParam();
+            encodeParam.setCompression(compression);
+            encodeParam.setPredictor(predictor);
+            final byte[] data = encode(image, encodeParam);
+
+            // The samples are compared tile by tile, as getData() copies
+            // them as integers
+            final TIFFImage tiff = new TIFFImage(new MemoryCacheSeekableStream(
+                    new ByteArrayInputStream(data)), null, 0);
+            final Raster expected = image.getRaster();
+            for (int ty = 0; ty < tiff.getNumYTiles(); ty++) {
+                final Raster tile = tiff.getTile(0, ty);
+                final int maxY = Math.min(tile.getMinY() + tile.getHeight(),
+                        image.getHeight());
+                for (int y = tile.getMinY(); y < maxY; y++) {
+                    for (int x = 0; x < image.getWidth(); x++) {
+                        for (int b = 0; b < expected.getNumBands(); b++) {
+                            assertEquals(expected.getSampleFloat(x, y, b),
+                                    tile.getSampleFloat(x, y, b), 0f);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
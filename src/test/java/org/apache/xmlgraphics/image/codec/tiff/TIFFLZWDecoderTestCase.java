@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TIFFLZWDecoderTestCase {
+
+    /**
+     * Minimal TIFF LZW encoder (with the "early change" of code widths) used
+     * to produce test data.
+     */
+    private static byte[] encode(final byte[] src) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final int[] bits = new int[2]; // pending bits, pending bit count
+        final Map<String, Integer> table = new HashMap<>();
+        int width = 9;
+        int next = 258;
+        writeCode(out, bits, 256, width);
+        String w = "";
+        for (final byte b : src) {
+            final String wc = w + (char) (b & 0xff);
+            if (wc.length() == 1 || table.containsKey(wc)) {
+                w = wc;
+                continue;
+            }
+            writeCode(out, bits, code(table, w), width);
+            table.put(wc, next++);
+            if (next == 4094) {
+                writeCode(out, bits, 256, width);
+                table.clear();
+                width = 9;
+                next = 258;
+            } else if (next == 1 << width) {
+                width++;
+            }
+            w = String.valueOf((char) (b & 0xff));
+        }
+        if (!w.isEmpty()) {
+            writeCode(out, bits, code(table, w), width);
+            if (++next == 1 << width) {
+                width++;
+            }
+        }
+        writeCode(out, bits, 257, width);
+        if (bits[1] > 0) {
+            out.write(bits[0] << 8 - bits[1]);
+        }
+        return out.toByteArray();
+    }
+
+    private static int code(final Map<String, Integer> table, final String s) {
+        return s.length() == 1 ? s.charAt(0) : table.get(s);
+    }
+
+    private static void writeCode(final ByteArrayOutputStream out,
+            final int[] bits, final int code, final int width) {
+        bits[0] = bits[0] << width | code;
+        bits[1] += width;
+        while (bits[1] >= 8) {
+            bits[1] -= 8;
+            out.write(bits[0] >> bits[1] & 0xff);
+        }
+        bits[0] &= (1 << bits[1]) - 1;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final Random random = new Random(1234);
+        final byte[] src = new byte[100000];
+        for (int i = 0; i < src.length; i++) {
+            // Runs and repeats exercise long strings and the KwKwK case,
+            // noise fills the table and forces Clear codes.
+            src[i] = i % 5000 < 2500 ? (byte) (i / 97)
+                    : (byte) random.nextInt(256);
+        }
+        final byte[] dst = new byte[src.length];
+        new TIFFLZWDecoder(src.length, 1, 1).decode(encode(src), dst, 1);
+        assertArrayEquals(src, dst);
+
+        // The decoder is reused for several strips.
+        final TIFFLZWDecoder decoder = new TIFFLZWDecoder(100, 1, 1);
+        final byte[] strip = new byte[1000];
+        for (int s = 0; s < 3; s++) {
+            System.arraycopy(src, s * 40000, strip, 0, strip.length);
+            decoder.decode(encode(strip), dst, 10);
+            assertArrayEquals(strip, Arrays.copyOf(dst, strip.length));
+        }
+    }
+
+    @Test
+    public void testHorizontalPredictor() {
+        final int w = 30;
+        final int h = 4;
+        final byte[] src = new byte[w * h * 3];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) (i * 7);
+        }
+        final byte[] diff = new byte[src.length];
+        for (int i = 0; i < src.length; i++) {
+            diff[i] = i % (w * 3) < 3 ? src[i] : (byte) (src[i] - src[i - 3]);
+        }
+        final byte[] dst = new byte[src.length];
+        new TIFFLZWDecoder(w, 2, 3).decode(encode(diff), dst, h);
+        assertArrayEquals(src, dst);
+    }
+
+    @Test
+    public void testTruncatedOutput() {
+        final byte[] src = new byte[500];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) (i % 3);
+        }
+        final byte[] dst = new byte[333];
+        new TIFFLZWDecoder(333, 1, 1).decode(encode(src), dst, 1);
+        final byte[] expected = new byte[dst.length];
+        System.arraycopy(src, 0, expected, 0, expected.length);
+        assertArrayEquals(expected, dst);
+    }
+
+    @Test
+    public void testDataLength() {
+        final byte[] src = new byte[200];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) (i % 7);
+        }
+        // A strip without its EndOfInformation code, followed by other bytes
+        // of a longer buffer, ends at the given length
+        final byte[] encoded = encode(src);
+        final int length = encoded.length - 2;
+        final byte[] data = Arrays.copyOf(encoded, length + 50);
+        Arrays.fill(data, length, data.length, (byte) 0x5A);
+        final byte[] expected = new byte[src.length];
+        new TIFFLZWDecoder(src.length, 1, 1).decode(
+                Arrays.copyOf(encoded, length), expected, 1);
+        final byte[] dst = new byte[src.length];
+        new TIFFLZWDecoder(src.length, 1, 1).decode(data, length, dst, 1);
+        assertArrayEquals(expected, dst);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedStringMethods() {
+        final TIFFLZWDecoder decoder = new TIFFLZWDecoder(5, 1, 1);
+        decoder.uncompData = new byte[5];
+        decoder.initializeStringTable();
+        decoder.addStringToTable(new byte[] { 1 }, (byte) 2);
+        decoder.addStringToTable(decoder.composeString(new byte[] { 1, 2 },
+                (byte) 3));
+        decoder.writeString(new byte[] { 1, 2, 3 });
+        decoder.addStringToTable(new byte[] { 1, 2, 3 }, (byte) 4);
+        assertEquals(261, decoder.tableIndex);
+        assertArrayEquals(new byte[] { 1, 2, 3, 0, 0 }, decoder.uncompData);
+
+        // Only strings of the table may be extended
+        decoder.addStringToTable(new byte[] { 2, 1 }, (byte) 0);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests TIFFLZWEncoder through TIFFLZWDecoder, which
+ * TIFFLZWDecoderTestCase checks against an independent encoder.
+ */
+public class TIFFLZWEncoderTestCase {
+
+    private static byte[] encode(final TIFFLZWEncoder encoder,
+            final byte[] src, final int off, final int len) {
+        final byte[] buf = new byte[TIFFLZWEncoder.getMaxEncodedLength(len)];
+        final int n = encoder.encode(src, off, len, buf);
+        assertTrue(n <= buf.length);
+        return Arrays.copyOf(buf, n);
+    }
+
+    private static byte[] decode(final byte[] data, final int len) {
+        final byte[] dst = new byte[len];
+        new TIFFLZWDecoder(len, 1, 1).decode(data, dst, 1);
+        return dst;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final Random random = new Random(1234);
+        final byte[] src = new byte[100000];
+        for (int i = 0; i < src.length; i++) {
+            // Runs and repeats exercise long strings and the KwKwK case,
+            // noise fills the table and forces Clear codes.
+            src[i] = i % 5000 < 2500 ? (byte) (i / 97)
+                    : (byte) random.nextInt(256);
+        }
+        final TIFFLZWEncoder encoder = new TIFFLZWEncoder();
+        assertArrayEquals(src,
+                decode(encode(encoder, src, 0, src.length), src.length));
+
+        // The encoder is reused for several strips, read at an offset.
+        for (int s = 0; s < 3; s++) {
+            final byte[] data = encode(encoder, src, s * 40000, 1000);
+            assertArrayEquals(
+                    Arrays.copyOfRange(src, s * 40000, s * 40000 + 1000),
+                    decode(data, 1000));
+        }
+    }
+
+    @Test
+    public void testMaxEncodedLength() {
+        // Noise does not compress, so it comes closest to the bound
+        final Random random = new Random(99);
+        final byte[] src = new byte[20000];
+        random.nextBytes(src);
+        final byte[] data = encode(new TIFFLZWEncoder(), src, 0, src.length);
+        assertTrue(data.length > src.length);
+        assertArrayEquals(src, decode(data, src.length));
+    }
+
+    @Test
+    public void testShortInput() {
+        final TIFFLZWEncoder encoder = new TIFFLZWEncoder();
+        for (int len = 1; len < 4; len++) {
+            final byte[] src = new byte[len];
+            Arrays.fill(src, (byte) 0x55);
+            assertArrayEquals(src, decode(encode(encoder, src, 0, len), len));
+        }
+        // Clear code and EOI only
+        assertEquals(3, encode(encoder, new byte[0], 0, 0).length);
+    }
+}
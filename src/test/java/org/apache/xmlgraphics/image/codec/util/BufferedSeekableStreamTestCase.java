@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class BufferedSeekableStreamTestCase {
+
+    @Test
+    public void testPrimitives() throws IOException {
+        final byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 17 + 1);
+        }
+        try (final SeekableStream stream = new BufferedSeekableStream(
+                new MemoryCacheSeekableStream(new ByteArrayInputStream(data)),
+                16)) {
+            // Values straddle the 16-byte windows
+            stream.seek(13);
+            final int i = stream.readInt();
+            final long l = stream.readLongLE();
+            final int s = stream.readUnsignedShort();
+            final float f = stream.readFloatLE();
+
+            final SeekableStream ref = new MemoryCacheSeekableStream(
+                    new ByteArrayInputStream(data));
+            ref.seek(13);
+            assertEquals(ref.readInt(), i);
+            assertEquals(ref.readLongLE(), l);
+            assertEquals(ref.readUnsignedShort(), s);
+            assertEquals(ref.readFloatLE(), f, 0);
+            assertEquals(ref.getFilePointer(), stream.getFilePointer());
+
+            // Seek backwards within the window and before it
+            stream.seek(30);
+            assertEquals((short) ((data[31] & 0xff) << 8 | data[30] & 0xff),
+                    stream.readShortLE());
+            stream.seek(2);
+            assertEquals(data[2] & 0xff, stream.read());
+
+            // Large reads bypass the window
+            final byte[] b = new byte[50];
+            stream.readFully(b);
+            assertArrayEquals(Arrays.copyOfRange(data, 3, 53), b);
+
+            stream.seek(98);
+            try {
+                stream.readInt();
+                throw new AssertionError("EOFException expected");
+            } catch (final EOFException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testPositionalReads() throws IOException {
+        final byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 13 + 5);
+        }
+        try (final SeekableStream stream = new BufferedSeekableStream(
+                new MemoryCacheSeekableStream(new ByteArrayInputStream(data)),
+                16)) {
+            stream.seek(20);
+            assertEquals(data[20] & 0xff, stream.read());
+
+            // Neither the file pointer nor the window move
+            final byte[] b = new byte[30];
+            stream.readFully(60, b, 0, b.length);
+            assertArrayEquals(Arrays.copyOfRange(data, 60, 90), b);
+            stream.readFully(18, b, 0, 4);
+            assertArrayEquals(Arrays.copyOfRange(data, 18, 22),
+                    Arrays.copyOf(b, 4));
+            assertEquals(21, stream.getFilePointer());
+            assertEquals(data[21] & 0xff, stream.read());
+
+            try {
+                stream.readFully(90, b, 0, b.length);
+                throw new AssertionError("EOFException expected");
+            } catch (final EOFException e) {
+                // expected
+            }
+            assertEquals(22, stream.getFilePointer());
+            assertEquals(data[22] & 0xff, stream.read());
+        }
+    }
+}
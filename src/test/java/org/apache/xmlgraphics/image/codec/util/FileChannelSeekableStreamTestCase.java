@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class FileChannelSeekableStreamTestCase {
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final byte[] data = new byte[100000];
+        new Random(1234).nextBytes(data);
+        final File file = File.createTempFile("fcss", ".bin");
+        try {
+            try (final OutputStream out = new FileOutputStream(file)) {
+                out.write(data);
+            }
+
+            final FileChannelSeekableStream stream = new FileChannelSeekableStream(
+                    file);
+            assertEquals(data.length, stream.length());
+            final ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                final List<Future<Boolean>> results = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    final int start = t * 10000;
+                    final FileChannelSeekableStream cursor = stream.newCursor();
+                    results.add(executor.submit(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws IOException {
+                            final byte[] b = new byte[10000];
+                            // Positional reads on the shared stream
+                            stream.readFully(start, b, 0, b.length);
+                            boolean ok = Arrays.equals(b, Arrays.copyOfRange(
+                                    data, start, start + b.length));
+                            // Sequential reads on a cursor of its own
+                            try (final SeekableStream s = cursor) {
+                                s.seek(start);
+                                ok &= s.readInt() == ByteBuffer.wrap(data)
+                                        .getInt(start);
+                                s.readFully(b);
+                            }
+                            return ok && Arrays.equals(b, Arrays.copyOfRange(
+                                    data, start + 4, start + 4 + b.length));
+                        }
+                    }));
+                }
+                for (final Future<Boolean> result : results) {
+                    assertEquals(Boolean.TRUE, result.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(0, stream.getFilePointer());
+
+            // The channel stays open until the last stream is closed
+            final SeekableStream cursor = stream.newCursor();
+            stream.close();
+            final byte[] b = new byte[16];
+            cursor.readFully(b);
+            assertArrayEquals(Arrays.copyOf(data, 16), b);
+            cursor.close();
+            try {
+                stream.newCursor();
+                fail("IOException expected");
+            } catch (final IOException e) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testInterruptedRead() throws IOException {
+        final byte[] data = new byte[1000];
+        new Random(1234).nextBytes(data);
+        final File file = File.createTempFile("fcss", ".bin");
+        try {
+            try (final OutputStream out = new FileOutputStream(file)) {
+                out.write(data);
+            }
+
+            try (final FileChannelSeekableStream stream = new FileChannelSeekableStream(
+                    file)) {
+                final FileChannelSeekableStream cursor = stream.newCursor();
+                final byte[] b = new byte[100];
+                Thread.currentThread().interrupt();
+                try {
+                    stream.readFully(10, b, 0, b.length);
+                    fail("ClosedByInterruptException expected");
+                } catch (final ClosedByInterruptException e) {
+                    // expected
+                } finally {
+                    Thread.interrupted();
+                }
+
+                // The file was opened again for the stream and its cursors
+                stream.readFully(10, b, 0, b.length);
+                assertArrayEquals(Arrays.copyOfRange(data, 10, 110), b);
+                cursor.seek(500);
+                assertEquals(data[500] & 0xff, cursor.read());
+                cursor.close();
+            }
+
+            try (final FileChannelSeekableStream stream = new FileChannelSeekableStream(
+                    FileChannel.open(file.toPath(), StandardOpenOption.READ))) {
+                Thread.currentThread().interrupt();
+                try {
+                    stream.read();
+                    fail("ClosedByInterruptException expected");
+                } catch (final ClosedByInterruptException e) {
+                    // expected
+                } finally {
+                    Thread.interrupted();
+                }
+
+                // A channel given to the stream cannot be opened again
+                try {
+                    stream.read();
+                    fail("ClosedChannelException expected");
+                } catch (final ClosedChannelException e) {
+                    // expected
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
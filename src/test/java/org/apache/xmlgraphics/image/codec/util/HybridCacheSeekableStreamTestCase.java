@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HybridCacheSeekableStreamTestCase {
+
+    private static byte[] createData(final int length) {
+        final byte[] data = new byte[length];
+        new Random(1234).nextBytes(data);
+        return data;
+    }
+
+    private static void checkStream(final HybridCacheSeekableStream stream,
+            final byte[] data) throws IOException {
+        // Read forwards byte by byte and in chunks crossing block boundaries
+        assertEquals(data[0] & 0xff, stream.read());
+        final byte[] buf = new byte[data.length - 1];
+        stream.readFully(buf);
+        assertArrayEquals(Arrays.copyOfRange(data, 1, data.length), buf);
+        assertEquals(-1, stream.read());
+
+        // Seek backwards
+        stream.seek(data.length / 3);
+        assertEquals(data[data.length / 3] & 0xff, stream.read());
+        final byte[] part = new byte[1000];
+        stream.readFully(data.length / 2, part, 0, part.length);
+        assertArrayEquals(
+                Arrays.copyOfRange(data, data.length / 2, data.length / 2
+                        + part.length), part);
+        assertEquals(data.length / 3 + 1, stream.getFilePointer());
+    }
+
+    @Test
+    public void testMemoryCache() throws IOException {
+        final byte[] data = createData(2000);
+        try (final HybridCacheSeekableStream stream = new HybridCacheSeekableStream(
+                new ByteArrayInputStream(data))) {
+            checkStream(stream, data);
+            assertFalse(stream.isFileCached());
+        }
+    }
+
+    @Test
+    public void testFileCache() throws IOException {
+        final byte[] data = createData(300000);
+        try (final HybridCacheSeekableStream stream = new HybridCacheSeekableStream(
+                new ByteArrayInputStream(data), 100000)) {
+            // The first block is read before the data spills to the file
+            stream.seek(1000);
+            assertEquals(data[1000] & 0xff, stream.read());
+            assertFalse(stream.isFileCached());
+            stream.seek(0);
+            checkStream(stream, data);
+            assertTrue(stream.isFileCached());
+        }
+    }
+
+    @Test
+    public void testSmallThreshold() throws IOException {
+        // A threshold below one block still keeps the first block in memory
+        final byte[] data = createData(2000);
+        try (final HybridCacheSeekableStream stream = new HybridCacheSeekableStream(
+                new ByteArrayInputStream(data), 0)) {
+            checkStream(stream, data);
+            assertFalse(stream.isFileCached());
+        }
+    }
+}
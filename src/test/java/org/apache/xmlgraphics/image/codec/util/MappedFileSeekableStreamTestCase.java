@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class MappedFileSeekableStreamTestCase {
+
+    @Test
+    public void testReads() throws Exception {
+        final byte[] data = new byte[100000];
+        new Random(1234).nextBytes(data);
+        final File file = File.createTempFile("mfss", ".bin");
+        try {
+            try (final OutputStream out = new FileOutputStream(file)) {
+                out.write(data);
+            }
+
+            final MappedFileSeekableStream stream = new MappedFileSeekableStream(
+                    file);
+            assertEquals(data.length, stream.length());
+            final ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                final List<Future<Boolean>> results = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    final int start = t * 10000;
+                    results.add(executor.submit(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws IOException {
+                            final byte[] b = new byte[10000];
+                            stream.readFully(start, b, 0, b.length);
+                            return Arrays.equals(b, Arrays.copyOfRange(data,
+                                    start, start + b.length));
+                        }
+                    }));
+                }
+                for (final Future<Boolean> result : results) {
+                    assertEquals(Boolean.TRUE, result.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(0, stream.getFilePointer());
+
+            // Sequential reads
+            stream.seek(99990);
+            assertEquals(ByteBuffer.wrap(data).getInt(99990), stream.readInt());
+            assertEquals(data[99994] & 0xff, stream.read());
+            final byte[] b = new byte[10];
+            assertEquals(5, stream.read(b, 0, b.length));
+            assertArrayEquals(Arrays.copyOfRange(data, 99995, 100000),
+                    Arrays.copyOf(b, 5));
+            assertEquals(-1, stream.read());
+            try {
+                stream.readFully(99995, b, 0, b.length);
+                fail("EOFException expected");
+            } catch (final EOFException e) {
+                // expected
+            }
+
+            stream.close();
+            try {
+                stream.readFully(0, b, 0, b.length);
+                fail("IOException expected");
+            } catch (final IOException e) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SimpleRenderedImageTestCase {
+
+    /**
+     * A 50x40 image at (5, 7), in 16x16 tiles, whose samples are x + 3 y.
+     * Records the tiles requested.
+     */
+    private static class TiledImage extends SimpleRenderedImage {
+
+        private final Set<Point> requested = new HashSet<>();
+
+        TiledImage() {
+            this.minX = 5;
+            this.minY = 7;
+            this.width = 50;
+            this.height = 40;
+            this.tileWidth = 16;
+            this.tileHeight = 16;
+            this.sampleModel = new PixelInterleavedSampleModel(
+                    DataBuffer.TYPE_BYTE, 16, 16, 1, 16, new int[] { 0 });
+        }
+
+        @Override
+        public Raster getTile(final int tileX, final int tileY) {
+            this.requested.add(new Point(tileX, tileY));
+            final WritableRaster tile = Raster.createWritableRaster(
+                    this.sampleModel, new Point(tileXToX(tileX),
+                            tileYToY(tileY)));
+            for (int y = tile.getMinY(); y < tile.getMinY() + 16; y++) {
+                for (int x = tile.getMinX(); x < tile.getMinX() + 16; x++) {
+                    tile.setSample(x, y, 0, x + 3 * y);
+                }
+            }
+            return tile;
+        }
+    }
+
+    private static void checkSamples(final Raster raster,
+            final Rectangle bounds) {
+        assertEquals(bounds, raster.getBounds());
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            for (int x = bounds.x; x < bounds.x + bounds.width; x++) {
+                assertEquals((x + 3 * y) & 0xFF, raster.getSample(x, y, 0));
+            }
+        }
+    }
+
+    @Test
+    public void testGetDataSingleTile() {
+        final TiledImage image = new TiledImage();
+        final Rectangle rect = new Rectangle(18, 20, 10, 8);
+        final Raster data = image.getData(rect);
+        checkSamples(data, rect);
+        assertEquals(1, image.requested.size());
+        // A view of the tile, not a copy
+        assertEquals(16 * 16, data.getDataBuffer().getSize());
+    }
+
+    @Test
+    public void testGetDataSharesSingleTile() {
+        final WritableRaster raster = Raster.createWritableRaster(
+                new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, 20, 10,
+                        1, 20, new int[] { 0 }), new Point(3, 4));
+        raster.setSample(5, 6, 0, 42);
+        final SingleTileRenderedImage image = new SingleTileRenderedImage(
+                raster, null);
+        for (final Raster data : new Raster[] { image.getData(),
+                image.getData(new Rectangle(4, 5, 5, 5)) }) {
+            assertSame(raster.getDataBuffer(), data.getDataBuffer());
+            assertEquals(42, data.getSample(5, 6, 0));
+        }
+    }
+
+    @Test
+    public void testGetDataClipped() {
+        final TiledImage image = new TiledImage();
+        final Raster data = image.getData(new Rectangle(30, 0, 100, 9));
+        checkSamples(data, new Rectangle(30, 7, 25, 2));
+        // Only the top row of tiles was read
+        for (final Point index : image.requested) {
+            assertEquals(0, index.y);
+        }
+        assertEquals(3, image.requested.size());
+
+        checkSamples(image.getData(), image.getBounds());
+    }
+
+    @Test
+    public void testGetDataOutside() {
+        final TiledImage image = new TiledImage();
+        final Rectangle rect = new Rectangle(0, 0, 5, 100);
+        final Raster data = image.getData(rect);
+        assertEquals(rect, data.getBounds());
+        assertEquals(0, data.getSample(2, 50, 0));
+        assertEquals(0, image.requested.size());
+    }
+
+    @Test
+    public void testCopyData() {
+        final TiledImage image = new TiledImage();
+        final WritableRaster dest = Raster.createWritableRaster(
+                new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, 20, 20,
+                        1, 20, new int[] { 0 }), new Point(45, 40));
+        assertSame(dest, image.copyData(dest));
+        checkSamples(dest.createChild(45, 40, 10, 7, 45, 40, null),
+                new Rectangle(45, 40, 10, 7));
+        assertEquals(0, dest.getSample(55, 40, 0));
+        assertEquals(2, image.requested.size());
+    }
+
+    @Test
+    public void testGetTileIndices() {
+        final TiledImage image = new TiledImage();
+        assertArrayEquals(new Point[] { new Point(1, 0), new Point(2, 0),
+                new Point(1, 1), new Point(2, 1) },
+                image.getTileIndices(new Rectangle(20, 0, 20, 20)));
+        assertEquals(image.getNumXTiles() * image.getNumYTiles(),
+                image.getTileIndices(image.getBounds()).length);
+        assertEquals(0,
+                image.getTileIndices(new Rectangle(60, 7, 10, 10)).length);
+    }
+
+    @Test
+    public void testGetTiles() {
+        final TiledImage image = new TiledImage();
+        final Point[] indices = image.getTileIndices(new Rectangle(20, 0, 20,
+                20));
+        final Raster[] tiles = image.getTiles(indices);
+        assertEquals(indices.length, tiles.length);
+        for (int i = 0; i < tiles.length; i++) {
+            assertEquals(new Point(image.tileXToX(indices[i].x),
+                    image.tileYToY(indices[i].y)), tiles[i].getBounds()
+                    .getLocation());
+        }
+        assertEquals(4, image.requested.size());
+    }
+}
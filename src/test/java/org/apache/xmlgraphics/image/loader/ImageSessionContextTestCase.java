@@ -25,6 +25,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.StringReader;
 
+import javax.imageio.stream.ImageInputStream;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
@@ -40,6 +41,7 @@ import javax.xml.transform.stream.StreamSource;
 import junit.framework.TestCase;
 
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
+import org.apache.xmlgraphics.image.loader.util.SeekableStreamImageInputStream;
 import org.junit.Test;
 import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
@@ -124,6 +126,18 @@ public class ImageSessionContextTestCase extends TestCase {
         final ImageSource imgSrc = checkImageInputStreamAvailable(uri, resolver);
         assertTrue(imgSrc.isFastSource()); // Accessed through the local file
         // system
+
+        // Positional reads of the file leave the ImageInputStream alone
+        final ImageInputStream iin = ((ImageSource) resolve(uri, resolver))
+                .getImageInputStream();
+        assertTrue(iin instanceof SeekableStreamImageInputStream);
+        final byte[] b = new byte[3];
+        ((SeekableStreamImageInputStream) iin).getSeekableStream().readFully(
+                1, b, 0, b.length);
+        assertEquals("PNG", new String(b, "US-ASCII"));
+        assertEquals(0, iin.getStreamPosition());
+        assertEquals(0x89, iin.read());
+        iin.close();
     }
 
     @Test
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xmlgraphics.image.loader.ImageContext;
+import org.apache.xmlgraphics.image.loader.ImageSource;
+import org.junit.Test;
+
+public class AbstractImageSessionContextTestCase {
+
+    /** Larger than the data a stream caches in memory by default. */
+    private static final int DATA_LENGTH = 3 << 20;
+
+    private static final class StreamSessionContext extends
+            AbstractImageSessionContext {
+
+        private final byte[] data;
+
+        StreamSessionContext(final byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        protected Source resolveURI(final String uri) {
+            return new StreamSource(new ByteArrayInputStream(this.data), uri);
+        }
+
+        @Override
+        public ImageContext getParentContext() {
+            return null;
+        }
+
+        @Override
+        public float getTargetResolution() {
+            return 72;
+        }
+    }
+
+    /**
+     * Reads a non-file source through the session context and returns the
+     * number of files its cache created in the cache directory.
+     */
+    private static int readAndCountCacheFiles(final boolean useCache)
+            throws IOException {
+        final byte[] data = new byte[DATA_LENGTH];
+        new Random(1234).nextBytes(data);
+        final File cacheDir = File.createTempFile("cache", "");
+        cacheDir.delete();
+        cacheDir.mkdir();
+
+        final boolean oldUseCache = ImageIO.getUseCache();
+        final File oldCacheDir = ImageIO.getCacheDirectory();
+        try {
+            ImageIO.setUseCache(useCache);
+            ImageIO.setCacheDirectory(cacheDir);
+            final ImageSource source = (ImageSource) new StreamSessionContext(
+                    data).newSource("http://localhost/image.bin");
+            try (final ImageInputStream in = source.getImageInputStream()) {
+                final byte[] read = new byte[DATA_LENGTH];
+                in.readFully(read);
+                assertArrayEquals(data, read);
+                in.seek(0);
+                assertEquals(data[0], in.readByte());
+                return cacheDir.list().length;
+            }
+        } finally {
+            ImageIO.setUseCache(oldUseCache);
+            ImageIO.setCacheDirectory(oldCacheDir);
+            for (final File file : cacheDir.listFiles()) {
+                file.delete();
+            }
+            cacheDir.delete();
+        }
+    }
+
+    @Test
+    public void testImageIOCacheDirectory() throws IOException {
+        assertEquals(1, readAndCountCacheFiles(true));
+    }
+
+    @Test
+    public void testImageIOCacheDisabled() throws IOException {
+        assertEquals(0, readAndCountCacheFiles(false));
+    }
+}
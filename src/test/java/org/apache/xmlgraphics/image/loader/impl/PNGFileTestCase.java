@@ -20,6 +20,7 @@
 package org.apache.xmlgraphics.image.loader.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -27,6 +28,10 @@ import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
 import java.awt.image.IndexColorModel;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
 
 import org.apache.xmlgraphics.image.loader.ImageContext;
 import org.apache.xmlgraphics.image.loader.ImageException;
@@ -70,6 +75,41 @@ public class PNGFileTestCase implements PNGConstants {
         testColorTypePNG("tbrn2c08.png", PNG_COLOR_RGB, true);
     }
 
+    @Test
+    public void testFlatePassThrough() throws ImageException, IOException {
+        final ImageContext context = MockImageContext.newSafeInstance();
+        final ImageSessionContext session = new MockImageSessionContext(context);
+        final ImageInfo info = new ImageInfo("basn2c08.png",
+                MimeConstants.MIME_PNG);
+        final ImageRawPNG irpng = (ImageRawPNG) new ImageLoaderRawPNG()
+                .loadImage(info, null, session);
+        assertTrue(irpng.isFlatePassThroughCapable());
+        assertEquals(Boolean.TRUE,
+                info.getCustomObjects().get(ImageRawPNG.FLATE_PASS_THROUGH));
+        assertEquals(15, irpng.getPredictor());
+        assertEquals(3, irpng.getColors());
+        assertEquals(32, irpng.getColumns());
+        assertTrue(irpng.isCacheable());
+
+        // The raw stream is the zlib data: one filter byte plus one row each
+        for (int i = 0; i < 2; i++) {
+            final InputStream in = new InflaterInputStream(
+                    irpng.createInputStream());
+            try {
+                assertEquals(32 * (1 + 32 * 3), IOUtils.toByteArray(in).length);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+
+        final ImageInfo alphaInfo = new ImageInfo("basn6a08.png",
+                MimeConstants.MIME_PNG);
+        final ImageRawPNG alpha = (ImageRawPNG) new ImageLoaderRawPNG()
+                .loadImage(alphaInfo, null, session);
+        assertFalse(alpha.isFlatePassThroughCapable());
+        assertEquals(4, alpha.getColors());
+    }
+
     @Test
     public void testCorruptPNG() {
         final ImageContext context = MockImageContext.newSafeInstance();
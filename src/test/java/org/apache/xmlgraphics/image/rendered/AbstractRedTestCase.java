@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.xmlgraphics.image.BufferPool;
+import org.junit.Test;
+
+public class AbstractRedTestCase {
+
+    private static final class CountingRed extends BufferedImageCachableRed {
+
+        private int copies;
+
+        CountingRed(final BufferedImage bi) {
+            super(bi);
+        }
+
+        @Override
+        public WritableRaster copyData(final WritableRaster wr) {
+            this.copies++;
+            return super.copyData(wr);
+        }
+    }
+
+    /** A 1-bit image of 10x12 tiles, which are not aligned to bytes. */
+    private static final class PatternRed extends AbstractRed {
+
+        PatternRed() {
+            super((CachableRed) null, new Rectangle(3, 5, 97, 61), null,
+                    new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, 10,
+                            12, 1), 3, 5, null);
+        }
+
+        @Override
+        public WritableRaster copyData(final WritableRaster wr) {
+            for (int y = wr.getMinY(); y < wr.getMinY() + wr.getHeight(); y++) {
+                for (int x = wr.getMinX(); x < wr.getMinX() + wr.getWidth(); x++) {
+                    wr.setSample(x, y, 0, (x * 7 + y * 3) % 5 == 0 ? 1 : 0);
+                }
+            }
+            return wr;
+        }
+
+        WritableRaster makeRaster() {
+            return Raster.createWritableRaster(getSampleModel()
+                    .createCompatibleSampleModel(getWidth(), getHeight()),
+                    new Point(getMinX(), getMinY()));
+        }
+    }
+
+    private static int[] getPixels(final Raster r) {
+        return r.getPixels(r.getMinX(), r.getMinY(), r.getWidth(),
+                r.getHeight(), (int[]) null);
+    }
+
+    @Test
+    public void testTileCache() {
+        final BufferedImage bi = new BufferedImage(40, 30,
+                BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < bi.getHeight(); y++) {
+            for (int x = 0; x < bi.getWidth(); x++) {
+                bi.setRGB(x, y, x * 6 << 24 | y * 8 << 16 | x + y);
+            }
+        }
+        final CountingRed src = new CountingRed(bi);
+        final int[] expected = getPixels(new Any2sRGBRed(src).getData());
+        src.copies = 0;
+
+        final TileCache cache = new TileCache(1024 * 1024);
+        final Any2sRGBRed red = new Any2sRGBRed(src);
+        red.setTileCache(cache);
+        assertArrayEquals(expected, getPixels(red.getData()));
+        assertEquals(1, src.copies);
+
+        // Computed once, however often it is requested
+        assertArrayEquals(expected, getPixels(red.getData()));
+        assertArrayEquals(expected, getPixels(red.getTile(0, 0)));
+        assertEquals(1, src.copies);
+        assertEquals(1, cache.getTileCount());
+        assertEquals(2, cache.getHits());
+
+        red.invalidateTileCache();
+        assertEquals(0, cache.getTileCount());
+        red.getData();
+        assertEquals(2, src.copies);
+
+        red.setTileCache(null);
+        assertEquals(0, cache.getTileCount());
+        red.getData();
+        assertEquals(3, src.copies);
+    }
+
+    @Test
+    public void testParallelCopy() {
+        final PatternRed red = new PatternRed();
+        final WritableRaster expected = red.makeRaster();
+        red.copyData(expected);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < 10; i++) {
+                final WritableRaster wr = red.makeRaster();
+                red.copyToRaster(wr, pool);
+                assertArrayEquals(getPixels(expected), getPixels(wr));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testReleaseData() {
+        final BufferPool previous = BufferPool.getDefault();
+        final BufferPool pool = new BufferPool(1024 * 1024);
+        BufferPool.setDefault(pool);
+        try {
+            final PatternRed red = new PatternRed();
+            final WritableRaster expected = red.makeRaster();
+            red.copyData(expected);
+
+            // Tiles are released once copied, so all but the first are
+            // recycled
+            final WritableRaster wr = red.makeRaster();
+            red.copyToRaster(wr);
+            assertArrayEquals(getPixels(expected), getPixels(wr));
+            assertEquals(1, pool.getMisses());
+            assertEquals(red.getNumXTiles() * red.getNumYTiles() - 1,
+                    pool.getHits());
+
+            final Raster data = red.getData(new Rectangle(10, 10, 20, 20));
+            red.releaseData(data);
+            final long misses = pool.getMisses();
+            red.releaseData(red.getData(new Rectangle(10, 10, 20, 20)));
+            assertEquals(misses, pool.getMisses());
+
+            // Rasters the image did not hand out are left alone
+            final long usage = pool.getMemoryUsage();
+            red.releaseData(expected);
+            red.releaseData(data);
+            assertEquals(usage, pool.getMemoryUsage());
+            assertTrue(pool.getBytesRecycled() > 0);
+        } finally {
+            BufferPool.setDefault(previous);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.xmlgraphics.image.GraphicsUtil;
+import org.apache.xmlgraphics.image.codec.util.SingleTileRenderedImage;
+import org.apache.xmlgraphics.java2d.color.DeviceCMYKColorSpace;
+import org.junit.Test;
+
+public class Any2sRGBRedTestCase {
+
+    /** Large enough to be converted through a lookup table. */
+    private static final int LARGE_WIDTH = 320;
+    private static final int LARGE_HEIGHT = 240;
+
+    /** Small enough to be converted exactly. */
+    private static final int SMALL_WIDTH = 61;
+    private static final int SMALL_HEIGHT = 47;
+
+    private static BufferedImage createImage(final ColorSpace cs,
+            final boolean alpha, final int step) {
+        return createImage(cs, alpha, step, SMALL_WIDTH, SMALL_HEIGHT);
+    }
+
+    private static BufferedImage createImage(final ColorSpace cs,
+            final boolean alpha, final int step, final int width,
+            final int height) {
+        final ColorModel cm = new ComponentColorModel(cs, alpha, false,
+                alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE,
+                DataBuffer.TYPE_BYTE);
+        final WritableRaster wr = cm.createCompatibleWritableRaster(width,
+                height);
+        final Random random = new Random(99);
+        final int[] samples = new int[width * height * wr.getNumBands()];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt(255 / step + 1) * step;
+        }
+        wr.setPixels(0, 0, width, height, samples);
+        return new BufferedImage(cm, wr, false, null);
+    }
+
+    /**
+     * Checks the conversion of an image against its color space, through a
+     * ColorConvertOp, the generic path of Any2sRGBRed, for ICC spaces. The
+     * samples are multiples of step.
+     */
+    private static void checkConversion(final ColorSpace cs,
+            final boolean alpha, final int step, final int tolerance,
+            final int width, final int height, final boolean useLookupTable) {
+        final BufferedImage image = createImage(cs, alpha, step, width,
+                height);
+        final Raster expected = cs instanceof ICC_ColorSpace ? new ColorConvertOp(
+                ColorSpace.getInstance(ColorSpace.CS_sRGB), null).filter(
+                image, null).getRaster() : null;
+        final Raster actual = new Any2sRGBRed(new BufferedImageCachableRed(
+                image), useLookupTable).getData();
+
+        final int n = cs.getNumComponents();
+        final int[] e = new int[4];
+        final int[] a = new int[4];
+        final int[] s = new int[5];
+        final float[] color = new float[n];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.getRaster().getPixel(x, y, s);
+                actual.getPixel(x, y, a);
+                if (expected != null) {
+                    expected.getPixel(x, y, e);
+                } else {
+                    for (int b = 0; b < n; b++) {
+                        color[b] = s[b] / 255f;
+                    }
+                    final float[] rgb = cs.toRGB(color);
+                    for (int b = 0; b < 3; b++) {
+                        e[b] = Math.round(rgb[b] * 255);
+                    }
+                }
+                for (int b = 0; b < 3; b++) {
+                    assertEquals(e[b], a[b], tolerance);
+                }
+                if (alpha) {
+                    assertEquals(s[n], a[3]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConvertCMYK() {
+        checkConversion(new DeviceCMYKColorSpace(), false, 1, 1, LARGE_WIDTH,
+                LARGE_HEIGHT, true);
+        checkConversion(new DeviceCMYKColorSpace(), true, 1, 1, LARGE_WIDTH,
+                LARGE_HEIGHT, true);
+    }
+
+    @Test
+    public void testConvertThreeComponents() {
+        // Colors on the grid are exactly those of ColorConvertOp
+        checkConversion(ColorSpace.getInstance(ColorSpace.CS_PYCC), false, 5,
+                0, LARGE_WIDTH, LARGE_HEIGHT, true);
+        checkConversion(ColorSpace.getInstance(ColorSpace.CS_PYCC), true, 5,
+                0, LARGE_WIDTH, LARGE_HEIGHT, true);
+    }
+
+    @Test
+    public void testExactConversion() {
+        // Small images are converted exactly even with the lookup table
+        checkConversion(ColorSpace.getInstance(ColorSpace.CS_PYCC), true, 1,
+                0, SMALL_WIDTH, SMALL_HEIGHT, true);
+        checkConversion(new DeviceCMYKColorSpace(), true, 1, 0, SMALL_WIDTH,
+                SMALL_HEIGHT, true);
+
+        // and large ones by default
+        assertFalse(new Any2sRGBRed(new BufferedImageCachableRed(createImage(
+                new DeviceCMYKColorSpace(), false, 1))).isUseLookupTable());
+        checkConversion(ColorSpace.getInstance(ColorSpace.CS_PYCC), false, 1,
+                0, LARGE_WIDTH, LARGE_HEIGHT, false);
+        checkConversion(new DeviceCMYKColorSpace(), false, 1, 0, LARGE_WIDTH,
+                LARGE_HEIGHT, false);
+    }
+
+    @Test
+    public void testConverterCache() {
+        final ColorSpace cs = new DeviceCMYKColorSpace();
+        final ColorModel cm = new ComponentColorModel(cs, false, false,
+                Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        final Any2sRGBConverter converter = Any2sRGBConverter.getInstance(cm);
+        assertNotNull(converter);
+        assertSame(converter, Any2sRGBConverter.getInstance(cm));
+        assertNull(Any2sRGBConverter.getInstance(new ComponentColorModel(cs,
+                false, false, Transparency.OPAQUE, DataBuffer.TYPE_USHORT)));
+    }
+
+    private static Any2sRGBConverter getConverter(final ICC_Profile profile) {
+        final ColorSpace cs = new ICC_ColorSpace(profile);
+        return Any2sRGBConverter.getInstance(new ComponentColorModel(cs,
+                false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE));
+    }
+
+    @Test
+    public void testConverterCacheByProfile() throws IOException {
+        // Profiles read anew, which no conversion used yet
+        final ICC_Profile profile = ICC_Profile.getInstance("PYCC.pf");
+        final byte[] data = profile.getData();
+
+        // Color spaces with the same profile share their converter
+        final Any2sRGBConverter converter = getConverter(profile);
+        assertNotNull(converter);
+        assertSame(converter, getConverter(ICC_Profile.getInstance(data)));
+
+        // but not with another rendering intent
+        data[ICC_Profile.icHdrRenderingIntent + 3] ^= 1;
+        assertNotSame(converter, getConverter(ICC_Profile.getInstance(data)));
+    }
+
+    @Test
+    public void testGrayAlpha() {
+        final BufferedImage image = createImage(
+                ColorSpace.getInstance(ColorSpace.CS_GRAY), true, 1);
+        final Raster actual = new Any2sRGBRed(new BufferedImageCachableRed(
+                image)).getData();
+        final int[] s = new int[2];
+        final int[] a = new int[4];
+        for (int y = 0; y < 47; y++) {
+            for (int x = 0; x < 61; x++) {
+                image.getRaster().getPixel(x, y, s);
+                actual.getPixel(x, y, a);
+                assertEquals(s[0], a[0]);
+                assertEquals(s[0], a[1]);
+                assertEquals(s[0], a[2]);
+                assertEquals(s[1], a[3]);
+            }
+        }
+    }
+
+    /**
+     * Converts a raster of the given number of bands without color model,
+     * whose samples are 10 b + 3 x + y, and checks the sRGB samples are
+     * those of the given source bands, -1 standing for opaque.
+     */
+    private static void checkBandCombine(final int numBands,
+            final int... sourceBands) {
+        final WritableRaster raster = Raster.createInterleavedRaster(
+                DataBuffer.TYPE_BYTE, 20, 10, numBands, null);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 20; x++) {
+                for (int b = 0; b < numBands; b++) {
+                    raster.setSample(x, y, b, 10 * b + 3 * x + y);
+                }
+            }
+        }
+        final Raster actual = new Any2sRGBRed(GraphicsUtil.wrap(
+                new SingleTileRenderedImage(raster, null))).getData();
+        assertEquals(sourceBands.length, actual.getNumBands());
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 20; x++) {
+                for (int b = 0; b < sourceBands.length; b++) {
+                    assertEquals(raster.getSample(x, y, sourceBands[b]),
+                            actual.getSample(x, y, b));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConvertWithoutColorModel() {
+        checkBandCombine(1, 0, 0, 0);
+        // Gray and alpha: blue is the gray band and alpha the second band
+        checkBandCombine(2, 0, 0, 0, 1);
+        checkBandCombine(3, 0, 1, 2);
+        checkBandCombine(5, 0, 1, 2, 3);
+        // Once created, the operations are reused
+        checkBandCombine(2, 0, 0, 0, 1);
+    }
+
+    private static int[] getPixels(final Raster r) {
+        return r.getPixels(r.getMinX(), r.getMinY(), r.getWidth(),
+                r.getHeight(), (int[]) null);
+    }
+
+    @Test
+    public void testConvertSingleTileImage() {
+        // Images wrapped from codecs have a single tile
+        final ColorSpace cs = ColorSpace.getInstance(ColorSpace.CS_CIEXYZ);
+        final BufferedImage image = createImage(cs, true, 1, 50, 40);
+        final Raster expected = new ColorConvertOp(
+                ColorSpace.getInstance(ColorSpace.CS_sRGB), null).filter(
+                image, null).getRaster();
+        final Raster actual = GraphicsUtil.convertTosRGB(
+                GraphicsUtil.wrap(new SingleTileRenderedImage(
+                        image.getRaster(), image.getColorModel()))).getData();
+        final int[] e = getPixels(expected);
+        final int[] a = getPixels(actual);
+        assertEquals(e.length, a.length);
+        for (int i = 0; i < e.length; i++) {
+            assertEquals(e[i], a[i], 1);
+        }
+
+        // Dividing out alpha leaves the tile alone
+        final ColorModel premultiplied = new ComponentColorModel(cs, true,
+                true, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+        final int[] before = getPixels(image.getRaster());
+        GraphicsUtil.convertTosRGB(
+                GraphicsUtil.wrap(new SingleTileRenderedImage(
+                        image.getRaster(), premultiplied))).getData();
+        assertArrayEquals(before, getPixels(image.getRaster()));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.writer.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.xmlgraphics.image.codec.tiff.TIFFDirectory;
+import org.apache.xmlgraphics.image.codec.tiff.TIFFEncodeParam;
+import org.apache.xmlgraphics.image.codec.tiff.TIFFImage;
+import org.apache.xmlgraphics.image.codec.tiff.TIFFImageDecoder;
+import org.apache.xmlgraphics.image.codec.util.MemoryCacheSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+import org.apache.xmlgraphics.image.writer.ImageWriter;
+import org.apache.xmlgraphics.image.writer.ImageWriterParams;
+import org.apache.xmlgraphics.image.writer.MultiImageWriter;
+import org.junit.Test;
+
+public class TIFFImageWriterTestCase {
+
+    private static BufferedImage createGradient(final int width,
+            final int height) {
+        final BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.getRaster().setSample(x, y, 0, (x * 7 + y * 3) & 0xff);
+            }
+        }
+        return image;
+    }
+
+    private static void assertImage(final BufferedImage expected,
+            final SeekableStream stream, final int page) throws IOException {
+        final Raster raster = new TIFFImage(stream, null, page).getData();
+        assertEquals(expected.getWidth(), raster.getWidth());
+        assertEquals(expected.getHeight(), raster.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRaster().getSample(x, y, 0),
+                        raster.getSample(x, y, 0));
+            }
+        }
+    }
+
+    @Test
+    public void testBigTIFF() throws IOException {
+        final BufferedImage first = createGradient(30, 40);
+        final BufferedImage second = createGradient(20, 10);
+        final ImageWriterParams params = new ImageWriterParams();
+        params.setBigTIFF(true);
+
+        final ImageWriter writer = new TIFFImageWriter();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final MultiImageWriter multiWriter = writer.createMultiImageWriter(out);
+        multiWriter.writeImage(first, params);
+        multiWriter.writeImage(second, params);
+        multiWriter.close();
+        final byte[] data = out.toByteArray();
+        assertEquals(43, data[3]);
+
+        final SeekableStream stream = new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(data));
+        assertEquals(2, TIFFDirectory.getNumDirectories(stream));
+        assertTrue(new TIFFDirectory(stream, 0).isBigTIFF());
+        assertImage(first, stream, 0);
+        assertImage(second, stream, 1);
+
+        // Classic TIFF without the parameter
+        out.reset();
+        writer.writeImage(first, out, new ImageWriterParams());
+        assertEquals(42, out.toByteArray()[3]);
+    }
+
+    @Test
+    public void testCompressionExecutor() throws IOException {
+        final BufferedImage image = createGradient(100, 203);
+        final ImageWriter writer = new TIFFImageWriter();
+        final ImageWriterParams params = new ImageWriterParams();
+        params.setCompressionMethod("Deflate");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeImage(image, out, params);
+        final byte[] expected = out.toByteArray();
+
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final AtomicInteger tasks = new AtomicInteger();
+        try {
+            params.setCompressionExecutor(new Executor() {
+                @Override
+                public void execute(final Runnable command) {
+                    tasks.incrementAndGet();
+                    pool.execute(command);
+                }
+            }, 3);
+            out.reset();
+            writer.writeImage(image, out, params);
+            assertArrayEquals(expected, out.toByteArray());
+            assertTrue(tasks.get() > 1);
+
+            tasks.set(0);
+            out.reset();
+            final MultiImageWriter multiWriter = writer
+                    .createMultiImageWriter(out);
+            multiWriter.writeImage(image, params);
+            multiWriter.close();
+            assertTrue(tasks.get() > 1);
+            assertImage(image, new MemoryCacheSeekableStream(
+                    new ByteArrayInputStream(out.toByteArray())), 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testLZWAndPredictor() throws IOException {
+        final BufferedImage image = createGradient(61, 37);
+        final ImageWriter writer = new TIFFImageWriter();
+        final ImageWriterParams params = new ImageWriterParams();
+        params.setCompressionMethod("LZW");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeImage(image, out, params);
+        final int plainSize = out.size();
+        assertImage(image, new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(out.toByteArray())), 0);
+
+        params.setPredictor("Horizontal");
+        out.reset();
+        writer.writeImage(image, out, params);
+        assertTrue(out.size() < plainSize);
+        final SeekableStream stream = new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(out.toByteArray()));
+        final TIFFDirectory dir = new TIFFDirectory(stream, 0);
+        assertEquals(TIFFEncodeParam.COMPRESSION_LZW,
+                dir.getFieldAsLong(TIFFImageDecoder.TIFF_COMPRESSION));
+        assertEquals(TIFFEncodeParam.PREDICTOR_HORIZONTAL_DIFFERENCING,
+                dir.getFieldAsLong(TIFFImageDecoder.TIFF_PREDICTOR));
+        assertImage(image, stream, 0);
+
+        params.setPredictor("Unknown");
+        try {
+            writer.writeImage(image, out, params);
+            fail("UnsupportedOperationException expected");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
@@ -24,11 +24,13 @@ import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 
 import junit.framework.TestCase;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.xmlgraphics.image.BufferPool;
 import org.junit.Test;
 
 public class ImageEncodingHelperTestCase extends TestCase {
@@ -85,4 +87,47 @@ public class ImageEncodingHelperTestCase extends TestCase {
         }
     }
 
+
+    @Test
+    public void testBuffersReleasedOnWriteFailure() {
+        final OutputStream failing = new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("write failed");
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len)
+                    throws IOException {
+                throw new IOException("write failed");
+            }
+        };
+        final BufferedImage image = prepareImage(new BufferedImage(100, 75,
+                BufferedImage.TYPE_INT_RGB));
+        final BufferPool previous = BufferPool.getDefault();
+        final BufferPool pool = new BufferPool(1024 * 1024);
+        BufferPool.setDefault(pool);
+        try {
+            try {
+                ImageEncodingHelper.encodeRenderedImageAsRGB(image, failing);
+                fail("IOException expected");
+            } catch (final IOException e) {
+                // expected
+            }
+            assertEquals(BufferPool.getSizeClass(100 * 3),
+                    pool.getMemoryUsage());
+
+            pool.flush();
+            try {
+                ImageEncodingHelper.encodeRGBAsGrayScale(
+                        new byte[100 * 75 * 3], 100, 75, 8, failing);
+                fail("IOException expected");
+            } catch (final IOException e) {
+                // expected
+            }
+            assertEquals(BufferPool.getSizeClass(100), pool.getMemoryUsage());
+        } finally {
+            BufferPool.setDefault(previous);
+        }
+    }
 }